@@ -208,6 +208,7 @@ func (a *API) buildHandler() {
 		handler = limit.Handler(handler, alwaysError(errRateLimited), l.perSecond, l.burst, l.key)
 	}
 	handler = gzip.Handler{Handler: handler}
+	handler = gzip.RequestHandler{Handler: handler}
 	handler = coreCounter(handler)
 	handler = timeoutContextHandler(handler)
 	if a.config != nil && a.config.BlockchainId != nil {
@@ -42,6 +42,51 @@ func (h Handler) ServeHTTP(w http.ResponseWriter, r *http.Request) {
 	pool.Put(gz)
 }
 
+// RequestHandler decompresses request bodies sent with
+// Content-Encoding: gzip before passing the request on to Handler.
+// A body that is not valid gzip fails the handler's reads of it,
+// as a malformed body would.
+//
+// It must wrap any handler that limits the size of request bodies,
+// so that the limit applies to the decompressed size.
+type RequestHandler struct {
+	Handler http.Handler
+}
+
+func (h RequestHandler) ServeHTTP(w http.ResponseWriter, r *http.Request) {
+	if !strings.EqualFold(r.Header.Get("Content-Encoding"), "gzip") {
+		h.Handler.ServeHTTP(w, r)
+		return
+	}
+	r.Header.Del("Content-Encoding")
+	r.Header.Del("Content-Length")
+	r.ContentLength = -1
+	body := &gunzipBody{body: r.Body}
+	r.Body = body
+	h.Handler.ServeHTTP(w, r)
+	if body.gz != nil {
+		body.gz.Close()
+	}
+}
+
+type gunzipBody struct {
+	body io.ReadCloser
+	gz   *gzip.Reader
+	err  error
+}
+
+func (b *gunzipBody) Read(p []byte) (int, error) {
+	if b.gz == nil && b.err == nil {
+		b.gz, b.err = gzip.NewReader(b.body)
+	}
+	if b.err != nil {
+		return 0, b.err
+	}
+	return b.gz.Read(p)
+}
+
+func (b *gunzipBody) Close() error { return b.body.Close() }
+
 type responseWriter struct {
 	w                   io.Writer // w wraps only method Write
 	http.ResponseWriter           // embedded for the other methods
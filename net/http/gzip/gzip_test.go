@@ -1,7 +1,10 @@
 package gzip
 
 import (
+	"bytes"
+	"compress/gzip"
 	"io"
+	"io/ioutil"
 	"net/http"
 	"net/http/httptest"
 	"testing"
@@ -91,3 +94,52 @@ func TestNoGzip(t *testing.T) {
 		t.Error("unexpected gzip")
 	}
 }
+
+func TestRequestGzip(t *testing.T) {
+	var buf bytes.Buffer
+	gz := gzip.NewWriter(&buf)
+	gz.Write(medium)
+	gz.Close()
+
+	w := httptest.NewRecorder()
+	r, _ := http.NewRequest("POST", "/foo", &buf)
+	r.Header.Set("content-encoding", "gzip")
+	var got []byte
+	h := RequestHandler{http.HandlerFunc(func(w http.ResponseWriter, r *http.Request) {
+		got, _ = ioutil.ReadAll(r.Body)
+		if s := r.Header.Get("content-encoding"); s != "" {
+			t.Errorf(`r.Header.Get("content-encoding") = %s want ""`, s)
+		}
+	})}
+	h.ServeHTTP(w, r)
+	if !bytes.Equal(got, medium) {
+		t.Errorf("body = %q want %q", got, medium)
+	}
+}
+
+func TestRequestBadGzip(t *testing.T) {
+	w := httptest.NewRecorder()
+	r, _ := http.NewRequest("POST", "/foo", bytes.NewReader(small))
+	r.Header.Set("content-encoding", "gzip")
+	var err error
+	h := RequestHandler{http.HandlerFunc(func(w http.ResponseWriter, r *http.Request) {
+		_, err = ioutil.ReadAll(r.Body)
+	})}
+	h.ServeHTTP(w, r)
+	if err == nil {
+		t.Error("expected an error reading a body that is not gzip")
+	}
+}
+
+func TestRequestNoGzip(t *testing.T) {
+	w := httptest.NewRecorder()
+	r, _ := http.NewRequest("POST", "/foo", bytes.NewReader(small))
+	var got []byte
+	h := RequestHandler{http.HandlerFunc(func(w http.ResponseWriter, r *http.Request) {
+		got, _ = ioutil.ReadAll(r.Body)
+	})}
+	h.ServeHTTP(w, r)
+	if !bytes.Equal(got, small) {
+		t.Errorf("body = %q want %q", got, small)
+	}
+}
@@ -0,0 +1,159 @@
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.chain.api.Transaction;
+import com.chain.api.TransactionDecoder;
+import com.chain.common.Utils;
+
+// FeedDecode compares the cost of decoding pages of list-transactions
+// results with Gson, as Transaction.Items, against TransactionDecoder,
+// which reuses its transaction objects from page to page. The page is a
+// synthetic one held in memory, so only decoding is measured.
+//
+// Each transaction spends one output and creates two, and carries
+// reference data and tags, like a typical transfer between accounts. The
+// assets and accounts are drawn from a small set, as in a real feed.
+//
+// It reports the time and the bytes allocated by the decoding thread per
+// transaction, summing the amounts so that every transaction is read.
+//
+// Usage: java FeedDecode [transactions per page] [pages] [rounds]
+public class FeedDecode {
+  public static void main(String[] args) throws Exception {
+    int perPage = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int pages = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    byte[] page = page(perPage);
+    System.out.printf("page: %d transactions, %d bytes%n", perPage, page.length);
+
+    TransactionDecoder decoder = new TransactionDecoder();
+    for (int round = 0; round < rounds; round++) {
+      measure("gson   ", round, perPage, pages, () -> {
+        InputStreamReader r =
+            new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8);
+        return sum(Utils.serializer.fromJson(r, Transaction.Items.class).list);
+      });
+      measure("decoder", round, perPage, pages, () -> {
+        return sum(decoder.decode(new ByteArrayInputStream(page)));
+      });
+    }
+    System.out.printf(
+        "string cache: %d hits, %d misses%n", decoder.cacheHits(), decoder.cacheMisses());
+  }
+
+  interface Decode {
+    long run() throws Exception;
+  }
+
+  static void measure(String name, int round, int perPage, int pages, Decode d)
+      throws Exception {
+    // Warm up before measuring.
+    for (int i = 0; i < pages / 5; i++) {
+      d.run();
+    }
+    long total = 0;
+    long allocated = allocated();
+    long start = System.nanoTime();
+    for (int i = 0; i < pages; i++) {
+      total += d.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    allocated = allocated() - allocated;
+
+    long txs = (long) perPage * pages;
+    System.out.printf(
+        "round %d %s: %dns/tx allocated=%d bytes/tx (sum %d)%n",
+        round,
+        name,
+        elapsed / txs,
+        allocated / txs,
+        total);
+  }
+
+  static long sum(List<Transaction> txs) {
+    long sum = 0;
+    for (Transaction tx : txs) {
+      for (Transaction.Input in : tx.inputs) {
+        sum += in.amount;
+      }
+      for (Transaction.Output out : tx.outputs) {
+        sum += out.amount;
+      }
+    }
+    return sum;
+  }
+
+  // page builds a page of list-transactions results.
+  static byte[] page(int n) {
+    String[] assets = {"gold", "silver", "bronze", "usd", "eur"};
+    String[] accounts = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi"};
+    StringBuilder b = new StringBuilder("{\"items\":[");
+    for (int i = 0; i < n; i++) {
+      int a = i % assets.length;
+      String from = accounts[i % accounts.length];
+      String to = accounts[(i * 3 + 1) % accounts.length];
+      if (i > 0) {
+        b.append(',');
+      }
+      b.append("{\"id\":\"").append(hex(i, 1)).append('"')
+          .append(",\"timestamp\":\"2017-05-10T20:14:").append(10 + i % 50).append(".123Z\"")
+          .append(",\"block_id\":\"").append(hex(i / 10, 2)).append('"')
+          .append(",\"block_height\":").append(1000 + i / 10)
+          .append(",\"position\":").append(i % 10)
+          .append(",\"reference_data\":{\"invoice\":\"inv-").append(i).append("\"}")
+          .append(",\"is_local\":\"yes\"")
+          .append(",\"inputs\":[");
+      b.append("{\"type\":\"spend\"");
+      asset(b, assets[a], a);
+      b.append(",\"amount\":").append(100 + i)
+          .append(",\"spent_output_id\":\"").append(hex(i, 3)).append('"');
+      account(b, from);
+      b.append(",\"reference_data\":{},\"is_local\":\"yes\"}],\"outputs\":[");
+      for (int j = 0; j < 2; j++) {
+        String owner = j == 0 ? to : from;
+        b.append(j > 0 ? "," : "")
+            .append("{\"id\":\"").append(hex(i * 2 + j, 4)).append('"')
+            .append(",\"type\":\"control\",\"purpose\":\"").append(j == 0 ? "receive" : "change")
+            .append("\",\"position\":").append(j);
+        asset(b, assets[a], a);
+        b.append(",\"amount\":").append(j == 0 ? 60 + i : 40);
+        account(b, owner);
+        b.append(",\"control_program\":\"0014").append(hex(i * 2 + j, 5).substring(0, 40))
+            .append("\",\"reference_data\":{},\"is_local\":\"yes\"}");
+      }
+      b.append("]}");
+    }
+    b.append("],\"next\":{\"filter\":\"\",\"after\":\"1010:9-0\",\"timeout\":0,")
+        .append("\"ascending_with_long_poll\":true},\"last_page\":false}");
+    return b.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  static void asset(StringBuilder b, String alias, int a) {
+    b.append(",\"asset_id\":\"").append(hex(a, 6)).append('"')
+        .append(",\"asset_alias\":\"").append(alias).append('"')
+        .append(",\"asset_definition\":{\"name\":\"").append(alias).append("\",\"decimals\":2}")
+        .append(",\"asset_tags\":{\"class\":\"currency\"}")
+        .append(",\"asset_is_local\":\"yes\"");
+  }
+
+  static void account(StringBuilder b, String alias) {
+    b.append(",\"account_id\":\"acc").append(alias.toUpperCase()).append('"')
+        .append(",\"account_alias\":\"").append(alias).append('"')
+        .append(",\"account_tags\":{\"owner\":\"").append(alias).append("\"}");
+  }
+
+  // hex returns a 64-character hex ID, distinct for each value and kind.
+  static String hex(int value, int kind) {
+    return String.format("%056x%08x", (long) kind << 32 | value, value * 2654435761L & 0xffffffffL);
+  }
+
+  // allocated returns the bytes allocated so far by the current thread.
+  static long allocated() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
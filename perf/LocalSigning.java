@@ -0,0 +1,163 @@
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.chain.api.*;
+import com.chain.common.Utils;
+import com.chain.http.BatchResponse;
+import com.chain.http.Client;
+import com.chain.signing.LocalSigner;
+import com.chain.signing.MultiHsmSigner;
+import com.chain.signing.Signer;
+
+// LocalSigning compares signing transaction templates in-process with
+// LocalSigner against signing them remotely with the Core's mock HSM.
+// It reports per-template latency for sequential signing and throughput
+// for concurrent batch signing, then submits a sample of the locally
+// signed templates to check that Core accepts them.
+//
+// Usage: CHAIN_API_URL=... CHAIN_API_TOKEN=... java LocalSigning [templates] [batch size]
+public class LocalSigning {
+  public static void main(String[] args) throws Exception {
+    String coreURL = System.getenv("CHAIN_API_URL");
+    String accessToken = System.getenv("CHAIN_API_TOKEN");
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    Client client = new Client(new URL(coreURL), accessToken);
+    client.setReadTimeout(10, TimeUnit.MINUTES);
+
+    LocalSigner local = new LocalSigner();
+    String localXpub = local.addKey(LocalSigner.generateXPrv());
+    MockHsm.Key hsmKey = MockHsm.Key.create(client);
+    MultiHsmSigner remote = new MultiHsmSigner();
+    remote.addKey(hsmKey, MockHsm.getSignerClient(client));
+
+    String suffix = Long.toString(System.currentTimeMillis());
+    new Asset.Builder()
+        .setAlias("local-" + suffix)
+        .addRootXpub(localXpub)
+        .setQuorum(1)
+        .create(client);
+    new Asset.Builder()
+        .setAlias("remote-" + suffix)
+        .addRootXpub(hsmKey.xpub)
+        .setQuorum(1)
+        .create(client);
+    new Account.Builder()
+        .setAlias("holder-" + suffix)
+        .addRootXpub(hsmKey.xpub)
+        .setQuorum(1)
+        .create(client);
+
+    List<Transaction.Template> localTemplates =
+        issuances(client, "local-" + suffix, "holder-" + suffix, count);
+    List<Transaction.Template> remoteTemplates =
+        issuances(client, "remote-" + suffix, "holder-" + suffix, count);
+
+    // Warm up both paths before measuring.
+    measureLatency(local, copy(localTemplates.subList(0, Math.min(count, 100))));
+    measureLatency(remote, copy(remoteTemplates.subList(0, Math.min(count, 100))));
+
+    report("local  latency", measureLatency(local, copy(localTemplates)));
+    report("remote latency", measureLatency(remote, copy(remoteTemplates)));
+
+    System.out.printf(
+        "local  throughput: %.0f templates/s%n",
+        measureThroughput(local, copy(localTemplates), batchSize));
+    System.out.printf(
+        "remote throughput: %.0f templates/s%n",
+        measureThroughput(remote, copy(remoteTemplates), batchSize));
+
+    int submitted = 0;
+    for (Transaction.Template tmpl : local.signBatch(copy(localTemplates.subList(0, 10))).successes()) {
+      Transaction.submit(client, tmpl);
+      submitted++;
+    }
+    System.out.printf("submitted %d locally signed templates%n", submitted);
+    System.exit(0);
+  }
+
+  static List<Transaction.Template> issuances(
+      Client client, String asset, String account, int count) throws Exception {
+    List<Transaction.Template> res = new ArrayList<>();
+    while (res.size() < count) {
+      List<Transaction.Builder> builders = new ArrayList<>();
+      for (int i = res.size(); i < count && builders.size() < 100; i++) {
+        builders.add(
+            new Transaction.Builder()
+                .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(i + 1))
+                .addAction(
+                    new Transaction.Action.ControlWithAccount()
+                        .setAccountAlias(account)
+                        .setAssetAlias(asset)
+                        .setAmount(i + 1)));
+      }
+      BatchResponse<Transaction.Template> batch = Transaction.buildBatch(client, builders);
+      if (!batch.errors().isEmpty()) {
+        throw batch.errors().get(0);
+      }
+      res.addAll(batch.successes());
+    }
+    return res;
+  }
+
+  // Returns the latency, in microseconds, of signing each template in turn.
+  static long[] measureLatency(Signer signer, List<Transaction.Template> templates)
+      throws Exception {
+    long[] micros = new long[templates.size()];
+    for (int i = 0; i < templates.size(); i++) {
+      long start = System.nanoTime();
+      signer.sign(templates.get(i));
+      micros[i] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+    return micros;
+  }
+
+  // Signs all templates in concurrent batches and returns templates per second.
+  static double measureThroughput(Signer signer, List<Transaction.Template> templates, int batchSize)
+      throws Exception {
+    long start = System.nanoTime();
+    List<CompletableFuture<BatchResponse<Transaction.Template>>> batches = new ArrayList<>();
+    for (int i = 0; i < templates.size(); i += batchSize) {
+      batches.add(
+          signer.signBatchAsync(templates.subList(i, Math.min(templates.size(), i + batchSize))));
+    }
+    for (CompletableFuture<BatchResponse<Transaction.Template>> batch : batches) {
+      if (!Utils.await(batch).errors().isEmpty()) {
+        throw Utils.await(batch).errors().get(0);
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    return templates.size() / seconds;
+  }
+
+  static void report(String label, long[] micros) {
+    long[] sorted = micros.clone();
+    Arrays.sort(sorted);
+    long total = 0;
+    for (long m : sorted) {
+      total += m;
+    }
+    System.out.printf(
+        "%s: mean=%dus p50=%dus p90=%dus p99=%dus max=%dus%n",
+        label,
+        total / sorted.length,
+        sorted[sorted.length / 2],
+        sorted[(int) (sorted.length * 0.9)],
+        sorted[(int) (sorted.length * 0.99)],
+        sorted[sorted.length - 1]);
+  }
+
+  // Signers fill in templates, so each measurement starts from fresh copies.
+  static List<Transaction.Template> copy(List<Transaction.Template> templates) {
+    List<Transaction.Template> res = new ArrayList<>();
+    for (Transaction.Template tmpl : templates) {
+      res.add(Utils.serializer.fromJson(Utils.serializer.toJson(tmpl), Transaction.Template.class));
+    }
+    return res;
+  }
+}
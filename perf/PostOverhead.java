@@ -0,0 +1,163 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.chain.http.Client;
+
+// PostOverhead measures the client's own cost per request: building the
+// request, retry and endpoint bookkeeping, serializing a small body and
+// decoding a small response. Requests go to a stub server in the same
+// process that answers every request with the same few bytes, so network
+// and Core time are as small as they can be.
+//
+// It reports the mean and percentile latency of a request and the bytes
+// allocated by the calling thread per request.
+//
+// Usage: java PostOverhead [requests] [rounds]
+public class PostOverhead {
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    ServerSocket server = new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(() -> serve(server));
+    acceptor.setDaemon(true);
+    acceptor.start();
+
+    Client client =
+        new Client.Builder()
+            .setURL("http://localhost:" + server.getLocalPort())
+            .setAccessToken("benchmark:0123456789abcdef0123456789abcdef")
+            .build();
+    Map<String, Object> body = new HashMap<>();
+    body.put("client_token", "benchmark");
+
+    // Warm up before measuring.
+    for (int i = 0; i < requests / 5; i++) {
+      client.request("list-assets", body, Map.class);
+    }
+
+    for (int round = 0; round < rounds; round++) {
+      long[] nanos = new long[requests];
+      long allocated = allocated();
+      long start = System.nanoTime();
+      for (int i = 0; i < requests; i++) {
+        long t = System.nanoTime();
+        client.request("list-assets", body, Map.class);
+        nanos[i] = System.nanoTime() - t;
+      }
+      long elapsed = System.nanoTime() - start;
+      allocated = allocated() - allocated;
+
+      Arrays.sort(nanos);
+      System.out.printf(
+          "round %d: mean=%dus p50=%dus p99=%dus allocated=%d bytes/request%n",
+          round,
+          TimeUnit.NANOSECONDS.toMicros(elapsed / requests),
+          TimeUnit.NANOSECONDS.toMicros(nanos[requests / 2]),
+          TimeUnit.NANOSECONDS.toMicros(nanos[(int) (requests * 0.99)]),
+          allocated / requests);
+    }
+    server.close();
+    System.exit(0);
+  }
+
+  // serve answers each request on each connection with the same response,
+  // written in a single call.
+  static void serve(ServerSocket server) {
+    byte[] reply =
+        ("HTTP/1.1 200 OK\r\nChain-Request-ID: stub\r\nContent-Type: application/json\r\n"
+                + "Content-Length: 11\r\n\r\n{\"ok\":true}")
+            .getBytes(StandardCharsets.UTF_8);
+    while (!server.isClosed()) {
+      Socket conn;
+      try {
+        conn = server.accept();
+      } catch (IOException e) {
+        return;
+      }
+      Thread t =
+          new Thread(
+              () -> {
+                try {
+                  conn.setTcpNoDelay(true);
+                  InputStream in = new BufferedInputStream(conn.getInputStream());
+                  OutputStream out = conn.getOutputStream();
+                  while (true) {
+                    skipRequest(in);
+                    out.write(reply);
+                  }
+                } catch (IOException e) {
+                  // The client closed the connection.
+                }
+              });
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  // skipRequest reads one request's headers and body. It handles only the
+  // framing the client uses.
+  static void skipRequest(InputStream in) throws IOException {
+    long length = 0;
+    boolean chunked = false;
+    String line;
+    while (!(line = readLine(in)).isEmpty()) {
+      String lower = line.toLowerCase();
+      if (lower.startsWith("content-length:")) {
+        length = Long.parseLong(lower.substring(15).trim());
+      } else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) {
+        chunked = true;
+      }
+    }
+    if (!chunked) {
+      skipFully(in, length);
+      return;
+    }
+    long size;
+    while ((size = Long.parseLong(readLine(in).trim(), 16)) > 0) {
+      skipFully(in, size);
+      readLine(in);
+    }
+    readLine(in);
+  }
+
+  static void skipFully(InputStream in, long n) throws IOException {
+    for (; n > 0; n--) {
+      if (in.read() < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0) {
+        throw new EOFException();
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  // allocated returns the bytes allocated so far by the current thread.
+  static long allocated() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+
+import com.chain.api.*;
+import com.chain.common.Utils;
+import com.chain.http.Client;
+import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+// RequestBodies compares sending a large build-transaction batch with the
+// client, which streams the JSON body into the connection, against
+// serializing it to a string and then to a byte array first, as the client
+// used to. It reports the bytes allocated on the calling thread per request
+// and the latency distribution of each.
+//
+// Core rejects the builders, since their asset does not exist, but only
+// after reading and parsing the whole batch.
+//
+// Usage: CHAIN_API_URL=... CHAIN_API_TOKEN=... java RequestBodies [batch size] [actions] [requests]
+public class RequestBodies {
+  static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+  public static void main(String[] args) throws Exception {
+    String coreURL = System.getenv("CHAIN_API_URL");
+    String accessToken = System.getenv("CHAIN_API_TOKEN");
+    int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int actions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int requests = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+    Client client =
+        new Client.Builder()
+            .setURL(coreURL)
+            .setAccessToken(accessToken)
+            .setReadTimeout(10, TimeUnit.MINUTES)
+            .build();
+    // Like the client, the baseline disables Nagle's algorithm, so only the
+    // handling of the body differs.
+    OkHttpClient http = new OkHttpClient();
+    http.setReadTimeout(10, TimeUnit.MINUTES);
+    http.setSocketFactory(new NoDelaySockets());
+    URL buildURL = new URL(coreURL + "/build-transaction");
+
+    List<Transaction.Builder> batch = new ArrayList<>();
+    for (int i = 0; i < batchSize; i++) {
+      Transaction.Builder b = new Transaction.Builder();
+      for (int j = 0; j < actions; j++) {
+        b.addAction(
+            new Transaction.Action.Issue()
+                .setAssetAlias("request-bodies-missing-asset")
+                .setAmount(i * actions + j + 1)
+                .addReferenceDataField("padding", "benchmark action " + i + "/" + j));
+      }
+      batch.add(b);
+    }
+    System.out.printf(
+        "batch of %d builders, %d bytes of JSON%n",
+        batchSize, Utils.serializer.toJson(batch).length());
+
+    // Warm up both paths before measuring.
+    for (int i = 0; i < 20; i++) {
+      streamed(client, batch);
+      buffered(http, buildURL, accessToken, batch);
+    }
+
+    long[] streamedNanos = new long[requests];
+    long[] bufferedNanos = new long[requests];
+    long streamedBytes = 0;
+    long bufferedBytes = 0;
+    for (int i = 0; i < requests; i++) {
+      long a = allocated();
+      long t = System.nanoTime();
+      streamed(client, batch);
+      streamedNanos[i] = System.nanoTime() - t;
+      streamedBytes += allocated() - a;
+
+      a = allocated();
+      t = System.nanoTime();
+      buffered(http, buildURL, accessToken, batch);
+      bufferedNanos[i] = System.nanoTime() - t;
+      bufferedBytes += allocated() - a;
+    }
+
+    report("streamed", streamedNanos, streamedBytes / requests);
+    report("buffered", bufferedNanos, bufferedBytes / requests);
+    System.exit(0);
+  }
+
+  static void streamed(Client client, List<Transaction.Builder> batch) throws Exception {
+    client.batchRequest("build-transaction", batch, Object.class, Object.class);
+  }
+
+  static void buffered(OkHttpClient http, URL url, String token, List<Transaction.Builder> batch)
+      throws Exception {
+    String json = Utils.serializer.toJson(batch);
+    Request.Builder req =
+        new Request.Builder().url(url).method("POST", RequestBody.create(JSON, json));
+    if (token != null) {
+      String[] parts = token.split(":", 2);
+      req.header("Authorization", Credentials.basic(parts[0], parts[1]));
+    }
+    Response resp = http.newCall(req.build()).execute();
+    Utils.serializer.fromJson(resp.body().charStream(), Object.class);
+  }
+
+  static class NoDelaySockets extends SocketFactory {
+    public Socket createSocket() throws IOException {
+      Socket s = new Socket();
+      s.setTcpNoDelay(true);
+      return s;
+    }
+
+    public Socket createSocket(String host, int port) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    public Socket createSocket(String host, int port, InetAddress local, int localPort)
+        throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    public Socket createSocket(InetAddress host, int port, InetAddress local, int localPort)
+        throws IOException {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  // allocated returns the bytes allocated so far by the current thread.
+  static long allocated() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  static void report(String label, long[] nanos, long bytesPerRequest) {
+    long[] sorted = Arrays.copyOf(nanos, nanos.length);
+    Arrays.sort(sorted);
+    System.out.printf(
+        "%s: p50=%dms p99=%dms max=%dms allocated=%dKB/request%n",
+        label,
+        TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length / 2]),
+        TimeUnit.NANOSECONDS.toMillis(sorted[(int) (sorted.length * 0.99)]),
+        TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]),
+        bytesPerRequest / 1024);
+  }
+}
@@ -1,6 +1,5 @@
 import java.io.FileWriter;
 import java.io.PrintWriter;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -16,6 +15,7 @@ import java.util.concurrent.TimeUnit;
 import com.chain.api.*;
 import com.chain.api.MockHsm.Key;
 import com.chain.http.Client;
+import com.chain.http.InMemoryClientMetrics;
 import com.chain.signing.HsmSigner;
 
 public class UtxoReservation {
@@ -24,12 +24,21 @@ public class UtxoReservation {
     String accessToken = System.getenv("CHAIN_API_TOKEN");
     System.out.println(coreURL);
     System.out.println(accessToken);
-    Client client = new Client(new URL(coreURL), accessToken);
-    client.setConnectTimeout(10, TimeUnit.MINUTES);
-    client.setReadTimeout(10, TimeUnit.MINUTES);
-    client.setWriteTimeout(10, TimeUnit.MINUTES);
+    InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+    Client client =
+        new Client.Builder()
+            .setURL(coreURL)
+            .setAccessToken(accessToken)
+            .setConnectTimeout(10, TimeUnit.MINUTES)
+            .setReadTimeout(10, TimeUnit.MINUTES)
+            .setWriteTimeout(10, TimeUnit.MINUTES)
+            .setMetrics(metrics)
+            .build();
     setup(client);
     transact(client);
+    PrintWriter out = new PrintWriter(new FileWriter("client-metrics.json"));
+    out.println(metrics.toJson());
+    out.close();
     System.exit(0);
   }
 
@@ -0,0 +1,428 @@
+package com.chain.api;
+
+import com.chain.common.Utils;
+import com.chain.exception.APIException;
+import com.chain.exception.ChainException;
+import com.chain.http.BatchResponse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Abstract base class for collecting individual requests made from many
+ * threads into batched API calls.<br>
+ * Items are held until either maxBatchSize items are pending or the oldest
+ * pending item has waited maxLinger, then sent as one batch. Each item's
+ * result is routed back to its caller by its index in the batch. At most
+ * maxInFlight batches are outstanding at once; further batches, of at most
+ * maxBatchSize items each, queue for a slot, and a partial batch keeps
+ * filling while it waits. Once maxQueued items are waiting, new items fail
+ * at once rather than queueing without bound.<br>
+ * All batchers share one timer thread for their linger deadlines.
+ * @param <I> type of the request items
+ * @param <O> type of the per-item results
+ */
+public abstract class Batcher<I, O> {
+  private final int maxBatchSize;
+  private final long maxLingerNanos;
+  private final int maxInFlight;
+  private final int maxQueued;
+  private final Stats stats = new Stats();
+
+  private List<Pending<I, O>> pending = new ArrayList<>();
+  private Deque<List<Pending<I, O>>> full = new ArrayDeque<>();
+  private int queued;
+  private ScheduledFuture<?> lingerTask;
+  private boolean lingerExpired;
+  private int inFlight;
+  private boolean closed;
+
+  /**
+   * @param maxBatchSize the maximum number of items sent in a single batch
+   * @param maxLinger the maximum time an item waits for a batch to fill
+   * @param unit the unit of maxLinger
+   */
+  protected Batcher(int maxBatchSize, long maxLinger, TimeUnit unit) {
+    this(maxBatchSize, maxLinger, unit, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param maxBatchSize the maximum number of items sent in a single batch
+   * @param maxLinger the maximum time an item waits for a batch to fill
+   * @param unit the unit of maxLinger
+   * @param maxInFlight the maximum number of batches awaiting a response
+   */
+  protected Batcher(int maxBatchSize, long maxLinger, TimeUnit unit, int maxInFlight) {
+    this(maxBatchSize, maxLinger, unit, maxInFlight, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param maxBatchSize the maximum number of items sent in a single batch
+   * @param maxLinger the maximum time an item waits for a batch to fill
+   * @param unit the unit of maxLinger
+   * @param maxInFlight the maximum number of batches awaiting a response
+   * @param maxQueued the maximum number of items waiting to be sent
+   */
+  protected Batcher(
+      int maxBatchSize, long maxLinger, TimeUnit unit, int maxInFlight, int maxQueued) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("max batch size must be positive");
+    }
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("max in-flight batches must be positive");
+    }
+    if (maxQueued < 1) {
+      throw new IllegalArgumentException("max queued items must be positive");
+    }
+    this.maxBatchSize = maxBatchSize;
+    this.maxLingerNanos = unit.toNanos(maxLinger);
+    this.maxInFlight = maxInFlight;
+    this.maxQueued = maxQueued;
+  }
+
+  private static ScheduledExecutorService timer;
+
+  private static synchronized ScheduledExecutorService timer() {
+    if (timer == null) {
+      timer =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "chain-sdk-batcher");
+                  t.setDaemon(true);
+                  return t;
+                }
+              });
+    }
+    return timer;
+  }
+
+  /**
+   * Sends a batch of items to the API.
+   * @param items the items in the batch, in the order their callers added them
+   * @return a future holding one success or error per item
+   */
+  protected abstract CompletableFuture<BatchResponse<O>> sendBatch(List<I> items);
+
+  /**
+   * Adds an item to the next batch.
+   * @param item the request item
+   * @return a future holding the item's result. If the API returns an error
+   * for the item, the future completes exceptionally with that error. If
+   * the batcher is closed, or maxQueued items are already waiting, it
+   * completes exceptionally with a {@link ChainException}.
+   */
+  public CompletableFuture<O> add(I item) {
+    Pending<I, O> p = new Pending<>(item);
+    List<List<Pending<I, O>>> ready;
+    synchronized (this) {
+      if (closed) {
+        p.future.completeExceptionally(new ChainException("batcher is closed"));
+        return p.future;
+      }
+      if (queued >= maxQueued) {
+        stats.rejected.incrementAndGet();
+        p.future.completeExceptionally(
+            new ChainException("batcher queue is full: " + queued + " items waiting"));
+        return p.future;
+      }
+      queued++;
+      pending.add(p);
+      if (pending.size() >= maxBatchSize) {
+        full.add(drain());
+      } else if (pending.size() == 1) {
+        lingerTask =
+            timer()
+                .schedule(
+                    new Runnable() {
+                      public void run() {
+                        lingerExpired();
+                      }
+                    },
+                    maxLingerNanos,
+                    TimeUnit.NANOSECONDS);
+      }
+      ready = claimSlots();
+    }
+    send(ready);
+    return p.future;
+  }
+
+  /**
+   * Sends all pending items as soon as an in-flight slot is available,
+   * without waiting for the batch to fill.
+   */
+  public void flush() {
+    List<List<Pending<I, O>>> ready;
+    synchronized (this) {
+      if (!pending.isEmpty()) {
+        full.add(drain());
+      }
+      ready = claimSlots();
+    }
+    send(ready);
+  }
+
+  private void lingerExpired() {
+    List<List<Pending<I, O>>> ready;
+    synchronized (this) {
+      lingerTask = null;
+      lingerExpired = true;
+      ready = claimSlots();
+    }
+    send(ready);
+  }
+
+  private void batchDone() {
+    List<List<Pending<I, O>>> ready;
+    synchronized (this) {
+      inFlight--;
+      ready = claimSlots();
+    }
+    send(ready);
+  }
+
+  // Must be called while holding the lock. Takes as many waiting batches as
+  // there are free in-flight slots, including the partial batch if its
+  // linger time has expired.
+  private List<List<Pending<I, O>>> claimSlots() {
+    List<List<Pending<I, O>>> ready = new ArrayList<>();
+    while (inFlight < maxInFlight) {
+      List<Pending<I, O>> batch;
+      if (!full.isEmpty()) {
+        batch = full.poll();
+      } else if (lingerExpired && !pending.isEmpty()) {
+        batch = drain();
+      } else {
+        break;
+      }
+      ready.add(batch);
+      queued -= batch.size();
+      inFlight++;
+    }
+    return ready;
+  }
+
+  /**
+   * Flushes pending items and stops accepting new ones. Batches already sent
+   * will still complete.
+   */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    flush();
+  }
+
+  /**
+   * Returns the number of batches sent that are still awaiting a response.
+   */
+  public synchronized int inFlight() {
+    return inFlight;
+  }
+
+  /**
+   * Returns the number of items waiting to be sent.
+   */
+  public synchronized int queued() {
+    return queued;
+  }
+
+  /**
+   * Returns the batching statistics collected so far.
+   */
+  public Stats stats() {
+    return stats;
+  }
+
+  // Must be called while holding the lock.
+  private List<Pending<I, O>> drain() {
+    if (lingerTask != null) {
+      lingerTask.cancel(false);
+      lingerTask = null;
+    }
+    lingerExpired = false;
+    List<Pending<I, O>> ready = pending;
+    pending = new ArrayList<>();
+    return ready;
+  }
+
+  private void send(List<List<Pending<I, O>>> batches) {
+    for (List<Pending<I, O>> batch : batches) {
+      sendOne(batch);
+    }
+  }
+
+  private void sendOne(final List<Pending<I, O>> batch) {
+    long now = System.nanoTime();
+    List<I> items = new ArrayList<>(batch.size());
+    for (Pending<I, O> p : batch) {
+      items.add(p.item);
+      stats.recordQueueDelay(now - p.enqueuedAt);
+    }
+    stats.recordBatch(batch.size());
+
+    CompletableFuture<BatchResponse<O>> response;
+    try {
+      response = sendBatch(items);
+    } catch (RuntimeException ex) {
+      response = new CompletableFuture<>();
+      response.completeExceptionally(ex);
+    }
+
+    response.whenComplete(
+        (resp, err) -> {
+          batchDone();
+          if (err != null) {
+            Throwable cause = Utils.unwrap(err);
+            for (Pending<I, O> p : batch) {
+              p.future.completeExceptionally(cause);
+            }
+            return;
+          }
+          for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<O> f = batch.get(i).future;
+            if (resp.isSuccess(i)) {
+              f.complete(resp.successesByIndex().get(i));
+            } else if (resp.isError(i)) {
+              APIException e = resp.errorsByIndex().get(i);
+              f.completeExceptionally(e);
+            } else {
+              f.completeExceptionally(
+                  new ChainException("Missing batch response for item at index " + i));
+            }
+          }
+        });
+  }
+
+  private static class Pending<I, O> {
+    final I item;
+    final long enqueuedAt = System.nanoTime();
+    final CompletableFuture<O> future = new CompletableFuture<>();
+
+    Pending(I item) {
+      this.item = item;
+    }
+  }
+
+  /**
+   * Batching statistics: the distribution of batch sizes and the queueing
+   * delay items spend waiting for their batch to be sent.
+   */
+  public static class Stats {
+    // Bucket i counts batches with a size in [2^i, 2^(i+1)).
+    private final AtomicLongArray sizeBuckets = new AtomicLongArray(32);
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong totalDelayNanos = new AtomicLong();
+    private final AtomicLong maxDelayNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    void recordBatch(int size) {
+      sizeBuckets.incrementAndGet(31 - Integer.numberOfLeadingZeros(size));
+      batches.incrementAndGet();
+      items.addAndGet(size);
+    }
+
+    void recordQueueDelay(long nanos) {
+      totalDelayNanos.addAndGet(nanos);
+      long max = maxDelayNanos.get();
+      while (nanos > max && !maxDelayNanos.compareAndSet(max, nanos)) {
+        max = maxDelayNanos.get();
+      }
+    }
+
+    /**
+     * Returns the number of batches sent.
+     */
+    public long batches() {
+      return batches.get();
+    }
+
+    /**
+     * Returns the number of items sent across all batches.
+     */
+    public long items() {
+      return items.get();
+    }
+
+    /**
+     * Returns the number of items that failed because the queue was full.
+     */
+    public long rejected() {
+      return rejected.get();
+    }
+
+    /**
+     * Returns the mean number of items per batch.
+     */
+    public double meanBatchSize() {
+      long b = batches.get();
+      return b == 0 ? 0 : (double) items.get() / b;
+    }
+
+    /**
+     * Returns the number of batches whose size falls in [2^i, 2^(i+1)),
+     * indexed by i. Trailing empty buckets are omitted.
+     */
+    public long[] batchSizeHistogram() {
+      int last = 0;
+      for (int i = 0; i < sizeBuckets.length(); i++) {
+        if (sizeBuckets.get(i) > 0) {
+          last = i;
+        }
+      }
+      long[] res = new long[last + 1];
+      for (int i = 0; i <= last; i++) {
+        res[i] = sizeBuckets.get(i);
+      }
+      return res;
+    }
+
+    /**
+     * Returns the mean time, in microseconds, an item waited before its batch was sent.
+     */
+    public double meanQueueDelayMicros() {
+      long n = items.get();
+      return n == 0 ? 0 : totalDelayNanos.get() / 1000.0 / n;
+    }
+
+    /**
+     * Returns the longest time, in microseconds, an item waited before its batch was sent.
+     */
+    public long maxQueueDelayMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(maxDelayNanos.get());
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder hist = new StringBuilder();
+      long[] h = batchSizeHistogram();
+      for (int i = 0; i < h.length; i++) {
+        if (h[i] == 0) continue;
+        if (hist.length() > 0) hist.append(", ");
+        hist.append(String.format("[%d,%d): %d", 1 << i, 1L << (i + 1), h[i]));
+      }
+      return String.format(
+          "batches=%d items=%d mean_size=%.1f sizes={%s} mean_delay_us=%.1f max_delay_us=%d"
+              + " rejected=%d",
+          batches(),
+          items(),
+          meanBatchSize(),
+          hist,
+          meanQueueDelayMicros(),
+          maxQueueDelayMicros(),
+          rejected());
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.chain.api;
+
+import com.chain.common.Utils;
+import com.chain.exception.*;
+import com.chain.http.BatchResponse;
+import com.chain.http.Client;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BuildBatcher coalesces {@link Transaction.Builder} objects built
+ * concurrently from many threads into batched calls to the build-transaction
+ * endpoint.<br>
+ * It is a drop-in replacement for {@link Transaction.Builder#build(Client)}:
+ * each caller receives its own {@link Transaction.Template}, or the
+ * {@link BuildException} produced for its builder.
+ */
+public class BuildBatcher extends Batcher<Transaction.Builder, Transaction.Template> {
+  private final Client client;
+
+  private BuildBatcher(Builder builder) {
+    super(
+        builder.maxBatchSize,
+        builder.maxLinger,
+        builder.maxLingerUnit,
+        builder.maxInFlightBatches,
+        builder.maxQueued);
+    this.client = builder.client;
+  }
+
+  @Override
+  protected CompletableFuture<BatchResponse<Transaction.Template>> sendBatch(
+      List<Transaction.Builder> builders) {
+    return Transaction.buildBatchAsync(client, builders);
+  }
+
+  /**
+   * Builds a transaction template as part of the next batch.
+   * @param builder transaction builder
+   * @return a future holding the transaction template
+   */
+  public CompletableFuture<Transaction.Template> buildAsync(Transaction.Builder builder) {
+    return add(builder);
+  }
+
+  /**
+   * Builds a transaction template as part of the next batch, blocking until
+   * the batch has been processed.
+   * @param builder transaction builder
+   * @return a transaction template
+   * @throws BuildException This exception is raised if the api returns errors while building the transaction.
+   * @throws BadURLException This exception wraps java.net.MalformedURLException.
+   * @throws ConnectivityException This exception is raised if there are connectivity issues with the server.
+   * @throws HTTPException This exception is raised when errors occur making http requests.
+   * @throws JSONException This exception is raised due to malformed json requests or responses.
+   */
+  public Transaction.Template build(Transaction.Builder builder) throws ChainException {
+    return Utils.await(add(builder));
+  }
+
+  /**
+   * A builder class for creating build batchers.
+   */
+  public static class Builder {
+    private Client client;
+    private int maxBatchSize;
+    private long maxLinger;
+    private TimeUnit maxLingerUnit;
+    private int maxInFlightBatches;
+    private int maxQueued;
+
+    /**
+     * @param client client object which makes server requests
+     */
+    public Builder(Client client) {
+      this.client = client;
+      this.maxBatchSize = 100;
+      this.maxLinger = 500;
+      this.maxLingerUnit = TimeUnit.MICROSECONDS;
+      this.maxInFlightBatches = 8;
+      this.maxQueued = 10000;
+    }
+
+    /**
+     * Sets the maximum number of builders sent in one batch. Defaults to 100.
+     * @param maxBatchSize the maximum batch size
+     */
+    public Builder setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time a builder waits for its batch to fill before it
+     * is sent. Defaults to 500 microseconds.
+     * @param linger the maximum wait
+     * @param unit the unit of time
+     */
+    public Builder setMaxLinger(long linger, TimeUnit unit) {
+      this.maxLinger = linger;
+      this.maxLingerUnit = unit;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of batches awaiting a response from the core.
+     * Once reached, further batches, each of at most the maximum batch size,
+     * wait in a queue for a response. Defaults to 8.
+     * @param maxInFlightBatches the maximum number of outstanding batches
+     */
+    public Builder setMaxInFlightBatches(int maxInFlightBatches) {
+      this.maxInFlightBatches = maxInFlightBatches;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of builders waiting to be sent. Once reached,
+     * further builders fail at once with a {@link ChainException} instead
+     * of queueing. Defaults to 10000.
+     * @param maxQueued the maximum number of waiting builders
+     */
+    public Builder setMaxQueued(int maxQueued) {
+      this.maxQueued = maxQueued;
+      return this;
+    }
+
+    /**
+     * Builds a build batcher with all of the provided parameters.
+     */
+    public BuildBatcher build() {
+      return new BuildBatcher(this);
+    }
+  }
+}
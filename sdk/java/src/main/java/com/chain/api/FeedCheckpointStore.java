@@ -0,0 +1,466 @@
+package com.chain.api;
+
+import com.chain.exception.ChainException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * FeedCheckpointStore keeps feed cursors in a local file, so that a
+ * consumer can checkpoint its progress without a request to Core.<br>
+ * Each checkpoint records a feed's cursor together with an optional
+ * payload from the consumer, such as the state or output derived from the
+ * transactions up to that cursor. The two are written as one record, so
+ * after a crash the consumer recovers a cursor and a payload that match,
+ * and resumes after that cursor without processing any transaction twice.
+ * <br>
+ * Records are appended to a memory-mapped file and protected by a
+ * checksum; a record torn by a crash is ignored. A background thread
+ * forces appended records to disk at most once per sync interval, and
+ * {@link #commit(String, String, byte[])} waits for that, so concurrent
+ * checkpoints share one sync. When the file is full it is rewritten with
+ * only the latest checkpoint of each feed.<br>
+ * {@link FeedConsumer.Builder#setCheckpointStore(FeedCheckpointStore)}
+ * starts a consumer from its local checkpoint, and
+ * {@link FeedConsumer#checkpoint(byte[])} records checkpoints that are sent
+ * on to Core in the background.
+ */
+public class FeedCheckpointStore implements AutoCloseable {
+  private static final int MAGIC = 0x43484b50; // "CHKP"
+  private static final int VERSION = 1;
+  private static final int HEADER = 8;
+  private static final int RECORD_HEADER = 8;
+
+  private final Path path;
+  private final long syncIntervalNanos;
+  private final Map<String, Checkpoint> latest = new HashMap<>();
+  private final Thread syncer;
+
+  // Guarded by this.
+  private RandomAccessFile file;
+  private MappedByteBuffer buffer;
+  private long appended;
+  private long synced;
+  private long syncs;
+  private boolean closed;
+
+  private FeedCheckpointStore(Builder builder) throws ChainException {
+    this.path = builder.path;
+    this.syncIntervalNanos = builder.syncIntervalUnit.toNanos(builder.syncInterval);
+    try {
+      open(builder.size);
+    } catch (IOException e) {
+      throw new ChainException("Unable to open checkpoint file " + path + ": " + e.getMessage(), e);
+    }
+
+    syncer = new Thread(this::syncLoop, "chain-sdk-checkpoint-sync");
+    syncer.setDaemon(true);
+    syncer.start();
+  }
+
+  /**
+   * Returns the latest checkpoint recorded for a feed, or null if there is
+   * none.
+   * @param feedId the feed ID
+   */
+  public synchronized Checkpoint get(String feedId) {
+    return latest.get(feedId);
+  }
+
+  /**
+   * Records a checkpoint and waits until it is on disk.
+   * @param feedId the feed ID
+   * @param after the feed cursor
+   * @param payload data to record with the cursor, or null
+   * @throws ChainException if the record cannot be written
+   */
+  public void commit(String feedId, String after, byte[] payload) throws ChainException {
+    awaitSync(append(feedId, after, payload));
+  }
+
+  /**
+   * Records a checkpoint without waiting for it to reach the disk. It is
+   * returned by {@link #get(String)} at once, but survives a crash only
+   * once {@link #awaitSync(long)} returns for it.
+   * @param feedId the feed ID
+   * @param after the feed cursor
+   * @param payload data to record with the cursor, or null
+   * @return the checkpoint's sequence number, for {@link #awaitSync(long)}
+   * @throws ChainException if the record cannot be written
+   */
+  public synchronized long append(String feedId, String after, byte[] payload)
+      throws ChainException {
+    if (closed) {
+      throw new ChainException("checkpoint store is closed");
+    }
+    Checkpoint c = new Checkpoint(feedId, after, payload);
+    byte[] record = c.encode();
+    try {
+      if (buffer.remaining() < record.length) {
+        compact(record.length);
+      }
+    } catch (IOException e) {
+      throw new ChainException("Unable to rewrite checkpoint file " + path + ": " + e.getMessage(), e);
+    }
+    buffer.put(record);
+    latest.put(feedId, c);
+    appended++;
+    notifyAll();
+    return appended;
+  }
+
+  /**
+   * Waits until the checkpoint with the given sequence number, and every
+   * one before it, is on disk.
+   * @param sequence a sequence number returned by {@link #append(String, String, byte[])}
+   * @throws ChainException if the store is closed or the calling thread is interrupted
+   */
+  public synchronized void awaitSync(long sequence) throws ChainException {
+    while (synced < sequence) {
+      if (closed) {
+        throw new ChainException("checkpoint store is closed");
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ChainException("Interrupted while waiting for checkpoint sync", e);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of times the file has been forced to disk.
+   */
+  public synchronized long syncs() {
+    return syncs;
+  }
+
+  /**
+   * Returns the number of checkpoints recorded since the store was opened.
+   */
+  public synchronized long appended() {
+    return appended;
+  }
+
+  /**
+   * Forces every recorded checkpoint to disk and closes the file.
+   */
+  @Override
+  public void close() throws ChainException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    try {
+      syncer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      buffer.force();
+      synced = appended;
+      notifyAll();
+      try {
+        file.close();
+      } catch (IOException e) {
+        throw new ChainException("Unable to close checkpoint file " + path + ": " + e.getMessage(), e);
+      }
+    }
+  }
+
+  private void syncLoop() {
+    while (true) {
+      synchronized (this) {
+        while (!closed && synced == appended) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (closed) {
+          return;
+        }
+      }
+
+      // Let more checkpoints gather before paying for the sync.
+      if (syncIntervalNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(syncIntervalNanos);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+
+      long target;
+      MappedByteBuffer buf;
+      synchronized (this) {
+        target = appended;
+        buf = buffer;
+      }
+      buf.force();
+      synchronized (this) {
+        synced = Math.max(synced, target);
+        syncs++;
+        notifyAll();
+      }
+    }
+  }
+
+  private void open(long size) throws IOException {
+    file = new RandomAccessFile(path.toFile(), "rw");
+    boolean created = file.length() == 0;
+    if (file.length() < size) {
+      file.setLength(size);
+    }
+    buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+    if (created) {
+      buffer.putInt(MAGIC).putInt(VERSION);
+      buffer.force();
+      return;
+    }
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      file.close();
+      throw new IOException("not a checkpoint file");
+    }
+    recover();
+  }
+
+  // Reads records up to the first one that is missing or incomplete, and
+  // clears everything from there to the end of the file. New records are
+  // appended there, and a record left after the incomplete one by an
+  // earlier run must not be read back after them.
+  private void recover() {
+    while (buffer.remaining() >= RECORD_HEADER) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int crc = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        buffer.position(start);
+        clearTail(start);
+        return;
+      }
+      byte[] body = new byte[length];
+      buffer.get(body);
+      CRC32 check = new CRC32();
+      check.update(body);
+      if ((int) check.getValue() != crc) {
+        buffer.position(start);
+        clearTail(start);
+        return;
+      }
+      Checkpoint c = Checkpoint.decode(body);
+      latest.put(c.feedId, c);
+    }
+    clearTail(buffer.position());
+  }
+
+  // Zeroes the file from start to its end, syncing it if anything changed.
+  // After a clean shutdown the tail is already zero, so it is only read.
+  private void clearTail(int start) {
+    boolean changed = false;
+    for (int i = start; i < buffer.limit(); i++) {
+      if (buffer.get(i) != 0) {
+        buffer.put(i, (byte) 0);
+        changed = true;
+      }
+    }
+    if (changed) {
+      buffer.force();
+    }
+  }
+
+  // Replaces the file with one holding only the latest checkpoint of each
+  // feed, growing it if that would leave less than half of it free.
+  private void compact(int needed) throws IOException {
+    long live = HEADER + needed;
+    for (Checkpoint c : latest.values()) {
+      live += c.encode().length;
+    }
+    long size = buffer.capacity();
+    while (live > size / 2) {
+      size *= 2;
+    }
+
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    Files.deleteIfExists(tmp);
+    try (RandomAccessFile out = new RandomAccessFile(tmp.toFile(), "rw")) {
+      out.setLength(size);
+      MappedByteBuffer next = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      next.putInt(MAGIC).putInt(VERSION);
+      for (Checkpoint c : latest.values()) {
+        next.put(c.encode());
+      }
+      next.force();
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory();
+
+    file.close();
+    file = new RandomAccessFile(path.toFile(), "rw");
+    int position = HEADER;
+    for (Checkpoint c : latest.values()) {
+      position += c.encode().length;
+    }
+    buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+    buffer.position(position);
+    synced = appended;
+    notifyAll();
+  }
+
+  // Makes the rename durable, where the platform allows it.
+  private void syncDirectory() {
+    Path dir = path.toAbsolutePath().getParent();
+    try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+      ch.force(true);
+    } catch (IOException e) {
+      // Not supported on every platform.
+    }
+  }
+
+  /**
+   * A feed cursor recorded in a {@link FeedCheckpointStore}, with the
+   * payload recorded alongside it.
+   */
+  public static final class Checkpoint {
+    private final String feedId;
+    private final String after;
+    private final byte[] payload;
+
+    private Checkpoint(String feedId, String after, byte[] payload) {
+      this.feedId = feedId;
+      this.after = after;
+      this.payload = payload;
+    }
+
+    /**
+     * Returns the ID of the feed.
+     */
+    public String feedId() {
+      return feedId;
+    }
+
+    /**
+     * Returns the feed cursor.
+     */
+    public String after() {
+      return after;
+    }
+
+    /**
+     * Returns the payload recorded with the cursor, or null if there was none.
+     */
+    public byte[] payload() {
+      return payload == null ? null : payload.clone();
+    }
+
+    // Encodes the checkpoint as a record: the body's length and CRC-32,
+    // then the feed ID, cursor and payload, each preceded by its length.
+    private byte[] encode() {
+      byte[] id = feedId.getBytes(StandardCharsets.UTF_8);
+      byte[] cursor = after.getBytes(StandardCharsets.UTF_8);
+      int length = 4 + id.length + 4 + cursor.length + 4 + (payload == null ? 0 : payload.length);
+      ByteBuffer b = ByteBuffer.allocate(RECORD_HEADER + length);
+      b.putInt(length).putInt(0);
+      b.putInt(id.length).put(id);
+      b.putInt(cursor.length).put(cursor);
+      if (payload == null) {
+        b.putInt(-1);
+      } else {
+        b.putInt(payload.length).put(payload);
+      }
+      CRC32 crc = new CRC32();
+      crc.update(b.array(), RECORD_HEADER, length);
+      b.putInt(4, (int) crc.getValue());
+      return b.array();
+    }
+
+    private static Checkpoint decode(byte[] body) {
+      ByteBuffer b = ByteBuffer.wrap(body);
+      String id = string(b);
+      String cursor = string(b);
+      int n = b.getInt();
+      byte[] payload = null;
+      if (n >= 0) {
+        payload = new byte[n];
+        b.get(payload);
+      }
+      return new Checkpoint(id, cursor, payload);
+    }
+
+    private static String string(ByteBuffer b) {
+      byte[] s = new byte[b.getInt()];
+      b.get(s);
+      return new String(s, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * A builder class for opening checkpoint stores.
+   */
+  public static class Builder {
+    private Path path;
+    private long size;
+    private long syncInterval;
+    private TimeUnit syncIntervalUnit;
+
+    /**
+     * @param path the checkpoint file, which is created if it does not exist
+     */
+    public Builder(Path path) {
+      this.path = path;
+      this.size = 4 << 20;
+      this.syncInterval = 2;
+      this.syncIntervalUnit = TimeUnit.MILLISECONDS;
+    }
+
+    /**
+     * Sets the size the file is created with and mapped at. It grows when
+     * the latest checkpoints fill more than half of it. Defaults to 4 MiB.
+     * @param bytes the file size
+     */
+    public Builder setSize(long bytes) {
+      this.size = bytes;
+      return this;
+    }
+
+    /**
+     * Sets how long checkpoints gather before they are synced together.
+     * Defaults to 2 milliseconds.
+     * @param interval the time to wait before syncing
+     * @param unit the unit of time
+     */
+    public Builder setSyncInterval(long interval, TimeUnit unit) {
+      this.syncInterval = interval;
+      this.syncIntervalUnit = unit;
+      return this;
+    }
+
+    /**
+     * Opens the checkpoint store, reading the checkpoints already in the file.
+     * @throws ChainException if the file cannot be opened or is not a checkpoint file
+     */
+    public FeedCheckpointStore build() throws ChainException {
+      if (size < HEADER + RECORD_HEADER || size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("size must be between 16 bytes and 2 GiB");
+      }
+      return new FeedCheckpointStore(this);
+    }
+  }
+}
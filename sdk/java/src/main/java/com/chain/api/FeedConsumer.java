@@ -0,0 +1,430 @@
+package com.chain.api;
+
+import com.chain.common.Utils;
+import com.chain.exception.ChainException;
+import com.chain.http.Client;
+import com.google.gson.Gson;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FeedConsumer reads a {@link Transaction.Feed} with the next page's
+ * long-poll query already in flight while the current page is processed,
+ * and acknowledges consumed transactions in the background.<br>
+ * {@link #ack()} only records the last transaction returned by
+ * {@link #next()} as processed. A background thread persists the most
+ * recently acknowledged cursor with a single update-transaction-feed
+ * request once every N acknowledgements, or at least every interval while
+ * there are acknowledgements to persist. {@link #close()} persists the last
+ * one before returning, so throughput is limited by processing rather than
+ * by a round trip per acknowledgement.<br>
+ * After a crash, transactions acknowledged since the last update are
+ * delivered again when the feed is resumed, so processing should be
+ * idempotent.<br>
+ * With a {@link FeedCheckpointStore}, {@link #checkpoint(byte[])} records
+ * the cursor locally, together with the consumer's own data, before it is
+ * sent to Core in the same way, and the consumer starts from the local
+ * cursor when it is ahead of the feed's.<br>
+ * With {@link Builder#setReuseObjects(boolean)}, pages are decoded by a pair
+ * of {@link TransactionDecoder}s that reuse their transaction objects, so a
+ * transaction returned by {@link #next()} is valid only until the following
+ * call to {@link #next()}.<br>
+ * {@link #next()}, {@link #ack()} and {@link #checkpoint(byte[])} must be
+ * called from a single thread.
+ */
+public class FeedConsumer implements AutoCloseable {
+  private final Client client;
+  private final Transaction.Feed feed;
+  private final long timeout;
+  private final int ackEvery;
+  private final long ackIntervalNanos;
+  private final FeedCheckpointStore store;
+  private final Object commitLock = new Object();
+  private final Thread acker;
+  private final AtomicLong commits = new AtomicLong();
+
+  // With object reuse, the decoder holding the current page, and the one
+  // decoding the next.
+  private TransactionDecoder current;
+  private TransactionDecoder spare;
+
+  private Query query;
+  private volatile CompletableFuture<List<Transaction>> pending;
+  private List<Transaction> page = Collections.emptyList();
+  private int pos;
+  private Transaction last;
+
+  // Guarded by this.
+  private String acked;
+  private int unacked;
+  private boolean closed;
+  private ChainException ackError;
+
+  private FeedConsumer(Builder builder) {
+    this.client = builder.client;
+    this.feed = builder.feed;
+    this.timeout = builder.timeout;
+    this.ackEvery = builder.ackEvery;
+    this.ackIntervalNanos = builder.ackIntervalUnit.toNanos(builder.ackInterval);
+    this.store = builder.store;
+    if (builder.reuseObjects) {
+      this.current = new TransactionDecoder();
+      this.spare = new TransactionDecoder();
+    }
+
+    String after = feed.after;
+    if (store != null) {
+      FeedCheckpointStore.Checkpoint local = store.get(feed.id);
+      if (local != null
+          && Transaction.Feed.position(local.after()) >= Transaction.Feed.position(after)) {
+        after = local.after();
+      }
+    }
+    this.acked = after;
+    this.query = query(after);
+    this.pending = fetch(query);
+
+    acker = new Thread(this::ackLoop, "chain-sdk-feed-ack");
+    acker.setDaemon(true);
+    acker.start();
+  }
+
+  /**
+   * Returns the next transaction matching the feed's filter, blocking until
+   * one arrives if the current page has been consumed. Moving on to a new
+   * page sends the query for the page after it.
+   * @return a transaction object
+   * @throws ChainException if the consumer is closed or the query failed.
+   * A failed query is sent again by the next call.
+   */
+  public Transaction next() throws ChainException {
+    while (pos >= page.size()) {
+      advance();
+    }
+    last = page.get(pos++);
+    return last;
+  }
+
+  /**
+   * Marks the last transaction returned by {@link #next()}, and every one
+   * before it, as processed. It is persisted to the feed in the background.
+   * @throws ChainException the error from the most recent background update,
+   * if it failed. The update is tried again later.
+   */
+  public void ack() throws ChainException {
+    if (last != null) {
+      ack(Transaction.Feed.cursor(last));
+    }
+  }
+
+  /**
+   * Records the last transaction returned by {@link #next()}, and every one
+   * before it, as processed in the checkpoint store, together with data
+   * from the consumer, and waits until the record is on disk. The cursor is
+   * then sent to Core in the background, like an {@link #ack()}.<br>
+   * The data should be whatever the consumer needs to resume after that
+   * transaction, such as the state or output it derived from the
+   * transactions so far. Since the cursor and data are recorded together,
+   * a consumer that restores its data from
+   * {@link FeedCheckpointStore#get(String)} after a crash sees each
+   * transaction exactly once.
+   * @param payload the consumer's data, or null
+   * @throws ChainException if the checkpoint cannot be recorded, or the
+   * error from the most recent background update of the feed
+   * @throws IllegalStateException if the consumer has no checkpoint store
+   */
+  public void checkpoint(byte[] payload) throws ChainException {
+    if (store == null) {
+      throw new IllegalStateException("feed consumer has no checkpoint store");
+    }
+    if (last == null) {
+      return;
+    }
+    String cursor = Transaction.Feed.cursor(last);
+    store.commit(feed.id, cursor, payload);
+    ack(cursor);
+  }
+
+  /**
+   * Marks every transaction up to the given feed cursor as processed. Unlike
+   * {@link #ack()}, it may be called from any thread.
+   */
+  void ack(String cursor) throws ChainException {
+    ChainException err;
+    synchronized (this) {
+      acked = cursor;
+      if (++unacked >= ackEvery) {
+        notifyAll();
+      }
+      err = ackError;
+      ackError = null;
+    }
+    if (err != null) {
+      throw err;
+    }
+  }
+
+  /**
+   * Persists the most recently acknowledged transaction to the feed now,
+   * on the calling thread.
+   * @throws ChainException
+   */
+  public void flush() throws ChainException {
+    commit();
+  }
+
+  /**
+   * Stops the background acknowledgements and persists the most recently
+   * acknowledged transaction to the feed. The long-poll query in flight is
+   * abandoned, failing a call to {@link #next()} that is waiting for it.
+   * @throws ChainException if the final update fails
+   */
+  @Override
+  public void close() throws ChainException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+      pending.cancel(false);
+    }
+    try {
+      acker.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    commit();
+  }
+
+  /**
+   * Returns the number of update-transaction-feed requests sent.
+   */
+  public long commits() {
+    return commits.get();
+  }
+
+  /**
+   * Returns the feed being consumed. Its cursor is the one last persisted.
+   */
+  public Transaction.Feed feed() {
+    return feed;
+  }
+
+  private void advance() throws ChainException {
+    synchronized (this) {
+      if (closed) {
+        throw new ChainException("feed consumer is closed");
+      }
+    }
+    List<Transaction> items;
+    try {
+      items = Utils.await(pending);
+    } catch (ChainException | RuntimeException e) {
+      synchronized (this) {
+        if (!closed) {
+          pending = fetch(query);
+        }
+      }
+      throw e;
+    }
+
+    // A long-poll that times out returns an empty page; poll again from the
+    // same place.
+    if (!items.isEmpty()) {
+      query = query(Transaction.Feed.cursor(items.get(items.size() - 1)));
+    }
+    if (spare != null) {
+      // The page just received is now the current one, and the previous
+      // page's objects are free to decode the next into.
+      TransactionDecoder d = current;
+      current = spare;
+      spare = d;
+    }
+    synchronized (this) {
+      if (!closed) {
+        pending = fetch(query);
+      }
+    }
+    page = items;
+    pos = 0;
+  }
+
+  private Query query(String after) {
+    Query q = new Query();
+    q.filter = feed.filter;
+    q.after = after;
+    q.timeout = timeout;
+    q.ascendingWithLongPoll = true;
+    return q;
+  }
+
+  private CompletableFuture<List<Transaction>> fetch(Query q) {
+    if (spare != null) {
+      return spare.fetchAsync(client, q);
+    }
+    return client.requestAsync("list-transactions", q, PAGE);
+  }
+
+  private static final Client.ResponseCreator<List<Transaction>> PAGE =
+      new Client.ResponseCreator<List<Transaction>>() {
+        public List<Transaction> create(Response response, Gson deserializer)
+            throws IOException {
+          return deserializer.fromJson(response.body().charStream(), Transaction.Items.class).list;
+        }
+      };
+
+  private void ackLoop() {
+    long deadline = System.nanoTime() + ackIntervalNanos;
+    while (true) {
+      synchronized (this) {
+        long wait;
+        while (!closed
+            && unacked < ackEvery
+            && (wait = deadline - System.nanoTime()) > 0) {
+          try {
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (closed) {
+          return;
+        }
+      }
+      deadline = System.nanoTime() + ackIntervalNanos;
+      try {
+        commit();
+      } catch (ChainException e) {
+        synchronized (this) {
+          ackError = e;
+        }
+      }
+    }
+  }
+
+  private void commit() throws ChainException {
+    synchronized (commitLock) {
+      String after;
+      synchronized (this) {
+        after = acked;
+        unacked = 0;
+      }
+      if (after == null || after.equals(feed.after)) {
+        return;
+      }
+      Map<String, Object> req = new HashMap<>();
+      req.put("id", feed.id);
+      req.put("previous_after", feed.after);
+      req.put("after", after);
+      client.request("update-transaction-feed", req, Transaction.Feed.class);
+      commits.incrementAndGet();
+      feed.after = after;
+    }
+  }
+
+  /**
+   * A builder class for creating feed consumers.
+   */
+  public static class Builder {
+    private Client client;
+    private Transaction.Feed feed;
+    private long timeout;
+    private int ackEvery;
+    private long ackInterval;
+    private TimeUnit ackIntervalUnit;
+    private FeedCheckpointStore store;
+    private boolean reuseObjects;
+
+    /**
+     * @param client client object which makes server requests. Its read
+     * timeout should exceed the long-poll timeout.
+     * @param feed the feed to consume, starting after its current cursor
+     */
+    public Builder(Client client, Transaction.Feed feed) {
+      this.client = client;
+      this.feed = feed;
+      this.ackEvery = 100;
+      this.ackInterval = 1;
+      this.ackIntervalUnit = TimeUnit.SECONDS;
+    }
+
+    /**
+     * Sets the server-side timeout of each long-poll query. A query that
+     * times out is sent again. Defaults to 0, which never times out.
+     * @param timeoutMS timeout in milliseconds
+     */
+    public Builder setTimeout(long timeoutMS) {
+      this.timeout = timeoutMS;
+      return this;
+    }
+
+    /**
+     * Sets the number of acknowledgements after which the feed is updated.
+     * Defaults to 100.
+     * @param n the number of acknowledgements
+     */
+    public Builder setAckEvery(int n) {
+      this.ackEvery = n;
+      return this;
+    }
+
+    /**
+     * Sets the longest time an acknowledgement waits before the feed is
+     * updated. Defaults to 1 second.
+     * @param interval the maximum wait
+     * @param unit the unit of time
+     */
+    public Builder setAckInterval(long interval, TimeUnit unit) {
+      this.ackInterval = interval;
+      this.ackIntervalUnit = unit;
+      return this;
+    }
+
+    /**
+     * Sets a local store for the feed's cursor, used by
+     * {@link FeedConsumer#checkpoint(byte[])}. The consumer starts after the
+     * store's cursor for the feed if it is ahead of the feed's own.
+     * @param store the checkpoint store
+     */
+    public Builder setCheckpointStore(FeedCheckpointStore store) {
+      this.store = store;
+      return this;
+    }
+
+    /**
+     * Sets whether pages are decoded into reused transaction objects, which
+     * avoids allocating new objects for every transaction. Each transaction
+     * returned by {@link FeedConsumer#next()} is then overwritten after the
+     * following call, so it must be processed in place or copied. Defaults
+     * to false.
+     * @param reuse whether to reuse transaction objects
+     */
+    public Builder setReuseObjects(boolean reuse) {
+      this.reuseObjects = reuse;
+      return this;
+    }
+
+    /**
+     * Builds a feed consumer, sends its first query and starts its
+     * acknowledgement thread.
+     */
+    public FeedConsumer build() {
+      if (ackEvery < 1) {
+        throw new IllegalArgumentException("ack count must be positive");
+      }
+      if (ackInterval <= 0) {
+        throw new IllegalArgumentException("ack interval must be positive");
+      }
+      return new FeedConsumer(this);
+    }
+  }
+}
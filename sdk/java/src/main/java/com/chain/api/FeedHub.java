@@ -0,0 +1,781 @@
+package com.chain.api;
+
+import com.chain.common.Utils;
+import com.chain.exception.ChainException;
+import com.chain.http.Client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * FeedHub reads one transaction feed and fans its transactions out to any
+ * number of subscribers in the same process, so that they share a single
+ * long-poll instead of each holding their own.<br>
+ * Each subscriber has a predicate, evaluated locally against every
+ * transaction from the feed, and a bounded queue of the transactions that
+ * matched. A {@link SlowConsumerPolicy} decides what happens when the
+ * queue is full. Each subscriber also keeps its own position in the feed,
+ * and the feed's cursor is only advanced past a transaction once every
+ * subscriber has acknowledged it or did not want it.<br>
+ * The feed's filter should therefore select every transaction any
+ * subscriber needs.
+ */
+public class FeedHub implements AutoCloseable {
+  /**
+   * What the hub does with a transaction for a subscriber whose queue is full.
+   */
+  public enum SlowConsumerPolicy {
+    /**
+     * Wait for room in the queue. Every other subscriber waits too.
+     */
+    BLOCK,
+
+    /**
+     * Stop queueing transactions for the subscriber. Once it has consumed
+     * its queue, it catches up by querying Core from its own position and
+     * then rejoins the hub.
+     */
+    RESYNC,
+
+    /**
+     * Append transactions that do not fit to a file, from which they are
+     * delivered in order once the queue is empty. If the file cannot be
+     * written, the subscriber resyncs instead.
+     */
+    SPILL
+  }
+
+  // Positions in the feed are as returned by Transaction.Feed.position.
+  private static final long NONE = -1;
+  private static final long RESYNC_POLL_MILLIS = 1000;
+
+  private final Client client;
+  private final Transaction.Feed feed;
+  private final String startAfter;
+  private final Path spillDirectory;
+  private final FeedConsumer upstream;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+  private final Object watermarkLock = new Object();
+  private final Thread dispatcher;
+  private final AtomicLong dispatchedCount = new AtomicLong();
+  private final AtomicLong upstreamErrors = new AtomicLong();
+  private volatile long dispatched;
+  private volatile boolean closed;
+  private long acked = NONE; // guarded by watermarkLock
+
+  private FeedHub(Builder builder) {
+    this.client = builder.client;
+    this.feed = builder.feed;
+    this.startAfter = feed.after;
+    this.spillDirectory = builder.spillDirectory;
+    this.dispatched = Transaction.Feed.position(feed.after);
+    this.upstream =
+        new FeedConsumer.Builder(client, feed)
+            .setTimeout(builder.timeout)
+            .setAckEvery(builder.ackEvery)
+            .setAckInterval(builder.ackInterval, builder.ackIntervalUnit)
+            .build();
+
+    dispatcher = new Thread(this::dispatch, "chain-sdk-feed-hub");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Adds a subscriber. It receives matching transactions that arrive from
+   * the feed after this call.
+   * @param name a name for the subscriber, used in its statistics
+   * @param predicate selects the transactions the subscriber receives. It
+   * runs on the hub's thread for every transaction from the feed, so it
+   * should be fast. A transaction for which it throws is not delivered.
+   * @param capacity the number of transactions the subscriber's queue holds
+   * @param policy what to do when the queue is full
+   * @return the subscriber
+   * @throws ChainException if the hub is closed
+   */
+  public Subscriber subscribe(
+      String name, Predicate<Transaction> predicate, int capacity, SlowConsumerPolicy policy)
+      throws ChainException {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    if (closed) {
+      throw new ChainException("feed hub is closed");
+    }
+    Subscriber s = new Subscriber(name, predicate, capacity, policy, dispatched);
+    subscribers.add(s);
+    return s;
+  }
+
+  /**
+   * Returns the number of transactions read from the feed.
+   */
+  public long dispatched() {
+    return dispatchedCount.get();
+  }
+
+  /**
+   * Returns the number of failed feed queries. Failed queries are sent
+   * again after a second.
+   */
+  public long upstreamErrors() {
+    return upstreamErrors.get();
+  }
+
+  /**
+   * Stops reading the feed and persists the position every subscriber has
+   * reached. Subscribers can still take transactions already queued for
+   * them, but acknowledgements after this are not persisted.
+   * @throws ChainException if persisting the position fails
+   */
+  @Override
+  public void close() throws ChainException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Subscriber s : subscribers) {
+      s.wake();
+    }
+    try {
+      updateWatermark();
+    } finally {
+      upstream.close();
+      dispatcher.interrupt();
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append(String.format("feed: dispatched=%d errors=%d%n", dispatched(), upstreamErrors()));
+    for (Subscriber sub : subscribers) {
+      s.append(sub).append('\n');
+    }
+    return s.toString();
+  }
+
+  private void dispatch() {
+    while (!closed) {
+      Transaction tx;
+      try {
+        tx = upstream.next();
+      } catch (ChainException | RuntimeException e) {
+        if (closed) {
+          return;
+        }
+        upstreamErrors.incrementAndGet();
+        try {
+          Thread.sleep(1000);
+        } catch (InterruptedException ie) {
+          return;
+        }
+        continue;
+      }
+
+      // Publish the position before offering the transaction, so that a
+      // subscriber finishing a resync either receives it here or fetches it.
+      long key = Transaction.Feed.position(tx);
+      dispatched = key;
+      long now = System.nanoTime();
+      for (Subscriber s : subscribers) {
+        s.offer(tx, key, now);
+      }
+      dispatchedCount.incrementAndGet();
+      try {
+        updateWatermark();
+      } catch (ChainException e) {
+        upstreamErrors.incrementAndGet();
+      }
+    }
+  }
+
+  // Acknowledges the feed up to the earliest position any subscriber still
+  // needs.
+  private void updateWatermark() throws ChainException {
+    synchronized (watermarkLock) {
+      if (subscribers.isEmpty()) {
+        return;
+      }
+      long min = Long.MAX_VALUE;
+      for (Subscriber s : subscribers) {
+        min = Math.min(min, s.watermark());
+      }
+      if (min == NONE || min <= acked) {
+        return;
+      }
+      acked = min;
+      upstream.ack(cursor(min));
+    }
+  }
+
+  private String cursor(long key) {
+    return key == NONE ? startAfter : Transaction.Feed.cursor((int) (key >>> 32), (int) key);
+  }
+
+  private static class Entry {
+    final Transaction tx;
+    final long prev; // the position before this transaction
+    final long at; // when the hub read it from the feed
+
+    Entry(Transaction tx, long prev, long at) {
+      this.tx = tx;
+      this.prev = prev;
+      this.at = at;
+    }
+  }
+
+  /**
+   * A subscriber to a {@link FeedHub}.<br>
+   * {@link #next()} and {@link #ack()} must be called from a single thread.
+   */
+  public class Subscriber implements AutoCloseable {
+    private final String name;
+    private final Predicate<Transaction> predicate;
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+
+    // Guarded by this.
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final ArrayDeque<Entry> resynced = new ArrayDeque<>();
+    private Spill spill;
+    private long position;
+    private boolean resyncing;
+    private long resyncSince;
+    private Entry last;
+    private boolean lastAcked = true;
+    private boolean closed;
+    private long delivered;
+    private long dropped;
+    private long spilled;
+    private long resyncs;
+    private int maxBacklog;
+
+    private Subscriber(
+        String name,
+        Predicate<Transaction> predicate,
+        int capacity,
+        SlowConsumerPolicy policy,
+        long position) {
+      this.name = name;
+      this.predicate = predicate;
+      this.capacity = capacity;
+      this.policy = policy;
+      this.position = position;
+    }
+
+    /**
+     * Returns the next transaction for this subscriber, blocking until one
+     * arrives.
+     * @return a transaction object
+     * @throws ChainException if the subscriber or hub is closed, or a resync
+     * query failed. A failed query is sent again by the next call.
+     */
+    public Transaction next() throws ChainException {
+      return poll(-1);
+    }
+
+    /**
+     * Returns the next transaction for this subscriber, waiting up to the
+     * given time for one to arrive.
+     * @param timeout the maximum wait
+     * @param unit the unit of timeout
+     * @return a transaction object, or null if none arrived in time
+     * @throws ChainException if the subscriber or hub is closed, or a resync
+     * query failed. A failed query is sent again by the next call.
+     */
+    public Transaction poll(long timeout, TimeUnit unit) throws ChainException {
+      return poll(unit.toNanos(timeout));
+    }
+
+    /**
+     * Marks the last transaction returned by {@link #next()}, and every one
+     * before it, as processed.
+     * @throws ChainException the error from the most recent background update
+     * of the feed, if it failed. The update is tried again later.
+     */
+    public void ack() throws ChainException {
+      synchronized (this) {
+        if (last == null || lastAcked) {
+          return;
+        }
+        lastAcked = true;
+      }
+      updateWatermark();
+    }
+
+    /**
+     * Removes the subscriber from the hub. Transactions still queued for it
+     * are discarded.
+     */
+    @Override
+    public void close() {
+      synchronized (this) {
+        closed = true;
+        queue.clear();
+        resynced.clear();
+        if (spill != null) {
+          spill.delete();
+          spill = null;
+        }
+        notifyAll();
+      }
+      subscribers.remove(this);
+    }
+
+    /**
+     * Returns the subscriber's name.
+     */
+    public String name() {
+      return name;
+    }
+
+    /**
+     * Returns the number of transactions waiting to be taken, including
+     * spilled ones and ones fetched by a resync.
+     */
+    public synchronized int backlog() {
+      return queue.size() + resynced.size() + (spill == null ? 0 : spill.size);
+    }
+
+    /**
+     * Returns the largest backlog seen.
+     */
+    public synchronized int maxBacklog() {
+      return maxBacklog;
+    }
+
+    /**
+     * Returns the number of transactions returned by {@link #next()}.
+     */
+    public synchronized long delivered() {
+      return delivered;
+    }
+
+    /**
+     * Returns the number of matching transactions the hub skipped while the
+     * subscriber was resyncing. It fetches them itself.
+     */
+    public synchronized long dropped() {
+      return dropped;
+    }
+
+    /**
+     * Returns the number of transactions written to the spill file.
+     */
+    public synchronized long spilled() {
+      return spilled;
+    }
+
+    /**
+     * Returns the number of times the subscriber fell behind and resynced.
+     */
+    public synchronized long resyncs() {
+      return resyncs;
+    }
+
+    /**
+     * Returns how long ago the hub read the oldest transaction this
+     * subscriber has not yet processed, in milliseconds, or 0 if it is
+     * caught up.
+     */
+    public synchronized long lagMillis() {
+      long at;
+      Entry oldest = oldest();
+      if (oldest != null) {
+        at = oldest.at;
+      } else if (spill != null && spill.size > 0) {
+        at = spill.headAt;
+      } else if (resyncing) {
+        at = resyncSince;
+      } else {
+        return 0;
+      }
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - at);
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format(
+          "%s: backlog=%d max_backlog=%d delivered=%d dropped=%d spilled=%d resyncs=%d lag_ms=%d",
+          name,
+          backlog(),
+          maxBacklog,
+          delivered,
+          dropped,
+          spilled,
+          resyncs,
+          lagMillis());
+    }
+
+    // Called by the dispatcher for every transaction read from the feed.
+    private void offer(Transaction tx, long key, long now) {
+      boolean match;
+      try {
+        match = predicate.test(tx);
+      } catch (RuntimeException e) {
+        match = false;
+      }
+      synchronized (this) {
+        // A resync may already have covered this transaction.
+        if (closed || key <= position) {
+          return;
+        }
+        if (resyncing) {
+          if (match) {
+            dropped++;
+          }
+          return;
+        }
+        if (!match) {
+          position = key;
+          return;
+        }
+        Entry e = new Entry(tx, position, now);
+        // Once spilling, everything is spilled until the file is read back.
+        if (spill != null) {
+          if (!writeSpill(e)) {
+            startResync(now);
+          }
+          return;
+        }
+        while (queue.size() >= capacity) {
+          if (policy == SlowConsumerPolicy.BLOCK) {
+            try {
+              wait();
+            } catch (InterruptedException ie) {
+              Thread.currentThread().interrupt();
+              return;
+            }
+            if (closed || FeedHub.this.closed) {
+              return;
+            }
+          } else if (policy == SlowConsumerPolicy.SPILL && writeSpill(e)) {
+            return;
+          } else {
+            startResync(now);
+            return;
+          }
+        }
+        queue.add(e);
+        position = key;
+        maxBacklog = Math.max(maxBacklog, backlog());
+        notifyAll();
+      }
+    }
+
+    private void startResync(long now) {
+      resyncing = true;
+      resyncSince = now;
+      resyncs++;
+      dropped++;
+      notifyAll();
+    }
+
+    // Appends to the spill file, returning false if it cannot be written.
+    private boolean writeSpill(Entry e) {
+      try {
+        if (spill == null) {
+          spill = new Spill(spillDirectory);
+        }
+        spill.write(e);
+      } catch (IOException ex) {
+        return false;
+      }
+      spilled++;
+      position = Transaction.Feed.position(e.tx);
+      maxBacklog = Math.max(maxBacklog, backlog());
+      notifyAll();
+      return true;
+    }
+
+    private Transaction poll(long nanos) throws ChainException {
+      long deadline = System.nanoTime() + nanos;
+      while (true) {
+        synchronized (this) {
+          if (closed) {
+            throw new ChainException("subscriber is closed");
+          }
+          Entry e = take();
+          if (e != null) {
+            last = e;
+            lastAcked = false;
+            delivered++;
+            notifyAll();
+            return e.tx;
+          }
+          if (FeedHub.this.closed) {
+            throw new ChainException("feed hub is closed");
+          }
+          if (!resyncing) {
+            long wait = deadline - System.nanoTime();
+            if (nanos >= 0 && wait <= 0) {
+              return null;
+            }
+            try {
+              if (nanos < 0) {
+                wait();
+              } else {
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+              }
+            } catch (InterruptedException ie) {
+              Thread.currentThread().interrupt();
+              throw new ChainException("Interrupted while waiting for a transaction", ie);
+            }
+            continue;
+          }
+        }
+        resync();
+      }
+    }
+
+    // Takes the oldest entry. Entries fetched by a resync come first: a
+    // resync only starts once the queue and spill file are empty, and the
+    // hub queues nothing until it ends.
+    private Entry take() throws ChainException {
+      if (!resynced.isEmpty()) {
+        return resynced.poll();
+      }
+      if (!queue.isEmpty()) {
+        return queue.poll();
+      }
+      if (spill == null) {
+        return null;
+      }
+      try {
+        Entry e = spill.take();
+        if (spill.size == 0) {
+          spill.delete();
+          spill = null;
+        }
+        return e;
+      } catch (IOException ex) {
+        throw new ChainException("Unable to read spilled transactions: " + ex.getMessage(), ex);
+      }
+    }
+
+    // Fetches the page of the feed after the subscriber's position, and
+    // rejoins the hub once it has reached the hub's position.
+    private void resync() throws ChainException {
+      long from;
+      synchronized (this) {
+        from = position;
+      }
+      Query q = new Query();
+      q.filter = feed.filter;
+      q.after = cursor(from);
+      q.timeout = RESYNC_POLL_MILLIS;
+      q.ascendingWithLongPoll = true;
+      Transaction.Items items = client.request("list-transactions", q, Transaction.Items.class);
+
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        long prev = from;
+        for (Transaction tx : items.list) {
+          long key = Transaction.Feed.position(tx);
+          if (key <= prev) {
+            continue;
+          }
+          boolean match;
+          try {
+            match = predicate.test(tx);
+          } catch (RuntimeException e) {
+            match = false;
+          }
+          if (match) {
+            resynced.add(new Entry(tx, prev, resyncSince));
+          }
+          prev = key;
+        }
+        position = prev;
+        if (position >= dispatched) {
+          resyncing = false;
+        }
+      }
+    }
+
+    // Returns the earliest position this subscriber still needs.
+    private synchronized long watermark() {
+      Entry oldest = oldest();
+      if (oldest != null) {
+        return oldest.prev;
+      }
+      if (spill != null && spill.size > 0) {
+        return spill.headPrev;
+      }
+      return position;
+    }
+
+    private Entry oldest() {
+      if (last != null && !lastAcked) {
+        return last;
+      }
+      if (!resynced.isEmpty()) {
+        return resynced.peek();
+      }
+      return queue.peek();
+    }
+
+    private synchronized void wake() {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Spill is a file of transactions, one JSON line each, read back in the
+   * order they were written.
+   */
+  private static class Spill {
+    private final Path path;
+    private final BufferedWriter out;
+    private final BufferedReader in;
+    private int size;
+    private Entry peeked;
+    private long headPrev;
+    private long headAt;
+
+    Spill(Path dir) throws IOException {
+      path =
+          dir == null
+              ? Files.createTempFile("chain-feed-hub-", ".spill")
+              : Files.createTempFile(dir, "chain-feed-hub-", ".spill");
+      out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+      in = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+    }
+
+    void write(Entry e) throws IOException {
+      out.write(e.prev + "\t" + e.at + "\t" + Utils.serializer.toJson(e.tx));
+      out.newLine();
+      out.flush();
+      if (size++ == 0) {
+        headPrev = e.prev;
+        headAt = e.at;
+      }
+    }
+
+    // Takes the first entry, reading the one after it to know its position.
+    Entry take() throws IOException {
+      Entry e = peeked != null ? peeked : read();
+      peeked = null;
+      size--;
+      if (size > 0) {
+        peeked = read();
+        headPrev = peeked.prev;
+        headAt = peeked.at;
+      }
+      return e;
+    }
+
+    private Entry read() throws IOException {
+      String line = in.readLine();
+      if (line == null) {
+        throw new IOException("spill file " + path + " ended early");
+      }
+      int a = line.indexOf('\t');
+      int b = line.indexOf('\t', a + 1);
+      return new Entry(
+          Utils.serializer.fromJson(line.substring(b + 1), Transaction.class),
+          Long.parseLong(line.substring(0, a)),
+          Long.parseLong(line.substring(a + 1, b)));
+    }
+
+    void delete() {
+      try {
+        out.close();
+        in.close();
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        // The file is in a temporary directory.
+      }
+    }
+  }
+
+  /**
+   * A builder class for creating feed hubs.
+   */
+  public static class Builder {
+    private Client client;
+    private Transaction.Feed feed;
+    private long timeout;
+    private int ackEvery;
+    private long ackInterval;
+    private TimeUnit ackIntervalUnit;
+    private Path spillDirectory;
+
+    /**
+     * @param client client object which makes server requests. Its read
+     * timeout should exceed the long-poll timeout.
+     * @param feed the feed to read, starting after its current cursor. Its
+     * filter should select every transaction any subscriber needs.
+     */
+    public Builder(Client client, Transaction.Feed feed) {
+      this.client = client;
+      this.feed = feed;
+      this.ackEvery = 100;
+      this.ackInterval = 1;
+      this.ackIntervalUnit = TimeUnit.SECONDS;
+    }
+
+    /**
+     * Sets the server-side timeout of each long-poll query. Defaults to 0,
+     * which never times out.
+     * @param timeoutMS timeout in milliseconds
+     */
+    public Builder setTimeout(long timeoutMS) {
+      this.timeout = timeoutMS;
+      return this;
+    }
+
+    /**
+     * Sets the number of times the position every subscriber has reached
+     * advances before the feed is updated. Defaults to 100.
+     * @param n the number of advances
+     */
+    public Builder setAckEvery(int n) {
+      this.ackEvery = n;
+      return this;
+    }
+
+    /**
+     * Sets the longest time an advance waits before the feed is updated.
+     * Defaults to 1 second.
+     * @param interval the maximum wait
+     * @param unit the unit of time
+     */
+    public Builder setAckInterval(long interval, TimeUnit unit) {
+      this.ackInterval = interval;
+      this.ackIntervalUnit = unit;
+      return this;
+    }
+
+    /**
+     * Sets the directory for the spill files of subscribers using
+     * {@link SlowConsumerPolicy#SPILL}. Defaults to the system's temporary
+     * directory.
+     * @param dir the directory
+     */
+    public Builder setSpillDirectory(Path dir) {
+      this.spillDirectory = dir;
+      return this;
+    }
+
+    /**
+     * Builds a feed hub and starts reading the feed.
+     */
+    public FeedHub build() {
+      return new FeedHub(this);
+    }
+  }
+}
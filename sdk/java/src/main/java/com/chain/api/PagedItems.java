@@ -5,12 +5,30 @@ import com.chain.http.Client;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Abstract base class representing api query results.
+ * Abstract base class representing api query results.<br>
+ * Iterating fetches each page once the previous one has been consumed. Use
+ * {@link #prefetch(int)} to fetch pages in the background while earlier
+ * pages are consumed, and {@link #stream()} or {@link #parallelStream()} to
+ * process results as a stream.
  * @param <T> type of api object
  */
 public abstract class PagedItems<T> implements Iterator<T> {
@@ -106,6 +124,346 @@ public abstract class PagedItems<T> implements Iterator<T> {
     }
   }
 
+  /**
+   * Returns a spliterator over the remaining results. Pages are fetched
+   * only as they are needed, and the spliterator splits off one page at a
+   * time, so that a parallel stream processes fetched pages while the next
+   * ones are requested.<br>
+   * A failed fetch is thrown as a {@link CompletionException} wrapping the
+   * ChainException. Once a spliterator has been created, this object should
+   * no longer be iterated directly.
+   * @return a spliterator of api objects
+   */
+  public Spliterator<T> spliterator() {
+    return new PageSpliterator<>(this::fetchNextPage);
+  }
+
+  /**
+   * Returns a sequential stream of the remaining results. Pages are
+   * fetched lazily, so short-circuiting operations such as findFirst stop
+   * fetching once they have their result.
+   * @return a stream of api objects
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * Returns a parallel stream of the remaining results. Each page is
+   * processed as a unit of work on the fork-join pool while later pages
+   * are fetched.
+   * @return a parallel stream of api objects
+   */
+  public Stream<T> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
+  }
+
+  // Returns the unconsumed part of the current page, or else fetches the
+  // next page. Returns null once the results are exhausted.
+  private List<T> fetchNextPage() throws ChainException {
+    if (pos < list.size()) {
+      List<T> rest = list.subList(pos, list.size());
+      pos = list.size();
+      return rest;
+    }
+    if (lastPage) {
+      return null;
+    }
+    PagedItems<T> items = this.getPage();
+    this.list = items.list;
+    this.lastPage = items.lastPage;
+    this.next = items.next;
+    this.pos = list.size();
+    return list.isEmpty() ? null : list;
+  }
+
+  /**
+   * Returns an iterator over the remaining results that fetches up to depth
+   * pages ahead of the page being consumed, so that page boundaries do not
+   * wait for a round trip. Unlike {@link #hasNext()}, the iterator reports
+   * a failed fetch instead of ending early.<br>
+   * Once a prefetcher has been created, this object should no longer be
+   * iterated directly.
+   * @param depth the number of pages to fetch ahead
+   * @return a prefetching iterator
+   */
+  public Prefetcher<T> prefetch(int depth) {
+    return prefetch(depth, prefetchExecutor());
+  }
+
+  /**
+   * Same as {@link #prefetch(int)}, but fetches pages on the given executor.
+   * Each fetch blocks its thread for the duration of the request.
+   * @param depth the number of pages to fetch ahead
+   * @param executor executor to fetch pages on
+   * @return a prefetching iterator
+   */
+  public Prefetcher<T> prefetch(int depth, Executor executor) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("prefetch depth must be positive");
+    }
+    return new Prefetcher<>(this, depth, executor);
+  }
+
+  /**
+   * Prefetcher iterates over query results while fetching later pages in
+   * the background. Each page is requested with the next query of the page
+   * before it, so pages are fetched in order, up to the prefetch depth
+   * ahead of the consumer.<br>
+   * {@link #nextPage()} reports fetch errors as a {@link ChainException}.
+   * The {@link Iterator} methods throw them wrapped in a
+   * {@link CompletionException}; use {@link com.chain.common.Utils#unwrap}
+   * to recover the cause. After an error, no further pages are fetched.<br>
+   * Closing a prefetcher discards pages that have not been consumed.
+   * Prefetchers are not safe for use by multiple threads.
+   * @param <T> type of api object
+   */
+  public static class Prefetcher<T> implements Iterator<T>, AutoCloseable {
+    private final int depth;
+    private final Executor executor;
+    private final ArrayDeque<CompletableFuture<PagedItems<T>>> pending = new ArrayDeque<>();
+    private CompletableFuture<PagedItems<T>> tail;
+    private List<T> list;
+    private int pos;
+    private boolean done;
+    private ChainException error;
+
+    private Prefetcher(PagedItems<T> first, int depth, Executor executor) {
+      this.depth = depth;
+      this.executor = executor;
+      this.list = first.list;
+      this.pos = first.pos;
+      this.tail = CompletableFuture.completedFuture(first);
+      fill();
+    }
+
+    /**
+     * Returns the unconsumed items of the current page, or the next page
+     * of results if the current page has been consumed, waiting for it to
+     * be fetched if necessary.
+     * @return a page of api objects, or null if there are no more results
+     * @throws ChainException if a page could not be fetched
+     */
+    public List<T> nextPage() throws ChainException {
+      if (pos < list.size()) {
+        List<T> rest = list.subList(pos, list.size());
+        pos = list.size();
+        return rest;
+      }
+      if (!advance()) {
+        return null;
+      }
+      pos = list.size();
+      return list;
+    }
+
+    /**
+     * Returns true if there is another item in the results.
+     * @throws CompletionException wrapping the ChainException raised while
+     * fetching the next page
+     */
+    public boolean hasNext() {
+      try {
+        return pos < list.size() || advance();
+      } catch (ChainException e) {
+        throw new CompletionException(e);
+      }
+    }
+
+    /**
+     * Returns the next item in the results.
+     * @throws CompletionException wrapping the ChainException raised while
+     * fetching the next page
+     */
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return list.get(pos++);
+    }
+
+    /**
+     * Returns a spliterator over the remaining results, splitting at page
+     * granularity like {@link PagedItems#spliterator()}.
+     * @return a spliterator of api objects
+     */
+    public Spliterator<T> spliterator() {
+      return new PageSpliterator<>(this::nextPage);
+    }
+
+    /**
+     * Returns a stream of the remaining results.
+     * @param parallel whether the stream processes pages in parallel
+     * @return a stream of api objects
+     */
+    public Stream<T> stream(boolean parallel) {
+      return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /**
+     * Stops fetching pages. Results not yet consumed are discarded.
+     */
+    public void close() {
+      done = true;
+      for (CompletableFuture<PagedItems<T>> f : pending) {
+        f.cancel(false);
+      }
+      pending.clear();
+    }
+
+    // Moves on to the next non-empty page, returning false at the end of
+    // the results.
+    private boolean advance() throws ChainException {
+      if (error != null) {
+        throw error;
+      }
+      while (!done) {
+        CompletableFuture<PagedItems<T>> f = pending.poll();
+        if (f == null) {
+          done = true;
+          break;
+        }
+        PagedItems<T> page;
+        try {
+          page = f.join();
+        } catch (CompletionException e) {
+          close();
+          Throwable cause = e.getCause();
+          error =
+              cause instanceof ChainException
+                  ? (ChainException) cause
+                  : new ChainException("Unable to fetch page: " + cause.getMessage(), cause);
+          throw error;
+        }
+        fill();
+        if (page == null) {
+          done = true;
+          break;
+        }
+        list = page.list;
+        pos = 0;
+        if (!list.isEmpty()) {
+          return true;
+        }
+      }
+      list = Collections.emptyList();
+      pos = 0;
+      return false;
+    }
+
+    private void fill() {
+      while (!done && pending.size() < depth) {
+        tail =
+            tail.thenApplyAsync(
+                page -> {
+                  // A null page marks the end of the results.
+                  if (page == null || page.lastPage || page.list.isEmpty()) {
+                    return null;
+                  }
+                  try {
+                    return page.getPage();
+                  } catch (ChainException e) {
+                    throw new CompletionException(e);
+                  }
+                },
+                executor);
+        pending.add(tail);
+      }
+    }
+  }
+
+  private interface PageSource<T> {
+    List<T> nextPage() throws ChainException;
+  }
+
+  // Splits off one page at a time. Pages are fetched by whichever thread
+  // advances or splits the remainder, which the stream framework confines
+  // to one thread at a time.
+  private static class PageSpliterator<T> implements Spliterator<T> {
+    private final PageSource<T> source;
+    private List<T> page = Collections.emptyList();
+    private int pos;
+    private boolean done;
+
+    PageSpliterator(PageSource<T> source) {
+      this.source = source;
+    }
+
+    public boolean tryAdvance(Consumer<? super T> action) {
+      while (pos >= page.size()) {
+        if (!load()) {
+          return false;
+        }
+      }
+      action.accept(page.get(pos++));
+      return true;
+    }
+
+    public void forEachRemaining(Consumer<? super T> action) {
+      do {
+        while (pos < page.size()) {
+          action.accept(page.get(pos++));
+        }
+      } while (load());
+    }
+
+    public Spliterator<T> trySplit() {
+      if (pos >= page.size() && !load()) {
+        return null;
+      }
+      List<T> prefix = page.subList(pos, page.size());
+      page = Collections.emptyList();
+      pos = 0;
+      return Spliterators.spliterator(prefix, ORDERED | NONNULL);
+    }
+
+    public long estimateSize() {
+      return done ? page.size() - pos : Long.MAX_VALUE;
+    }
+
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+
+    private boolean load() {
+      if (done) {
+        return false;
+      }
+      List<T> next;
+      try {
+        next = source.nextPage();
+      } catch (ChainException e) {
+        throw new CompletionException(e);
+      }
+      if (next == null) {
+        done = true;
+        page = Collections.emptyList();
+        pos = 0;
+        return false;
+      }
+      page = next;
+      pos = 0;
+      return true;
+    }
+  }
+
+  private static ExecutorService prefetchExecutor;
+
+  private static synchronized ExecutorService prefetchExecutor() {
+    if (prefetchExecutor == null) {
+      prefetchExecutor =
+          Executors.newCachedThreadPool(
+              new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "chain-sdk-prefetch");
+                  t.setDaemon(true);
+                  return t;
+                }
+              });
+    }
+    return prefetchExecutor;
+  }
+
   /**
    * This method is unsupported.
    * @throws UnsupportedOperationException
@@ -0,0 +1,358 @@
+package com.chain.api;
+
+import com.chain.exception.ChainException;
+import com.chain.http.Client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ParallelTransactionQuery scans a window of transaction history by
+ * splitting it into time shards and paging through every shard
+ * concurrently, each on its own cursor and connection to Core.<br>
+ * Results are either returned as soon as any shard produces them, for
+ * throughput, or in the order a single transaction query would return
+ * them: by descending block height and position. In ordered mode, later
+ * shards keep fetching into a bounded buffer while earlier shards are
+ * consumed.<br>
+ * Start and end times are required; both are inclusive, in milliseconds.
+ */
+public class ParallelTransactionQuery {
+  private String filter;
+  private List<Object> filterParams = new ArrayList<>();
+  private long startTime;
+  private long endTime;
+  private int shards = 4;
+  private boolean ordered;
+  private int bufferedPages = 2;
+
+  /**
+   * Sets the filter used to select transactions.
+   * @param filter the predicate used to filter results
+   * @return updated query object
+   */
+  public ParallelTransactionQuery setFilter(String filter) {
+    this.filter = filter;
+    return this;
+  }
+
+  /**
+   * Adds a filter parameter.
+   * @param param parameter to be added
+   * @return updated query object
+   */
+  public ParallelTransactionQuery addFilterParameter(Object param) {
+    this.filterParams.add(param);
+    return this;
+  }
+
+  /**
+   * Sets the filter parameters list.<br>
+   * <strong>Note:</strong> any existing filter params will be replaced.
+   * @param params list of parameters to be added
+   * @return updated query object
+   */
+  public ParallelTransactionQuery setFilterParameters(List<?> params) {
+    this.filterParams = new ArrayList<>(params);
+    return this;
+  }
+
+  /**
+   * Sets the earliest transaction timestamp to include in results.
+   * @param time start time in milliseconds
+   * @return updated query object
+   */
+  public ParallelTransactionQuery setStartTime(long time) {
+    this.startTime = time;
+    return this;
+  }
+
+  /**
+   * Sets the latest transaction timestamp to include in results.
+   * @param time end time in milliseconds
+   * @return updated query object
+   */
+  public ParallelTransactionQuery setEndTime(long time) {
+    this.endTime = time;
+    return this;
+  }
+
+  /**
+   * Sets the number of time shards the window is split into, which is also
+   * the number of concurrent requests. Defaults to 4.
+   * @param shards the number of shards
+   * @return updated query object
+   */
+  public ParallelTransactionQuery setShards(int shards) {
+    this.shards = shards;
+    return this;
+  }
+
+  /**
+   * Sets whether results are returned in descending block height and
+   * position order. Defaults to false, in which case pages are returned in
+   * whatever order the shards produce them.
+   * @param ordered whether to order results
+   * @return updated query object
+   */
+  public ParallelTransactionQuery setOrdered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * Sets the number of pages each shard may fetch ahead of the consumer.
+   * Defaults to 2.
+   * @param pages the number of buffered pages per shard
+   * @return updated query object
+   */
+  public ParallelTransactionQuery setBufferedPages(int pages) {
+    this.bufferedPages = pages;
+    return this;
+  }
+
+  /**
+   * Starts fetching every shard of the query.
+   * @param client client object which makes server requests
+   * @return the results of the query, which should be closed if they are
+   * not consumed to the end
+   * @throws ChainException if the query parameters are invalid
+   */
+  public Results execute(Client client) throws ChainException {
+    if (startTime <= 0 || endTime <= 0 || endTime < startTime) {
+      throw new ChainException("start and end times are required, and end must not precede start");
+    }
+    if (shards < 1 || bufferedPages < 1) {
+      throw new ChainException("shards and buffered pages must be positive");
+    }
+    return new Results(client, shardQueries());
+  }
+
+  // Splits [startTime, endTime] into contiguous, disjoint shards, newest
+  // first, matching the order in which Core returns transactions.
+  private List<Query> shardQueries() {
+    long span = endTime - startTime + 1;
+    int n = (int) Math.min(shards, span);
+    List<Query> queries = new ArrayList<>(n);
+    long end = endTime;
+    for (int i = 0; i < n; i++) {
+      long width = span / n + (i < span % n ? 1 : 0);
+      Query q = new Query();
+      q.filter = filter;
+      q.filterParams = new ArrayList<>(filterParams);
+      q.startTime = end - width + 1;
+      q.endTime = end;
+      queries.add(q);
+      end -= width;
+    }
+    return queries;
+  }
+
+  /**
+   * The results of a parallel transaction query.<br>
+   * {@link #nextPage()} reports fetch errors as a {@link ChainException}.
+   * The {@link Iterator} and stream methods throw them wrapped in a
+   * {@link CompletionException}. An error in any shard ends the query.<br>
+   * Results are not safe for use by multiple threads.
+   */
+  public class Results implements Iterator<Transaction>, AutoCloseable {
+    private final ShardItem end = new ShardItem(null, null);
+    private final List<BlockingQueue<ShardItem>> queues = new ArrayList<>();
+    private final ExecutorService executor;
+    private final AtomicInteger running;
+    private int current;
+    private List<Transaction> page = Collections.emptyList();
+    private int pos;
+    private boolean done;
+    private ChainException error;
+
+    private Results(final Client client, List<Query> queries) {
+      final int n = queries.size();
+      running = new AtomicInteger(n);
+      if (ordered) {
+        for (int i = 0; i < n; i++) {
+          queues.add(new ArrayBlockingQueue<>(bufferedPages + 1));
+        }
+      } else {
+        queues.add(new ArrayBlockingQueue<>(n * bufferedPages + n));
+      }
+      final AtomicInteger threads = new AtomicInteger();
+      executor =
+          Executors.newFixedThreadPool(
+              n,
+              new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "chain-sdk-shard-" + threads.getAndIncrement());
+                  t.setDaemon(true);
+                  return t;
+                }
+              });
+      for (int i = 0; i < n; i++) {
+        final Query query = queries.get(i);
+        final BlockingQueue<ShardItem> queue = queues.get(ordered ? i : 0);
+        executor.execute(
+            new Runnable() {
+              public void run() {
+                fetchShard(client, query, queue);
+              }
+            });
+      }
+      executor.shutdown();
+    }
+
+    // Pages through one shard, handing each page to the consumer. The
+    // shard ends with either the end marker or the exception that stopped it.
+    private void fetchShard(Client client, Query query, BlockingQueue<ShardItem> queue) {
+      try {
+        ShardItem last = end;
+        try {
+          Transaction.Items items = new Transaction.Items();
+          items.setClient(client);
+          items.setNext(query);
+          items = items.getPage();
+          while (!items.list.isEmpty()) {
+            queue.put(new ShardItem(items.list, null));
+            if (items.lastPage) {
+              break;
+            }
+            items = items.getPage();
+          }
+        } catch (ChainException e) {
+          last = new ShardItem(null, e);
+        } catch (RuntimeException e) {
+          last =
+              new ShardItem(
+                  null, new ChainException("Unable to fetch page: " + e.getMessage(), e));
+        }
+        queue.put(last);
+      } catch (InterruptedException e) {
+        // The results were closed.
+      }
+    }
+
+    /**
+     * Returns the next page of results, waiting for one to be fetched if
+     * necessary.
+     * @return a page of transactions, or null if there are no more results
+     * @throws ChainException if a shard failed to fetch a page
+     */
+    public List<Transaction> nextPage() throws ChainException {
+      if (pos < page.size()) {
+        List<Transaction> rest = page.subList(pos, page.size());
+        pos = page.size();
+        return rest;
+      }
+      if (!advance()) {
+        return null;
+      }
+      pos = page.size();
+      return page;
+    }
+
+    /**
+     * Returns true if there is another transaction in the results.
+     * @throws CompletionException wrapping the ChainException raised while
+     * fetching a page
+     */
+    public boolean hasNext() {
+      try {
+        return pos < page.size() || advance();
+      } catch (ChainException e) {
+        throw new CompletionException(e);
+      }
+    }
+
+    /**
+     * Returns the next transaction in the results.
+     * @throws CompletionException wrapping the ChainException raised while
+     * fetching a page
+     */
+    public Transaction next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return page.get(pos++);
+    }
+
+    /**
+     * Returns a sequential stream of the remaining results.
+     * @return a stream of transactions
+     */
+    public Stream<Transaction> stream() {
+      return StreamSupport.stream(
+          Spliterators.spliteratorUnknownSize(
+              this, (ordered ? Spliterator.ORDERED : 0) | Spliterator.NONNULL),
+          false);
+    }
+
+    /**
+     * Stops fetching every shard. Results not yet consumed are discarded.
+     */
+    public void close() {
+      done = true;
+      executor.shutdownNow();
+      page = Collections.emptyList();
+      pos = 0;
+    }
+
+    private boolean advance() throws ChainException {
+      if (error != null) {
+        throw error;
+      }
+      while (!done) {
+        ShardItem item;
+        try {
+          item = queues.get(current).take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ChainException("Interrupted while waiting for results", e);
+        }
+        if (item.error != null) {
+          close();
+          error = item.error;
+          throw error;
+        }
+        if (item == end) {
+          if (running.decrementAndGet() == 0) {
+            done = true;
+          } else if (ordered) {
+            current++;
+          }
+          continue;
+        }
+        page = item.page;
+        pos = 0;
+        return true;
+      }
+      page = Collections.emptyList();
+      pos = 0;
+      return false;
+    }
+  }
+
+  // An item passed from a shard to the results: a page of transactions,
+  // or the error that stopped the shard.
+  private static class ShardItem {
+    final List<Transaction> page;
+    final ChainException error;
+
+    ShardItem(List<Transaction> page, ChainException error) {
+      this.page = page;
+      this.error = error;
+    }
+  }
+}
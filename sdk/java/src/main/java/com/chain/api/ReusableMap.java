@@ -0,0 +1,179 @@
+package com.chain.api;
+
+import com.chain.common.RawJson;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * ReusableMap is a map kept in insertion order in two arrays, so that
+ * clearing and refilling it allocates nothing once the arrays are large
+ * enough. Lookups scan the keys, which suits the small maps of tags and
+ * reference data it is used for.<br>
+ * It can also keep the range of bytes it was decoded from, so that it
+ * serializes to the same JSON as a map decoded by Gson. The range is
+ * dropped when the map changes, or when a nested object or array is read
+ * from it.
+ */
+class ReusableMap extends AbstractMap<String, Object> implements RawJson {
+  private String[] keys = new String[8];
+  private Object[] values = new Object[8];
+  private int size;
+
+  // The JSON object the map was decoded from, at raw[rawStart:rawEnd].
+  private byte[] raw;
+  private int rawStart;
+  private int rawEnd;
+
+  /**
+   * Records the bytes of the JSON object the map was just filled from. The
+   * array must not change while the map is in use.
+   */
+  void setRaw(byte[] b, int start, int end) {
+    raw = b;
+    rawStart = start;
+    rawEnd = end;
+  }
+
+  @Override
+  public String rawJson() {
+    if (raw == null) {
+      return null;
+    }
+    String json = new String(raw, rawStart, rawEnd - rawStart, StandardCharsets.UTF_8);
+    try {
+      return RawJson.compact(json);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  public Object get(Object key) {
+    int i = indexOf(key);
+    return i < 0 ? null : touched(values[i]);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    raw = null;
+    int i = indexOf(key);
+    if (i >= 0) {
+      Object old = values[i];
+      values[i] = value;
+      return old;
+    }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    keys[size] = key;
+    values[size] = value;
+    size++;
+    return null;
+  }
+
+  @Override
+  public Object remove(Object key) {
+    int i = indexOf(key);
+    if (i < 0) {
+      return null;
+    }
+    raw = null;
+    Object old = values[i];
+    System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+    System.arraycopy(values, i + 1, values, i, size - i - 1);
+    size--;
+    keys[size] = null;
+    values[size] = null;
+    return old;
+  }
+
+  @Override
+  public void clear() {
+    raw = null;
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new Iterator<Entry<String, Object>>() {
+          private int next;
+          private boolean removable;
+
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          public Entry<String, Object> next() {
+            if (next >= size) {
+              throw new NoSuchElementException();
+            }
+            final int i = next++;
+            removable = true;
+            return new SimpleEntry<String, Object>(keys[i], touched(values[i])) {
+              @Override
+              public Object setValue(Object value) {
+                raw = null;
+                values[i] = value;
+                return super.setValue(value);
+              }
+            };
+          }
+
+          public void remove() {
+            if (!removable) {
+              throw new IllegalStateException();
+            }
+            removable = false;
+            ReusableMap.this.remove(keys[--next]);
+          }
+        };
+      }
+    };
+  }
+
+  private Object touched(Object value) {
+    if (value instanceof Map || value instanceof List) {
+      raw = null;
+    }
+    return value;
+  }
+
+  private int indexOf(Object key) {
+    for (int i = 0; i < size; i++) {
+      if (keys[i] == null ? key == null : keys[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,81 @@
+package com.chain.api;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * StringCache returns the same String for the same UTF-8 bytes, without
+ * allocating when the string is already cached. It is direct-mapped: each
+ * string has one slot, chosen by its hash, and replaces whatever string
+ * was there. Its size is therefore fixed, and strings that keep recurring,
+ * such as asset and account IDs and aliases, stay cached.
+ */
+class StringCache {
+  private static final int MAX_LENGTH = 128;
+
+  private final byte[][] keys;
+  private final String[] values;
+  private final int mask;
+  private long hits;
+  private long misses;
+
+  /**
+   * @param capacity the number of slots, rounded up to a power of two
+   */
+  StringCache(int capacity) {
+    int n = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    keys = new byte[n][];
+    values = new String[n];
+    mask = n - 1;
+  }
+
+  /**
+   * Returns the string encoded in UTF-8 by the given bytes.
+   */
+  String get(byte[] b, int off, int len) {
+    if (len > MAX_LENGTH) {
+      misses++;
+      return new String(b, off, len, StandardCharsets.UTF_8);
+    }
+    int h = 0x811c9dc5;
+    for (int i = off; i < off + len; i++) {
+      h = (h ^ b[i]) * 0x01000193;
+    }
+    int slot = h & mask;
+    byte[] key = keys[slot];
+    if (key != null && equal(key, b, off, len)) {
+      hits++;
+      return values[slot];
+    }
+    misses++;
+    String s = new String(b, off, len, StandardCharsets.UTF_8);
+    if (key != null && key.length == len) {
+      System.arraycopy(b, off, key, 0, len);
+    } else {
+      key = new byte[len];
+      System.arraycopy(b, off, key, 0, len);
+      keys[slot] = key;
+    }
+    values[slot] = s;
+    return s;
+  }
+
+  long hits() {
+    return hits;
+  }
+
+  long misses() {
+    return misses;
+  }
+
+  private static boolean equal(byte[] key, byte[] b, int off, int len) {
+    if (key.length != len) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (key[i] != b[off + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
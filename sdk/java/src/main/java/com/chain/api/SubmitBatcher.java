@@ -0,0 +1,148 @@
+package com.chain.api;
+
+import com.chain.common.Utils;
+import com.chain.exception.*;
+import com.chain.http.BatchResponse;
+import com.chain.http.Client;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SubmitBatcher collects signed transaction templates submitted concurrently
+ * from many threads and sends them to the submit-transaction endpoint in
+ * batches, saving one round trip per transaction.<br>
+ * It is a drop-in replacement for {@link Transaction#submit(Client, Transaction.Template, String)}:
+ * each caller still receives its own {@link Transaction.SubmitResponse} or
+ * {@link APIException}.
+ */
+public class SubmitBatcher extends Batcher<Transaction.Template, Transaction.SubmitResponse> {
+  private final Client client;
+  private final String waitUntil;
+
+  private SubmitBatcher(Builder builder) {
+    super(
+        builder.maxBatchSize,
+        builder.maxLinger,
+        builder.maxLingerUnit,
+        builder.maxInFlightBatches,
+        builder.maxQueued);
+    this.client = builder.client;
+    this.waitUntil = builder.waitUntil;
+  }
+
+  @Override
+  protected CompletableFuture<BatchResponse<Transaction.SubmitResponse>> sendBatch(
+      List<Transaction.Template> templates) {
+    return Transaction.submitBatchAsync(client, templates, waitUntil);
+  }
+
+  /**
+   * Submits a signed transaction template as part of the next batch.
+   * @param template transaction template
+   * @return a future holding the submit response
+   */
+  public CompletableFuture<Transaction.SubmitResponse> submitAsync(Transaction.Template template) {
+    return add(template);
+  }
+
+  /**
+   * Submits a signed transaction template as part of the next batch, blocking
+   * until the batch has been processed.
+   * @param template transaction template
+   * @return submit response
+   * @throws APIException This exception is raised if the api returns errors while submitting the transaction.
+   * @throws BadURLException This exception wraps java.net.MalformedURLException.
+   * @throws ConnectivityException This exception is raised if there are connectivity issues with the server.
+   * @throws HTTPException This exception is raised when errors occur making http requests.
+   * @throws JSONException This exception is raised due to malformed json requests or responses.
+   */
+  public Transaction.SubmitResponse submit(Transaction.Template template) throws ChainException {
+    return Utils.await(add(template));
+  }
+
+  /**
+   * A builder class for creating submit batchers.
+   */
+  public static class Builder {
+    private Client client;
+    private String waitUntil;
+    private int maxBatchSize;
+    private long maxLinger;
+    private TimeUnit maxLingerUnit;
+    private int maxInFlightBatches;
+    private int maxQueued;
+
+    /**
+     * @param client client object which makes server requests
+     */
+    public Builder(Client client) {
+      this.client = client;
+      this.maxBatchSize = 100;
+      this.maxLinger = 500;
+      this.maxLingerUnit = TimeUnit.MICROSECONDS;
+      this.maxInFlightBatches = 8;
+      this.maxQueued = 10000;
+    }
+
+    /**
+     * Sets when the server should respond to each batch.
+     * @param waitUntil none, confirmed or processed
+     */
+    public Builder setWaitUntil(String waitUntil) {
+      this.waitUntil = waitUntil;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of templates sent in one batch. Defaults to 100.
+     * @param maxBatchSize the maximum batch size
+     */
+    public Builder setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time a template waits for its batch to fill before it
+     * is sent. Defaults to 500 microseconds.
+     * @param linger the maximum wait
+     * @param unit the unit of time
+     */
+    public Builder setMaxLinger(long linger, TimeUnit unit) {
+      this.maxLinger = linger;
+      this.maxLingerUnit = unit;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of batches awaiting a response from the core.
+     * Once reached, further batches, each of at most the maximum batch size,
+     * wait in a queue for a response. Defaults to 8.
+     * @param maxInFlightBatches the maximum number of outstanding batches
+     */
+    public Builder setMaxInFlightBatches(int maxInFlightBatches) {
+      this.maxInFlightBatches = maxInFlightBatches;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of templates waiting to be sent. Once reached,
+     * further templates fail at once with a {@link ChainException} instead
+     * of queueing. Defaults to 10000.
+     * @param maxQueued the maximum number of waiting templates
+     */
+    public Builder setMaxQueued(int maxQueued) {
+      this.maxQueued = maxQueued;
+      return this;
+    }
+
+    /**
+     * Builds a submit batcher with all of the provided parameters.
+     */
+    public SubmitBatcher build() {
+      return new SubmitBatcher(this);
+    }
+  }
+}
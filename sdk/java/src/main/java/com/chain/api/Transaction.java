@@ -5,6 +5,7 @@ import com.chain.http.*;
 import com.google.gson.annotations.SerializedName;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -385,6 +386,14 @@ public class Transaction {
       return this;
     }
 
+    /**
+     * Returns true if signatures on this template commit only to the
+     * elements in the transaction so far (see {@link #allowAdditionalActions()}).
+     */
+    public boolean allowsAdditionalActions() {
+      return allowAdditionalActions;
+    }
+
     /**
      * A single signing instruction included in a transaction template.
      */
@@ -561,6 +570,53 @@ public class Transaction {
         "submit-transaction", body, SubmitResponse.class, APIException.class);
   }
 
+  /**
+   * Submits signed transaction template for inclusion into a block without
+   * blocking the calling thread.
+   * @param client client object which makes server requests
+   * @param template transaction template
+   * @param waitUntil when the server should wait until responding - none, confirmed, processed
+   * @return a future holding the submit response. It completes exceptionally
+   * with an {@link APIException} if the transaction is rejected.
+   */
+  public static CompletableFuture<SubmitResponse> submitAsync(
+      Client client, Template template, String waitUntil) {
+    HashMap<String, Object> body = new HashMap<>();
+    body.put("transactions", Arrays.asList(template));
+    body.put("wait_until", waitUntil);
+    return client.singletonBatchRequestAsync(
+        "submit-transaction", body, SubmitResponse.class, APIException.class);
+  }
+
+  /**
+   * Submits a batch of signed transaction templates for inclusion into a
+   * block without blocking the calling thread.
+   * @param client client object which makes server requests
+   * @param templates list of transaction templates
+   * @param waitUntil when the server should wait until responding - none, confirmed, processed
+   * @return a future holding the submit responses
+   */
+  public static CompletableFuture<BatchResponse<SubmitResponse>> submitBatchAsync(
+      Client client, List<Template> templates, String waitUntil) {
+    HashMap<String, Object> body = new HashMap<>();
+    body.put("transactions", templates);
+    body.put("wait_until", waitUntil);
+    return client.batchRequestAsync(
+        "submit-transaction", body, SubmitResponse.class, APIException.class);
+  }
+
+  /**
+   * Builds a batch of transaction templates without blocking the calling thread.
+   * @param client client object which makes server requests
+   * @param builders list of transaction builders
+   * @return a future holding the transaction templates
+   */
+  public static CompletableFuture<BatchResponse<Template>> buildBatchAsync(
+      Client client, List<Transaction.Builder> builders) {
+    return client.batchRequestAsync(
+        "build-transaction", builders, Template.class, BuildException.class);
+  }
+
   /**
    * Base class representing actions that can be taken within a transaction.
    */
@@ -1020,6 +1076,17 @@ public class Transaction {
           "build-transaction", Arrays.asList(this), Template.class, BuildException.class);
     }
 
+    /**
+     * Builds a single transaction template without blocking the calling thread.
+     * @param client client object which makes requests to the server
+     * @return a future holding the transaction template. It completes
+     * exceptionally with a {@link BuildException} if the transaction cannot be built.
+     */
+    public CompletableFuture<Template> buildAsync(Client client) {
+      return client.singletonBatchRequestAsync(
+          "build-transaction", Arrays.asList(this), Template.class, BuildException.class);
+    }
+
     /**
      * Default constructor initializes actions list.
      */
@@ -1201,10 +1268,7 @@ public class Transaction {
         return;
       }
 
-      // The format of the cursor value is specified in the core/query package.
-      // It technically uses an unsigned 64-bit int for the end specifier, but
-      // Long.MAX_VALUE should suffice.
-      String newAfter = "" + lastTx.blockHeight + ":" + lastTx.position + "-" + Long.MAX_VALUE;
+      String newAfter = cursor(lastTx);
       Map<String, Object> req = new HashMap<>();
       req.put("id", this.id);
       req.put("previous_after", this.after);
@@ -1213,5 +1277,52 @@ public class Transaction {
 
       this.after = newAfter;
     }
+
+    /**
+     * Returns the feed cursor that marks a transaction as consumed.
+     */
+    static String cursor(Transaction tx) {
+      return cursor(tx.blockHeight, tx.position);
+    }
+
+    /**
+     * Returns the feed cursor that marks the transaction at the given block
+     * height and position as consumed.
+     */
+    static String cursor(int blockHeight, int position) {
+      // The format of the cursor value is specified in the core/query package.
+      // It technically uses an unsigned 64-bit int for the end specifier, but
+      // Long.MAX_VALUE should suffice.
+      return "" + blockHeight + ":" + position + "-" + Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns a transaction's block height and position packed into a long,
+     * which orders transactions as a feed does.
+     */
+    static long position(Transaction tx) {
+      return ((long) tx.blockHeight << 32) | (tx.position & 0xffffffffL);
+    }
+
+    /**
+     * Returns the position of the last transaction consumed according to a
+     * feed cursor, or -1 if the cursor is null or not of the form
+     * height:position-end.
+     */
+    static long position(String cursor) {
+      if (cursor == null) {
+        return -1;
+      }
+      try {
+        int colon = cursor.indexOf(':');
+        int dash = cursor.indexOf('-', colon);
+        long height = Long.parseLong(cursor.substring(0, colon));
+        long position =
+            Long.parseLong(cursor.substring(colon + 1, dash < 0 ? cursor.length() : dash));
+        return (height << 32) | (position & 0xffffffffL);
+      } catch (RuntimeException e) {
+        return -1;
+      }
+    }
   }
 }
@@ -0,0 +1,999 @@
+package com.chain.api;
+
+import com.chain.common.Utils;
+import com.chain.exception.ChainException;
+import com.chain.exception.JSONException;
+import com.chain.http.Client;
+import com.squareup.okhttp.Response;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * TransactionDecoder decodes pages of list-transactions results into
+ * transaction objects that it reuses from one page to the next, for
+ * consumers that process each transaction in place and then let it go.
+ * <br>
+ * Each page is read into a buffer and decoded from its bytes. The
+ * {@link Transaction}, {@link Transaction.Input} and
+ * {@link Transaction.Output} objects, their lists and timestamps, and the
+ * maps of reference data, tags and asset definitions are kept from the
+ * previous page and refilled. Strings that recur from one transaction to
+ * the next, such as asset and account IDs and aliases, are looked up in a
+ * fixed-size cache by their bytes, so a string already seen is not
+ * allocated again. Once the buffers and pools have grown to fit a page,
+ * decoding allocates little more than the strings unique to each
+ * transaction, such as its ID.<br>
+ * Every object returned is overwritten by the next page, so nothing from a
+ * page may be kept after the next call to {@link #decode(InputStream)} or
+ * {@link #fetch(Client, Query)}; copy whatever must be kept. Values nested
+ * inside reference data, tags and asset definitions are allocated afresh,
+ * and numbers in them are decoded as doubles, as Gson does. Until they are
+ * changed, those maps serialize to the same JSON as maps decoded by
+ * {@link Utils#serializer}. Timestamps
+ * are read as RFC 3339 with fractions of a second of any length.<br>
+ * A decoder is not safe for use by multiple threads.
+ */
+public class TransactionDecoder {
+  private static final byte[][] PAGE_FIELDS = names("items", "last_page", "next");
+  private static final byte[][] TX_FIELDS =
+      names(
+          "id",
+          "timestamp",
+          "block_id",
+          "block_height",
+          "position",
+          "reference_data",
+          "is_local",
+          "inputs",
+          "outputs");
+  private static final byte[][] INPUT_FIELDS =
+      names(
+          "type",
+          "asset_id",
+          "asset_alias",
+          "asset_definition",
+          "asset_tags",
+          "asset_is_local",
+          "amount",
+          "spent_output_id",
+          "account_id",
+          "account_alias",
+          "account_tags",
+          "issuance_program",
+          "reference_data",
+          "is_local");
+  private static final byte[][] OUTPUT_FIELDS =
+      names(
+          "id",
+          "type",
+          "purpose",
+          "position",
+          "asset_id",
+          "asset_alias",
+          "asset_definition",
+          "asset_tags",
+          "asset_is_local",
+          "amount",
+          "account_id",
+          "account_alias",
+          "account_tags",
+          "control_program",
+          "reference_data",
+          "is_local");
+
+  private final StringCache strings;
+  private final List<TxSlot> slots = new ArrayList<>();
+  private final List<Transaction> page = new ArrayList<>();
+  private final List<Transaction> view = Collections.unmodifiableList(page);
+  private final Client.ResponseCreator<List<Transaction>> creator;
+
+  private byte[] buf = new byte[64 * 1024];
+  private int len;
+  private int pos;
+
+  // The most recently read string: its unescaped UTF-8 bytes are at
+  // str[strOff:strOff+strLen], in either buf or scratch.
+  private byte[] scratch = new byte[256];
+  private byte[] str;
+  private int strOff;
+  private int strLen;
+
+  private boolean lastPage;
+  private int nextStart = -1;
+  private int nextEnd;
+
+  /**
+   * Creates a decoder whose string cache has 4096 slots.
+   */
+  public TransactionDecoder() {
+    this(4096);
+  }
+
+  /**
+   * @param cacheSize the number of slots in the string cache
+   */
+  public TransactionDecoder(int cacheSize) {
+    this.strings = new StringCache(cacheSize);
+    this.creator =
+        new Client.ResponseCreator<List<Transaction>>() {
+          public List<Transaction> create(Response response, Gson deserializer)
+              throws ChainException, IOException {
+            try (InputStream in = response.body().byteStream()) {
+              return decode(in);
+            } catch (JSONException e) {
+              e.requestId = response.headers().get("Chain-Request-ID");
+              throw e;
+            }
+          }
+        };
+  }
+
+  /**
+   * Sends a list-transactions query and decodes the page of results.
+   * @param client client object which makes server requests
+   * @param query the query
+   * @return the page's transactions, valid until the next page is decoded
+   * @throws ChainException
+   */
+  public List<Transaction> fetch(Client client, Query query) throws ChainException {
+    return client.request("list-transactions", query, creator);
+  }
+
+  /**
+   * Asynchronous version of {@link #fetch(Client, Query)}. The page is
+   * decoded on the thread that receives the response, so no other page may
+   * be decoded until the future completes.
+   * @param client client object which makes server requests
+   * @param query the query
+   * @return a future holding the page's transactions
+   */
+  public CompletableFuture<List<Transaction>> fetchAsync(Client client, Query query) {
+    return client.requestAsync("list-transactions", query, creator);
+  }
+
+  /**
+   * Decodes a page of list-transactions results.
+   * @param in the response body, which is read to the end
+   * @return the page's transactions, valid until the next page is decoded
+   * @throws JSONException if the body is not a page of transactions
+   * @throws IOException if the body cannot be read
+   */
+  public List<Transaction> decode(InputStream in) throws JSONException, IOException {
+    read(in);
+    pos = 0;
+    page.clear();
+    lastPage = false;
+    nextStart = -1;
+    expect('{');
+    if (!consume('}')) {
+      do {
+        switch (key(PAGE_FIELDS)) {
+          case 0:
+            items();
+            break;
+          case 1:
+            lastPage = bool();
+            break;
+          case 2:
+            ws();
+            nextStart = pos;
+            skip();
+            nextEnd = pos;
+            break;
+          default:
+            skip();
+        }
+      } while (consume(','));
+      expect('}');
+    }
+    return view;
+  }
+
+  /**
+   * Returns whether the last page decoded is the last page of results.
+   */
+  public boolean lastPage() {
+    return lastPage;
+  }
+
+  /**
+   * Returns the query for the page after the last page decoded, or null if
+   * it had none. Unlike the transactions, it is a new object.
+   */
+  public Query next() {
+    if (nextStart < 0) {
+      return null;
+    }
+    String json = new String(buf, nextStart, nextEnd - nextStart, StandardCharsets.UTF_8);
+    return Utils.serializer.fromJson(json, Query.class);
+  }
+
+  /**
+   * Returns the number of strings found in the string cache.
+   */
+  public long cacheHits() {
+    return strings.hits();
+  }
+
+  /**
+   * Returns the number of strings that were not in the string cache, and
+   * so were allocated.
+   */
+  public long cacheMisses() {
+    return strings.misses();
+  }
+
+  private void read(InputStream in) throws IOException {
+    len = 0;
+    int n;
+    while ((n = in.read(buf, len, buf.length - len)) >= 0) {
+      len += n;
+      if (len == buf.length) {
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+    }
+  }
+
+  private void items() throws JSONException {
+    if (isNull()) {
+      return;
+    }
+    expect('[');
+    if (consume(']')) {
+      return;
+    }
+    do {
+      if (page.size() == slots.size()) {
+        slots.add(new TxSlot());
+      }
+      TxSlot slot = slots.get(page.size());
+      transaction(slot);
+      page.add(slot.tx);
+    } while (consume(','));
+    expect(']');
+  }
+
+  private void transaction(TxSlot slot) throws JSONException {
+    Transaction tx = slot.tx;
+    tx.id = null;
+    tx.timestamp = null;
+    tx.blockId = null;
+    tx.blockHeight = 0;
+    tx.position = 0;
+    tx.referenceData = null;
+    tx.isLocal = null;
+    tx.inputs = null;
+    tx.outputs = null;
+
+    expect('{');
+    if (consume('}')) {
+      return;
+    }
+    do {
+      switch (key(TX_FIELDS)) {
+        case 0:
+          tx.id = string(false);
+          break;
+        case 1:
+          tx.timestamp = timestamp(slot.timestamp);
+          break;
+        case 2:
+          tx.blockId = string(true);
+          break;
+        case 3:
+          tx.blockHeight = (int) integer();
+          break;
+        case 4:
+          tx.position = (int) integer();
+          break;
+        case 5:
+          tx.referenceData = map(slot.referenceData);
+          break;
+        case 6:
+          tx.isLocal = string(true);
+          break;
+        case 7:
+          tx.inputs = inputs(slot);
+          break;
+        case 8:
+          tx.outputs = outputs(slot);
+          break;
+        default:
+          skip();
+      }
+    } while (consume(','));
+    expect('}');
+  }
+
+  private List<Transaction.Input> inputs(TxSlot slot) throws JSONException {
+    if (isNull()) {
+      return null;
+    }
+    List<Transaction.Input> list = slot.inputs;
+    list.clear();
+    expect('[');
+    if (consume(']')) {
+      return list;
+    }
+    do {
+      if (list.size() == slot.inputSlots.size()) {
+        slot.inputSlots.add(new InputSlot());
+      }
+      InputSlot in = slot.inputSlots.get(list.size());
+      input(in);
+      list.add(in.input);
+    } while (consume(','));
+    expect(']');
+    return list;
+  }
+
+  private void input(InputSlot slot) throws JSONException {
+    Transaction.Input in = slot.input;
+    in.type = null;
+    in.assetId = null;
+    in.assetAlias = null;
+    in.assetDefinition = null;
+    in.assetTags = null;
+    in.assetIsLocal = null;
+    in.amount = 0;
+    in.spentOutputId = null;
+    in.accountId = null;
+    in.accountAlias = null;
+    in.accountTags = null;
+    in.issuanceProgram = null;
+    in.referenceData = null;
+    in.isLocal = null;
+
+    expect('{');
+    if (consume('}')) {
+      return;
+    }
+    do {
+      switch (key(INPUT_FIELDS)) {
+        case 0:
+          in.type = string(true);
+          break;
+        case 1:
+          in.assetId = string(true);
+          break;
+        case 2:
+          in.assetAlias = string(true);
+          break;
+        case 3:
+          in.assetDefinition = map(slot.assetDefinition);
+          break;
+        case 4:
+          in.assetTags = map(slot.assetTags);
+          break;
+        case 5:
+          in.assetIsLocal = string(true);
+          break;
+        case 6:
+          in.amount = integer();
+          break;
+        case 7:
+          in.spentOutputId = string(false);
+          break;
+        case 8:
+          in.accountId = string(true);
+          break;
+        case 9:
+          in.accountAlias = string(true);
+          break;
+        case 10:
+          in.accountTags = map(slot.accountTags);
+          break;
+        case 11:
+          in.issuanceProgram = string(true);
+          break;
+        case 12:
+          in.referenceData = map(slot.referenceData);
+          break;
+        case 13:
+          in.isLocal = string(true);
+          break;
+        default:
+          skip();
+      }
+    } while (consume(','));
+    expect('}');
+  }
+
+  private List<Transaction.Output> outputs(TxSlot slot) throws JSONException {
+    if (isNull()) {
+      return null;
+    }
+    List<Transaction.Output> list = slot.outputs;
+    list.clear();
+    expect('[');
+    if (consume(']')) {
+      return list;
+    }
+    do {
+      if (list.size() == slot.outputSlots.size()) {
+        slot.outputSlots.add(new OutputSlot());
+      }
+      OutputSlot out = slot.outputSlots.get(list.size());
+      output(out);
+      list.add(out.output);
+    } while (consume(','));
+    expect(']');
+    return list;
+  }
+
+  private void output(OutputSlot slot) throws JSONException {
+    Transaction.Output out = slot.output;
+    out.id = null;
+    out.type = null;
+    out.purpose = null;
+    out.position = 0;
+    out.assetId = null;
+    out.assetAlias = null;
+    out.assetDefinition = null;
+    out.assetTags = null;
+    out.assetIsLocal = null;
+    out.amount = 0;
+    out.accountId = null;
+    out.accountAlias = null;
+    out.accountTags = null;
+    out.controlProgram = null;
+    out.referenceData = null;
+    out.isLocal = null;
+
+    expect('{');
+    if (consume('}')) {
+      return;
+    }
+    do {
+      switch (key(OUTPUT_FIELDS)) {
+        case 0:
+          out.id = string(false);
+          break;
+        case 1:
+          out.type = string(true);
+          break;
+        case 2:
+          out.purpose = string(true);
+          break;
+        case 3:
+          out.position = (int) integer();
+          break;
+        case 4:
+          out.assetId = string(true);
+          break;
+        case 5:
+          out.assetAlias = string(true);
+          break;
+        case 6:
+          out.assetDefinition = map(slot.assetDefinition);
+          break;
+        case 7:
+          out.assetTags = map(slot.assetTags);
+          break;
+        case 8:
+          out.assetIsLocal = string(true);
+          break;
+        case 9:
+          out.amount = integer();
+          break;
+        case 10:
+          out.accountId = string(true);
+          break;
+        case 11:
+          out.accountAlias = string(true);
+          break;
+        case 12:
+          out.accountTags = map(slot.accountTags);
+          break;
+        case 13:
+          out.controlProgram = string(false);
+          break;
+        case 14:
+          out.referenceData = map(slot.referenceData);
+          break;
+        case 15:
+          out.isLocal = string(true);
+          break;
+        default:
+          skip();
+      }
+    } while (consume(','));
+    expect('}');
+  }
+
+  // Fills a pooled map from a JSON object, or returns null for JSON null.
+  private Map<String, Object> map(ReusableMap pooled) throws JSONException {
+    if (isNull()) {
+      return null;
+    }
+    pooled.clear();
+    int start = pos;
+    object(pooled);
+    pooled.setRaw(buf, start, pos);
+    return pooled;
+  }
+
+  private void object(Map<String, Object> m) throws JSONException {
+    expect('{');
+    if (consume('}')) {
+      return;
+    }
+    do {
+      ws();
+      readString();
+      String k = strings.get(str, strOff, strLen);
+      expect(':');
+      m.put(k, value());
+    } while (consume(','));
+    expect('}');
+  }
+
+  private Object value() throws JSONException {
+    ws();
+    switch (peek()) {
+      case '"':
+        return string(true);
+      case '{':
+        Map<String, Object> m = new LinkedHashMap<>();
+        object(m);
+        return m;
+      case '[':
+        List<Object> list = new ArrayList<>();
+        pos++;
+        if (consume(']')) {
+          return list;
+        }
+        do {
+          list.add(value());
+        } while (consume(','));
+        expect(']');
+        return list;
+      case 't':
+      case 'f':
+        return bool();
+      case 'n':
+        literal("null");
+        return null;
+      default:
+        return number();
+    }
+  }
+
+  // Reads the next key and returns its index in fields, or -1 if it is not
+  // one of them, leaving the position at the key's value.
+  private int key(byte[][] fields) throws JSONException {
+    ws();
+    readString();
+    expect(':');
+    for (int i = 0; i < fields.length; i++) {
+      byte[] f = fields[i];
+      if (f.length != strLen) {
+        continue;
+      }
+      int j = 0;
+      while (j < strLen && f[j] == str[strOff + j]) {
+        j++;
+      }
+      if (j == strLen) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private String string(boolean cached) throws JSONException {
+    if (isNull()) {
+      return null;
+    }
+    readString();
+    if (cached) {
+      return strings.get(str, strOff, strLen);
+    }
+    return new String(str, strOff, strLen, StandardCharsets.UTF_8);
+  }
+
+  // Reads a JSON string, leaving its unescaped bytes in str. Strings
+  // without escapes are left where they are in buf.
+  private void readString() throws JSONException {
+    if (peek() != '"') {
+      throw error("expected a string");
+    }
+    int start = ++pos;
+    while (peek() != '"') {
+      if (peek() == '\\') {
+        unescape(start);
+        return;
+      }
+      pos++;
+    }
+    str = buf;
+    strOff = start;
+    strLen = pos - start;
+    pos++;
+  }
+
+  private void unescape(int start) throws JSONException {
+    int n = pos - start;
+    ensureScratch(n);
+    System.arraycopy(buf, start, scratch, 0, n);
+    while (peek() != '"') {
+      ensureScratch(n + 4);
+      byte b = take();
+      if (b != '\\') {
+        scratch[n++] = b;
+        continue;
+      }
+      byte e = take();
+      switch (e) {
+        case 'b':
+          scratch[n++] = '\b';
+          break;
+        case 'f':
+          scratch[n++] = '\f';
+          break;
+        case 'n':
+          scratch[n++] = '\n';
+          break;
+        case 'r':
+          scratch[n++] = '\r';
+          break;
+        case 't':
+          scratch[n++] = '\t';
+          break;
+        case 'u':
+          int c = hex(4);
+          if (c >= 0xd800
+              && c < 0xdc00
+              && pos + 1 < len
+              && buf[pos] == '\\'
+              && buf[pos + 1] == 'u') {
+            pos += 2;
+            int low = hex(4);
+            c = 0x10000 + ((c - 0xd800) << 10) + (low - 0xdc00);
+          }
+          n = utf8(c, n);
+          break;
+        default:
+          scratch[n++] = e;
+      }
+    }
+    pos++;
+    str = scratch;
+    strOff = 0;
+    strLen = n;
+  }
+
+  private int hex(int digits) throws JSONException {
+    int c = 0;
+    for (int i = 0; i < digits; i++) {
+      int d = Character.digit(take(), 16);
+      if (d < 0) {
+        throw error("bad \\u escape");
+      }
+      c = c * 16 + d;
+    }
+    return c;
+  }
+
+  private int utf8(int c, int n) {
+    if (c < 0x80) {
+      scratch[n++] = (byte) c;
+    } else if (c < 0x800) {
+      scratch[n++] = (byte) (0xc0 | (c >> 6));
+      scratch[n++] = (byte) (0x80 | (c & 0x3f));
+    } else if (c < 0x10000) {
+      scratch[n++] = (byte) (0xe0 | (c >> 12));
+      scratch[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      scratch[n++] = (byte) (0x80 | (c & 0x3f));
+    } else {
+      scratch[n++] = (byte) (0xf0 | (c >> 18));
+      scratch[n++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+      scratch[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      scratch[n++] = (byte) (0x80 | (c & 0x3f));
+    }
+    return n;
+  }
+
+  private void ensureScratch(int n) {
+    if (n > scratch.length) {
+      scratch = Arrays.copyOf(scratch, Math.max(n, scratch.length * 2));
+    }
+  }
+
+  // Reads an integer, such as an amount or block height. Integers too long
+  // to accumulate without overflow are parsed exactly, and fail if out of
+  // range, as Gson does. A number with a fraction or exponent is truncated.
+  private long integer() throws JSONException {
+    if (isNull()) {
+      return 0;
+    }
+    int start = pos;
+    boolean negative = consume('-');
+    long v = 0;
+    int digits = 0;
+    while (pos < len && buf[pos] >= '0' && buf[pos] <= '9') {
+      v = v * 10 + (buf[pos++] - '0');
+      digits++;
+    }
+    if (digits == 0) {
+      throw error("expected a number");
+    }
+    if (fractional()) {
+      pos = start;
+      return (long) number();
+    }
+    if (digits < 19) {
+      return negative ? -v : v;
+    }
+    try {
+      return Long.parseLong(new String(buf, start, pos - start, StandardCharsets.US_ASCII));
+    } catch (NumberFormatException e) {
+      throw error("integer out of range");
+    }
+  }
+
+  private boolean fractional() {
+    return pos < len && (buf[pos] == '.' || buf[pos] == 'e' || buf[pos] == 'E');
+  }
+
+  private double number() throws JSONException {
+    ws();
+    int start = pos;
+    boolean negative = consume('-');
+    long v = 0;
+    int digits = 0;
+    while (pos < len && buf[pos] >= '0' && buf[pos] <= '9') {
+      v = v * 10 + (buf[pos++] - '0');
+      digits++;
+    }
+    if (digits > 0 && digits < 16 && !fractional()) {
+      return negative ? -v : v;
+    }
+    while (pos < len && "+-.eE0123456789".indexOf(buf[pos]) >= 0) {
+      pos++;
+    }
+    try {
+      return Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.US_ASCII));
+    } catch (NumberFormatException e) {
+      throw error("expected a number");
+    }
+  }
+
+  private boolean bool() throws JSONException {
+    ws();
+    if (peek() == 't') {
+      literal("true");
+      return true;
+    }
+    literal("false");
+    return false;
+  }
+
+  private Date timestamp(Date pooled) throws JSONException {
+    if (isNull()) {
+      return null;
+    }
+    readString();
+    long millis = parseTime(str, strOff, strLen);
+    if (millis != Long.MIN_VALUE) {
+      pooled.setTime(millis);
+      return pooled;
+    }
+    String s = new String(str, strOff, strLen, StandardCharsets.UTF_8);
+    return Utils.serializer.fromJson('"' + s + '"', Date.class);
+  }
+
+  // Parses an RFC 3339 time such as 2017-05-10T20:14:03.123456Z or
+  // 2017-05-10T20:14:03-07:00, returning Long.MIN_VALUE if it is not one.
+  static long parseTime(byte[] b, int off, int n) {
+    if (n < 20
+        || b[off + 4] != '-'
+        || b[off + 7] != '-'
+        || (b[off + 10] != 'T' && b[off + 10] != 't')
+        || b[off + 13] != ':'
+        || b[off + 16] != ':') {
+      return Long.MIN_VALUE;
+    }
+    int year = digits(b, off, 4);
+    int month = digits(b, off + 5, 2);
+    int day = digits(b, off + 8, 2);
+    int hour = digits(b, off + 11, 2);
+    int minute = digits(b, off + 14, 2);
+    int second = digits(b, off + 17, 2);
+    if ((year | month | day | hour | minute | second) < 0) {
+      return Long.MIN_VALUE;
+    }
+    int i = off + 19;
+    int end = off + n;
+    int millis = 0;
+    if (b[i] == '.') {
+      i++;
+      int scale = 100;
+      while (i < end && b[i] >= '0' && b[i] <= '9') {
+        millis += (b[i++] - '0') * scale;
+        scale /= 10;
+      }
+    }
+    int offsetMinutes;
+    if (i == end - 1 && (b[i] == 'Z' || b[i] == 'z')) {
+      offsetMinutes = 0;
+    } else if (i == end - 6 && (b[i] == '+' || b[i] == '-') && b[i + 3] == ':') {
+      int h = digits(b, i + 1, 2);
+      int m = digits(b, i + 4, 2);
+      if ((h | m) < 0) {
+        return Long.MIN_VALUE;
+      }
+      offsetMinutes = (h * 60 + m) * (b[i] == '-' ? -1 : 1);
+    } else {
+      return Long.MIN_VALUE;
+    }
+
+    // Days since the epoch of the civil date, from Howard Hinnant's
+    // days_from_civil.
+    long y = month <= 2 ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yoe = y - era * 400;
+    long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    long days = era * 146097 + doe - 719468;
+    long seconds = ((days * 24 + hour) * 60 + minute - offsetMinutes) * 60 + second;
+    return seconds * 1000 + millis;
+  }
+
+  private static int digits(byte[] b, int off, int n) {
+    int v = 0;
+    for (int i = off; i < off + n; i++) {
+      if (b[i] < '0' || b[i] > '9') {
+        return -1;
+      }
+      v = v * 10 + (b[i] - '0');
+    }
+    return v;
+  }
+
+  private void skip() throws JSONException {
+    ws();
+    switch (peek()) {
+      case '"':
+        readString();
+        return;
+      case '{':
+      case '[':
+        int depth = 0;
+        do {
+          byte b = peek();
+          if (b == '"') {
+            readString();
+            continue;
+          }
+          if (b == '{' || b == '[') {
+            depth++;
+          } else if (b == '}' || b == ']') {
+            depth--;
+          }
+          pos++;
+        } while (depth > 0);
+        return;
+      case 't':
+      case 'f':
+        bool();
+        return;
+      case 'n':
+        literal("null");
+        return;
+      default:
+        number();
+    }
+  }
+
+  private boolean isNull() throws JSONException {
+    ws();
+    if (peek() == 'n') {
+      literal("null");
+      return true;
+    }
+    return false;
+  }
+
+  private void literal(String s) throws JSONException {
+    for (int i = 0; i < s.length(); i++) {
+      if (take() != s.charAt(i)) {
+        throw error("expected " + s);
+      }
+    }
+  }
+
+  private void expect(char c) throws JSONException {
+    ws();
+    if (peek() != c) {
+      throw error("expected '" + c + "'");
+    }
+    pos++;
+  }
+
+  private boolean consume(char c) {
+    ws();
+    if (pos < len && buf[pos] == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private void ws() {
+    while (pos < len) {
+      byte b = buf[pos];
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  // Returns the byte at the current position.
+  private byte peek() throws JSONException {
+    if (pos >= len) {
+      throw error("unexpected end");
+    }
+    return buf[pos];
+  }
+
+  // Returns the byte at the current position and moves past it.
+  private byte take() throws JSONException {
+    byte b = peek();
+    pos++;
+    return b;
+  }
+
+  private JSONException error(String message) {
+    if (pos >= len) {
+      return new JSONException("Unable to read body: unexpected end of JSON");
+    }
+    return new JSONException("Unable to read body: " + message + " at offset " + pos);
+  }
+
+  private static byte[][] names(String... names) {
+    byte[][] b = new byte[names.length][];
+    for (int i = 0; i < names.length; i++) {
+      b[i] = names[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return b;
+  }
+
+  private static class TxSlot {
+    final Transaction tx = new Transaction();
+    final Date timestamp = new Date(0);
+    final ReusableMap referenceData = new ReusableMap();
+    final List<Transaction.Input> inputs = new ArrayList<>();
+    final List<Transaction.Output> outputs = new ArrayList<>();
+    final List<InputSlot> inputSlots = new ArrayList<>();
+    final List<OutputSlot> outputSlots = new ArrayList<>();
+  }
+
+  private static class InputSlot {
+    final Transaction.Input input = new Transaction.Input();
+    final ReusableMap assetDefinition = new ReusableMap();
+    final ReusableMap assetTags = new ReusableMap();
+    final ReusableMap accountTags = new ReusableMap();
+    final ReusableMap referenceData = new ReusableMap();
+  }
+
+  private static class OutputSlot {
+    final Transaction.Output output = new Transaction.Output();
+    final ReusableMap assetDefinition = new ReusableMap();
+    final ReusableMap assetTags = new ReusableMap();
+    final ReusableMap accountTags = new ReusableMap();
+    final ReusableMap referenceData = new ReusableMap();
+  }
+}
@@ -0,0 +1,537 @@
+package com.chain.api;
+
+import com.chain.common.Utils;
+import com.chain.exception.*;
+import com.chain.http.BatchResponse;
+import com.chain.http.Client;
+import com.chain.signing.Signer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * TransactionPipeline builds, signs and submits transactions as three
+ * independent stages, so that many transactions can be in each stage at once.
+ * <br>
+ * Each stage has its own bounded queue, sends batches of up to its batch
+ * size, and keeps at most its concurrency limit of batches outstanding. A
+ * stage only sends a batch once the next stage's queue has room for its
+ * results, so a slow stage fills the queues in front of it and eventually
+ * blocks {@link #submit(Transaction.Builder)}. Callers get one future per
+ * transaction, which completes with the submit response or with the error
+ * from whichever stage rejected the transaction.<br>
+ * {@link #stats(Stage)} reports each stage's queue depth, batch sizes,
+ * queueing delay and request latency. The stage with a full queue and
+ * long queueing delay is the bottleneck.
+ */
+public class TransactionPipeline {
+  /**
+   * The stages of the pipeline, in order.
+   */
+  public enum Stage {
+    BUILD,
+    SIGN,
+    SUBMIT
+  }
+
+  private final Map<Stage, StageRunner> stages = new EnumMap<>(Stage.class);
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private volatile boolean closed;
+
+  private TransactionPipeline(Builder builder) {
+    final Client client = builder.client;
+    final Signer signer = builder.signer;
+    final String waitUntil = builder.waitUntil;
+
+    StageRunner submit =
+        new StageRunner(
+            Stage.SUBMIT,
+            builder,
+            null,
+            jobs -> Transaction.submitBatchAsync(client, templates(jobs), waitUntil),
+            (job, resp) -> {
+              job.future.complete((Transaction.SubmitResponse) resp);
+              jobDone();
+            });
+    StageRunner sign =
+        new StageRunner(
+            Stage.SIGN,
+            builder,
+            submit,
+            jobs -> signer.signBatchAsync(templates(jobs)),
+            (job, tmpl) -> job.template = (Transaction.Template) tmpl);
+    StageRunner build =
+        new StageRunner(
+            Stage.BUILD,
+            builder,
+            sign,
+            jobs -> {
+              List<Transaction.Builder> builders = new ArrayList<>(jobs.size());
+              for (Job job : jobs) {
+                builders.add(job.builder);
+              }
+              return Transaction.buildBatchAsync(client, builders);
+            },
+            (job, tmpl) -> job.template = (Transaction.Template) tmpl);
+
+    stages.put(Stage.BUILD, build);
+    stages.put(Stage.SIGN, sign);
+    stages.put(Stage.SUBMIT, submit);
+    for (StageRunner stage : stages.values()) {
+      stage.start();
+    }
+  }
+
+  /**
+   * Adds a transaction to the pipeline, blocking while the build stage's
+   * queue is full.
+   * @param builder transaction builder
+   * @return a future holding the submit response. It completes exceptionally
+   * with the {@link BuildException} or {@link APIException} of the stage that
+   * rejected the transaction.
+   * @throws ChainException if the pipeline is closed or the calling thread is
+   * interrupted while waiting for room in the queue
+   */
+  public CompletableFuture<Transaction.SubmitResponse> submit(Transaction.Builder builder)
+      throws ChainException {
+    StageRunner first = stages.get(Stage.BUILD);
+    try {
+      first.space.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ChainException("Interrupted while waiting for pipeline capacity", e);
+    }
+    return enqueue(first, builder);
+  }
+
+  /**
+   * Adds a transaction to the pipeline, waiting up to the given time for room
+   * in the build stage's queue.
+   * @param builder transaction builder
+   * @param timeout the maximum time to wait
+   * @param unit the unit of timeout
+   * @return a future holding the submit response, or null if the queue stayed full
+   * @throws ChainException if the pipeline is closed or the calling thread is
+   * interrupted while waiting for room in the queue
+   */
+  public CompletableFuture<Transaction.SubmitResponse> offer(
+      Transaction.Builder builder, long timeout, TimeUnit unit) throws ChainException {
+    StageRunner first = stages.get(Stage.BUILD);
+    try {
+      if (!first.space.tryAcquire(timeout, unit)) {
+        return null;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ChainException("Interrupted while waiting for pipeline capacity", e);
+    }
+    return enqueue(first, builder);
+  }
+
+  private CompletableFuture<Transaction.SubmitResponse> enqueue(
+      StageRunner first, Transaction.Builder builder) throws ChainException {
+    // Count the job before checking whether the pipeline is closed, so that
+    // a concurrent close either sees it and leaves the stages running, or
+    // is seen here.
+    outstanding.incrementAndGet();
+    if (closed) {
+      first.space.release();
+      jobDone();
+      throw new ChainException("pipeline is closed");
+    }
+    Job job = new Job(builder);
+    first.enqueue(job);
+    return job.future;
+  }
+
+  /**
+   * Stops accepting new transactions. Transactions already added still run
+   * through every stage, after which the stage threads exit.
+   */
+  public void close() {
+    closed = true;
+    if (outstanding.get() == 0) {
+      stop();
+    }
+  }
+
+  /**
+   * Returns the number of transactions added that have not yet completed.
+   */
+  public int outstanding() {
+    return outstanding.get();
+  }
+
+  /**
+   * Returns the statistics collected so far for a stage.
+   * @param stage the pipeline stage
+   */
+  public StageStats stats(Stage stage) {
+    return stages.get(stage).stats;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    for (StageRunner stage : stages.values()) {
+      s.append(stage.stats).append('\n');
+    }
+    return s.toString();
+  }
+
+  private void jobDone() {
+    if (outstanding.decrementAndGet() == 0 && closed) {
+      stop();
+    }
+  }
+
+  private void stop() {
+    for (StageRunner stage : stages.values()) {
+      stage.stopped = true;
+    }
+  }
+
+  private static List<Transaction.Template> templates(List<Job> jobs) {
+    List<Transaction.Template> templates = new ArrayList<>(jobs.size());
+    for (Job job : jobs) {
+      templates.add(job.template);
+    }
+    return templates;
+  }
+
+  private static class Job {
+    final Transaction.Builder builder;
+    final CompletableFuture<Transaction.SubmitResponse> future = new CompletableFuture<>();
+    volatile Transaction.Template template;
+    volatile long enqueuedAt;
+
+    Job(Transaction.Builder builder) {
+      this.builder = builder;
+    }
+  }
+
+  private class StageRunner implements Runnable {
+    final Stage stage;
+    final int batchSize;
+    final long maxLingerNanos;
+    final int concurrency;
+    final Semaphore space;
+    final Semaphore inFlight;
+    final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    final StageRunner next;
+    final Function<List<Job>, CompletableFuture<? extends BatchResponse<?>>> send;
+    final BiConsumer<Job, Object> onSuccess;
+    final StageStats stats;
+    volatile boolean stopped;
+
+    StageRunner(
+        Stage stage,
+        Builder config,
+        StageRunner next,
+        Function<List<Job>, CompletableFuture<? extends BatchResponse<?>>> send,
+        BiConsumer<Job, Object> onSuccess) {
+      this.stage = stage;
+      this.batchSize = config.batchSizes.get(stage);
+      this.concurrency = config.concurrency.get(stage);
+      this.maxLingerNanos = config.maxLingerUnit.toNanos(config.maxLinger);
+      this.space = new Semaphore(config.queueCapacities.get(stage));
+      this.inFlight = new Semaphore(concurrency);
+      this.next = next;
+      this.send = send;
+      this.onSuccess = onSuccess;
+      this.stats = new StageStats(this);
+    }
+
+    void start() {
+      Thread t = new Thread(this, "chain-sdk-pipeline-" + stage.name().toLowerCase());
+      t.setDaemon(true);
+      t.start();
+    }
+
+    // The caller must already hold a unit of this stage's queue space.
+    void enqueue(Job job) {
+      job.enqueuedAt = System.nanoTime();
+      queue.add(job);
+    }
+
+    public void run() {
+      try {
+        while (!stopped || !queue.isEmpty()) {
+          Job first = queue.poll(100, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+          List<Job> batch = new ArrayList<>(batchSize);
+          batch.add(first);
+          long deadline = System.nanoTime() + maxLingerNanos;
+          while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long wait = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || wait <= 0) {
+              break;
+            }
+            Job j = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (j == null) {
+              break;
+            }
+            batch.add(j);
+          }
+          space.release(batch.size());
+
+          // Hold off until the next stage can take every result, and until
+          // a concurrency slot is free.
+          if (next != null) {
+            next.space.acquireUninterruptibly(batch.size());
+          }
+          inFlight.acquireUninterruptibly();
+          sendBatch(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void sendBatch(final List<Job> batch) {
+      final long start = System.nanoTime();
+      for (Job job : batch) {
+        stats.batching.recordQueueDelay(start - job.enqueuedAt);
+      }
+      stats.batching.recordBatch(batch.size());
+
+      CompletableFuture<? extends BatchResponse<?>> response;
+      try {
+        response = send.apply(batch);
+      } catch (RuntimeException ex) {
+        CompletableFuture<BatchResponse<?>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(ex);
+        response = failed;
+      }
+
+      response.whenComplete(
+          (resp, err) -> {
+            inFlight.release();
+            stats.recordLatency(System.nanoTime() - start);
+            for (int i = 0; i < batch.size(); i++) {
+              Job job = batch.get(i);
+              if (err != null) {
+                fail(job, Utils.unwrap(err));
+              } else if (resp.isSuccess(i)) {
+                onSuccess.accept(job, resp.successesByIndex().get(i));
+                if (next != null) {
+                  next.enqueue(job);
+                }
+              } else if (resp.isError(i)) {
+                fail(job, resp.errorsByIndex().get(i));
+              } else {
+                fail(job, new ChainException("Missing batch response for item at index " + i));
+              }
+            }
+          });
+    }
+
+    private void fail(Job job, Throwable err) {
+      if (next != null) {
+        next.space.release();
+      }
+      job.future.completeExceptionally(err);
+      jobDone();
+    }
+  }
+
+  /**
+   * Statistics for one stage of the pipeline.
+   */
+  public static class StageStats {
+    private final StageRunner runner;
+    private final Batcher.Stats batching = new Batcher.Stats();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private StageStats(StageRunner runner) {
+      this.runner = runner;
+    }
+
+    void recordLatency(long nanos) {
+      totalLatencyNanos.addAndGet(nanos);
+      long max = maxLatencyNanos.get();
+      while (nanos > max && !maxLatencyNanos.compareAndSet(max, nanos)) {
+        max = maxLatencyNanos.get();
+      }
+    }
+
+    /**
+     * Returns the stage these statistics describe.
+     */
+    public Stage stage() {
+      return runner.stage;
+    }
+
+    /**
+     * Returns the number of transactions waiting in the stage's queue.
+     */
+    public int queueDepth() {
+      return runner.queue.size();
+    }
+
+    /**
+     * Returns the number of batches sent by the stage that are awaiting a response.
+     */
+    public int inFlightBatches() {
+      return runner.concurrency - runner.inFlight.availablePermits();
+    }
+
+    /**
+     * Returns the distribution of batch sizes and the time transactions
+     * waited in the stage's queue.
+     */
+    public Batcher.Stats batching() {
+      return batching;
+    }
+
+    /**
+     * Returns the mean time, in microseconds, between sending a batch and
+     * receiving its response.
+     */
+    public double meanLatencyMicros() {
+      long n = batching.batches();
+      return n == 0 ? 0 : totalLatencyNanos.get() / 1000.0 / n;
+    }
+
+    /**
+     * Returns the longest time, in microseconds, between sending a batch and
+     * receiving its response.
+     */
+    public long maxLatencyMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: queue=%d in_flight=%d mean_latency_us=%.1f max_latency_us=%d %s",
+          stage().name().toLowerCase(),
+          queueDepth(),
+          inFlightBatches(),
+          meanLatencyMicros(),
+          maxLatencyMicros(),
+          batching);
+    }
+  }
+
+  /**
+   * A builder class for creating transaction pipelines.
+   */
+  public static class Builder {
+    private Client client;
+    private Signer signer;
+    private String waitUntil;
+    private long maxLinger;
+    private TimeUnit maxLingerUnit;
+    private Map<Stage, Integer> batchSizes = new EnumMap<>(Stage.class);
+    private Map<Stage, Integer> concurrency = new EnumMap<>(Stage.class);
+    private Map<Stage, Integer> queueCapacities = new EnumMap<>(Stage.class);
+
+    /**
+     * @param client client object which makes server requests
+     * @param signer signer for built transaction templates
+     */
+    public Builder(Client client, Signer signer) {
+      this.client = client;
+      this.signer = signer;
+      this.maxLinger = 1;
+      this.maxLingerUnit = TimeUnit.MILLISECONDS;
+      for (Stage stage : Stage.values()) {
+        batchSizes.put(stage, 50);
+        concurrency.put(stage, 4);
+        queueCapacities.put(stage, 1000);
+      }
+    }
+
+    /**
+     * Sets when the server should respond to each submitted batch.
+     * @param waitUntil none, confirmed or processed
+     */
+    public Builder setWaitUntil(String waitUntil) {
+      this.waitUntil = waitUntil;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of transactions a stage sends in one batch.
+     * Defaults to 50.
+     * @param stage the pipeline stage
+     * @param batchSize the maximum batch size
+     */
+    public Builder setBatchSize(Stage stage, int batchSize) {
+      this.batchSizes.put(stage, batchSize);
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of batches a stage keeps outstanding.
+     * Defaults to 4.
+     * @param stage the pipeline stage
+     * @param concurrency the maximum number of outstanding batches
+     */
+    public Builder setConcurrency(Stage stage, int concurrency) {
+      this.concurrency.put(stage, concurrency);
+      return this;
+    }
+
+    /**
+     * Sets the number of transactions that can wait in a stage's queue.
+     * Defaults to 1000. It must be at least the batch size of the stage
+     * before it.
+     * @param stage the pipeline stage
+     * @param capacity the queue capacity
+     */
+    public Builder setQueueCapacity(Stage stage, int capacity) {
+      this.queueCapacities.put(stage, capacity);
+      return this;
+    }
+
+    /**
+     * Sets the maximum time a stage waits for a batch to fill before sending
+     * it. Defaults to 1 millisecond.
+     * @param linger the maximum wait
+     * @param unit the unit of time
+     */
+    public Builder setMaxLinger(long linger, TimeUnit unit) {
+      this.maxLinger = linger;
+      this.maxLingerUnit = unit;
+      return this;
+    }
+
+    /**
+     * Builds a transaction pipeline with all of the provided parameters and
+     * starts its stage threads.
+     */
+    public TransactionPipeline build() {
+      Stage[] stages = Stage.values();
+      for (int i = 0; i < stages.length; i++) {
+        if (batchSizes.get(stages[i]) < 1) {
+          throw new IllegalArgumentException("batch size must be positive");
+        }
+        if (concurrency.get(stages[i]) < 1) {
+          throw new IllegalArgumentException("concurrency must be positive");
+        }
+        if (queueCapacities.get(stages[i]) < 1
+            || (i > 0 && queueCapacities.get(stages[i]) < batchSizes.get(stages[i - 1]))) {
+          throw new IllegalArgumentException(
+              "queue capacity of each stage must be at least the batch size of the stage before it");
+        }
+      }
+      return new TransactionPipeline(this);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.chain.common;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * RawJson is implemented by decoded objects that can give back the JSON
+ * text they were decoded from. {@link Utils#serializer} writes such a
+ * map-valued field as that text, so numbers and the order of keys are kept
+ * as they were received.
+ */
+public interface RawJson {
+  /**
+   * Returns the object's JSON text in the form produced by
+   * {@link #compact(String)}, or null if the object has been changed since
+   * it was decoded.
+   */
+  String rawJson();
+
+  /**
+   * Returns a JSON object as compact text: without whitespace, with numbers
+   * as they were written, and with strings escaped as Gson escapes them.
+   * Equal objects received in different layouts have the same compact text.
+   * @param json the text of a JSON object
+   * @throws IOException if the text is not a JSON object
+   */
+  static String compact(String json) throws IOException {
+    JsonReader in = new JsonReader(new StringReader(json));
+    if (in.peek() != JsonToken.BEGIN_OBJECT) {
+      throw new IOException("not a JSON object");
+    }
+    return RawJsonMap.copy(in);
+  }
+}
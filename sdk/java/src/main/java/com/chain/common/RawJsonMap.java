@@ -0,0 +1,343 @@
+package com.chain.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * RawJsonMap is a JSON object, such as reference data or tags, kept as JSON
+ * text and decoded into a map only when it is first read. Until the map is
+ * changed, it is serialized by writing the text back unchanged.<br>
+ * Gson exposes no byte range of its input, so the text is copied token by
+ * token as the object is read, without whitespace, into a buffer kept by
+ * each thread. The copy is the same bytes as compact input, except that
+ * strings are escaped as Gson's JsonWriter escapes them.<br>
+ * Reading a nested object or array from the map may change it, so after
+ * that the map is serialized from its decoded contents, as Gson would.
+ */
+class RawJsonMap extends AbstractMap<String, Object> implements RawJson {
+  private static final TypeToken<Map<String, Object>> TYPE =
+      new TypeToken<Map<String, Object>>() {};
+  private static final String EMPTY = "{}";
+  private static final int MAX_BUFFER = 64 * 1024;
+  private static final ThreadLocal<StringBuilder> TEXT =
+      ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private final TypeAdapter<Map<String, Object>> delegate;
+  private volatile String raw;
+  private volatile Map<String, Object> decoded;
+
+  private RawJsonMap(String raw, TypeAdapter<Map<String, Object>> delegate) {
+    this.raw = raw;
+    this.delegate = delegate;
+  }
+
+  @Override
+  public int size() {
+    return map().size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return map().containsKey(key);
+  }
+
+  @Override
+  public Object get(Object key) {
+    return touched(map().get(key));
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    Map<String, Object> m = map();
+    raw = null;
+    return m.put(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    Map<String, Object> m = map();
+    raw = null;
+    return m.remove(key);
+  }
+
+  @Override
+  public void clear() {
+    Map<String, Object> m = map();
+    raw = null;
+    m.clear();
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    final Map<String, Object> m = map();
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public int size() {
+        return m.size();
+      }
+
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        final Iterator<Entry<String, Object>> it = m.entrySet().iterator();
+        return new Iterator<Entry<String, Object>>() {
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          public Entry<String, Object> next() {
+            return new TrackedEntry(it.next());
+          }
+
+          public void remove() {
+            raw = null;
+            it.remove();
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public String rawJson() {
+    return raw;
+  }
+
+  @Override
+  public String toString() {
+    return map().toString();
+  }
+
+  private Map<String, Object> map() {
+    Map<String, Object> m = decoded;
+    if (m != null) {
+      return m;
+    }
+    synchronized (this) {
+      if (decoded == null) {
+        try {
+          decoded = delegate.fromJson(raw);
+        } catch (IOException e) {
+          throw new JsonParseException(e);
+        }
+      }
+      return decoded;
+    }
+  }
+
+  private Object touched(Object value) {
+    if (value instanceof Map || value instanceof List) {
+      raw = null;
+    }
+    return value;
+  }
+
+  private class TrackedEntry implements Entry<String, Object> {
+    private final Entry<String, Object> e;
+
+    TrackedEntry(Entry<String, Object> e) {
+      this.e = e;
+    }
+
+    public String getKey() {
+      return e.getKey();
+    }
+
+    public Object getValue() {
+      return touched(e.getValue());
+    }
+
+    public Object setValue(Object value) {
+      raw = null;
+      return e.setValue(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry<?, ?> other = (Entry<?, ?>) o;
+      return Objects.equals(getKey(), other.getKey())
+          && Objects.equals(getValue(), other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+
+  /**
+   * Reads a JSON object and returns it as compact JSON text, with numbers
+   * as they were written and strings escaped as Gson's JsonWriter escapes
+   * them when it is not HTML-safe.
+   */
+  static String copy(JsonReader in) throws IOException {
+    StringBuilder text = TEXT.get();
+    text.setLength(0);
+    int depth = 0;
+    boolean first = true;
+    do {
+      JsonToken token = in.peek();
+      if (!first && token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY) {
+        char last = text.charAt(text.length() - 1);
+        if (last != ':') {
+          text.append(',');
+        }
+      }
+      first = false;
+      switch (token) {
+        case BEGIN_OBJECT:
+          in.beginObject();
+          text.append('{');
+          first = true;
+          depth++;
+          break;
+        case END_OBJECT:
+          in.endObject();
+          text.append('}');
+          depth--;
+          break;
+        case BEGIN_ARRAY:
+          in.beginArray();
+          text.append('[');
+          first = true;
+          depth++;
+          break;
+        case END_ARRAY:
+          in.endArray();
+          text.append(']');
+          depth--;
+          break;
+        case NAME:
+          quote(text, in.nextName());
+          text.append(':');
+          break;
+        case STRING:
+          quote(text, in.nextString());
+          break;
+        case NUMBER:
+          // Keep the number as it was written, rather than as a double.
+          text.append(in.nextString());
+          break;
+        case BOOLEAN:
+          text.append(in.nextBoolean());
+          break;
+        case NULL:
+          in.nextNull();
+          text.append("null");
+          break;
+        default:
+          throw new JsonParseException("unexpected end of JSON object");
+      }
+    } while (depth > 0);
+    String raw = text.length() == 2 ? EMPTY : text.toString();
+    if (text.capacity() > MAX_BUFFER) {
+      TEXT.remove();
+    }
+    return raw;
+  }
+
+  // Writes a JSON string, escaped as Gson's JsonWriter escapes it when it
+  // is not HTML-safe.
+  private static void quote(StringBuilder text, String s) {
+    text.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        text.append('\\').append(c);
+      } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+        switch (c) {
+          case '\n':
+            text.append("\\n");
+            break;
+          case '\r':
+            text.append("\\r");
+            break;
+          case '\t':
+            text.append("\\t");
+            break;
+          case '\b':
+            text.append("\\b");
+            break;
+          case '\f':
+            text.append("\\f");
+            break;
+          default:
+            text.append(String.format("\\u%04x", (int) c));
+        }
+      } else {
+        text.append(c);
+      }
+    }
+    text.append('"');
+  }
+
+  /**
+   * Factory reads every JSON object bound to a Map&lt;String, Object&gt;
+   * as a RawJsonMap. It also serializes maps that implement
+   * {@link RawJson}, which Gson looks up by their runtime type.
+   */
+  static class Factory implements TypeAdapterFactory {
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      Class<?> raw = type.getRawType();
+      if (!TYPE.equals(type)
+          && !(RawJson.class.isAssignableFrom(raw) && Map.class.isAssignableFrom(raw))) {
+        return null;
+      }
+      TypeAdapter<Map<String, Object>> delegate = gson.getDelegateAdapter(this, TYPE);
+      return (TypeAdapter<T>) new Adapter(delegate);
+    }
+  }
+
+  private static class Adapter extends TypeAdapter<Map<String, Object>> {
+    private final TypeAdapter<Map<String, Object>> delegate;
+
+    Adapter(TypeAdapter<Map<String, Object>> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(JsonWriter out, Map<String, Object> value) throws IOException {
+      // Writers that build a tree, such as Gson's toJsonTree, cannot take
+      // JSON text.
+      if (value instanceof RawJson && out.getClass() == JsonWriter.class) {
+        String raw = ((RawJson) value).rawJson();
+        if (raw != null) {
+          out.jsonValue(raw);
+          return;
+        }
+      }
+      delegate.write(out, value);
+    }
+
+    @Override
+    public Map<String, Object> read(JsonReader in) throws IOException {
+      if (in.peek() != JsonToken.BEGIN_OBJECT) {
+        return delegate.read(in);
+      }
+      return new RawJsonMap(copy(in), delegate);
+    }
+  }
+}
@@ -1,8 +1,60 @@
 package com.chain.common;
 
+import com.chain.exception.ChainException;
+
 import com.google.gson.*;
 
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 public class Utils {
   public static String rfc3339DateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSSXXX";
-  public static final Gson serializer = new GsonBuilder().setDateFormat(rfc3339DateFormat).create();
+  public static final Gson serializer =
+      new GsonBuilder()
+          .setDateFormat(rfc3339DateFormat)
+          .registerTypeAdapterFactory(new RawJsonMap.Factory())
+          .create();
+
+  /**
+   * Blocks until the future completes and returns its result. If the future
+   * failed with a ChainException, that exception is rethrown as is.
+   * @param future the future to wait for
+   * @return the result of the future
+   * @throws ChainException
+   */
+  public static <T> T await(Future<T> future) throws ChainException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ChainException("Interrupted while waiting for response", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = unwrap(ex);
+      if (cause instanceof ChainException) {
+        throw (ChainException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ChainException(cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * Strips the wrappers that CompletableFuture adds around the exception
+   * an asynchronous stage failed with.
+   * @param t a throwable reported by a future
+   * @return the underlying cause
+   */
+  public static Throwable unwrap(Throwable t) {
+    while ((t instanceof CompletionException || t instanceof ExecutionException)
+        && t.getCause() != null) {
+      t = t.getCause();
+    }
+    return t;
+  }
 }
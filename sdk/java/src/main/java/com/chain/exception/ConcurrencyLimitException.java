@@ -0,0 +1,27 @@
+package com.chain.exception;
+
+/**
+ * ConcurrencyLimitException is thrown when a request is not admitted by the
+ * client's concurrency limiter, either because the limiter fails fast or
+ * because the request waited too long for the limit.
+ */
+public class ConcurrencyLimitException extends ChainException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Initializes exception with its message attribute.
+   * @param message error message
+   */
+  public ConcurrencyLimitException(String message) {
+    super(message);
+  }
+
+  /**
+   * Initializes new exception while storing original cause.
+   * @param message the error message
+   * @param cause the original cause
+   */
+  public ConcurrencyLimitException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
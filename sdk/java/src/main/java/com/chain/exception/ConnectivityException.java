@@ -16,6 +16,14 @@ public class ConnectivityException extends ChainException {
     super(formatMessage(resp));
   }
 
+  /**
+   * Initializes exception with its message attribute.
+   * @param message error message
+   */
+  public ConnectivityException(String message) {
+    super(message);
+  }
+
   /**
    * Parses the the server response into a detailed error message.
    * @param resp the server response
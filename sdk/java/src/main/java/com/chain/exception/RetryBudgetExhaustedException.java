@@ -0,0 +1,18 @@
+package com.chain.exception;
+
+/**
+ * RetryBudgetExhaustedException is thrown instead of retrying a failed
+ * request when the client's retry budget has run out. The failure that
+ * would have been retried is available as the cause.
+ */
+public class RetryBudgetExhaustedException extends ChainException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Initializes the exception with the failure that was not retried.
+   * @param cause the failure of the last attempt
+   */
+  public RetryBudgetExhaustedException(ChainException cause) {
+    super("Retry budget exhausted; not retrying after: " + cause.getMessage(), cause);
+  }
+}
@@ -8,6 +8,8 @@ import java.util.*;
 import com.chain.exception.*;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 
 import com.squareup.okhttp.Response;
 
@@ -27,25 +29,93 @@ public class BatchResponse<T> {
   public BatchResponse(Response response, Gson serializer, Type tClass, Type eClass)
       throws ChainException, IOException {
     this.response = response;
+    decode(
+        response,
+        serializer,
+        tClass,
+        eClass,
+        new Handler<T>() {
+          public void onSuccess(int index, T item) {
+            successesByIndex.put(index, item);
+          }
+
+          public void onError(int index, APIException error) {
+            errorsByIndex.put(index, error);
+          }
+        });
+  }
+
+  /**
+   * Handler receives the items of a batch response as they are decoded, so
+   * that large batches never need to be held in memory all at once.
+   * Each index is passed to exactly one of the two methods, in order.
+   */
+  public interface Handler<T> {
+    /**
+     * Called for each request object that produced a success.
+     * @param index the index of the request object
+     * @param item the decoded response object
+     */
+    void onSuccess(int index, T item);
+
+    /**
+     * Called for each request object that produced an error.
+     * @param index the index of the request object
+     * @param error the decoded error
+     */
+    void onError(int index, APIException error);
+  }
 
+  /**
+   * Decodes a batch response body in a single pass, passing each item to
+   * the handler as soon as it has been read. Only one item is held in
+   * memory at a time, and each item is deserialized once, as either an
+   * error or a success.
+   * @param response the HTTP response holding a JSON array
+   * @param serializer json deserializer
+   * @param tClass type of success objects
+   * @param eClass type of error objects
+   * @param handler receiver for decoded items
+   * @return the number of items in the batch
+   * @throws JSONException if the body is not a JSON array
+   * @throws IOException if the body cannot be read
+   */
+  public static <T> int decode(
+      Response response, Gson serializer, Type tClass, Type eClass, Handler<T> handler)
+      throws ChainException, IOException {
+    JsonParser parser = new JsonParser();
+    JsonReader reader = new JsonReader(response.body().charStream());
+    int i = 0;
     try {
-      JsonArray root = new JsonParser().parse(response.body().charStream()).getAsJsonArray();
-      for (int i = 0; i < root.size(); i++) {
-        JsonElement elem = root.get(i);
-
-        // Test for interleaved errors
-        APIException err = serializer.fromJson(elem, eClass);
-        if (err.code != null) {
-          errorsByIndex.put(i, err);
-          continue;
+      reader.beginArray();
+      while (reader.hasNext()) {
+        // An error can only be told from a success by its code, which may
+        // come after any other field, so each item is read into a tree
+        // before being deserialized as one or the other.
+        JsonElement elem = parser.parse(reader);
+        if (isError(elem)) {
+          handler.onError(i, (APIException) serializer.fromJson(elem, eClass));
+        } else {
+          handler.onSuccess(i, (T) serializer.fromJson(elem, tClass));
         }
-
-        successesByIndex.put(i, (T) serializer.fromJson(elem, tClass));
+        i++;
       }
-    } catch (IllegalStateException e) {
+      reader.endArray();
+    } catch (IllegalStateException | JsonParseException | MalformedJsonException e) {
       throw new JSONException(
           "Unable to read body: " + e.getMessage(), response.headers().get("Chain-Request-ID"));
+    } finally {
+      reader.close();
+    }
+    return i;
+  }
+
+  private static boolean isError(JsonElement elem) {
+    if (!elem.isJsonObject()) {
+      return false;
     }
+    JsonElement code = elem.getAsJsonObject().get("code");
+    return code != null && !code.isJsonNull();
   }
 
   /**
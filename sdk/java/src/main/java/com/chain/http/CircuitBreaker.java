@@ -0,0 +1,166 @@
+package com.chain.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CircuitBreaker tracks whether one of a client's base URLs is healthy
+ * enough to receive requests.<br>
+ * The circuit starts closed. It opens when, among the most recent requests
+ * to the URL, the share that failed with a connection error or a 5xx
+ * response reaches the failure rate. While it is open, the client sends no
+ * requests to the URL and instead probes it in the background. A successful
+ * probe half-opens the circuit: the next request is sent as a trial, and its
+ * outcome either closes the circuit again or reopens it.
+ */
+public final class CircuitBreaker {
+  /**
+   * The states of a circuit.
+   */
+  public enum State {
+    /**
+     * Requests are sent to the URL.
+     */
+    CLOSED,
+    /**
+     * Requests skip the URL while it is probed in the background.
+     */
+    OPEN,
+    /**
+     * A probe succeeded; a single trial request is allowed through.
+     */
+    HALF_OPEN
+  }
+
+  /**
+   * The number of requests that must be recorded before a circuit can open,
+   * unless the window is smaller.
+   */
+  public static final int MIN_REQUESTS = 5;
+
+  private final boolean[] window;
+  private final int minRequests;
+  private final double failureRate;
+  private int pos;
+  private int count;
+  private int failures;
+  private State state = State.CLOSED;
+  private boolean trialInFlight;
+  private final AtomicLong trips = new AtomicLong();
+
+  /**
+   * @param windowSize the number of recent requests considered, or zero to
+   * never open the circuit
+   * @param failureRate the share of failed requests, between 0 and 1, at
+   * which the circuit opens
+   */
+  CircuitBreaker(int windowSize, double failureRate) {
+    this.window = new boolean[windowSize];
+    this.minRequests = Math.min(windowSize, MIN_REQUESTS);
+    this.failureRate = failureRate;
+  }
+
+  /**
+   * Returns the current state of the circuit.
+   */
+  public synchronized State state() {
+    return state;
+  }
+
+  /**
+   * Returns the number of times the circuit has opened.
+   */
+  public long trips() {
+    return trips.get();
+  }
+
+  /**
+   * Returns whether a request may be sent to the URL now.
+   */
+  synchronized boolean allowsRequests() {
+    return state == State.CLOSED || (state == State.HALF_OPEN && !trialInFlight);
+  }
+
+  /**
+   * Marks the start of a request to the URL.
+   */
+  synchronized void attempt() {
+    if (state == State.HALF_OPEN) {
+      trialInFlight = true;
+    }
+  }
+
+  /**
+   * Records the outcome of a request to the URL.
+   * @param failed whether the request failed with a connection error or a
+   * 5xx response
+   * @return true if the outcome opened the circuit, in which case the
+   * caller should start probing the URL
+   */
+  synchronized boolean record(boolean failed) {
+    switch (state) {
+      case HALF_OPEN:
+        trialInFlight = false;
+        if (failed) {
+          open();
+          return true;
+        }
+        state = State.CLOSED;
+        return false;
+      case OPEN:
+        // A response to a request sent before the circuit opened.
+        return false;
+      default:
+        if (window.length == 0) {
+          return false;
+        }
+        if (count == window.length) {
+          if (window[pos]) {
+            failures--;
+          }
+        } else {
+          count++;
+        }
+        window[pos] = failed;
+        pos = (pos + 1) % window.length;
+        if (failed) {
+          failures++;
+        }
+        if (failed && count >= minRequests && failures >= failureRate * count) {
+          open();
+          return true;
+        }
+        return false;
+    }
+  }
+
+  /**
+   * Records that a request to the URL was cancelled before its outcome was
+   * known.
+   */
+  synchronized void abandon() {
+    trialInFlight = false;
+  }
+
+  /**
+   * Records a successful health probe of the URL.
+   */
+  synchronized void probeSucceeded() {
+    if (state == State.OPEN) {
+      state = State.HALF_OPEN;
+    }
+  }
+
+  private void open() {
+    state = State.OPEN;
+    trialInFlight = false;
+    pos = 0;
+    count = 0;
+    failures = 0;
+    trips.incrementAndGet();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s (%d/%d recent failures)", state, failures, count);
+  }
+}
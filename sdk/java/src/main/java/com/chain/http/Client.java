@@ -1,9 +1,11 @@
 package com.chain.http;
 
+import com.chain.api.Query;
 import com.chain.exception.*;
 import com.chain.common.*;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Type;
 import java.net.*;
 import java.nio.file.Files;
@@ -17,19 +19,33 @@ import java.security.cert.X509Certificate;
 import java.security.spec.KeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.gson.Gson;
 
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
 import com.squareup.okhttp.CertificatePinner;
 import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.RequestBody;
 import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
 
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.openssl.PEMKeyPair;
@@ -45,9 +61,20 @@ import javax.net.ssl.*;
  * to an HSM server.
  */
 public class Client {
-  private AtomicInteger urlIndex;
   private List<URL> urls;
+  private List<Endpoint> endpoints;
+  private EndpointSelector selector;
+  private int circuitWindow;
+  private double circuitFailureRate;
+  private long probeIntervalMillis;
+  private RetryBudget retryBudget;
+  private HedgePolicy hedgePolicy;
+  private ConcurrencyLimiter limiter;
+  private ClientMetrics metrics;
+  private long compressionThreshold;
+  private CompressionStats compressionStats;
   private String accessToken;
+  private Headers requestHeaders;
   private OkHttpClient httpClient;
 
   // Used to create empty, in-memory key stores.
@@ -77,9 +104,27 @@ public class Client {
       }
     }
 
-    this.urlIndex = new AtomicInteger(0);
+    List<Endpoint> endpoints = new ArrayList<>();
+    for (int i = 0; i < urls.size(); i++) {
+      CircuitBreaker circuit = new CircuitBreaker(builder.circuitWindow, builder.circuitFailureRate);
+      endpoints.add(new Endpoint(urls.get(i), i, circuit));
+    }
+
     this.urls = urls;
+    this.endpoints = Collections.unmodifiableList(endpoints);
+    this.selector =
+        builder.selector != null ? builder.selector : new EndpointSelector.Failover();
+    this.circuitWindow = builder.circuitWindow;
+    this.circuitFailureRate = builder.circuitFailureRate;
+    this.probeIntervalMillis = builder.probeIntervalMillis;
+    this.retryBudget = builder.retryBudget;
+    this.hedgePolicy = builder.hedgePolicy;
+    this.limiter = builder.limiter;
+    this.metrics = builder.metrics;
+    this.compressionThreshold = builder.compressionThreshold;
+    this.compressionStats = new CompressionStats();
     this.accessToken = builder.accessToken;
+    this.requestHeaders = buildRequestHeaders();
     this.httpClient = buildHttpClient(builder);
   }
 
@@ -138,12 +183,7 @@ public class Client {
    * @throws ChainException
    */
   public <T> T request(String action, Object body, final Type tClass) throws ChainException {
-    ResponseCreator<T> rc =
-        new ResponseCreator<T>() {
-          public T create(Response response, Gson deserializer) throws IOException {
-            return deserializer.fromJson(response.body().charStream(), tClass);
-          }
-        };
+    ResponseCreator<T> rc = jsonResponseCreator(tClass);
     return post(action, body, rc);
   }
 
@@ -156,15 +196,30 @@ public class Client {
    * @throws ChainException
    */
   public void request(String action, Object body) throws ChainException {
-    ResponseCreator<Object> rc =
-        new ResponseCreator<Object>() {
-          public Object create(Response response, Gson deserializer) throws IOException {
-            return null;
-          }
-        };
+    ResponseCreator<Void> rc = emptyResponseCreator();
     post(action, body, rc);
   }
 
+  /**
+   * Perform a single HTTP POST request against the API for a specific action,
+   * decoding the response with the given response creator. Use this method
+   * to read a response in some way other than deserializing it with Gson.
+   *
+   * The creator is called for each attempt that receives a successful
+   * response, so it may be called again if reading the body fails and the
+   * request is retried.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @param respCreator Decoder for the successful response
+   * @return the result of the post request
+   * @throws ChainException
+   */
+  public <T> T request(String action, Object body, ResponseCreator<T> respCreator)
+      throws ChainException {
+    return post(action, body, respCreator);
+  }
+
   /**
    * Perform a single HTTP POST request against the API for a specific action.
    * Use this method if you want batch semantics, i.e., the endpoint response
@@ -180,13 +235,36 @@ public class Client {
    */
   public <T> BatchResponse<T> batchRequest(
       String action, Object body, final Type tClass, final Type eClass) throws ChainException {
-    ResponseCreator<BatchResponse<T>> rc =
-        new ResponseCreator<BatchResponse<T>>() {
-          public BatchResponse<T> create(Response response, Gson deserializer)
-              throws ChainException, IOException {
-            return new BatchResponse<>(response, deserializer, tClass, eClass);
-          }
-        };
+    ResponseCreator<BatchResponse<T>> rc = batchResponseCreator(tClass, eClass);
+    return post(action, body, rc);
+  }
+
+  /**
+   * Perform a single HTTP POST request against the API for a specific action,
+   * passing each item of the batch response to a handler as it is decoded
+   * instead of collecting them into a {@link BatchResponse}. Use this method
+   * for batches too large to hold in memory at once.
+   *
+   * If the response body cannot be read to the end and the request is
+   * retried, the handler sees the items of the retried response from index
+   * zero again.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @param tClass Type of object to be deserialized from the response JSON
+   * @param eClass Type of error object to be deserialized from the response JSON
+   * @param handler Receiver for each decoded success or error
+   * @return the number of items in the batch
+   * @throws ChainException
+   */
+  public <T> int batchRequest(
+      String action,
+      Object body,
+      final Type tClass,
+      final Type eClass,
+      final BatchResponse.Handler<T> handler)
+      throws ChainException {
+    ResponseCreator<Integer> rc = streamingBatchResponseCreator(tClass, eClass, handler);
     return post(action, body, rc);
   }
 
@@ -208,31 +286,172 @@ public class Client {
    */
   public <T> T singletonBatchRequest(
       String action, Object body, final Type tClass, final Type eClass) throws ChainException {
-    ResponseCreator<T> rc =
-        new ResponseCreator<T>() {
-          public T create(Response response, Gson deserializer) throws ChainException, IOException {
-            BatchResponse<T> batch = new BatchResponse<>(response, deserializer, tClass, eClass);
-
-            List<APIException> errors = batch.errors();
-            if (errors.size() == 1) {
-              // This throw must occur within this lambda in order for APIClient's
-              // retry logic to take effect.
-              throw errors.get(0);
-            }
+    ResponseCreator<T> rc = singletonBatchResponseCreator(tClass, eClass);
+    return post(action, body, rc);
+  }
 
-            List<T> successes = batch.successes();
-            if (successes.size() == 1) {
-              return successes.get(0);
-            }
+  /**
+   * Asynchronous version of {@link #request(String, Object, Type)}. The
+   * request is dispatched without blocking the calling thread, and retries
+   * are scheduled rather than slept through.
+   *
+   * The returned future completes exceptionally with the same
+   * {@link ChainException} the synchronous call would have thrown.
+   * Cancelling the future cancels any in-flight HTTP call and any pending
+   * retry.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @param tClass Type of object to be deserialized from the response JSON
+   * @return a future holding the result of the post request
+   */
+  public <T> CompletableFuture<T> requestAsync(String action, Object body, final Type tClass) {
+    ResponseCreator<T> rc = jsonResponseCreator(tClass);
+    return postAsync(action, body, rc);
+  }
 
-            // We should never get here, unless there is a bug in either the SDK or
-            // API code, causing a non-singleton response.
-            throw new ChainException(
-                "Invalid singleton response, request ID "
-                    + batch.response().headers().get("Chain-Request-ID"));
-          }
-        };
-    return post(action, body, rc);
+  /**
+   * Asynchronous version of {@link #request(String, Object)}, ignoring the
+   * body of the response.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @return a future that completes when the request succeeds
+   */
+  public CompletableFuture<Void> requestAsync(String action, Object body) {
+    ResponseCreator<Void> rc = emptyResponseCreator();
+    return postAsync(action, body, rc);
+  }
+
+  /**
+   * Asynchronous version of {@link #request(String, Object, ResponseCreator)}.
+   * The creator runs on the thread that receives the response.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @param respCreator Decoder for the successful response
+   * @return a future holding the result of the post request
+   */
+  public <T> CompletableFuture<T> requestAsync(
+      String action, Object body, ResponseCreator<T> respCreator) {
+    return postAsync(action, body, respCreator);
+  }
+
+  /**
+   * Asynchronous version of {@link #batchRequest(String, Object, Type, Type)}.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @param tClass Type of object to be deserialized from the response JSON
+   * @param eClass Type of error object to be deserialized from the response JSON
+   * @return a future holding the result of the post request
+   */
+  public <T> CompletableFuture<BatchResponse<T>> batchRequestAsync(
+      String action, Object body, final Type tClass, final Type eClass) {
+    ResponseCreator<BatchResponse<T>> rc = batchResponseCreator(tClass, eClass);
+    return postAsync(action, body, rc);
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link #batchRequest(String, Object, Type, Type, BatchResponse.Handler)}.
+   * The handler is called on the HTTP client's thread as items are decoded.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @param tClass Type of object to be deserialized from the response JSON
+   * @param eClass Type of error object to be deserialized from the response JSON
+   * @param handler Receiver for each decoded success or error
+   * @return a future holding the number of items in the batch
+   */
+  public <T> CompletableFuture<Integer> batchRequestAsync(
+      String action,
+      Object body,
+      final Type tClass,
+      final Type eClass,
+      final BatchResponse.Handler<T> handler) {
+    ResponseCreator<Integer> rc = streamingBatchResponseCreator(tClass, eClass, handler);
+    return postAsync(action, body, rc);
+  }
+
+  /**
+   * Asynchronous version of {@link #singletonBatchRequest(String, Object, Type, Type)}.
+   * If the single item in the batch fails, the future completes exceptionally
+   * with the item's {@link APIException}.
+   *
+   * @param action The requested API action
+   * @param body Body payload sent to the API as JSON
+   * @param tClass Type of object to be deserialized from the response JSON
+   * @param eClass Type of error object to be deserialized from the response JSON
+   * @return a future holding the result of the post request
+   */
+  public <T> CompletableFuture<T> singletonBatchRequestAsync(
+      String action, Object body, final Type tClass, final Type eClass) {
+    ResponseCreator<T> rc = singletonBatchResponseCreator(tClass, eClass);
+    return postAsync(action, body, rc);
+  }
+
+  private static <T> ResponseCreator<T> jsonResponseCreator(final Type tClass) {
+    return new ResponseCreator<T>() {
+      public T create(Response response, Gson deserializer) throws IOException {
+        return deserializer.fromJson(response.body().charStream(), tClass);
+      }
+    };
+  }
+
+  private static ResponseCreator<Void> emptyResponseCreator() {
+    return new ResponseCreator<Void>() {
+      public Void create(Response response, Gson deserializer) throws IOException {
+        return null;
+      }
+    };
+  }
+
+  private static <T> ResponseCreator<BatchResponse<T>> batchResponseCreator(
+      final Type tClass, final Type eClass) {
+    return new ResponseCreator<BatchResponse<T>>() {
+      public BatchResponse<T> create(Response response, Gson deserializer)
+          throws ChainException, IOException {
+        return new BatchResponse<>(response, deserializer, tClass, eClass);
+      }
+    };
+  }
+
+  private static <T> ResponseCreator<Integer> streamingBatchResponseCreator(
+      final Type tClass, final Type eClass, final BatchResponse.Handler<T> handler) {
+    return new ResponseCreator<Integer>() {
+      public Integer create(Response response, Gson deserializer)
+          throws ChainException, IOException {
+        return BatchResponse.decode(response, deserializer, tClass, eClass, handler);
+      }
+    };
+  }
+
+  private static <T> ResponseCreator<T> singletonBatchResponseCreator(
+      final Type tClass, final Type eClass) {
+    return new ResponseCreator<T>() {
+      public T create(Response response, Gson deserializer) throws ChainException, IOException {
+        BatchResponse<T> batch = new BatchResponse<>(response, deserializer, tClass, eClass);
+
+        List<APIException> errors = batch.errors();
+        if (errors.size() == 1) {
+          // This throw must occur within this lambda in order for APIClient's
+          // retry logic to take effect.
+          throw errors.get(0);
+        }
+
+        List<T> successes = batch.successes();
+        if (successes.size() == 1) {
+          return successes.get(0);
+        }
+
+        // We should never get here, unless there is a bug in either the SDK or
+        // API code, causing a non-singleton response.
+        throw new ChainException(
+            "Invalid singleton response, request ID "
+                + batch.response().headers().get("Chain-Request-ID"));
+      }
+    };
   }
 
   /**
@@ -251,6 +470,55 @@ public class Client {
     return new ArrayList<>(this.urls);
   }
 
+  /**
+   * Returns the client's endpoints, one per base URL, with their request
+   * statistics.
+   * @return the client's endpoints
+   */
+  public List<Endpoint> endpoints() {
+    return this.endpoints;
+  }
+
+  /**
+   * Returns the budget limiting the client's retries.
+   * @return the retry budget, or null if retries are not limited
+   */
+  public RetryBudget retryBudget() {
+    return this.retryBudget;
+  }
+
+  /**
+   * Returns the policy for hedging read requests.
+   * @return the hedge policy, or null if requests are not hedged
+   */
+  public HedgePolicy hedgePolicy() {
+    return this.hedgePolicy;
+  }
+
+  /**
+   * Returns the limiter adapting the number of requests in flight.
+   * @return the concurrency limiter, or null if concurrency is not limited
+   */
+  public ConcurrencyLimiter concurrencyLimiter() {
+    return this.limiter;
+  }
+
+  /**
+   * Returns the sizes of compressed request and response bodies before and
+   * after compression, and the time spent compressing them.
+   */
+  public CompressionStats compressionStats() {
+    return this.compressionStats;
+  }
+
+  /**
+   * Returns the listener receiving the client's request measurements.
+   * @return the metrics listener, or null if none is registered
+   */
+  public ClientMetrics metrics() {
+    return this.metrics;
+  }
+
   /**
    * Returns true if a client access token stored in the client.
    * @return a boolean
@@ -339,36 +607,43 @@ public class Client {
    */
   private <T> T post(String path, Object body, ResponseCreator<T> respCreator)
       throws ChainException {
-    RequestBody requestBody = RequestBody.create(this.JSON, Utils.serializer.toJson(body));
-    Request req;
+    if (this.metrics == null) {
+      return postWithRetries(path, body, respCreator);
+    }
+    long start = System.nanoTime();
+    Throwable error = null;
+    try {
+      return postWithRetries(path, body, respCreator);
+    } catch (ChainException | RuntimeException ex) {
+      error = ex;
+      throw ex;
+    } finally {
+      requestCompleted(path, start, error);
+    }
+  }
+
+  private <T> T postWithRetries(String path, Object body, ResponseCreator<T> respCreator)
+      throws ChainException {
+    RequestBody requestBody = new JsonRequestBody(body);
+    if (this.hedgePolicy != null && this.hedgePolicy.hedgeable(path, body)) {
+      // Hedging races asynchronous calls against each other.
+      return Utils.await(new HedgedPost<>(path, requestBody, respCreator).future);
+    }
+
+    if (this.retryBudget != null) {
+      this.retryBudget.deposit();
+    }
 
+    ConcurrencyLimiter limiter = limiterFor(body);
     ChainException exception = null;
+    Endpoint previous = null;
     for (int attempt = 1; attempt - 1 <= MAX_RETRIES; attempt++) {
-
-      int idx = this.urlIndex.get();
-      URL endpointURL;
-      try {
-        URI u = new URI(this.urls.get(idx % this.urls.size()).toString() + "/" + path);
-        u = u.normalize();
-        endpointURL = new URL(u.toString());
-      } catch (MalformedURLException ex) {
-        throw new BadURLException(ex.getMessage());
-      } catch (URISyntaxException ex) {
-        throw new BadURLException(ex.getMessage());
-      }
-
-      Request.Builder builder =
-          new Request.Builder()
-              .header("User-Agent", "chain-sdk-java/" + version)
-              .url(endpointURL)
-              .method("POST", requestBody);
-      if (hasAccessToken()) {
-        builder = builder.header("Authorization", buildCredentials());
-      }
-      req = builder.build();
-
-      // Wait between retrys. The first attempt will not wait at all.
+      // Wait between retrys. The first attempt will not wait at all. A
+      // retry the budget denies fails at once rather than after the delay.
       if (attempt > 1) {
+        if (!retryAllowed()) {
+          throw new RetryBudgetExhaustedException(exception);
+        }
         int delayMillis = retryDelayMillis(attempt - 1);
         try {
           TimeUnit.MILLISECONDS.sleep(delayMillis);
@@ -376,40 +651,658 @@ public class Client {
         }
       }
 
+      if (limiter != null) {
+        limiter.acquire();
+      }
+      Endpoint endpoint = selectEndpoint(null);
+      if (endpoint == null) {
+        releasePermit(limiter);
+        exception = allCircuitsOpen();
+        continue;
+      }
+      ClientMetrics.Attempt event = startAttempt(path, endpoint, attempt, previous);
+      Request req;
       try {
-        Response resp = this.checkError(this.httpClient.newCall(req).execute());
-        return respCreator.create(resp, Utils.serializer);
+        req = buildRequest(endpoint, path, countWritten(requestBody, event));
+      } catch (BadURLException ex) {
+        releasePermit(limiter);
+        throw ex;
+      }
+      previous = endpoint;
+      long start = endpoint.begin();
+      try {
+        Response resp = this.httpClient.newCall(req).execute();
+        resp = this.checkError(observe(resp, event));
+        T result = respCreator.create(resp, Utils.serializer);
+        finish(limiter, path, endpoint, start, event, null);
+        return result;
       } catch (IOException ex) {
-        // This URL's process might be unhealthy; move to the next.
-        this.nextURL(idx);
-
-        // The OkHttp library already performs retries for some
-        // I/O-related errors, but we've hit this case in a leader
-        // failover, so do our own retries too.
-        exception = new ConfigurationException(ex.getMessage());
-      } catch (ConnectivityException ex) {
-        // This URL's process might be unhealthy; move to the next.
-        this.nextURL(idx);
-
-        // ConnectivityExceptions are always retriable.
-        exception = ex;
-      } catch (APIException ex) {
-        // Check if this error is retriable (either it's a status code that's
-        // always retriable or the error is explicitly marked as temporary.
-        if (!isRetriableStatusCode(ex.statusCode) && !ex.temporary) {
-          throw ex;
+        exception = retriableException(limiter, path, endpoint, start, event, ex);
+      } catch (ChainException ex) {
+        exception = retriableException(limiter, path, endpoint, start, event, ex);
+      } catch (RuntimeException ex) {
+        finish(limiter, path, endpoint, start, event, ex);
+        throw ex;
+      }
+    }
+    throw exception;
+  }
+
+  /**
+   * Builds and enqueues an HTTP Post request. The retry policy is the same as
+   * {@link #post(String, Object, ResponseCreator)}, but delays between
+   * attempts are scheduled instead of slept.
+   * @param path the path to the endpoint
+   * @param body the request body
+   * @param respCreator object specifying the response structure
+   * @return a future holding a response deserialized into type T
+   */
+  private <T> CompletableFuture<T> postAsync(
+      String path, Object body, ResponseCreator<T> respCreator) {
+    long start = System.nanoTime();
+    RequestBody requestBody = new JsonRequestBody(body);
+    CompletableFuture<T> future;
+    if (this.hedgePolicy != null && this.hedgePolicy.hedgeable(path, body)) {
+      future = new HedgedPost<>(path, requestBody, respCreator).future;
+    } else {
+      if (this.retryBudget != null) {
+        this.retryBudget.deposit();
+      }
+      AsyncPost<T> p = new AsyncPost<>(path, requestBody, respCreator, limiterFor(body), null);
+      p.attempt();
+      future = p.future;
+    }
+    if (this.metrics != null) {
+      future.whenComplete((result, err) -> requestCompleted(path, start, err));
+    }
+    return future;
+  }
+
+  /**
+   * HedgedPost sends a read request and, if it has not completed within
+   * the hedge delay for its action, a duplicate to a different URL. The
+   * first successful response completes the request and cancels the other
+   * call; the request fails only once both calls have failed.
+   */
+  private class HedgedPost<T> {
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final AsyncPost<T> primary;
+    private AsyncPost<T> hedge;
+
+    HedgedPost(String path, RequestBody requestBody, ResponseCreator<T> respCreator) {
+      if (retryBudget != null) {
+        retryBudget.deposit();
+      }
+      hedgePolicy.budget().deposit();
+
+      primary = new AsyncPost<>(path, requestBody, respCreator, limiter, null);
+      primary.recordLatency = true;
+      primary.future.whenComplete((result, err) -> settle(primary, result, err));
+      future.whenComplete(
+          (result, err) -> {
+            if (future.isCancelled()) {
+              cancel(primary);
+              cancel(hedge());
+            }
+          });
+      primary.attempt();
+
+      long delay = hedgePolicy.delayMicros(path);
+      if (delay < 0 || endpoints.size() < 2) {
+        return;
+      }
+      retryScheduler()
+          .schedule(
+              new Runnable() {
+                public void run() {
+                  launchHedge(path, requestBody, respCreator);
+                }
+              },
+              delay,
+              TimeUnit.MICROSECONDS);
+    }
+
+    private void launchHedge(String path, RequestBody requestBody, ResponseCreator<T> respCreator) {
+      AsyncPost<T> h;
+      synchronized (this) {
+        if (future.isDone() || primary.future.isDone()) {
+          return;
+        }
+        Endpoint busy = primary.endpoint;
+        if (selectEndpoint(busy) == null || !hedgePolicy.budget().tryWithdraw()) {
+          return;
         }
+        h = new AsyncPost<>(path, requestBody, respCreator, limiter, busy);
+        hedge = h;
+      }
+      hedgePolicy.hedged();
+      final AsyncPost<T> hedgePost = h;
+      h.future.whenComplete((result, err) -> settle(hedgePost, result, err));
+      h.attempt();
+    }
+
+    private synchronized AsyncPost<T> hedge() {
+      return hedge;
+    }
 
-        // This URL's process might be unhealthy; move to the next.
-        this.nextURL(idx);
-        exception = ex;
+    private void settle(AsyncPost<T> post, T result, Throwable err) {
+      AsyncPost<T> other;
+      synchronized (this) {
+        other = post == primary ? hedge : primary;
+        if (err != null && other != null && !other.future.isDone()) {
+          return; // The other call may still succeed.
+        }
+      }
+      if (err != null) {
+        future.completeExceptionally(err);
+        return;
+      }
+      if (future.complete(result)) {
+        if (post != primary) {
+          hedgePolicy.hedgeWon();
+        }
+        cancel(other);
       }
     }
-    throw exception;
+
+    private void cancel(AsyncPost<T> post) {
+      if (post != null) {
+        post.future.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * AsyncPost tracks the state of a single asynchronous request across its
+   * attempts. Each attempt is handed to OkHttp's dispatcher; no thread is held
+   * while the call is queued or while waiting to retry.
+   */
+  private class AsyncPost<T> implements Callback {
+    private final String path;
+    private final RequestBody requestBody;
+    private final ResponseCreator<T> respCreator;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private final ConcurrencyLimiter limiter;
+    private final Endpoint avoid;
+    private boolean recordLatency;
+
+    private int attempt;
+    private ChainException exception;
+    private volatile Endpoint endpoint;
+    private long start;
+    private ClientMetrics.Attempt event;
+    private volatile Call call;
+    private volatile CompletableFuture<Void> admission;
+
+    /**
+     * @param limiter the limiter admitting each attempt, or null
+     * @param avoid an endpoint the first attempt should not be sent to, or null
+     */
+    AsyncPost(
+        String path,
+        RequestBody requestBody,
+        ResponseCreator<T> respCreator,
+        ConcurrencyLimiter limiter,
+        Endpoint avoid) {
+      this.path = path;
+      this.requestBody = requestBody;
+      this.respCreator = respCreator;
+      this.limiter = limiter;
+      this.avoid = avoid;
+      this.future.whenComplete(
+          (result, err) -> {
+            if (!this.future.isCancelled()) {
+              return;
+            }
+            Call c = this.call;
+            if (c != null) {
+              c.cancel();
+            }
+            CompletableFuture<Void> a = this.admission;
+            if (a != null) {
+              a.cancel(false); // withdraw from the limiter's queue
+            }
+          });
+    }
+
+    void attempt() {
+      if (future.isDone()) {
+        return; // cancelled by the caller while waiting to retry
+      }
+      if (limiter == null) {
+        send();
+        return;
+      }
+      CompletableFuture<Void> admitted = limiter.acquireAsync();
+      admission = admitted;
+      admitted.whenComplete(
+          (v, err) -> {
+            if (err != null) {
+              future.completeExceptionally(err);
+            } else {
+              send();
+            }
+          });
+    }
+
+    private void send() {
+      if (future.isDone()) {
+        releasePermit(limiter); // cancelled by the caller while waiting for the limit
+        return;
+      }
+      attempt++;
+      Endpoint previous = endpoint;
+      endpoint = selectEndpoint(attempt == 1 ? avoid : null);
+      if (endpoint == null) {
+        releasePermit(limiter);
+        retry(allCircuitsOpen());
+        return;
+      }
+      event = startAttempt(path, endpoint, attempt, previous);
+      try {
+        call = httpClient.newCall(buildRequest(endpoint, path, countWritten(requestBody, event)));
+      } catch (ChainException ex) {
+        releasePermit(limiter);
+        future.completeExceptionally(ex);
+        return;
+      }
+      start = endpoint.begin();
+      call.enqueue(this);
+    }
+
+    @Override
+    public void onFailure(Request request, IOException ex) {
+      if (future.isCancelled()) {
+        // The call was cancelled, which says nothing about the endpoint.
+        endpoint.abandon();
+        releasePermit(limiter);
+        attemptCompleted(event, start, ex);
+        return;
+      }
+      fail(ex);
+    }
+
+    @Override
+    public void onResponse(Response response) {
+      try {
+        T result = respCreator.create(checkError(observe(response, event)), Utils.serializer);
+        finish(limiter, path, endpoint, start, event, null);
+        if (recordLatency) {
+          hedgePolicy.record(path, System.nanoTime() - start);
+        }
+        future.complete(result);
+      } catch (IOException ex) {
+        fail(ex);
+      } catch (ChainException ex) {
+        fail(ex);
+      } catch (RuntimeException ex) {
+        finish(limiter, path, endpoint, start, event, ex);
+        future.completeExceptionally(ex);
+      }
+    }
+
+    private void fail(Exception ex) {
+      ChainException exception;
+      try {
+        exception = retriableException(limiter, path, endpoint, start, event, ex);
+      } catch (ChainException fatal) {
+        future.completeExceptionally(fatal);
+        return;
+      }
+      retry(exception);
+    }
+
+    private void retry(ChainException exception) {
+      this.exception = exception;
+      if (future.isDone()) {
+        return; // cancelled by the caller
+      }
+
+      if (attempt - 1 >= MAX_RETRIES) {
+        future.completeExceptionally(exception);
+        return;
+      }
+      if (!retryAllowed()) {
+        future.completeExceptionally(new RetryBudgetExhaustedException(exception));
+        return;
+      }
+
+      retryScheduler()
+          .schedule(
+              new Runnable() {
+                public void run() {
+                  attempt();
+                }
+              },
+              retryDelayMillis(attempt),
+              TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Builds the HTTP request for a single attempt against an endpoint.
+   */
+  private Request buildRequest(Endpoint endpoint, String path, RequestBody requestBody)
+      throws BadURLException {
+    return new Request.Builder()
+        .url(endpoint.resolve(path))
+        .headers(this.requestHeaders)
+        .method("POST", requestBody)
+        .build();
+  }
+
+  /**
+   * Builds the headers sent with every request, once per client.
+   */
+  private Headers buildRequestHeaders() {
+    Headers.Builder headers = new Headers.Builder().add("User-Agent", "chain-sdk-java/" + version);
+    if (hasAccessToken()) {
+      headers.add("Authorization", buildCredentials());
+    }
+    return headers.build();
+  }
+
+  /**
+   * Chooses the endpoint for the next attempt among those whose circuit
+   * accepts requests.
+   * @param avoid an endpoint not to choose, or null
+   * @return the endpoint, or null if no endpoint can be chosen
+   */
+  private Endpoint selectEndpoint(Endpoint avoid) {
+    List<Endpoint> available = this.endpoints;
+    for (int i = 0; i < this.endpoints.size(); i++) {
+      Endpoint endpoint = this.endpoints.get(i);
+      if (endpoint == avoid || !endpoint.circuit().allowsRequests()) {
+        available = new ArrayList<>(this.endpoints.size());
+        for (Endpoint e : this.endpoints) {
+          if (e != avoid && e.circuit().allowsRequests()) {
+            available.add(e);
+          }
+        }
+        break;
+      }
+    }
+    if (available.isEmpty()) {
+      return null;
+    }
+    return this.selector.select(available);
+  }
+
+  private ClientMetrics.Attempt startAttempt(
+      String path, Endpoint endpoint, int attempt, Endpoint previous) {
+    if (this.metrics == null) {
+      return null;
+    }
+    boolean failover = attempt > 1 && previous != endpoint;
+    return new ClientMetrics.Attempt(path, endpoint.url(), attempt, failover);
+  }
+
+  private RequestBody countWritten(RequestBody body, ClientMetrics.Attempt event) {
+    return event == null ? body : new CountingRequestBody(body, event);
+  }
+
+  /**
+   * Records the status of a response, and wraps its body to count the bytes
+   * read from it.
+   */
+  private Response observe(Response response, final ClientMetrics.Attempt event)
+      throws IOException {
+    if (event == null) {
+      return response;
+    }
+    final ResponseBody body = response.body();
+    event.setResponse(response.code(), body.contentLength());
+    final BufferedSource source =
+        Okio.buffer(
+            new ForwardingSource(body.source()) {
+              @Override
+              public long read(Buffer sink, long byteCount) throws IOException {
+                long n = super.read(sink, byteCount);
+                if (n > 0) {
+                  event.addBytesRead(n);
+                }
+                return n;
+              }
+            });
+    ResponseBody counted =
+        new ResponseBody() {
+          @Override
+          public MediaType contentType() {
+            return body.contentType();
+          }
+
+          @Override
+          public long contentLength() throws IOException {
+            return body.contentLength();
+          }
+
+          @Override
+          public BufferedSource source() {
+            return source;
+          }
+        };
+    return response.newBuilder().body(counted).build();
+  }
+
+  private void attemptCompleted(ClientMetrics.Attempt event, long start, Throwable error) {
+    if (event == null) {
+      return;
+    }
+    event.complete(System.nanoTime() - start, error);
+    try {
+      this.metrics.attemptCompleted(event);
+    } catch (RuntimeException ex) {
+      // Metrics must not affect requests.
+    }
+  }
+
+  private void requestCompleted(String path, long start, Throwable error) {
+    try {
+      this.metrics.requestCompleted(path, System.nanoTime() - start, Utils.unwrap(error));
+    } catch (RuntimeException ex) {
+      // Metrics must not affect requests.
+    }
+  }
+
+  private static void releasePermit(ConcurrencyLimiter limiter) {
+    if (limiter != null) {
+      limiter.release();
+    }
+  }
+
+  /**
+   * Returns the limiter that admits a request, or null if it is not limited.
+   * Long-polling queries wait for as long as their timeout by design, so
+   * they neither hold a permit nor count toward the limiter's latencies.
+   */
+  private ConcurrencyLimiter limiterFor(Object body) {
+    if (body instanceof Query && ((Query) body).ascendingWithLongPoll) {
+      return null;
+    }
+    return this.limiter;
+  }
+
+  private boolean retryAllowed() {
+    return this.retryBudget == null || this.retryBudget.tryWithdraw();
+  }
+
+  private ConnectivityException allCircuitsOpen() {
+    // Retried like any connectivity failure, giving the background probes
+    // time to find a URL that has recovered.
+    return new ConnectivityException(
+        "No URL is accepting requests: every circuit breaker is open.");
+  }
+
+  /**
+   * Records the outcome of an attempt against an endpoint.
+   * @param event the attempt's metrics, or null if metrics are not recorded
+   * @param ex the exception that ended the attempt, or null if it succeeded
+   */
+  private void finish(
+      ConcurrencyLimiter limiter,
+      String path,
+      Endpoint endpoint,
+      long start,
+      ClientMetrics.Attempt event,
+      Exception ex) {
+    attemptCompleted(event, start, ex);
+    boolean failed = false;
+    boolean unhealthy = false;
+    boolean overloaded = false;
+    if (ex instanceof RuntimeException) {
+      // The endpoint answered, but the response could not be used.
+    } else if (ex instanceof IOException || ex instanceof ConnectivityException) {
+      failed = true;
+      unhealthy = true;
+      overloaded = ex instanceof SocketTimeoutException;
+    } else if (ex instanceof APIException) {
+      APIException apiEx = (APIException) ex;
+      failed = isRetriable(apiEx);
+      unhealthy = apiEx.statusCode / 100 == 5;
+      overloaded = apiEx.statusCode == 429 || apiEx.statusCode == 503;
+    }
+
+    if (limiter != null) {
+      limiter.release(path, System.nanoTime() - start, overloaded);
+    }
+    endpoint.end(start, failed);
+    if (failed) {
+      // This URL's process might be unhealthy; move to the next.
+      this.selector.failed(this.endpoints, endpoint);
+    }
+    if (endpoint.circuit().record(unhealthy)) {
+      scheduleProbe(endpoint);
+    }
+  }
+
+  /**
+   * Records the failure of an attempt against an endpoint and classifies
+   * it. Retriable failures are returned so they can be reported once
+   * retries are exhausted; anything else is rethrown.
+   */
+  private ChainException retriableException(
+      ConcurrencyLimiter limiter,
+      String path,
+      Endpoint endpoint,
+      long start,
+      ClientMetrics.Attempt event,
+      Exception ex)
+      throws ChainException {
+    finish(limiter, path, endpoint, start, event, ex);
+    if (ex instanceof IOException) {
+      // The OkHttp library already performs retries for some
+      // I/O-related errors, but we've hit this case in a leader
+      // failover, so do our own retries too.
+      return new ConfigurationException(ex.getMessage());
+    } else if (ex instanceof ConnectivityException) {
+      // ConnectivityExceptions are always retriable.
+      return (ConnectivityException) ex;
+    } else if (ex instanceof APIException) {
+      APIException apiEx = (APIException) ex;
+      if (!isRetriable(apiEx)) {
+        throw apiEx;
+      }
+      return apiEx;
+    } else if (ex instanceof ChainException) {
+      throw (ChainException) ex;
+    }
+    throw new ChainException(ex.getMessage(), ex);
+  }
+
+  // Check if this error is retriable (either it's a status code that's
+  // always retriable or the error is explicitly marked as temporary).
+  private static boolean isRetriable(APIException ex) {
+    return isRetriableStatusCode(ex.statusCode) || ex.temporary;
+  }
+
+  /**
+   * Probes an endpoint whose circuit is open after the probe interval, by
+   * requesting Core's info. The probe holds only a weak reference to the
+   * client, so probing stops once the client is no longer in use.
+   */
+  private void scheduleProbe(final Endpoint endpoint) {
+    final WeakReference<Client> ref = new WeakReference<>(this);
+    retryScheduler()
+        .schedule(
+            new Runnable() {
+              public void run() {
+                Client client = ref.get();
+                if (client != null) {
+                  client.probe(endpoint);
+                }
+              }
+            },
+            this.probeIntervalMillis,
+            TimeUnit.MILLISECONDS);
+  }
+
+  private void probe(final Endpoint endpoint) {
+    if (endpoint.circuit().state() != CircuitBreaker.State.OPEN) {
+      return;
+    }
+    Request req;
+    try {
+      req = buildRequest(endpoint, "info", RequestBody.create(JSON, "{}"));
+    } catch (BadURLException ex) {
+      return; // No request to this URL can succeed.
+    }
+    this.httpClient
+        .newCall(req)
+        .enqueue(
+            new Callback() {
+              @Override
+              public void onFailure(Request request, IOException ex) {
+                scheduleProbe(endpoint);
+              }
+
+              @Override
+              public void onResponse(Response response) {
+                boolean healthy;
+                try {
+                  checkError(response);
+                  healthy = true;
+                } catch (APIException ex) {
+                  // The node is answering, even if it rejects the probe.
+                  healthy = ex.statusCode / 100 != 5;
+                } catch (ChainException ex) {
+                  healthy = false;
+                }
+                try {
+                  response.body().close();
+                } catch (IOException ex) {
+                }
+                if (healthy) {
+                  endpoint.circuit().probeSucceeded();
+                } else {
+                  scheduleProbe(endpoint);
+                }
+              }
+            });
+  }
+
+  private static ScheduledExecutorService retryScheduler;
+
+  private static synchronized ScheduledExecutorService retryScheduler() {
+    if (retryScheduler == null) {
+      retryScheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "chain-sdk-retry");
+                  t.setDaemon(true);
+                  return t;
+                }
+              });
+    }
+    return retryScheduler;
   }
 
   private OkHttpClient buildHttpClient(Builder builder) throws ConfigurationException {
     OkHttpClient httpClient = builder.baseHttpClient.clone();
+    if (httpClient.getSocketFactory() == null) {
+      httpClient.setSocketFactory(new NoDelaySocketFactory());
+    }
 
     try {
       if (builder.trustManagers != null) {
@@ -438,9 +1331,27 @@ public class Client {
     if (builder.cp != null) {
       httpClient.setCertificatePinner(builder.cp);
     }
-    if (builder.logger != null) {
+    if (builder.loggingInterceptor != null) {
+      httpClient.interceptors().add(builder.loggingInterceptor);
+    } else if (builder.logger != null) {
       httpClient.interceptors().add(new LoggingInterceptor(builder.logger, builder.logLevel));
     }
+    // Added after the logger, so that it logs bodies uncompressed. A client
+    // built from another replaces that client's interceptor.
+    for (Iterator<Interceptor> it = httpClient.interceptors().iterator(); it.hasNext(); ) {
+      if (it.next() instanceof CompressionInterceptor) {
+        it.remove();
+      }
+    }
+    httpClient
+        .interceptors()
+        .add(new CompressionInterceptor(builder.compressionThreshold, this.compressionStats));
+    if (builder.maxRequests > 0) {
+      Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequests(builder.maxRequests);
+      dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+      httpClient.setDispatcher(dispatcher);
+    }
 
     return httpClient;
   }
@@ -506,17 +1417,6 @@ public class Client {
     return response;
   }
 
-  private void nextURL(int failedIndex) {
-    if (this.urls.size() == 1) {
-      return; // No point contending on the CAS if there's only one URL.
-    }
-
-    // A request to the url at failedIndex just failed. Move to the next
-    // URL in the list.
-    int nextIndex = failedIndex + 1;
-    this.urlIndex.compareAndSet(failedIndex, nextIndex);
-  }
-
   private String buildCredentials() {
     String user = "";
     String pass = "";
@@ -582,6 +1482,18 @@ public class Client {
     private ConnectionPool pool;
     private OutputStream logger;
     private LoggingInterceptor.Level logLevel;
+    private LoggingInterceptor loggingInterceptor;
+    private int maxRequests;
+    private int maxRequestsPerHost;
+    private EndpointSelector selector;
+    private int circuitWindow;
+    private double circuitFailureRate;
+    private long probeIntervalMillis;
+    private RetryBudget retryBudget;
+    private HedgePolicy hedgePolicy;
+    private ConcurrencyLimiter limiter;
+    private ClientMetrics metrics;
+    private long compressionThreshold = -1;
 
     public Builder() {
       this.baseHttpClient = new OkHttpClient();
@@ -594,6 +1506,15 @@ public class Client {
       this.baseHttpClient = client.httpClient.clone();
       this.urls = new ArrayList<>(client.urls);
       this.accessToken = client.accessToken;
+      this.selector = client.selector;
+      this.circuitWindow = client.circuitWindow;
+      this.circuitFailureRate = client.circuitFailureRate;
+      this.probeIntervalMillis = client.probeIntervalMillis;
+      this.retryBudget = client.retryBudget;
+      this.hedgePolicy = client.hedgePolicy;
+      this.limiter = client.limiter;
+      this.metrics = client.metrics;
+      this.compressionThreshold = client.compressionThreshold;
     }
 
     private void setDefaults() {
@@ -601,6 +1522,8 @@ public class Client {
       this.setWriteTimeout(30, TimeUnit.SECONDS);
       this.setConnectTimeout(30, TimeUnit.SECONDS);
       this.setConnectionPool(50, 2, TimeUnit.MINUTES);
+      this.setCircuitBreaker(20, 0.5);
+      this.setHealthProbeInterval(1, TimeUnit.SECONDS);
       this.logLevel = LoggingInterceptor.Level.ERRORS;
     }
 
@@ -874,6 +1797,148 @@ public class Client {
       return this;
     }
 
+    /**
+     * Sets a request logger configured with sampling, truncation or
+     * asynchronous writing. It takes the place of any logger set with
+     * {@link #setLogger}.
+     * @param interceptor the configured logger
+     */
+    public Builder setLoggingInterceptor(LoggingInterceptor interceptor) {
+      this.loggingInterceptor = interceptor;
+      return this;
+    }
+
+    /**
+     * Sets the limits on concurrently executing asynchronous requests. Calls
+     * beyond these limits wait in the dispatcher's queue without holding a
+     * thread. Synchronous requests are not affected.
+     * @param maxRequests the maximum number of asynchronous requests in flight
+     * @param maxRequestsPerHost the maximum number of asynchronous requests in flight per host
+     */
+    public Builder setMaxAsyncRequests(int maxRequests, int maxRequestsPerHost) {
+      if (maxRequests < 1 || maxRequestsPerHost < 1) {
+        throw new IllegalArgumentException("max requests must be positive");
+      }
+      this.maxRequests = maxRequests;
+      this.maxRequestsPerHost = maxRequestsPerHost;
+      return this;
+    }
+
+    /**
+     * Sets the strategy for choosing which base URL each request is sent
+     * to. Defaults to {@link EndpointSelector.Failover}, which uses one URL
+     * until a request to it fails. Use {@link EndpointSelector.RoundRobin} or
+     * {@link EndpointSelector.PowerOfTwoChoices} to spread requests across
+     * all URLs.
+     * @param selector the endpoint selector
+     */
+    public Builder setEndpointSelector(EndpointSelector selector) {
+      this.selector = selector;
+      return this;
+    }
+
+    /**
+     * Configures the circuit breaker kept for each base URL. A URL's circuit
+     * opens when at least failureRate of its most recent windowSize requests
+     * failed with a connection error or a 5xx response. Requests then skip
+     * the URL until a background health probe finds it answering again.
+     * Defaults to a window of 20 requests and a failure rate of 0.5.
+     * @param windowSize the number of recent requests considered, or zero to
+     * disable circuit breaking
+     * @param failureRate the share of failed requests, between 0 and 1, at
+     * which a circuit opens
+     */
+    public Builder setCircuitBreaker(int windowSize, double failureRate) {
+      if (windowSize < 0) {
+        throw new IllegalArgumentException("window size must not be negative");
+      }
+      if (failureRate < 0 || failureRate > 1) {
+        throw new IllegalArgumentException("failure rate must be between 0 and 1");
+      }
+      this.circuitWindow = windowSize;
+      this.circuitFailureRate = failureRate;
+      return this;
+    }
+
+    /**
+     * Sets the delay between health probes of a URL whose circuit is open.
+     * Defaults to one second.
+     * @param interval the probe interval
+     * @param unit the time unit of the interval
+     */
+    public Builder setHealthProbeInterval(long interval, TimeUnit unit) {
+      if (interval <= 0) {
+        throw new IllegalArgumentException("probe interval must be positive");
+      }
+      this.probeIntervalMillis = unit.toMillis(interval);
+      return this;
+    }
+
+    /**
+     * Sets the budget limiting the client's retries. Once it is exhausted,
+     * failed requests throw {@link RetryBudgetExhaustedException} instead of
+     * being retried. A budget may be shared by several clients. Clients built
+     * from another client share its budget.<br>
+     * By default there is no budget, and every failed request is retried as
+     * before. A budget of one retry per five requests plus ten per second,
+     * {@code new RetryBudget(0.2, 10, 100)}, suits most clients.
+     * @param budget the retry budget, or null to retry every failed request
+     */
+    public Builder setRetryBudget(RetryBudget budget) {
+      this.retryBudget = budget;
+      return this;
+    }
+
+    /**
+     * Enables hedging of read requests. A read that has not completed within
+     * the policy's percentile delay is duplicated to a different URL, and the
+     * first response is used. Hedging needs at least two URLs; requests are
+     * not hedged by default.
+     * @param policy the hedge policy, or null to disable hedging
+     */
+    public Builder setHedgePolicy(HedgePolicy policy) {
+      this.hedgePolicy = policy;
+      return this;
+    }
+
+    /**
+     * Limits the number of requests the client keeps in flight to a limit
+     * that adapts to Core's latency and to 429 and 503 responses. Requests
+     * over the limit wait for it or fail fast, as configured on the limiter.
+     * Long-polling queries are not limited. Concurrency is not limited by
+     * default. Clients built from another
+     * client share its limiter.
+     * @param limiter the concurrency limiter, or null to disable limiting
+     */
+    public Builder setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+      this.limiter = limiter;
+      return this;
+    }
+
+    /**
+     * Compresses request bodies larger than a threshold with gzip. A URL
+     * that rejects a compressed request as unreadable (415, or 400 with
+     * code CH003), but accepts it uncompressed, is sent no more compressed
+     * requests. Core accepts compressed requests from this release on.
+     * Responses are always requested compressed. Disabled by default.
+     * @param thresholdBytes the size above which request bodies are
+     * compressed, or -1 to send them uncompressed
+     */
+    public Builder setRequestCompression(long thresholdBytes) {
+      this.compressionThreshold = thresholdBytes;
+      return this;
+    }
+
+    /**
+     * Registers a listener for measurements of every request and attempt
+     * the client makes, such as an {@link InMemoryClientMetrics}.
+     * @param metrics the metrics listener, or null to record nothing
+     */
+    public Builder setMetrics(ClientMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
     /**
      * Builds a client with all of the provided parameters.
      */
@@ -0,0 +1,140 @@
+package com.chain.http;
+
+import com.chain.exception.APIException;
+
+import java.net.URL;
+
+/**
+ * ClientMetrics receives measurements of the requests a client makes.
+ * Register an implementation with {@link Client.Builder#setMetrics}, or use
+ * {@link InMemoryClientMetrics}.<br>
+ * Methods are called on the thread that completed the request or attempt,
+ * and must be safe for use by multiple threads. They should return quickly;
+ * exceptions they throw are ignored.
+ */
+public interface ClientMetrics {
+  /**
+   * Called when a single HTTP attempt of a request completes, whether it
+   * succeeded, failed or was cancelled.
+   * @param attempt the attempt's measurements
+   */
+  default void attemptCompleted(Attempt attempt) {}
+
+  /**
+   * Called when a request completes, after all of its attempts.
+   * @param action the request's action, such as "list-transactions"
+   * @param latencyNanos the time from the start of the request to its
+   * completion, including retries
+   * @param error the error the request failed with, or null if it succeeded
+   */
+  default void requestCompleted(String action, long latencyNanos, Throwable error) {}
+
+  /**
+   * Attempt holds the measurements of one HTTP attempt.
+   */
+  final class Attempt {
+    private final String action;
+    private final URL url;
+    private final int number;
+    private final boolean failover;
+    private long requestBytes;
+    private int status;
+    private long contentLength = -1;
+    private long bytesRead;
+    private long latencyNanos;
+    private Throwable error;
+
+    Attempt(String action, URL url, int number, boolean failover) {
+      this.action = action;
+      this.url = url;
+      this.number = number;
+      this.failover = failover;
+    }
+
+    /**
+     * Returns the request's action, such as "list-transactions".
+     */
+    public String action() {
+      return action;
+    }
+
+    /**
+     * Returns the base URL the attempt was sent to.
+     */
+    public URL url() {
+      return url;
+    }
+
+    /**
+     * Returns the attempt's number; the first attempt of a request is 1.
+     */
+    public int number() {
+      return number;
+    }
+
+    /**
+     * Returns true if the attempt is a retry sent to a different URL than
+     * the attempt before it.
+     */
+    public boolean failover() {
+      return failover;
+    }
+
+    /**
+     * Returns the HTTP status code of the response, or 0 if there was none.
+     */
+    public int status() {
+      return status;
+    }
+
+    /**
+     * Returns the number of bytes of the request body that were sent.
+     */
+    public long requestBytes() {
+      return requestBytes;
+    }
+
+    /**
+     * Returns the size of the response body in bytes, or -1 if unknown.
+     */
+    public long responseBytes() {
+      long n = Math.max(contentLength, bytesRead);
+      return n > 0 || status != 0 ? n : -1;
+    }
+
+    /**
+     * Returns the time from sending the attempt to its completion.
+     */
+    public long latencyNanos() {
+      return latencyNanos;
+    }
+
+    /**
+     * Returns the error the attempt failed with, or null if it succeeded.
+     */
+    public Throwable error() {
+      return error;
+    }
+
+    void setResponse(int status, long contentLength) {
+      this.status = status;
+      this.contentLength = contentLength;
+    }
+
+    void addBytesWritten(long n) {
+      this.requestBytes += n;
+    }
+
+    void addBytesRead(long n) {
+      this.bytesRead += n;
+    }
+
+    void complete(long latencyNanos, Throwable error) {
+      this.latencyNanos = latencyNanos;
+      this.error = error;
+      if (error instanceof APIException && status == 0) {
+        this.status = ((APIException) error).statusCode;
+      }
+    }
+  }
+}
@@ -0,0 +1,299 @@
+package com.chain.http;
+
+import com.chain.common.Utils;
+import com.chain.exception.APIException;
+import com.google.gson.JsonParseException;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CompressionInterceptor gzips request bodies larger than a threshold and
+ * asks for gzipped responses, decompressing them itself so that the sizes
+ * before and after compression can be counted.<br>
+ * Whether a URL accepts compressed requests is learned from its responses.
+ * A compressed request is rejected by a 415, or by a 400 whose error code is
+ * CH003, which is Core's answer to a body it cannot read. If the URL then
+ * accepts the same request uncompressed, no further requests to it are
+ * compressed. Other errors are returned as they are, so a request that
+ * fails for its own reasons is not sent twice.
+ */
+class CompressionInterceptor implements Interceptor {
+  private final long threshold;
+  private final CompressionStats stats;
+  private final Set<String> uncompressedHosts =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * @param threshold the size in bytes above which request bodies are
+   * compressed, or -1 to never compress them
+   */
+  CompressionInterceptor(long threshold, CompressionStats stats) {
+    this.threshold = threshold;
+    this.stats = stats;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request().newBuilder().header("Accept-Encoding", "gzip").build();
+    RequestBody body = request.body();
+    String host = host(request.httpUrl());
+    if (body == null || threshold < 0 || uncompressedHosts.contains(host)) {
+      return decompress(chain.proceed(request));
+    }
+
+    // Bytes written to decide are not sent, so they are not counted.
+    CountingRequestBody counting = null;
+    if (body instanceof CountingRequestBody) {
+      counting = (CountingRequestBody) body;
+      body = counting.body();
+    }
+
+    // Write out at most the threshold to decide. A small body is sent from
+    // the bytes already written, with a known length.
+    Buffer head = new Buffer();
+    if (!exceeds(body, head)) {
+      RequestBody small = RequestBody.create(body.contentType(), head.readByteString());
+      if (counting != null) {
+        small = counting.counting(small);
+      }
+      return decompress(chain.proceed(request.newBuilder().method("POST", small).build()));
+    }
+
+    RequestBody gzipped = new GzipRequestBody(body);
+    if (counting != null) {
+      gzipped = counting.counting(gzipped);
+    }
+    Request compressed =
+        request
+            .newBuilder()
+            .header("Content-Encoding", "gzip")
+            .method("POST", gzipped)
+            .build();
+    Response response = decompress(chain.proceed(compressed));
+    if (!unreadable(response)) {
+      return response;
+    }
+
+    // The URL may not understand compressed requests. Send the request
+    // again uncompressed; if that is accepted, stop compressing for it.
+    response.body().close();
+    stats.requestsRejected.increment();
+    Response retry = decompress(chain.proceed(request));
+    if (!unreadable(retry)) {
+      uncompressedHosts.add(host);
+    }
+    return retry;
+  }
+
+  // Returns whether the response says the request body could not be read.
+  // A 400's error body is buffered to read its code, and is left in place.
+  private static boolean unreadable(Response response) throws IOException {
+    if (response.code() == 415) {
+      return true;
+    }
+    if (response.code() != 400) {
+      return false;
+    }
+    BufferedSource source = response.body().source();
+    source.request(Long.MAX_VALUE);
+    try {
+      APIException err =
+          Utils.serializer.fromJson(source.buffer().clone().readUtf8(), APIException.class);
+      return err != null && "CH003".equals(err.code);
+    } catch (JsonParseException e) {
+      return false;
+    }
+  }
+
+  private boolean exceeds(RequestBody body, Buffer head) throws IOException {
+    long length = body.contentLength();
+    if (length >= 0 && length <= threshold) {
+      body.writeTo(head);
+      return false;
+    }
+    if (length > threshold) {
+      return true;
+    }
+    BufferedSink sink = Okio.buffer(new ThresholdSink(head, threshold));
+    try {
+      body.writeTo(sink);
+      sink.flush();
+      return false;
+    } catch (ThresholdReached ex) {
+      return true;
+    }
+  }
+
+  private Response decompress(Response response) throws IOException {
+    if (!"gzip".equalsIgnoreCase(response.header("Content-Encoding"))) {
+      return response;
+    }
+    stats.responsesCompressed.increment();
+    final ResponseBody body = response.body();
+    final BufferedSource source = Okio.buffer(gunzip(body.source()));
+    ResponseBody decompressed =
+        new ResponseBody() {
+          @Override
+          public MediaType contentType() {
+            return body.contentType();
+          }
+
+          @Override
+          public long contentLength() {
+            return -1;
+          }
+
+          @Override
+          public BufferedSource source() {
+            return source;
+          }
+        };
+    return response
+        .newBuilder()
+        .removeHeader("Content-Encoding")
+        .removeHeader("Content-Length")
+        .body(decompressed)
+        .build();
+  }
+
+  private static String host(HttpUrl url) {
+    return url.scheme() + "://" + url.host() + ":" + url.port();
+  }
+
+  /**
+   * GzipRequestBody compresses another body as it is written. Compressed
+   * output collects in a buffer before moving to the connection's sink, so
+   * that the time spent deflating can be told apart from the time spent
+   * writing to the network.
+   */
+  private class GzipRequestBody extends RequestBody {
+    private final RequestBody body;
+
+    GzipRequestBody(RequestBody body) {
+      this.body = body;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+      return -1;
+    }
+
+    @Override
+    public void writeTo(final BufferedSink sink) throws IOException {
+      final Buffer compressed = new Buffer();
+      final GzipSink gzip = new GzipSink(compressed);
+      final long[] in = new long[1];
+      final long[] out = new long[1];
+      BufferedSink uncompressed =
+          Okio.buffer(
+              new ForwardingSink(gzip) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                  long start = System.nanoTime();
+                  super.write(source, byteCount);
+                  stats.compressNanos.add(System.nanoTime() - start);
+                  in[0] += byteCount;
+                  out[0] += compressed.size();
+                  sink.write(compressed, compressed.size());
+                }
+              });
+      body.writeTo(uncompressed);
+      long start = System.nanoTime();
+      uncompressed.close(); // finishes the gzip stream
+      stats.compressNanos.add(System.nanoTime() - start);
+      out[0] += compressed.size();
+      sink.write(compressed, compressed.size());
+
+      stats.requestsCompressed.increment();
+      stats.requestBytes.add(in[0]);
+      stats.requestBytesCompressed.add(out[0]);
+    }
+  }
+
+  /**
+   * Wraps a compressed source to decompress it, counting its size on both
+   * sides and the time spent inflating, excluding time spent waiting for
+   * the network.
+   */
+  private Source gunzip(Source network) {
+    final long[] networkNanos = new long[1];
+    Source counted =
+        new ForwardingSource(network) {
+          @Override
+          public long read(Buffer sink, long byteCount) throws IOException {
+            long start = System.nanoTime();
+            long n = super.read(sink, byteCount);
+            networkNanos[0] += System.nanoTime() - start;
+            if (n > 0) {
+              stats.responseBytesCompressed.add(n);
+            }
+            return n;
+          }
+        };
+    return new ForwardingSource(new GzipSource(counted)) {
+      @Override
+      public long read(Buffer sink, long byteCount) throws IOException {
+        long waited = networkNanos[0];
+        long start = System.nanoTime();
+        long n = super.read(sink, byteCount);
+        waited = networkNanos[0] - waited;
+        stats.decompressNanos.add(System.nanoTime() - start - waited);
+        if (n > 0) {
+          stats.responseBytes.add(n);
+        }
+        return n;
+      }
+    };
+  }
+
+  private static class ThresholdReached extends IOException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * ThresholdSink keeps the bytes written to it until there are more than
+   * the threshold, and then fails the write.
+   */
+  private static class ThresholdSink extends ForwardingSink {
+    private final Buffer kept;
+    private final long threshold;
+
+    ThresholdSink(Buffer kept, long threshold) {
+      super(kept);
+      this.kept = kept;
+      this.threshold = threshold;
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+      if (kept.size() + byteCount > threshold) {
+        throw new ThresholdReached();
+      }
+      super.write(source, byteCount);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.chain.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CompressionStats counts the bytes a client's request and response bodies
+ * took before and after gzip compression, and the time spent compressing
+ * and decompressing them.
+ */
+public final class CompressionStats {
+  final LongAdder requestsCompressed = new LongAdder();
+  final LongAdder requestBytes = new LongAdder();
+  final LongAdder requestBytesCompressed = new LongAdder();
+  final LongAdder compressNanos = new LongAdder();
+  final LongAdder requestsRejected = new LongAdder();
+  final LongAdder responsesCompressed = new LongAdder();
+  final LongAdder responseBytes = new LongAdder();
+  final LongAdder responseBytesCompressed = new LongAdder();
+  final LongAdder decompressNanos = new LongAdder();
+
+  /**
+   * Returns the number of request bodies sent compressed.
+   */
+  public long requestsCompressed() {
+    return requestsCompressed.sum();
+  }
+
+  /**
+   * Returns the size of compressed request bodies before compression.
+   */
+  public long requestBytes() {
+    return requestBytes.sum();
+  }
+
+  /**
+   * Returns the size of compressed request bodies as sent.
+   */
+  public long requestBytesCompressed() {
+    return requestBytesCompressed.sum();
+  }
+
+  /**
+   * Returns the compressed size of request bodies as a share of their
+   * original size, or 1 if none were compressed.
+   */
+  public double requestRatio() {
+    return ratio(requestBytesCompressed(), requestBytes());
+  }
+
+  /**
+   * Returns the time spent compressing request bodies.
+   */
+  public long compressTime(TimeUnit unit) {
+    return unit.convert(compressNanos.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the number of compressed requests that were rejected and sent
+   * again uncompressed, after which their URL is sent no more compressed
+   * requests.
+   */
+  public long requestsRejected() {
+    return requestsRejected.sum();
+  }
+
+  /**
+   * Returns the number of response bodies received compressed.
+   */
+  public long responsesCompressed() {
+    return responsesCompressed.sum();
+  }
+
+  /**
+   * Returns the size of compressed response bodies after decompression.
+   * Bodies that were not read to the end count only the bytes read.
+   */
+  public long responseBytes() {
+    return responseBytes.sum();
+  }
+
+  /**
+   * Returns the size of compressed response bodies as received.
+   */
+  public long responseBytesCompressed() {
+    return responseBytesCompressed.sum();
+  }
+
+  /**
+   * Returns the compressed size of response bodies as a share of their
+   * decompressed size, or 1 if none were compressed.
+   */
+  public double responseRatio() {
+    return ratio(responseBytesCompressed(), responseBytes());
+  }
+
+  /**
+   * Returns the time spent decompressing response bodies.
+   */
+  public long decompressTime(TimeUnit unit) {
+    return unit.convert(decompressNanos.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  private static double ratio(long compressed, long original) {
+    return original == 0 ? 1 : (double) compressed / original;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "requests=%d request_ratio=%.3f compress_ms=%d rejected=%d "
+            + "responses=%d response_ratio=%.3f decompress_ms=%d",
+        requestsCompressed(),
+        requestRatio(),
+        compressTime(TimeUnit.MILLISECONDS),
+        requestsRejected(),
+        responsesCompressed(),
+        responseRatio(),
+        decompressTime(TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,407 @@
+package com.chain.http;
+
+import com.chain.exception.ConcurrencyLimitException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConcurrencyLimiter adapts the number of requests a client keeps in flight
+ * to what Core can serve, so load is shed before Core starts rejecting
+ * requests.<br>
+ * The limit follows an additive-increase, multiplicative-decrease rule. It
+ * shrinks by a tenth, at most once per round trip, when a request is
+ * rejected with 429 or 503 or times out, or when the smoothed latency of
+ * its action rises above the latency tolerance times the action's fastest
+ * recent round trip. It grows by about one request per round trip while
+ * the limit is being used.<br>
+ * Requests over the limit either wait in a queue, in arrival order, until
+ * a request completes, or fail fast. In both cases a request that is not
+ * admitted fails with a {@link ConcurrencyLimitException}. Each attempt of a
+ * request is admitted separately, and no permit is held between retries.<br>
+ * Long-polling queries bypass the limiter, since they are meant to wait
+ * for as long as their timeout.
+ */
+public final class ConcurrencyLimiter {
+  private static final double BACKOFF_RATIO = 0.9;
+  // Baseline latencies are the fastest of the current and previous windows.
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private int minLimit = 1;
+  private int maxLimit = 1000;
+  private double limit = 20;
+  private boolean failFast;
+  private long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+  private double latencyTolerance = 2;
+
+  private int inFlight;
+  private long lastDecreaseNanos = System.nanoTime();
+  private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+  private long nextDeadline;
+  private boolean expiryScheduled;
+  private final ConcurrentHashMap<String, Baseline> baselines = new ConcurrentHashMap<>();
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Sets the initial limit and the range it may adapt within. Defaults to
+   * an initial limit of 20, between 1 and 1000.
+   * @param initial the initial limit
+   * @param min the least limit
+   * @param max the greatest limit
+   * @return updated limiter
+   */
+  public synchronized ConcurrencyLimiter setLimits(int initial, int min, int max) {
+    if (min < 1 || initial < min || max < initial) {
+      throw new IllegalArgumentException("limits must satisfy 1 <= min <= initial <= max");
+    }
+    this.limit = initial;
+    this.minLimit = min;
+    this.maxLimit = max;
+    return this;
+  }
+
+  /**
+   * Sets whether requests over the limit fail at once instead of waiting.
+   * Defaults to false.
+   * @param failFast whether to fail fast
+   * @return updated limiter
+   */
+  public synchronized ConcurrencyLimiter setFailFast(boolean failFast) {
+    this.failFast = failFast;
+    return this;
+  }
+
+  /**
+   * Sets how long a request may wait for the limit before failing.
+   * Defaults to 30 seconds.
+   * @param timeout the longest wait
+   * @param unit the time unit of the timeout
+   * @return updated limiter
+   */
+  public synchronized ConcurrencyLimiter setMaxWait(long timeout, TimeUnit unit) {
+    this.maxWaitNanos = unit.toNanos(timeout);
+    return this;
+  }
+
+  /**
+   * Sets how many times slower than its fastest recent round trip an
+   * action's smoothed latency must be to count as a sign of overload.
+   * Defaults to 2.
+   * Zero ignores latency and reacts only to rejections and timeouts.
+   * @param tolerance the latency tolerance
+   * @return updated limiter
+   */
+  public synchronized ConcurrencyLimiter setLatencyTolerance(double tolerance) {
+    this.latencyTolerance = tolerance;
+    return this;
+  }
+
+  /**
+   * Returns the current limit.
+   */
+  public synchronized int limit() {
+    return (int) limit;
+  }
+
+  /**
+   * Returns the number of requests in flight.
+   */
+  public synchronized int inFlight() {
+    return inFlight;
+  }
+
+  /**
+   * Returns the number of requests waiting for the limit.
+   */
+  public synchronized int queued() {
+    return queue.size();
+  }
+
+  /**
+   * Returns the number of requests that failed because they were not
+   * admitted.
+   */
+  public long rejected() {
+    return rejected.get();
+  }
+
+  /**
+   * Admits a request, waiting for the limit if necessary.
+   * @throws ConcurrencyLimitException if the request was not admitted
+   */
+  void acquire() throws ConcurrencyLimitException {
+    CompletableFuture<Void> admitted = acquireAsync();
+    try {
+      admitted.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+    } catch (ExecutionException ex) {
+      throw (ConcurrencyLimitException) ex.getCause();
+    } catch (TimeoutException | InterruptedException ex) {
+      if (ex instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      if (admitted.cancel(false)) {
+        rejected.incrementAndGet();
+        throw new ConcurrencyLimitException("Timed out waiting for the concurrency limit", ex);
+      }
+      // The wait ended just as the request was admitted or timed out.
+      try {
+        admitted.getNow(null);
+      } catch (CompletionException cex) {
+        throw (ConcurrencyLimitException) cex.getCause();
+      }
+    }
+  }
+
+  /**
+   * Admits a request without blocking.
+   * @return a future completed once the request is admitted, or completed
+   * exceptionally with a {@link ConcurrencyLimitException}. Cancelling the
+   * future withdraws the request from the queue.
+   */
+  CompletableFuture<Void> acquireAsync() {
+    CompletableFuture<Void> admitted = new CompletableFuture<>();
+    List<Waiter> expired;
+    synchronized (this) {
+      if (inFlight < (int) limit && queue.isEmpty()) {
+        inFlight++;
+        admitted.complete(null);
+        return admitted;
+      }
+      if (failFast) {
+        rejected.incrementAndGet();
+        admitted.completeExceptionally(
+            new ConcurrencyLimitException("Concurrency limit of " + (int) limit + " reached"));
+        return admitted;
+      }
+      queue.add(new Waiter(admitted, System.nanoTime() + maxWaitNanos));
+      expired = expire();
+      scheduleExpiry();
+    }
+    timeOut(expired);
+    return admitted;
+  }
+
+  /**
+   * Ends a request that was admitted, without sampling its outcome.
+   */
+  void release() {
+    List<Waiter> expired;
+    List<Waiter> granted;
+    synchronized (this) {
+      inFlight--;
+      expired = expire();
+      granted = grant();
+      scheduleExpiry();
+    }
+    timeOut(expired);
+    admit(granted);
+  }
+
+  /**
+   * Ends a request that was admitted, adapting the limit to its outcome.
+   * @param action the request's action
+   * @param rttNanos the request's round-trip time
+   * @param overloaded whether the request was rejected or timed out
+   */
+  void release(String action, long rttNanos, boolean overloaded) {
+    boolean slow = false;
+    if (latencyTolerance > 0 && !overloaded) {
+      Baseline b = baselines.get(action);
+      if (b == null) {
+        baselines.putIfAbsent(action, new Baseline());
+        b = baselines.get(action);
+      }
+      slow = b.record(rttNanos, latencyTolerance);
+    }
+
+    List<Waiter> expired;
+    List<Waiter> granted;
+    synchronized (this) {
+      long now = System.nanoTime();
+      if (overloaded || slow) {
+        // React to congestion at most once per round trip.
+        if (now - lastDecreaseNanos > rttNanos) {
+          limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+          lastDecreaseNanos = now;
+        }
+      } else if (inFlight >= limit / 2) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+      inFlight--;
+      expired = expire();
+      granted = grant();
+      scheduleExpiry();
+    }
+    timeOut(expired);
+    admit(granted);
+  }
+
+  // Removes waiters whose deadline has passed, and notes the earliest
+  // deadline of those left. Called with the lock held.
+  private List<Waiter> expire() {
+    List<Waiter> expired = null;
+    long now = System.nanoTime();
+    nextDeadline = now + maxWaitNanos;
+    for (Iterator<Waiter> it = queue.iterator(); it.hasNext(); ) {
+      Waiter w = it.next();
+      if (w.admitted.isDone() || now - w.deadline > 0) {
+        it.remove();
+        if (!w.admitted.isDone()) {
+          if (expired == null) {
+            expired = new ArrayList<>();
+          }
+          expired.add(w);
+        }
+      } else if (w.deadline - nextDeadline < 0) {
+        nextDeadline = w.deadline;
+      }
+    }
+    return expired;
+  }
+
+  // Schedules a check at the earliest deadline of the waiters, so that they
+  // time out even if no request completes. Called with the lock held.
+  private void scheduleExpiry() {
+    if (expiryScheduled || queue.isEmpty()) {
+      return;
+    }
+    expiryScheduled = true;
+    long delay = Math.max(0, nextDeadline - System.nanoTime()) + 1;
+    expiryScheduler()
+        .schedule(
+            new Runnable() {
+              public void run() {
+                expireWaiters();
+              }
+            },
+            delay,
+            TimeUnit.NANOSECONDS);
+  }
+
+  private void expireWaiters() {
+    List<Waiter> expired;
+    synchronized (this) {
+      expiryScheduled = false;
+      expired = expire();
+      scheduleExpiry();
+    }
+    timeOut(expired);
+  }
+
+  // Takes waiters off the queue while there is room under the limit.
+  // Called with the lock held.
+  private List<Waiter> grant() {
+    List<Waiter> granted = null;
+    while (inFlight < (int) limit && !queue.isEmpty()) {
+      Waiter w = queue.poll();
+      if (w.admitted.isDone()) {
+        continue; // withdrawn
+      }
+      inFlight++;
+      if (granted == null) {
+        granted = new ArrayList<>();
+      }
+      granted.add(w);
+    }
+    return granted;
+  }
+
+  private void timeOut(List<Waiter> expired) {
+    if (expired == null) {
+      return;
+    }
+    for (Waiter w : expired) {
+      if (w.admitted.completeExceptionally(
+          new ConcurrencyLimitException("Timed out waiting for the concurrency limit"))) {
+        rejected.incrementAndGet();
+      }
+    }
+  }
+
+  // Completes the futures of admitted waiters outside the lock, since their
+  // callbacks start requests.
+  private void admit(List<Waiter> granted) {
+    if (granted == null) {
+      return;
+    }
+    for (Waiter w : granted) {
+      if (!w.admitted.complete(null)) {
+        release(); // withdrawn after it was granted
+      }
+    }
+  }
+
+  private static ScheduledExecutorService expiryScheduler;
+
+  private static synchronized ScheduledExecutorService expiryScheduler() {
+    if (expiryScheduler == null) {
+      expiryScheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "chain-sdk-limiter");
+                  t.setDaemon(true);
+                  return t;
+                }
+              });
+    }
+    return expiryScheduler;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "limit=%d in_flight=%d queued=%d rejected=%d",
+        (int) limit, inFlight, queue.size(), rejected());
+  }
+
+  private static class Waiter {
+    final CompletableFuture<Void> admitted;
+    final long deadline;
+
+    Waiter(CompletableFuture<Void> admitted, long deadline) {
+      this.admitted = admitted;
+      this.deadline = deadline;
+    }
+  }
+
+  // Baseline compares an action's smoothed latency with its fastest round
+  // trip over the current and previous windows. The fastest round trip is
+  // forgotten after a window, so the baseline can rise if Core slows for good.
+  private static class Baseline {
+    private static final double SMOOTHING = 0.1;
+
+    private long current = Long.MAX_VALUE;
+    private long previous = Long.MAX_VALUE;
+    private long rotateAt = System.nanoTime() + WINDOW_NANOS;
+    private double smoothed;
+
+    /**
+     * Records a round trip.
+     * @return whether the smoothed latency exceeds the tolerance
+     */
+    synchronized boolean record(long rttNanos, double tolerance) {
+      long now = System.nanoTime();
+      if (now - rotateAt > 0) {
+        previous = current;
+        current = Long.MAX_VALUE;
+        rotateAt = now + WINDOW_NANOS;
+      }
+      current = Math.min(current, rttNanos);
+      smoothed = smoothed == 0 ? rttNanos : smoothed + SMOOTHING * (rttNanos - smoothed);
+      return smoothed > tolerance * Math.min(current, previous);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.chain.http;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+import java.io.IOException;
+
+/**
+ * CountingRequestBody adds the bytes written from another body to the
+ * measurements of an attempt.
+ */
+class CountingRequestBody extends RequestBody {
+  private final RequestBody body;
+  private final ClientMetrics.Attempt event;
+
+  CountingRequestBody(RequestBody body, ClientMetrics.Attempt event) {
+    this.body = body;
+    this.event = event;
+  }
+
+  /**
+   * Returns a body that writes the given one and counts its bytes in the
+   * same attempt as this body.
+   */
+  RequestBody counting(RequestBody body) {
+    return new CountingRequestBody(body, event);
+  }
+
+  /**
+   * Returns the body being counted.
+   */
+  RequestBody body() {
+    return body;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return body.contentType();
+  }
+
+  @Override
+  public long contentLength() throws IOException {
+    return body.contentLength();
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    BufferedSink counted =
+        Okio.buffer(
+            new ForwardingSink(sink) {
+              @Override
+              public void write(Buffer source, long byteCount) throws IOException {
+                event.addBytesWritten(byteCount);
+                super.write(source, byteCount);
+              }
+            });
+    body.writeTo(counted);
+    counted.emit();
+  }
+}
@@ -0,0 +1,186 @@
+package com.chain.http;
+
+import com.chain.exception.BadURLException;
+import com.squareup.okhttp.HttpUrl;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Endpoint tracks the health of one of a client's base URLs, for use by an
+ * {@link EndpointSelector}.<br>
+ * Latency is kept as a peak exponentially weighted moving average: a sample
+ * slower than the average replaces it outright, and faster samples pull it
+ * down with a weight that grows with the time since the last sample. A slow
+ * node is therefore avoided at once, and forgiven gradually. Failed requests
+ * count as a sample of at least {@link #FAILURE_PENALTY_MILLIS}.<br>
+ * Each endpoint also has a {@link CircuitBreaker}, which keeps requests away
+ * from the URL while it is down.
+ */
+public final class Endpoint {
+  /**
+   * The latency recorded for a failed request that failed faster than this.
+   */
+  public static final long FAILURE_PENALTY_MILLIS = 5000;
+
+  private static final long FAILURE_PENALTY_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(FAILURE_PENALTY_MILLIS);
+  private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+  // Bounds the cache of resolved URLs, in case paths are built dynamically.
+  private static final int MAX_CACHED_PATHS = 256;
+
+  private final URL url;
+  private final int index;
+  private final CircuitBreaker circuit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong successes = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final ConcurrentHashMap<String, HttpUrl> resolved = new ConcurrentHashMap<>();
+  private double ewmaNanos;
+  private long lastSampleNanos;
+
+  Endpoint(URL url, int index, CircuitBreaker circuit) {
+    this.url = url;
+    this.index = index;
+    this.circuit = circuit;
+    this.lastSampleNanos = System.nanoTime();
+  }
+
+  /**
+   * Returns the base URL of the endpoint.
+   */
+  public URL url() {
+    return url;
+  }
+
+  /**
+   * Resolves a path against the endpoint's base URL. Resolved URLs are
+   * cached, so each path is only parsed once.
+   * @param path the path of an API action, such as "list-transactions"
+   * @return the URL of the action
+   * @throws BadURLException if the resolved URL is not valid
+   */
+  HttpUrl resolve(String path) throws BadURLException {
+    HttpUrl u = resolved.get(path);
+    if (u != null) {
+      return u;
+    }
+    try {
+      URI uri = new URI(url.toString() + "/" + path).normalize();
+      u = HttpUrl.get(new URL(uri.toString()));
+    } catch (MalformedURLException ex) {
+      throw new BadURLException(ex.getMessage());
+    } catch (URISyntaxException ex) {
+      throw new BadURLException(ex.getMessage());
+    }
+    if (u == null) {
+      throw new BadURLException("unsupported URL " + url + "/" + path);
+    }
+    if (resolved.size() < MAX_CACHED_PATHS) {
+      resolved.put(path, u);
+    }
+    return u;
+  }
+
+  /**
+   * Returns the position of the endpoint in the client's list of URLs.
+   */
+  public int index() {
+    return index;
+  }
+
+  /**
+   * Returns the circuit breaker guarding the endpoint.
+   */
+  public CircuitBreaker circuit() {
+    return circuit;
+  }
+
+  /**
+   * Returns the number of requests to the endpoint awaiting a response.
+   */
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Returns the number of requests the endpoint has answered.
+   */
+  public long successes() {
+    return successes.get();
+  }
+
+  /**
+   * Returns the number of requests to the endpoint that failed because of
+   * a connection error or a retriable server error.
+   */
+  public long failures() {
+    return failures.get();
+  }
+
+  /**
+   * Returns the moving average of the endpoint's latency, in microseconds.
+   * It is zero until the first request completes.
+   */
+  public synchronized double latencyMicros() {
+    return ewmaNanos / 1000;
+  }
+
+  /**
+   * Marks the start of a request to the endpoint.
+   * @return the start time, to be passed to {@link #end(long, boolean)}
+   */
+  long begin() {
+    circuit.attempt();
+    inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Marks the end of a request to the endpoint.
+   * @param startNanos the value returned by {@link #begin()}
+   * @param failed whether the endpoint failed to answer the request
+   */
+  void end(long startNanos, boolean failed) {
+    inFlight.decrementAndGet();
+    long now = System.nanoTime();
+    long rtt = now - startNanos;
+    if (failed) {
+      failures.incrementAndGet();
+      rtt = Math.max(rtt, FAILURE_PENALTY_NANOS);
+    } else {
+      successes.incrementAndGet();
+    }
+    synchronized (this) {
+      if (rtt > ewmaNanos) {
+        ewmaNanos = rtt;
+      } else {
+        double w = Math.exp(-Math.max(0, now - lastSampleNanos) / DECAY_NANOS);
+        ewmaNanos = ewmaNanos * w + rtt * (1 - w);
+      }
+      lastSampleNanos = now;
+    }
+  }
+
+  /**
+   * Marks the end of a request to the endpoint that was cancelled before
+   * its outcome was known.
+   */
+  void abandon() {
+    inFlight.decrementAndGet();
+    circuit.abandon();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: in_flight=%d latency_us=%.0f successes=%d failures=%d circuit=%s",
+        url, inFlight(), latencyMicros(), successes(), failures(), circuit);
+  }
+}
@@ -0,0 +1,110 @@
+package com.chain.http;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EndpointSelector chooses which of a client's base URLs each request
+ * attempt is sent to. Retries of a failed attempt are selected afresh, after
+ * the failure has been reported to {@link #failed(List, Endpoint)} and
+ * recorded in the endpoint's statistics. Endpoints whose circuit breaker is
+ * open are left out of the list passed to {@link #select(List)}.<br>
+ * Implementations must be safe for use by multiple threads.
+ */
+public interface EndpointSelector {
+  /**
+   * Chooses the endpoint for the next request attempt.
+   * @param endpoints the client's endpoints that are accepting requests, in
+   * the order of its URLs; never empty
+   * @return one of the endpoints
+   */
+  Endpoint select(List<Endpoint> endpoints);
+
+  /**
+   * Called when an attempt against an endpoint fails with a connection
+   * error or a retriable server error.
+   * @param endpoints all of the client's endpoints
+   * @param endpoint the endpoint that failed
+   */
+  default void failed(List<Endpoint> endpoints, Endpoint endpoint) {}
+
+  /**
+   * Failover sends every request to the same URL, moving on to the next URL
+   * in the list only when a request to the current one fails. This is the
+   * default selector.
+   */
+  class Failover implements EndpointSelector {
+    // The index of the URL currently in use.
+    private final AtomicInteger index = new AtomicInteger();
+
+    public Endpoint select(List<Endpoint> endpoints) {
+      int current = index.get();
+      for (Endpoint e : endpoints) {
+        if (e.index() == current) {
+          return e;
+        }
+      }
+      // The current URL's circuit is open, or it failed and was the last
+      // URL in the list: move to the next URL that is accepting requests.
+      Endpoint next = endpoints.get(0);
+      for (Endpoint e : endpoints) {
+        if (e.index() > current) {
+          next = e;
+          break;
+        }
+      }
+      index.compareAndSet(current, next.index());
+      return next;
+    }
+
+    public void failed(List<Endpoint> endpoints, Endpoint endpoint) {
+      if (endpoints.size() == 1) {
+        return; // No point contending on the CAS if there's only one URL.
+      }
+      index.compareAndSet(endpoint.index(), endpoint.index() + 1);
+    }
+  }
+
+  /**
+   * RoundRobin sends successive requests to successive URLs.
+   */
+  class RoundRobin implements EndpointSelector {
+    private final AtomicInteger next = new AtomicInteger();
+
+    public Endpoint select(List<Endpoint> endpoints) {
+      return endpoints.get(Math.floorMod(next.getAndIncrement(), endpoints.size()));
+    }
+  }
+
+  /**
+   * PowerOfTwoChoices picks two distinct endpoints at random and sends the
+   * request to the one with the lower expected cost: its latency average
+   * multiplied by the number of requests it would then have in flight.
+   * Load spreads evenly across healthy nodes, and traffic moves away from a
+   * node as soon as it slows down or fails, without herding every request
+   * onto the single fastest node.
+   */
+  class PowerOfTwoChoices implements EndpointSelector {
+    public Endpoint select(List<Endpoint> endpoints) {
+      int n = endpoints.size();
+      if (n == 1) {
+        return endpoints.get(0);
+      }
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      int a = random.nextInt(n);
+      int b = random.nextInt(n - 1);
+      if (b >= a) {
+        b++;
+      }
+      Endpoint ea = endpoints.get(a);
+      Endpoint eb = endpoints.get(b);
+      return cost(eb) < cost(ea) ? eb : ea;
+    }
+
+    private static double cost(Endpoint e) {
+      // The +1 keeps endpoints without latency samples comparable by load.
+      return (e.latencyMicros() + 1) * (e.inFlight() + 1);
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.chain.http;
+
+import com.chain.api.Query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HedgePolicy configures request hedging for read-only actions.<br>
+ * When a hedged read has not completed within the configured percentile of
+ * that action's recent latencies, the client sends a duplicate request to a
+ * different URL. Whichever response arrives first is used, and the other
+ * request is cancelled. A {@link RetryBudget} caps the extra load: each read
+ * deposits into it, and each hedge withdraws one token.<br>
+ * Only the actions in {@link #READ_ACTIONS} are hedged, and long-polling
+ * transaction queries are not. Writes are never hedged.
+ */
+public final class HedgePolicy {
+  /**
+   * The actions that may be hedged.
+   */
+  public static final Set<String> READ_ACTIONS =
+      Collections.unmodifiableSet(
+          new HashSet<>(
+              Arrays.asList(
+                  "list-transactions",
+                  "list-balances",
+                  "list-unspent-outputs",
+                  "get-transaction-feed",
+                  "info")));
+
+  /**
+   * The number of latencies an action must have recorded before its
+   * requests are hedged.
+   */
+  public static final int MIN_SAMPLES = 20;
+
+  // Latencies are kept for two windows of this length: the window being
+  // recorded, and the previous one.
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private final double percentile;
+  private final RetryBudget budget;
+  private long minDelayMicros;
+  private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgesWon = new AtomicLong();
+
+  /**
+   * Creates a policy that hedges reads slower than their 95th percentile
+   * latency, with a budget of one hedge per ten reads.
+   */
+  public HedgePolicy() {
+    this(0.95, new RetryBudget(0.1, 0, 10));
+  }
+
+  /**
+   * Creates a hedge policy.
+   * @param percentile the percentile of an action's latency after which a
+   * read is hedged, between 0 and 1
+   * @param budget the budget limiting the number of hedges
+   */
+  public HedgePolicy(double percentile, RetryBudget budget) {
+    if (percentile <= 0 || percentile > 1) {
+      throw new IllegalArgumentException("percentile must be in (0, 1]");
+    }
+    if (budget == null) {
+      throw new IllegalArgumentException("a hedge budget is required");
+    }
+    this.percentile = percentile;
+    this.budget = budget;
+  }
+
+  /**
+   * Sets the least delay before a read is hedged, however fast the action
+   * has been. Defaults to zero.
+   * @param delay the minimum hedge delay
+   * @param unit the time unit of the delay
+   * @return updated policy
+   */
+  public HedgePolicy setMinDelay(long delay, TimeUnit unit) {
+    this.minDelayMicros = unit.toMicros(delay);
+    return this;
+  }
+
+  /**
+   * Returns the budget limiting the number of hedges.
+   */
+  public RetryBudget budget() {
+    return budget;
+  }
+
+  /**
+   * Returns the number of hedged requests sent.
+   */
+  public long hedges() {
+    return hedges.get();
+  }
+
+  /**
+   * Returns the number of hedged requests that completed before the request
+   * they duplicated.
+   */
+  public long hedgesWon() {
+    return hedgesWon.get();
+  }
+
+  /**
+   * Returns how long a request for the action currently waits before it is
+   * hedged.
+   * @param action the action
+   * @return the delay in microseconds, or -1 if the action's requests are
+   * not hedged yet
+   */
+  public long delayMicros(String action) {
+    Window w = windows.get(action);
+    if (w == null) {
+      return -1;
+    }
+    LatencyHistogram h = w.previous.count() >= MIN_SAMPLES ? w.previous : w.current;
+    if (h.count() < MIN_SAMPLES) {
+      return -1;
+    }
+    return Math.max(minDelayMicros, h.percentile(percentile));
+  }
+
+  /**
+   * Returns whether a request may be hedged.
+   * @param action the action
+   * @param body the request body
+   */
+  boolean hedgeable(String action, Object body) {
+    if (!READ_ACTIONS.contains(action)) {
+      return false;
+    }
+    // Long-polling queries are expected to take as long as their timeout;
+    // duplicating them would only double the number of open polls.
+    return !(body instanceof Query && ((Query) body).ascendingWithLongPoll);
+  }
+
+  /**
+   * Records the latency of a successful request attempt.
+   */
+  void record(String action, long nanos) {
+    Window w = windows.get(action);
+    if (w == null) {
+      windows.putIfAbsent(action, new Window());
+      w = windows.get(action);
+    }
+    w.record(nanos);
+  }
+
+  void hedged() {
+    hedges.incrementAndGet();
+  }
+
+  void hedgeWon() {
+    hedgesWon.incrementAndGet();
+  }
+
+  private static class Window {
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile LatencyHistogram previous = new LatencyHistogram();
+    private volatile long rotateAt = System.nanoTime() + WINDOW_NANOS;
+
+    void record(long nanos) {
+      long now = System.nanoTime();
+      if (now - rotateAt > 0) {
+        rotate(now);
+      }
+      current.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private synchronized void rotate(long now) {
+      if (now - rotateAt > 0) {
+        previous = current;
+        current = new LatencyHistogram();
+        rotateAt = now + WINDOW_NANOS;
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.chain.http;
+
+import com.chain.common.Utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InMemoryClientMetrics keeps running totals and latency histograms of a
+ * client's requests, per action and per URL. Histograms use logarithmic
+ * buckets with eight linear sub-buckets per power of two, so percentiles
+ * are accurate to within 12.5%. Recording is lock-free.<br>
+ * {@link #toJson()} dumps every measurement, for dashboards, benchmarks and
+ * tests to read.
+ */
+public class InMemoryClientMetrics implements ClientMetrics {
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final ConcurrentHashMap<String, ActionStats> actions = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, UrlStats> urls = new ConcurrentHashMap<>();
+
+  @Override
+  public void attemptCompleted(Attempt attempt) {
+    ActionStats a = action(attempt.action());
+    a.attempts.increment();
+    if (attempt.number() > 1) {
+      a.retries.increment();
+    }
+    if (attempt.failover()) {
+      a.failovers.increment();
+    }
+    if (attempt.requestBytes() > 0) {
+      a.requestBytes.add(attempt.requestBytes());
+    }
+    if (attempt.responseBytes() > 0) {
+      a.responseBytes.add(attempt.responseBytes());
+    }
+    a.status(attempt.status()).increment();
+    a.attemptLatency.record(TimeUnit.NANOSECONDS.toMicros(attempt.latencyNanos()));
+
+    String url = attempt.url().toString();
+    UrlStats u = urls.get(url);
+    if (u == null) {
+      urls.putIfAbsent(url, new UrlStats());
+      u = urls.get(url);
+    }
+    u.attempts.increment();
+    if (attempt.error() != null) {
+      u.errors.increment();
+    }
+    u.latency.record(TimeUnit.NANOSECONDS.toMicros(attempt.latencyNanos()));
+  }
+
+  @Override
+  public void requestCompleted(String action, long latencyNanos, Throwable error) {
+    ActionStats a = action(action);
+    a.requests.increment();
+    if (error != null) {
+      a.errors.increment();
+    }
+    a.latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+  }
+
+  /**
+   * Returns the actions with recorded requests.
+   */
+  public Set<String> actions() {
+    return Collections.unmodifiableSet(new TreeSet<>(actions.keySet()));
+  }
+
+  /**
+   * Returns the number of completed requests for an action.
+   */
+  public long requests(String action) {
+    ActionStats a = actions.get(action);
+    return a == null ? 0 : a.requests.sum();
+  }
+
+  /**
+   * Returns the number of requests for an action that failed.
+   */
+  public long errors(String action) {
+    ActionStats a = actions.get(action);
+    return a == null ? 0 : a.errors.sum();
+  }
+
+  /**
+   * Returns the number of HTTP attempts for an action, including retries.
+   */
+  public long attempts(String action) {
+    ActionStats a = actions.get(action);
+    return a == null ? 0 : a.attempts.sum();
+  }
+
+  /**
+   * Returns the number of retries for an action.
+   */
+  public long retries(String action) {
+    ActionStats a = actions.get(action);
+    return a == null ? 0 : a.retries.sum();
+  }
+
+  /**
+   * Returns the number of retries for an action sent to a different URL than
+   * the attempt before them.
+   */
+  public long failovers(String action) {
+    ActionStats a = actions.get(action);
+    return a == null ? 0 : a.failovers.sum();
+  }
+
+  /**
+   * Returns a percentile of an action's request latency, including retries.
+   * @param action the action
+   * @param percentile the percentile, between 0 and 1
+   * @return an upper bound on the percentile, in microseconds
+   */
+  public long latencyMicros(String action, double percentile) {
+    ActionStats a = actions.get(action);
+    return a == null ? 0 : a.latency.percentile(percentile);
+  }
+
+  /**
+   * Returns a percentile of the latency of an action's individual attempts.
+   * @param action the action
+   * @param percentile the percentile, between 0 and 1
+   * @return an upper bound on the percentile, in microseconds
+   */
+  public long attemptLatencyMicros(String action, double percentile) {
+    ActionStats a = actions.get(action);
+    return a == null ? 0 : a.attemptLatency.percentile(percentile);
+  }
+
+  /**
+   * Returns every measurement as a JSON object, with an entry per action
+   * under "actions" and per URL under "urls". Latencies are in microseconds.
+   */
+  public String toJson() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    Map<String, Object> byAction = new TreeMap<>();
+    for (Map.Entry<String, ActionStats> e : actions.entrySet()) {
+      ActionStats a = e.getValue();
+      Map<String, Object> m = new LinkedHashMap<>();
+      m.put("requests", a.requests.sum());
+      m.put("errors", a.errors.sum());
+      m.put("attempts", a.attempts.sum());
+      m.put("retries", a.retries.sum());
+      m.put("failovers", a.failovers.sum());
+      m.put("request_bytes", a.requestBytes.sum());
+      m.put("response_bytes", a.responseBytes.sum());
+      Map<String, Long> statuses = new TreeMap<>();
+      for (Map.Entry<Integer, LongAdder> s : a.statuses.entrySet()) {
+        statuses.put(s.getKey() == 0 ? "none" : s.getKey().toString(), s.getValue().sum());
+      }
+      m.put("status_codes", statuses);
+      m.put("latency_us", summary(a.latency));
+      m.put("attempt_latency_us", summary(a.attemptLatency));
+      byAction.put(e.getKey(), m);
+    }
+    out.put("actions", byAction);
+
+    Map<String, Object> byUrl = new TreeMap<>();
+    for (Map.Entry<String, UrlStats> e : urls.entrySet()) {
+      UrlStats u = e.getValue();
+      Map<String, Object> m = new LinkedHashMap<>();
+      m.put("attempts", u.attempts.sum());
+      m.put("errors", u.errors.sum());
+      m.put("latency_us", summary(u.latency));
+      byUrl.put(e.getKey(), m);
+    }
+    out.put("urls", byUrl);
+    return Utils.serializer.toJson(out);
+  }
+
+  private static Map<String, Object> summary(LatencyHistogram h) {
+    Map<String, Object> m = new LinkedHashMap<>();
+    m.put("count", h.count());
+    m.put("mean", Math.round(h.mean()));
+    m.put("max", h.max());
+    for (double p : PERCENTILES) {
+      m.put("p" + Double.toString(p * 100).replaceAll("\\.0$", ""), h.percentile(p));
+    }
+    return m;
+  }
+
+  private ActionStats action(String action) {
+    ActionStats a = actions.get(action);
+    if (a == null) {
+      actions.putIfAbsent(action, new ActionStats());
+      a = actions.get(action);
+    }
+    return a;
+  }
+
+  private static class ActionStats {
+    final LongAdder requests = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder attempts = new LongAdder();
+    final LongAdder retries = new LongAdder();
+    final LongAdder failovers = new LongAdder();
+    final LongAdder requestBytes = new LongAdder();
+    final LongAdder responseBytes = new LongAdder();
+    final ConcurrentHashMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LatencyHistogram attemptLatency = new LatencyHistogram();
+
+    LongAdder status(int code) {
+      LongAdder n = statuses.get(code);
+      if (n == null) {
+        statuses.putIfAbsent(code, new LongAdder());
+        n = statuses.get(code);
+      }
+      return n;
+    }
+  }
+
+  private static class UrlStats {
+    final LongAdder attempts = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LatencyHistogram latency = new LatencyHistogram();
+  }
+}
@@ -0,0 +1,104 @@
+package com.chain.http;
+
+import com.chain.common.Utils;
+import com.google.gson.JsonIOException;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * JsonRequestBody serializes an object to JSON as the request is sent,
+ * writing straight into the connection's sink instead of first building
+ * the whole document as a string and then as bytes.<br>
+ * The object is serialized again each time the body is written, so the
+ * body can be resent on retry, or by two hedged calls at once, as long as
+ * the object is not modified while the request is in progress.
+ */
+class JsonRequestBody extends RequestBody {
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+  private final Object body;
+
+  JsonRequestBody(Object body) {
+    this.body = body;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return JSON;
+  }
+
+  @Override
+  public long contentLength() {
+    return -1; // not known until written; the body is sent chunked
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    SinkWriter out = new SinkWriter(sink);
+    try {
+      Utils.serializer.toJson(body, out);
+    } catch (JsonIOException ex) {
+      // Gson wraps failures of the writer, such as a dropped connection.
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw ex;
+    }
+    out.flush();
+  }
+
+  /**
+   * SinkWriter encodes characters as UTF-8 into a buffer, and moves the
+   * buffer's segments into the sink once it holds a chunk's worth. Gson
+   * writes strings and escape sequences in runs, which are encoded without
+   * intermediate copies. Handing the sink large chunks keeps each one from
+   * becoming a separate HTTP chunk and socket write.
+   */
+  private static class SinkWriter extends Writer {
+    private static final long CHUNK_BYTES = 64 * 1024;
+
+    private final BufferedSink sink;
+    private final Buffer buffer = new Buffer();
+
+    SinkWriter(BufferedSink sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      buffer.writeUtf8CodePoint(c);
+      emit();
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      buffer.writeUtf8(str, off, off + len);
+      emit();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      buffer.writeUtf8(new String(cbuf, off, len));
+      emit();
+    }
+
+    private void emit() throws IOException {
+      if (buffer.size() >= CHUNK_BYTES) {
+        sink.write(buffer, buffer.size());
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      sink.write(buffer, buffer.size());
+    }
+
+    @Override
+    public void close() {}
+  }
+}
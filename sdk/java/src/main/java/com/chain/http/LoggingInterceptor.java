@@ -3,20 +3,44 @@ package com.chain.http;
 import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
+import okio.Buffer;
 import okio.BufferedSink;
 import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.Okio;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The LoggingInterceptor object logs http requests given
- * an output stream.
+ * an output stream.<br>
+ * By default every request matching the level is logged in full, and
+ * written to the stream on the thread that made the request. To reduce the
+ * cost of logging, requests can be sampled, bodies truncated, and entries
+ * handed to a background writer through a bounded buffer. When the buffer
+ * is full, new entries are dropped rather than slowing down requests.
  */
 public class LoggingInterceptor implements Interceptor {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
   private Level level;
   private OutputStream logger;
+  private double sampleRate = 1;
+  private double errorSampleRate = 1;
+  private long maxBodyBytes = -1;
+  private volatile ArrayBlockingQueue<byte[]> buffer;
+  private Thread writer;
+  private final AtomicLong enqueued = new AtomicLong();
+  private long written;
+  private final AtomicLong dropped = new AtomicLong();
 
   public enum Level {
     ALL,
@@ -29,6 +53,80 @@ public class LoggingInterceptor implements Interceptor {
     this.level = logAllRequests;
   }
 
+  /**
+   * Sets the share of requests that are logged. Defaults to logging every
+   * request matching the level.
+   * @param rate the share of successful requests logged, between 0 and 1
+   * @param errorRate the share of requests that failed with a 4xx or 5xx
+   * response logged, between 0 and 1
+   * @return updated interceptor
+   */
+  public LoggingInterceptor setSampleRates(double rate, double errorRate) {
+    this.sampleRate = rate;
+    this.errorSampleRate = errorRate;
+    return this;
+  }
+
+  /**
+   * Sets how many bytes of each request and response body are logged.
+   * Only that much of a response is read ahead of the caller; the rest is
+   * left to stream. Defaults to logging bodies in full.
+   * @param maxBytes the greatest number of bytes logged per body, or -1 for
+   * no limit
+   * @return updated interceptor
+   */
+  public LoggingInterceptor setMaxBodyBytes(long maxBytes) {
+    this.maxBodyBytes = maxBytes;
+    return this;
+  }
+
+  /**
+   * Writes log entries to the output stream from a background thread,
+   * instead of on the thread that made the request. Entries wait in a
+   * buffer of the given capacity; entries logged while it is full are
+   * dropped.
+   * @param capacity the number of entries the buffer holds
+   * @return updated interceptor
+   */
+  public synchronized LoggingInterceptor setAsync(int capacity) {
+    if (this.buffer != null) {
+      throw new IllegalStateException("logging is already asynchronous");
+    }
+    this.buffer = new ArrayBlockingQueue<>(capacity);
+    this.writer = new Thread(this::drain, "chain-sdk-logger");
+    this.writer.setDaemon(true);
+    this.writer.start();
+    return this;
+  }
+
+  /**
+   * Returns the number of entries dropped because the buffer was full or
+   * the output stream failed.
+   */
+  public long dropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Waits until entries buffered so far have been written.
+   * @param timeout the longest time to wait
+   * @param unit the time unit of the timeout
+   * @return true if the entries were written, false if the wait timed out
+   * @throws InterruptedException if the wait was interrupted
+   */
+  public synchronized boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+    long target = enqueued.get();
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (written < target) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return true;
+  }
+
   @Override
   public Response intercept(Interceptor.Chain chain) throws IOException {
     Request request = chain.request();
@@ -36,7 +134,10 @@ public class LoggingInterceptor implements Interceptor {
 
     boolean isError = (response.code() / 100) == 5 || (response.code() / 100) == 4;
     if ((isError && level == level.ERRORS) || level == level.ALL) {
-      logRequestData(request, response);
+      double rate = isError ? errorSampleRate : sampleRate;
+      if (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate) {
+        logRequestData(request, response);
+      }
     }
 
     return response;
@@ -47,9 +148,16 @@ public class LoggingInterceptor implements Interceptor {
 
     String requestBody;
     try {
-      BufferedSink reqBodySink = new okio.Buffer();
-      request.body().writeTo(reqBodySink);
-      requestBody = new String(reqBodySink.buffer().readByteArray());
+      Buffer reqBody = new Buffer();
+      boolean truncated = false;
+      if (request.body() != null) {
+        CappedSink capped = new CappedSink(reqBody, maxBodyBytes);
+        BufferedSink sink = Okio.buffer(capped);
+        request.body().writeTo(sink);
+        sink.flush();
+        truncated = capped.truncated;
+      }
+      requestBody = reqBody.readString(UTF8) + (truncated ? " [truncated]" : "");
     } catch (IOException e) {
       requestBody = "Unable to read request body.";
     }
@@ -59,10 +167,22 @@ public class LoggingInterceptor implements Interceptor {
       label = "chain-error";
     }
 
+    // Read ahead only as much of the response as will be logged. The bytes
+    // stay in the source's buffer for the caller to consume.
     BufferedSource source = response.body().source();
-    source.request(Long.MAX_VALUE);
+    String responseBody;
+    if (maxBodyBytes < 0) {
+      source.request(Long.MAX_VALUE);
+      responseBody = source.buffer().clone().readString(UTF8);
+    } else {
+      boolean truncated = source.request(maxBodyBytes + 1);
+      long n = Math.min(source.buffer().size(), maxBodyBytes);
+      Buffer head = new Buffer();
+      source.buffer().copyTo(head, 0, n);
+      responseBody = head.readString(UTF8) + (truncated ? " [truncated]" : "");
+    }
 
-    logger.write(
+    byte[] entry =
         String.format(
                 "%s:\n\treqid=%s\n\turl=%s\n\tcode=%d\n\trequest=%s\n\tresponse=%s\n",
                 label,
@@ -70,7 +190,76 @@ public class LoggingInterceptor implements Interceptor {
                 request.urlString(),
                 response.code(),
                 requestBody,
-                source.buffer().clone().readString(Charset.forName("UTF-8")))
-            .getBytes());
+                responseBody)
+            .getBytes(UTF8);
+
+    ArrayBlockingQueue<byte[]> buffer = this.buffer;
+    if (buffer == null) {
+      logger.write(entry);
+      return;
+    }
+    if (buffer.offer(entry)) {
+      enqueued.incrementAndGet();
+    } else {
+      dropped.incrementAndGet();
+    }
+  }
+
+  private void drain() {
+    List<byte[]> batch = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(buffer.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      buffer.drainTo(batch);
+      for (byte[] entry : batch) {
+        try {
+          logger.write(entry);
+        } catch (IOException e) {
+          dropped.incrementAndGet();
+        }
+      }
+      try {
+        logger.flush();
+      } catch (IOException e) {
+        // The entries were handed to the stream; there is nothing to retry.
+      }
+      synchronized (this) {
+        written += batch.size();
+        notifyAll();
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * CappedSink keeps up to a limit of bytes written to it, and discards
+   * the rest.
+   */
+  private static class CappedSink extends ForwardingSink {
+    private final Buffer kept;
+    private final long limit;
+    boolean truncated;
+
+    CappedSink(Buffer kept, long limit) {
+      super(kept);
+      this.kept = kept;
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+      long room = limit < 0 ? byteCount : Math.max(0, limit - kept.size());
+      long n = Math.min(room, byteCount);
+      if (n > 0) {
+        super.write(source, n);
+      }
+      if (byteCount > n) {
+        source.skip(byteCount - n);
+        truncated = true;
+      }
+    }
   }
 }
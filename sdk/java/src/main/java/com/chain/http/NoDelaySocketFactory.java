@@ -0,0 +1,49 @@
+package com.chain.http;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * NoDelaySocketFactory creates sockets with Nagle's algorithm disabled.
+ * Request bodies are streamed to the socket as they are serialized, so
+ * the last write of a request is often a small one, which Nagle's
+ * algorithm would hold back until the server acknowledges the previous
+ * write.
+ */
+class NoDelaySocketFactory extends SocketFactory {
+  private final SocketFactory delegate = SocketFactory.getDefault();
+
+  @Override
+  public Socket createSocket() throws IOException {
+    return noDelay(delegate.createSocket());
+  }
+
+  @Override
+  public Socket createSocket(String host, int port) throws IOException {
+    return noDelay(delegate.createSocket(host, port));
+  }
+
+  @Override
+  public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+      throws IOException {
+    return noDelay(delegate.createSocket(host, port, localHost, localPort));
+  }
+
+  @Override
+  public Socket createSocket(InetAddress host, int port) throws IOException {
+    return noDelay(delegate.createSocket(host, port));
+  }
+
+  @Override
+  public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+      throws IOException {
+    return noDelay(delegate.createSocket(address, port, localAddress, localPort));
+  }
+
+  private static Socket noDelay(Socket socket) throws IOException {
+    socket.setTcpNoDelay(true);
+    return socket;
+  }
+}
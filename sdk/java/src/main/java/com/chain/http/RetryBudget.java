@@ -0,0 +1,126 @@
+package com.chain.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RetryBudget limits the retries made by the clients sharing it, so that
+ * when Core is struggling, retries cannot multiply the load on it.<br>
+ * The budget is a token bucket. Every request deposits a fraction of a token,
+ * the bucket also refills at a fixed minimum rate, and every retry withdraws
+ * one token. Retries therefore stay below a fixed share of requests plus a
+ * small number per second, while a full bucket absorbs short bursts of
+ * failures. A retry that finds the bucket empty is denied, and the request
+ * fails with a {@link com.chain.exception.RetryBudgetExhaustedException}.<br>
+ * A budget is safe for use by multiple threads, and may be shared by several
+ * clients to bound their retries together.
+ */
+public final class RetryBudget {
+  // Balances are kept in thousandths of a token.
+  private static final long SCALE = 1000;
+
+  private final long depositMilli;
+  private final double refillPerNano;
+  private final long maxMilli;
+  private final AtomicLong balance;
+  private final AtomicLong lastRefillNanos;
+  private final AtomicLong allowed = new AtomicLong();
+  private final AtomicLong denied = new AtomicLong();
+
+  /**
+   * Creates a full retry budget.
+   * @param ratio the number of retries each request earns, such as 0.2 to
+   * allow retries for one request in five
+   * @param minRetriesPerSecond the rate at which retries are earned
+   * regardless of the number of requests
+   * @param maxRetries the most retries that can be saved up
+   */
+  public RetryBudget(double ratio, double minRetriesPerSecond, int maxRetries) {
+    if (ratio < 0 || minRetriesPerSecond < 0 || maxRetries < 0) {
+      throw new IllegalArgumentException("retry budget parameters must not be negative");
+    }
+    this.depositMilli = Math.round(ratio * SCALE);
+    this.refillPerNano = minRetriesPerSecond * SCALE / TimeUnit.SECONDS.toNanos(1);
+    this.maxMilli = maxRetries * SCALE;
+    this.balance = new AtomicLong(maxMilli);
+    this.lastRefillNanos = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Returns the number of retries the budget has allowed.
+   */
+  public long retriesAllowed() {
+    return allowed.get();
+  }
+
+  /**
+   * Returns the number of retries the budget has denied.
+   */
+  public long retriesDenied() {
+    return denied.get();
+  }
+
+  /**
+   * Returns the number of retries currently available.
+   */
+  public double balance() {
+    refill();
+    return (double) balance.get() / SCALE;
+  }
+
+  /**
+   * Credits the budget for a new request.
+   */
+  void deposit() {
+    add(depositMilli);
+  }
+
+  /**
+   * Withdraws one retry from the budget.
+   * @return true if the retry is allowed
+   */
+  boolean tryWithdraw() {
+    refill();
+    while (true) {
+      long b = balance.get();
+      if (b < SCALE) {
+        denied.incrementAndGet();
+        return false;
+      }
+      if (balance.compareAndSet(b, b - SCALE)) {
+        allowed.incrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  private void refill() {
+    if (refillPerNano == 0) {
+      return;
+    }
+    long last = lastRefillNanos.get();
+    long now = System.nanoTime();
+    long earned = (long) ((now - last) * refillPerNano);
+    // Wait until a whole thousandth of a token has been earned, so that
+    // frequent calls don't round the refill away.
+    if (earned > 0 && lastRefillNanos.compareAndSet(last, now)) {
+      add(earned);
+    }
+  }
+
+  private void add(long milli) {
+    while (true) {
+      long b = balance.get();
+      long next = Math.min(maxMilli, b + milli);
+      if (next == b || balance.compareAndSet(b, next)) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "balance=%.1f allowed=%d denied=%d", balance(), retriesAllowed(), retriesDenied());
+  }
+}
@@ -0,0 +1,1521 @@
+package com.chain.signing;
+
+/**
+ * Arithmetic on the edwards25519 curve and its scalar field, as needed for
+ * ChainKD key derivation and signing.<br>
+ * This is a port of the public domain ref10 implementation from SUPERCOP, by
+ * way of the edwards25519 package that Chain Core's HSM signs with. None of
+ * the operations on scalars branch on or index memory by their bits, so they
+ * run in constant time with respect to secret keys.<br>
+ * Field elements are int[10] in radix 2^25.5, and scalars are 32-byte
+ * little-endian arrays.
+ */
+final class Ed25519 {
+  private static final int[] D = {
+    -10913610, 13857413, -15372611, 6949391, 114729, -8787816, -6275908, -3247719, -18696448,
+    -12055116,
+  };
+
+  private static final int[] D2 = {
+    -21827239, -5839606, -30745221, 13898782, 229458, 15978800, -12551817, -6495438, 29715968,
+    9444199,
+  };
+
+  private static final int[] SQRT_M1 = {
+    -32595792, -7943725, 9377950, 3500415, 12389472, -272473, -25146209, -2005654, 326686,
+    11406482,
+  };
+
+  // The encoding of the base point B.
+  private static final byte[] BASE_POINT = {
+    0x58, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66,
+    0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66, 0x66,
+  };
+
+  // BASE[i][j] = (j + 1) * 256^i * B. It holds only public points, so it is
+  // computed once at class load rather than written out as ref10 does.
+  private static final Precomputed[][] BASE = baseTable();
+
+  private Ed25519() {}
+
+  /**
+   * Returns the encoding of a * B. a must be 32 bytes with a[31] <= 127.
+   */
+  static byte[] scalarMultBase(byte[] a) {
+    Extended h = new Extended();
+    geScalarMultBase(h, a);
+    return h.toBytes();
+  }
+
+  /**
+   * Returns s mod l for a 64-byte s, where
+   * l = 2^252 + 27742317777372353535851937790883648493.
+   */
+  static byte[] reduce(byte[] s) {
+    byte[] out = new byte[32];
+    scReduce(out, s);
+    return out;
+  }
+
+  /**
+   * Returns (a * b + c) mod l.
+   */
+  static byte[] mulAdd(byte[] a, byte[] b, byte[] c) {
+    byte[] s = new byte[32];
+    scMulAdd(s, a, b, c);
+    return s;
+  }
+
+  // Field arithmetic. Unless noted, the output may alias an input.
+
+  private static int[] fe() {
+    return new int[10];
+  }
+
+  private static void feZero(int[] h) {
+    java.util.Arrays.fill(h, 0);
+  }
+
+  private static void feOne(int[] h) {
+    feZero(h);
+    h[0] = 1;
+  }
+
+  private static void feAdd(int[] h, int[] f, int[] g) {
+    for (int i = 0; i < 10; i++) {
+      h[i] = f[i] + g[i];
+    }
+  }
+
+  private static void feSub(int[] h, int[] f, int[] g) {
+    for (int i = 0; i < 10; i++) {
+      h[i] = f[i] - g[i];
+    }
+  }
+
+  private static void feNeg(int[] h, int[] f) {
+    for (int i = 0; i < 10; i++) {
+      h[i] = -f[i];
+    }
+  }
+
+  private static void feCopy(int[] h, int[] f) {
+    System.arraycopy(f, 0, h, 0, 10);
+  }
+
+  // Replaces f with g if b == 1 and leaves it alone if b == 0.
+  private static void feCMove(int[] f, int[] g, int b) {
+    b = -b;
+    for (int i = 0; i < 10; i++) {
+      f[i] ^= b & (f[i] ^ g[i]);
+    }
+  }
+
+  private static long load3(byte[] in, int off) {
+    return (in[off] & 0xffL) | (in[off + 1] & 0xffL) << 8 | (in[off + 2] & 0xffL) << 16;
+  }
+
+  private static long load4(byte[] in, int off) {
+    return load3(in, off) | (in[off + 3] & 0xffL) << 24;
+  }
+
+  private static void feFromBytes(int[] dst, byte[] src) {
+    long h0 = load4(src, 0);
+    long h1 = load3(src, 4) << 6;
+    long h2 = load3(src, 7) << 5;
+    long h3 = load3(src, 10) << 3;
+    long h4 = load3(src, 13) << 2;
+    long h5 = load4(src, 16);
+    long h6 = load3(src, 20) << 7;
+    long h7 = load3(src, 23) << 5;
+    long h8 = load3(src, 26) << 4;
+    long h9 = (load3(src, 29) & 8388607) << 2;
+
+    feCombine(dst, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+  }
+
+  private static void feToBytes(byte[] s, int[] f) {
+    int[] h = f.clone();
+    int[] carry = new int[10];
+
+    int q = (19 * h[9] + (1 << 24)) >> 25;
+    q = (h[0] + q) >> 26;
+    q = (h[1] + q) >> 25;
+    q = (h[2] + q) >> 26;
+    q = (h[3] + q) >> 25;
+    q = (h[4] + q) >> 26;
+    q = (h[5] + q) >> 25;
+    q = (h[6] + q) >> 26;
+    q = (h[7] + q) >> 25;
+    q = (h[8] + q) >> 26;
+    q = (h[9] + q) >> 25;
+
+    h[0] += 19 * q;
+
+    carry[0] = h[0] >> 26;
+    h[1] += carry[0];
+    h[0] -= carry[0] << 26;
+    carry[1] = h[1] >> 25;
+    h[2] += carry[1];
+    h[1] -= carry[1] << 25;
+    carry[2] = h[2] >> 26;
+    h[3] += carry[2];
+    h[2] -= carry[2] << 26;
+    carry[3] = h[3] >> 25;
+    h[4] += carry[3];
+    h[3] -= carry[3] << 25;
+    carry[4] = h[4] >> 26;
+    h[5] += carry[4];
+    h[4] -= carry[4] << 26;
+    carry[5] = h[5] >> 25;
+    h[6] += carry[5];
+    h[5] -= carry[5] << 25;
+    carry[6] = h[6] >> 26;
+    h[7] += carry[6];
+    h[6] -= carry[6] << 26;
+    carry[7] = h[7] >> 25;
+    h[8] += carry[7];
+    h[7] -= carry[7] << 25;
+    carry[8] = h[8] >> 26;
+    h[9] += carry[8];
+    h[8] -= carry[8] << 26;
+    carry[9] = h[9] >> 25;
+    h[9] -= carry[9] << 25;
+
+    s[0] = (byte) h[0];
+    s[1] = (byte) (h[0] >> 8);
+    s[2] = (byte) (h[0] >> 16);
+    s[3] = (byte) ((h[0] >> 24) | (h[1] << 2));
+    s[4] = (byte) (h[1] >> 6);
+    s[5] = (byte) (h[1] >> 14);
+    s[6] = (byte) ((h[1] >> 22) | (h[2] << 3));
+    s[7] = (byte) (h[2] >> 5);
+    s[8] = (byte) (h[2] >> 13);
+    s[9] = (byte) ((h[2] >> 21) | (h[3] << 5));
+    s[10] = (byte) (h[3] >> 3);
+    s[11] = (byte) (h[3] >> 11);
+    s[12] = (byte) ((h[3] >> 19) | (h[4] << 6));
+    s[13] = (byte) (h[4] >> 2);
+    s[14] = (byte) (h[4] >> 10);
+    s[15] = (byte) (h[4] >> 18);
+    s[16] = (byte) h[5];
+    s[17] = (byte) (h[5] >> 8);
+    s[18] = (byte) (h[5] >> 16);
+    s[19] = (byte) ((h[5] >> 24) | (h[6] << 1));
+    s[20] = (byte) (h[6] >> 7);
+    s[21] = (byte) (h[6] >> 15);
+    s[22] = (byte) ((h[6] >> 23) | (h[7] << 3));
+    s[23] = (byte) (h[7] >> 5);
+    s[24] = (byte) (h[7] >> 13);
+    s[25] = (byte) ((h[7] >> 21) | (h[8] << 4));
+    s[26] = (byte) (h[8] >> 4);
+    s[27] = (byte) (h[8] >> 12);
+    s[28] = (byte) ((h[8] >> 20) | (h[9] << 6));
+    s[29] = (byte) (h[9] >> 2);
+    s[30] = (byte) (h[9] >> 10);
+    s[31] = (byte) (h[9] >> 18);
+  }
+
+  private static int feIsNegative(int[] f) {
+    byte[] s = new byte[32];
+    feToBytes(s, f);
+    return s[0] & 1;
+  }
+
+  private static int feIsNonZero(int[] f) {
+    byte[] s = new byte[32];
+    feToBytes(s, f);
+    int x = 0;
+    for (byte b : s) {
+      x |= b & 0xff;
+    }
+    return (x - 1) >>> 31 ^ 1;
+  }
+
+  private static void feCombine(
+      int[] h, long h0, long h1, long h2, long h3, long h4, long h5, long h6, long h7, long h8,
+      long h9) {
+    long c0, c1, c2, c3, c4, c5, c6, c7, c8, c9;
+
+    c0 = (h0 + (1 << 25)) >> 26;
+    h1 += c0;
+    h0 -= c0 << 26;
+    c4 = (h4 + (1 << 25)) >> 26;
+    h5 += c4;
+    h4 -= c4 << 26;
+
+    c1 = (h1 + (1 << 24)) >> 25;
+    h2 += c1;
+    h1 -= c1 << 25;
+    c5 = (h5 + (1 << 24)) >> 25;
+    h6 += c5;
+    h5 -= c5 << 25;
+
+    c2 = (h2 + (1 << 25)) >> 26;
+    h3 += c2;
+    h2 -= c2 << 26;
+    c6 = (h6 + (1 << 25)) >> 26;
+    h7 += c6;
+    h6 -= c6 << 26;
+
+    c3 = (h3 + (1 << 24)) >> 25;
+    h4 += c3;
+    h3 -= c3 << 25;
+    c7 = (h7 + (1 << 24)) >> 25;
+    h8 += c7;
+    h7 -= c7 << 25;
+
+    c4 = (h4 + (1 << 25)) >> 26;
+    h5 += c4;
+    h4 -= c4 << 26;
+    c8 = (h8 + (1 << 25)) >> 26;
+    h9 += c8;
+    h8 -= c8 << 26;
+
+    c9 = (h9 + (1 << 24)) >> 25;
+    h0 += c9 * 19;
+    h9 -= c9 << 25;
+
+    c0 = (h0 + (1 << 25)) >> 26;
+    h1 += c0;
+    h0 -= c0 << 26;
+
+    h[0] = (int) h0;
+    h[1] = (int) h1;
+    h[2] = (int) h2;
+    h[3] = (int) h3;
+    h[4] = (int) h4;
+    h[5] = (int) h5;
+    h[6] = (int) h6;
+    h[7] = (int) h7;
+    h[8] = (int) h8;
+    h[9] = (int) h9;
+
+    h[0] = (int) h0;
+    h[1] = (int) h1;
+    h[2] = (int) h2;
+    h[3] = (int) h3;
+    h[4] = (int) h4;
+    h[5] = (int) h5;
+    h[6] = (int) h6;
+    h[7] = (int) h7;
+    h[8] = (int) h8;
+    h[9] = (int) h9;
+  }
+
+  private static void feMul(int[] h, int[] f, int[] g) {
+    long f0 = f[0];
+    long f1 = f[1];
+    long f2 = f[2];
+    long f3 = f[3];
+    long f4 = f[4];
+    long f5 = f[5];
+    long f6 = f[6];
+    long f7 = f[7];
+    long f8 = f[8];
+    long f9 = f[9];
+
+    long f1_2 = 2 * f[1];
+    long f3_2 = 2 * f[3];
+    long f5_2 = 2 * f[5];
+    long f7_2 = 2 * f[7];
+    long f9_2 = 2 * f[9];
+
+    long g0 = g[0];
+    long g1 = g[1];
+    long g2 = g[2];
+    long g3 = g[3];
+    long g4 = g[4];
+    long g5 = g[5];
+    long g6 = g[6];
+    long g7 = g[7];
+    long g8 = g[8];
+    long g9 = g[9];
+
+    long g1_19 = 19 * g[1];
+    long g2_19 = 19 * g[2];
+    long g3_19 = 19 * g[3];
+    long g4_19 = 19 * g[4];
+    long g5_19 = 19 * g[5];
+    long g6_19 = 19 * g[6];
+    long g7_19 = 19 * g[7];
+    long g8_19 = 19 * g[8];
+    long g9_19 = 19 * g[9];
+
+    long h0 = f0 * g0 + f1_2 * g9_19 + f2 * g8_19 + f3_2 * g7_19 + f4 * g6_19 + f5_2 * g5_19
+        + f6 * g4_19 + f7_2 * g3_19 + f8 * g2_19 + f9_2 * g1_19;
+    long h1 = f0 * g1 + f1 * g0 + f2 * g9_19 + f3 * g8_19 + f4 * g7_19 + f5 * g6_19 + f6 * g5_19
+        + f7 * g4_19 + f8 * g3_19 + f9 * g2_19;
+    long h2 = f0 * g2 + f1_2 * g1 + f2 * g0 + f3_2 * g9_19 + f4 * g8_19 + f5_2 * g7_19 + f6 * g6_19
+        + f7_2 * g5_19 + f8 * g4_19 + f9_2 * g3_19;
+    long h3 = f0 * g3 + f1 * g2 + f2 * g1 + f3 * g0 + f4 * g9_19 + f5 * g8_19 + f6 * g7_19
+        + f7 * g6_19 + f8 * g5_19 + f9 * g4_19;
+    long h4 = f0 * g4 + f1_2 * g3 + f2 * g2 + f3_2 * g1 + f4 * g0 + f5_2 * g9_19 + f6 * g8_19
+        + f7_2 * g7_19 + f8 * g6_19 + f9_2 * g5_19;
+    long h5 = f0 * g5 + f1 * g4 + f2 * g3 + f3 * g2 + f4 * g1 + f5 * g0 + f6 * g9_19 + f7 * g8_19
+        + f8 * g7_19 + f9 * g6_19;
+    long h6 = f0 * g6 + f1_2 * g5 + f2 * g4 + f3_2 * g3 + f4 * g2 + f5_2 * g1 + f6 * g0
+        + f7_2 * g9_19 + f8 * g8_19 + f9_2 * g7_19;
+    long h7 = f0 * g7 + f1 * g6 + f2 * g5 + f3 * g4 + f4 * g3 + f5 * g2 + f6 * g1 + f7 * g0
+        + f8 * g9_19 + f9 * g8_19;
+    long h8 = f0 * g8 + f1_2 * g7 + f2 * g6 + f3_2 * g5 + f4 * g4 + f5_2 * g3 + f6 * g2 + f7_2 * g1
+        + f8 * g0 + f9_2 * g9_19;
+    long h9 = f0 * g9 + f1 * g8 + f2 * g7 + f3 * g6 + f4 * g5 + f5 * g4 + f6 * g3 + f7 * g2
+        + f8 * g1 + f9 * g0;
+
+    feCombine(h, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+  }
+
+  private static long[] feSquareWide(int[] f) {
+    long f0 = f[0];
+    long f1 = f[1];
+    long f2 = f[2];
+    long f3 = f[3];
+    long f4 = f[4];
+    long f5 = f[5];
+    long f6 = f[6];
+    long f7 = f[7];
+    long f8 = f[8];
+    long f9 = f[9];
+    long f0_2 = 2 * f[0];
+    long f1_2 = 2 * f[1];
+    long f2_2 = 2 * f[2];
+    long f3_2 = 2 * f[3];
+    long f4_2 = 2 * f[4];
+    long f5_2 = 2 * f[5];
+    long f6_2 = 2 * f[6];
+    long f7_2 = 2 * f[7];
+    long f5_38 = 38 * f5;
+    long f6_19 = 19 * f6;
+    long f7_38 = 38 * f7;
+    long f8_19 = 19 * f8;
+    long f9_38 = 38 * f9;
+
+    long h0 = f0 * f0 + f1_2 * f9_38 + f2_2 * f8_19 + f3_2 * f7_38 + f4_2 * f6_19 + f5 * f5_38;
+    long h1 = f0_2 * f1 + f2 * f9_38 + f3_2 * f8_19 + f4 * f7_38 + f5_2 * f6_19;
+    long h2 = f0_2 * f2 + f1_2 * f1 + f3_2 * f9_38 + f4_2 * f8_19 + f5_2 * f7_38 + f6 * f6_19;
+    long h3 = f0_2 * f3 + f1_2 * f2 + f4 * f9_38 + f5_2 * f8_19 + f6 * f7_38;
+    long h4 = f0_2 * f4 + f1_2 * f3_2 + f2 * f2 + f5_2 * f9_38 + f6_2 * f8_19 + f7 * f7_38;
+    long h5 = f0_2 * f5 + f1_2 * f4 + f2_2 * f3 + f6 * f9_38 + f7_2 * f8_19;
+    long h6 = f0_2 * f6 + f1_2 * f5_2 + f2_2 * f4 + f3_2 * f3 + f7_2 * f9_38 + f8 * f8_19;
+    long h7 = f0_2 * f7 + f1_2 * f6 + f2_2 * f5 + f3_2 * f4 + f8 * f9_38;
+    long h8 = f0_2 * f8 + f1_2 * f7_2 + f2_2 * f6 + f3_2 * f5_2 + f4 * f4 + f9 * f9_38;
+    long h9 = f0_2 * f9 + f1_2 * f8 + f2_2 * f7 + f3_2 * f6 + f4_2 * f5;
+
+    return new long[] {h0, h1, h2, h3, h4, h5, h6, h7, h8, h9};
+  }
+
+  private static void feSquare(int[] h, int[] f) {
+    long[] w = feSquareWide(f);
+    feCombine(h, w[0], w[1], w[2], w[3], w[4], w[5], w[6], w[7], w[8], w[9]);
+  }
+
+  // Sets h = 2 * f * f.
+  private static void feSquare2(int[] h, int[] f) {
+    long[] w = feSquareWide(f);
+    feCombine(
+        h, 2 * w[0], 2 * w[1], 2 * w[2], 2 * w[3], 2 * w[4], 2 * w[5], 2 * w[6], 2 * w[7], 2 * w[8],
+        2 * w[9]);
+  }
+
+  // Sets h = f * f^(2^n).
+  private static void feSquareMul(int[] h, int[] f, int n, int[] g) {
+    int[] t = fe();
+    feSquare(t, f);
+    for (int i = 1; i < n; i++) {
+      feSquare(t, t);
+    }
+    feMul(h, t, g);
+  }
+
+  // Sets out = z^(p - 2) = 1/z.
+  private static void feInvert(int[] out, int[] z) {
+    int[] t0 = fe();
+    int[] t1 = fe();
+    int[] t2 = fe();
+    feSquare(t0, z); // 2^1
+    feSquareMul(t1, t0, 2, z); // 2^3 + 2^0
+    feMul(t0, t0, t1); // 2^3 + 2^1 + 2^0
+    feSquareMul(t1, t0, 1, t1); // 4..0
+    feSquareMul(t1, t1, 5, t1); // 9..0
+    feSquareMul(t2, t1, 10, t1); // 19..0
+    feSquareMul(t2, t2, 20, t2); // 39..0
+    feSquareMul(t1, t2, 10, t1); // 49..0
+    feSquareMul(t2, t1, 50, t1); // 99..0
+    feSquareMul(t2, t2, 100, t2); // 199..0
+    feSquareMul(t1, t2, 50, t1); // 249..0
+    feSquareMul(out, t1, 5, t0); // 254..5,3,1,0
+  }
+
+  // Sets out = z^((p - 5) / 8).
+  private static void fePow22523(int[] out, int[] z) {
+    int[] t0 = fe();
+    int[] t1 = fe();
+    feSquare(t0, z); // 2^1
+    feSquareMul(t1, t0, 2, z); // 2^3 + 2^0
+    feMul(t0, t0, t1); // 3,1,0
+    feSquareMul(t0, t0, 1, t1); // 4..0
+    feSquareMul(t0, t0, 5, t0); // 9..0
+    feSquareMul(t1, t0, 10, t0); // 19..0
+    feSquareMul(t1, t1, 20, t1); // 39..0
+    feSquareMul(t0, t1, 10, t0); // 49..0
+    feSquareMul(t1, t0, 50, t0); // 99..0
+    feSquareMul(t1, t1, 100, t1); // 199..0
+    feSquareMul(t0, t1, 50, t0); // 249..0
+    feSquareMul(out, t0, 2, z); // 251..2,0
+  }
+
+  // Group elements, in the representations ref10 uses:
+  //   Projective: (X:Y:Z) satisfying x=X/Z, y=Y/Z
+  //   Extended:   (X:Y:Z:T) satisfying x=X/Z, y=Y/Z, XY=ZT
+  //   Completed:  ((X:Z),(Y:T)) satisfying x=X/Z, y=Y/T
+  //   Precomputed: (y+x,y-x,2dxy)
+  //   Cached:     (Y+X,Y-X,Z,2dT)
+
+  private static final class Projective {
+    final int[] x = fe();
+    final int[] y = fe();
+    final int[] z = fe();
+
+    void dbl(Completed r) {
+      int[] t0 = fe();
+      feSquare(r.x, x);
+      feSquare(r.z, y);
+      feSquare2(r.t, z);
+      feAdd(r.y, x, y);
+      feSquare(t0, r.y);
+      feAdd(r.y, r.z, r.x);
+      feSub(r.z, r.z, r.x);
+      feSub(r.x, t0, r.y);
+      feSub(r.t, r.t, r.z);
+    }
+  }
+
+  private static final class Extended {
+    final int[] x = fe();
+    final int[] y = fe();
+    final int[] z = fe();
+    final int[] t = fe();
+
+    void zero() {
+      feZero(x);
+      feOne(y);
+      feOne(z);
+      feZero(t);
+    }
+
+    void dbl(Completed r) {
+      Projective q = new Projective();
+      feCopy(q.x, x);
+      feCopy(q.y, y);
+      feCopy(q.z, z);
+      q.dbl(r);
+    }
+
+    void toCached(Cached r) {
+      feAdd(r.yPlusX, y, x);
+      feSub(r.yMinusX, y, x);
+      feCopy(r.z, z);
+      feMul(r.t2d, t, D2);
+    }
+
+    byte[] toBytes() {
+      int[] recip = fe();
+      int[] ax = fe();
+      int[] ay = fe();
+      feInvert(recip, z);
+      feMul(ax, x, recip);
+      feMul(ay, y, recip);
+      byte[] s = new byte[32];
+      feToBytes(s, ay);
+      s[31] ^= feIsNegative(ax) << 7;
+      return s;
+    }
+
+    // Decodes a point. Only used on the public base point.
+    boolean fromBytes(byte[] s) {
+      int[] u = fe();
+      int[] v = fe();
+      int[] v3 = fe();
+      int[] vxx = fe();
+      int[] check = fe();
+      feFromBytes(y, s);
+      feOne(z);
+      feSquare(u, y);
+      feMul(v, u, D);
+      feSub(u, u, z); // y = y^2-1
+      feAdd(v, v, z); // v = dy^2+1
+      feSquare(v3, v);
+      feMul(v3, v3, v); // v3 = v^3
+      feSquare(x, v3);
+      feMul(x, x, v);
+      feMul(x, x, u); // x = uv^7
+      fePow22523(x, x); // x = (uv^7)^((q-5)/8)
+      feMul(x, x, v3);
+      feMul(x, x, u); // x = uv^3(uv^7)^((q-5)/8)
+      feSquare(vxx, x);
+      feMul(vxx, vxx, v);
+      feSub(check, vxx, u); // vx^2-u
+      if (feIsNonZero(check) == 1) {
+        feAdd(check, vxx, u); // vx^2+u
+        if (feIsNonZero(check) == 1) {
+          return false;
+        }
+        feMul(x, x, SQRT_M1);
+      }
+      if (feIsNegative(x) != ((s[31] & 0xff) >> 7)) {
+        feNeg(x, x);
+      }
+      feMul(t, x, y);
+      return true;
+    }
+  }
+
+  private static final class Completed {
+    final int[] x = fe();
+    final int[] y = fe();
+    final int[] z = fe();
+    final int[] t = fe();
+
+    void toProjective(Projective r) {
+      feMul(r.x, x, t);
+      feMul(r.y, y, z);
+      feMul(r.z, z, t);
+    }
+
+    void toExtended(Extended r) {
+      feMul(r.x, x, t);
+      feMul(r.y, y, z);
+      feMul(r.z, z, t);
+      feMul(r.t, x, y);
+    }
+  }
+
+  private static final class Precomputed {
+    final int[] yPlusX = fe();
+    final int[] yMinusX = fe();
+    final int[] xy2d = fe();
+
+    void zero() {
+      feOne(yPlusX);
+      feOne(yMinusX);
+      feZero(xy2d);
+    }
+
+    void cmove(Precomputed u, int b) {
+      feCMove(yPlusX, u.yPlusX, b);
+      feCMove(yMinusX, u.yMinusX, b);
+      feCMove(xy2d, u.xy2d, b);
+    }
+  }
+
+  private static final class Cached {
+    final int[] yPlusX = fe();
+    final int[] yMinusX = fe();
+    final int[] z = fe();
+    final int[] t2d = fe();
+  }
+
+  private static void geAdd(Completed r, Extended p, Cached q) {
+    int[] t0 = fe();
+    feAdd(r.x, p.y, p.x);
+    feSub(r.y, p.y, p.x);
+    feMul(r.z, r.x, q.yPlusX);
+    feMul(r.y, r.y, q.yMinusX);
+    feMul(r.t, q.t2d, p.t);
+    feMul(r.x, p.z, q.z);
+    feAdd(t0, r.x, r.x);
+    feSub(r.x, r.z, r.y);
+    feAdd(r.y, r.z, r.y);
+    feAdd(r.z, t0, r.t);
+    feSub(r.t, t0, r.t);
+  }
+
+  private static void geMixedAdd(Completed r, Extended p, Precomputed q) {
+    int[] t0 = fe();
+    feAdd(r.x, p.y, p.x);
+    feSub(r.y, p.y, p.x);
+    feMul(r.z, r.x, q.yPlusX);
+    feMul(r.y, r.y, q.yMinusX);
+    feMul(r.t, q.xy2d, p.t);
+    feAdd(t0, p.z, p.z);
+    feSub(r.x, r.z, r.y);
+    feAdd(r.y, r.z, r.y);
+    feAdd(r.z, t0, r.t);
+    feSub(r.t, t0, r.t);
+  }
+
+  // Returns 1 if b == c and 0 otherwise, for b and c in [0, 255].
+  private static int equal(int b, int c) {
+    return ((b ^ c) - 1) >>> 31;
+  }
+
+  // Returns 1 if b < 0 and 0 otherwise.
+  private static int negative(int b) {
+    return b >>> 31;
+  }
+
+  // Sets t = b * 256^pos * B for b in [-8, 8], reading every entry of the
+  // table row so that the access pattern does not depend on b.
+  private static void selectPoint(Precomputed t, int pos, int b) {
+    Precomputed minusT = new Precomputed();
+    int bNegative = negative(b);
+    int bAbs = b - (((-bNegative) & b) << 1);
+
+    t.zero();
+    for (int i = 0; i < 8; i++) {
+      t.cmove(BASE[pos][i], equal(bAbs, i + 1));
+    }
+    feCopy(minusT.yPlusX, t.yMinusX);
+    feCopy(minusT.yMinusX, t.yPlusX);
+    feNeg(minusT.xy2d, t.xy2d);
+    t.cmove(minusT, bNegative);
+  }
+
+  // Sets h = a * B, where a = a[0] + 256 * a[1] + ... + 256^31 * a[31] and
+  // a[31] <= 127.
+  private static void geScalarMultBase(Extended h, byte[] a) {
+    // Recode a into 64 signed digits e[i] in [-8, 8] with
+    // a = e[0] + 16 * e[1] + ... + 16^63 * e[63].
+    byte[] e = new byte[64];
+    for (int i = 0; i < 32; i++) {
+      e[2 * i] = (byte) (a[i] & 15);
+      e[2 * i + 1] = (byte) ((a[i] >> 4) & 15);
+    }
+    int carry = 0;
+    for (int i = 0; i < 63; i++) {
+      e[i] += carry;
+      carry = (e[i] + 8) >> 4;
+      e[i] -= carry << 4;
+    }
+    e[63] += carry;
+
+    h.zero();
+    Precomputed t = new Precomputed();
+    Completed r = new Completed();
+    for (int i = 1; i < 64; i += 2) {
+      selectPoint(t, i / 2, e[i]);
+      geMixedAdd(r, h, t);
+      r.toExtended(h);
+    }
+
+    Projective s = new Projective();
+    h.dbl(r);
+    r.toProjective(s);
+    s.dbl(r);
+    r.toProjective(s);
+    s.dbl(r);
+    r.toProjective(s);
+    s.dbl(r);
+    r.toExtended(h);
+
+    for (int i = 0; i < 64; i += 2) {
+      selectPoint(t, i / 2, e[i]);
+      geMixedAdd(r, h, t);
+      r.toExtended(h);
+    }
+  }
+
+  private static Precomputed[][] baseTable() {
+    Extended p = new Extended();
+    if (!p.fromBytes(BASE_POINT)) {
+      throw new IllegalStateException("invalid base point");
+    }
+    Precomputed[][] table = new Precomputed[32][8];
+    Completed r = new Completed();
+    Cached c = new Cached();
+    for (int i = 0; i < 32; i++) {
+      p.toCached(c);
+      Extended q = p;
+      for (int j = 0; j < 8; j++) {
+        if (j > 0) {
+          geAdd(r, q, c);
+          q = new Extended();
+          r.toExtended(q);
+        }
+        table[i][j] = toPrecomputed(q);
+      }
+      for (int k = 0; k < 8; k++) {
+        p.dbl(r);
+        r.toExtended(p);
+      }
+    }
+    return table;
+  }
+
+  private static Precomputed toPrecomputed(Extended p) {
+    int[] recip = fe();
+    int[] x = fe();
+    int[] y = fe();
+    feInvert(recip, p.z);
+    feMul(x, p.x, recip);
+    feMul(y, p.y, recip);
+
+    Precomputed r = new Precomputed();
+    feAdd(r.yPlusX, y, x);
+    feSub(r.yMinusX, y, x);
+    feMul(r.xy2d, x, y);
+    feMul(r.xy2d, r.xy2d, D2);
+    // Bring the limbs into the ranges the table entries in ref10 have.
+    byte[] s = new byte[32];
+    for (int[] f : new int[][] {r.yPlusX, r.yMinusX, r.xy2d}) {
+      feToBytes(s, f);
+      feFromBytes(f, s);
+    }
+    return r;
+  }
+
+  // Scalar arithmetic modulo l = 2^252 + 27742317777372353535851937790883648493.
+
+  // Sets s = (a * b + c) mod l.
+  private static void scMulAdd(byte[] s, byte[] a, byte[] b, byte[] c) {
+    long a0 = 2097151 & load3(a, 0);
+    long a1 = 2097151 & (load4(a, 2) >> 5);
+    long a2 = 2097151 & (load3(a, 5) >> 2);
+    long a3 = 2097151 & (load4(a, 7) >> 7);
+    long a4 = 2097151 & (load4(a, 10) >> 4);
+    long a5 = 2097151 & (load3(a, 13) >> 1);
+    long a6 = 2097151 & (load4(a, 15) >> 6);
+    long a7 = 2097151 & (load3(a, 18) >> 3);
+    long a8 = 2097151 & load3(a, 21);
+    long a9 = 2097151 & (load4(a, 23) >> 5);
+    long a10 = 2097151 & (load3(a, 26) >> 2);
+    long a11 = (load4(a, 28) >> 7);
+    long b0 = 2097151 & load3(b, 0);
+    long b1 = 2097151 & (load4(b, 2) >> 5);
+    long b2 = 2097151 & (load3(b, 5) >> 2);
+    long b3 = 2097151 & (load4(b, 7) >> 7);
+    long b4 = 2097151 & (load4(b, 10) >> 4);
+    long b5 = 2097151 & (load3(b, 13) >> 1);
+    long b6 = 2097151 & (load4(b, 15) >> 6);
+    long b7 = 2097151 & (load3(b, 18) >> 3);
+    long b8 = 2097151 & load3(b, 21);
+    long b9 = 2097151 & (load4(b, 23) >> 5);
+    long b10 = 2097151 & (load3(b, 26) >> 2);
+    long b11 = (load4(b, 28) >> 7);
+    long c0 = 2097151 & load3(c, 0);
+    long c1 = 2097151 & (load4(c, 2) >> 5);
+    long c2 = 2097151 & (load3(c, 5) >> 2);
+    long c3 = 2097151 & (load4(c, 7) >> 7);
+    long c4 = 2097151 & (load4(c, 10) >> 4);
+    long c5 = 2097151 & (load3(c, 13) >> 1);
+    long c6 = 2097151 & (load4(c, 15) >> 6);
+    long c7 = 2097151 & (load3(c, 18) >> 3);
+    long c8 = 2097151 & load3(c, 21);
+    long c9 = 2097151 & (load4(c, 23) >> 5);
+    long c10 = 2097151 & (load3(c, 26) >> 2);
+    long c11 = (load4(c, 28) >> 7);
+    long[] carry = new long[23];
+
+    long s0 = c0 + a0 * b0;
+    long s1 = c1 + a0 * b1 + a1 * b0;
+    long s2 = c2 + a0 * b2 + a1 * b1 + a2 * b0;
+    long s3 = c3 + a0 * b3 + a1 * b2 + a2 * b1 + a3 * b0;
+    long s4 = c4 + a0 * b4 + a1 * b3 + a2 * b2 + a3 * b1 + a4 * b0;
+    long s5 = c5 + a0 * b5 + a1 * b4 + a2 * b3 + a3 * b2 + a4 * b1 + a5 * b0;
+    long s6 = c6 + a0 * b6 + a1 * b5 + a2 * b4 + a3 * b3 + a4 * b2 + a5 * b1 + a6 * b0;
+    long s7 = c7 + a0 * b7 + a1 * b6 + a2 * b5 + a3 * b4 + a4 * b3 + a5 * b2 + a6 * b1 + a7 * b0;
+    long s8 = c8 + a0 * b8 + a1 * b7 + a2 * b6 + a3 * b5 + a4 * b4 + a5 * b3 + a6 * b2 + a7 * b1
+        + a8 * b0;
+    long s9 = c9 + a0 * b9 + a1 * b8 + a2 * b7 + a3 * b6 + a4 * b5 + a5 * b4 + a6 * b3 + a7 * b2
+        + a8 * b1 + a9 * b0;
+    long s10 = c10 + a0 * b10 + a1 * b9 + a2 * b8 + a3 * b7 + a4 * b6 + a5 * b5 + a6 * b4 + a7 * b3
+        + a8 * b2 + a9 * b1 + a10 * b0;
+    long s11 = c11 + a0 * b11 + a1 * b10 + a2 * b9 + a3 * b8 + a4 * b7 + a5 * b6 + a6 * b5
+        + a7 * b4 + a8 * b3 + a9 * b2 + a10 * b1 + a11 * b0;
+    long s12 = a1 * b11 + a2 * b10 + a3 * b9 + a4 * b8 + a5 * b7 + a6 * b6 + a7 * b5 + a8 * b4
+        + a9 * b3 + a10 * b2 + a11 * b1;
+    long s13 = a2 * b11 + a3 * b10 + a4 * b9 + a5 * b8 + a6 * b7 + a7 * b6 + a8 * b5 + a9 * b4
+        + a10 * b3 + a11 * b2;
+    long s14 = a3 * b11 + a4 * b10 + a5 * b9 + a6 * b8 + a7 * b7 + a8 * b6 + a9 * b5 + a10 * b4
+        + a11 * b3;
+    long s15 = a4 * b11 + a5 * b10 + a6 * b9 + a7 * b8 + a8 * b7 + a9 * b6 + a10 * b5 + a11 * b4;
+    long s16 = a5 * b11 + a6 * b10 + a7 * b9 + a8 * b8 + a9 * b7 + a10 * b6 + a11 * b5;
+    long s17 = a6 * b11 + a7 * b10 + a8 * b9 + a9 * b8 + a10 * b7 + a11 * b6;
+    long s18 = a7 * b11 + a8 * b10 + a9 * b9 + a10 * b8 + a11 * b7;
+    long s19 = a8 * b11 + a9 * b10 + a10 * b9 + a11 * b8;
+    long s20 = a9 * b11 + a10 * b10 + a11 * b9;
+    long s21 = a10 * b11 + a11 * b10;
+    long s22 = a11 * b11;
+    long s23 = 0;
+
+    carry[0] = (s0 + (1 << 20)) >> 21;
+    s1 += carry[0];
+    s0 -= carry[0] << 21;
+    carry[2] = (s2 + (1 << 20)) >> 21;
+    s3 += carry[2];
+    s2 -= carry[2] << 21;
+    carry[4] = (s4 + (1 << 20)) >> 21;
+    s5 += carry[4];
+    s4 -= carry[4] << 21;
+    carry[6] = (s6 + (1 << 20)) >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[8] = (s8 + (1 << 20)) >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[10] = (s10 + (1 << 20)) >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+    carry[12] = (s12 + (1 << 20)) >> 21;
+    s13 += carry[12];
+    s12 -= carry[12] << 21;
+    carry[14] = (s14 + (1 << 20)) >> 21;
+    s15 += carry[14];
+    s14 -= carry[14] << 21;
+    carry[16] = (s16 + (1 << 20)) >> 21;
+    s17 += carry[16];
+    s16 -= carry[16] << 21;
+    carry[18] = (s18 + (1 << 20)) >> 21;
+    s19 += carry[18];
+    s18 -= carry[18] << 21;
+    carry[20] = (s20 + (1 << 20)) >> 21;
+    s21 += carry[20];
+    s20 -= carry[20] << 21;
+    carry[22] = (s22 + (1 << 20)) >> 21;
+    s23 += carry[22];
+    s22 -= carry[22] << 21;
+
+    carry[1] = (s1 + (1 << 20)) >> 21;
+    s2 += carry[1];
+    s1 -= carry[1] << 21;
+    carry[3] = (s3 + (1 << 20)) >> 21;
+    s4 += carry[3];
+    s3 -= carry[3] << 21;
+    carry[5] = (s5 + (1 << 20)) >> 21;
+    s6 += carry[5];
+    s5 -= carry[5] << 21;
+    carry[7] = (s7 + (1 << 20)) >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[9] = (s9 + (1 << 20)) >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[11] = (s11 + (1 << 20)) >> 21;
+    s12 += carry[11];
+    s11 -= carry[11] << 21;
+    carry[13] = (s13 + (1 << 20)) >> 21;
+    s14 += carry[13];
+    s13 -= carry[13] << 21;
+    carry[15] = (s15 + (1 << 20)) >> 21;
+    s16 += carry[15];
+    s15 -= carry[15] << 21;
+    carry[17] = (s17 + (1 << 20)) >> 21;
+    s18 += carry[17];
+    s17 -= carry[17] << 21;
+    carry[19] = (s19 + (1 << 20)) >> 21;
+    s20 += carry[19];
+    s19 -= carry[19] << 21;
+    carry[21] = (s21 + (1 << 20)) >> 21;
+    s22 += carry[21];
+    s21 -= carry[21] << 21;
+
+    s11 += s23 * 666643;
+    s12 += s23 * 470296;
+    s13 += s23 * 654183;
+    s14 -= s23 * 997805;
+    s15 += s23 * 136657;
+    s16 -= s23 * 683901;
+    s23 = 0;
+
+    s10 += s22 * 666643;
+    s11 += s22 * 470296;
+    s12 += s22 * 654183;
+    s13 -= s22 * 997805;
+    s14 += s22 * 136657;
+    s15 -= s22 * 683901;
+    s22 = 0;
+
+    s9 += s21 * 666643;
+    s10 += s21 * 470296;
+    s11 += s21 * 654183;
+    s12 -= s21 * 997805;
+    s13 += s21 * 136657;
+    s14 -= s21 * 683901;
+    s21 = 0;
+
+    s8 += s20 * 666643;
+    s9 += s20 * 470296;
+    s10 += s20 * 654183;
+    s11 -= s20 * 997805;
+    s12 += s20 * 136657;
+    s13 -= s20 * 683901;
+    s20 = 0;
+
+    s7 += s19 * 666643;
+    s8 += s19 * 470296;
+    s9 += s19 * 654183;
+    s10 -= s19 * 997805;
+    s11 += s19 * 136657;
+    s12 -= s19 * 683901;
+    s19 = 0;
+
+    s6 += s18 * 666643;
+    s7 += s18 * 470296;
+    s8 += s18 * 654183;
+    s9 -= s18 * 997805;
+    s10 += s18 * 136657;
+    s11 -= s18 * 683901;
+    s18 = 0;
+
+    carry[6] = (s6 + (1 << 20)) >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[8] = (s8 + (1 << 20)) >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[10] = (s10 + (1 << 20)) >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+    carry[12] = (s12 + (1 << 20)) >> 21;
+    s13 += carry[12];
+    s12 -= carry[12] << 21;
+    carry[14] = (s14 + (1 << 20)) >> 21;
+    s15 += carry[14];
+    s14 -= carry[14] << 21;
+    carry[16] = (s16 + (1 << 20)) >> 21;
+    s17 += carry[16];
+    s16 -= carry[16] << 21;
+
+    carry[7] = (s7 + (1 << 20)) >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[9] = (s9 + (1 << 20)) >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[11] = (s11 + (1 << 20)) >> 21;
+    s12 += carry[11];
+    s11 -= carry[11] << 21;
+    carry[13] = (s13 + (1 << 20)) >> 21;
+    s14 += carry[13];
+    s13 -= carry[13] << 21;
+    carry[15] = (s15 + (1 << 20)) >> 21;
+    s16 += carry[15];
+    s15 -= carry[15] << 21;
+
+    s5 += s17 * 666643;
+    s6 += s17 * 470296;
+    s7 += s17 * 654183;
+    s8 -= s17 * 997805;
+    s9 += s17 * 136657;
+    s10 -= s17 * 683901;
+    s17 = 0;
+
+    s4 += s16 * 666643;
+    s5 += s16 * 470296;
+    s6 += s16 * 654183;
+    s7 -= s16 * 997805;
+    s8 += s16 * 136657;
+    s9 -= s16 * 683901;
+    s16 = 0;
+
+    s3 += s15 * 666643;
+    s4 += s15 * 470296;
+    s5 += s15 * 654183;
+    s6 -= s15 * 997805;
+    s7 += s15 * 136657;
+    s8 -= s15 * 683901;
+    s15 = 0;
+
+    s2 += s14 * 666643;
+    s3 += s14 * 470296;
+    s4 += s14 * 654183;
+    s5 -= s14 * 997805;
+    s6 += s14 * 136657;
+    s7 -= s14 * 683901;
+    s14 = 0;
+
+    s1 += s13 * 666643;
+    s2 += s13 * 470296;
+    s3 += s13 * 654183;
+    s4 -= s13 * 997805;
+    s5 += s13 * 136657;
+    s6 -= s13 * 683901;
+    s13 = 0;
+
+    s0 += s12 * 666643;
+    s1 += s12 * 470296;
+    s2 += s12 * 654183;
+    s3 -= s12 * 997805;
+    s4 += s12 * 136657;
+    s5 -= s12 * 683901;
+    s12 = 0;
+
+    carry[0] = (s0 + (1 << 20)) >> 21;
+    s1 += carry[0];
+    s0 -= carry[0] << 21;
+    carry[2] = (s2 + (1 << 20)) >> 21;
+    s3 += carry[2];
+    s2 -= carry[2] << 21;
+    carry[4] = (s4 + (1 << 20)) >> 21;
+    s5 += carry[4];
+    s4 -= carry[4] << 21;
+    carry[6] = (s6 + (1 << 20)) >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[8] = (s8 + (1 << 20)) >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[10] = (s10 + (1 << 20)) >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+
+    carry[1] = (s1 + (1 << 20)) >> 21;
+    s2 += carry[1];
+    s1 -= carry[1] << 21;
+    carry[3] = (s3 + (1 << 20)) >> 21;
+    s4 += carry[3];
+    s3 -= carry[3] << 21;
+    carry[5] = (s5 + (1 << 20)) >> 21;
+    s6 += carry[5];
+    s5 -= carry[5] << 21;
+    carry[7] = (s7 + (1 << 20)) >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[9] = (s9 + (1 << 20)) >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[11] = (s11 + (1 << 20)) >> 21;
+    s12 += carry[11];
+    s11 -= carry[11] << 21;
+
+    s0 += s12 * 666643;
+    s1 += s12 * 470296;
+    s2 += s12 * 654183;
+    s3 -= s12 * 997805;
+    s4 += s12 * 136657;
+    s5 -= s12 * 683901;
+    s12 = 0;
+
+    carry[0] = s0 >> 21;
+    s1 += carry[0];
+    s0 -= carry[0] << 21;
+    carry[1] = s1 >> 21;
+    s2 += carry[1];
+    s1 -= carry[1] << 21;
+    carry[2] = s2 >> 21;
+    s3 += carry[2];
+    s2 -= carry[2] << 21;
+    carry[3] = s3 >> 21;
+    s4 += carry[3];
+    s3 -= carry[3] << 21;
+    carry[4] = s4 >> 21;
+    s5 += carry[4];
+    s4 -= carry[4] << 21;
+    carry[5] = s5 >> 21;
+    s6 += carry[5];
+    s5 -= carry[5] << 21;
+    carry[6] = s6 >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[7] = s7 >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[8] = s8 >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[9] = s9 >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[10] = s10 >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+    carry[11] = s11 >> 21;
+    s12 += carry[11];
+    s11 -= carry[11] << 21;
+
+    s0 += s12 * 666643;
+    s1 += s12 * 470296;
+    s2 += s12 * 654183;
+    s3 -= s12 * 997805;
+    s4 += s12 * 136657;
+    s5 -= s12 * 683901;
+    s12 = 0;
+
+    carry[0] = s0 >> 21;
+    s1 += carry[0];
+    s0 -= carry[0] << 21;
+    carry[1] = s1 >> 21;
+    s2 += carry[1];
+    s1 -= carry[1] << 21;
+    carry[2] = s2 >> 21;
+    s3 += carry[2];
+    s2 -= carry[2] << 21;
+    carry[3] = s3 >> 21;
+    s4 += carry[3];
+    s3 -= carry[3] << 21;
+    carry[4] = s4 >> 21;
+    s5 += carry[4];
+    s4 -= carry[4] << 21;
+    carry[5] = s5 >> 21;
+    s6 += carry[5];
+    s5 -= carry[5] << 21;
+    carry[6] = s6 >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[7] = s7 >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[8] = s8 >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[9] = s9 >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[10] = s10 >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+
+    s[0] = (byte) s0;
+    s[1] = (byte) (s0 >> 8);
+    s[2] = (byte) ((s0 >> 16) | (s1 << 5));
+    s[3] = (byte) (s1 >> 3);
+    s[4] = (byte) (s1 >> 11);
+    s[5] = (byte) ((s1 >> 19) | (s2 << 2));
+    s[6] = (byte) (s2 >> 6);
+    s[7] = (byte) ((s2 >> 14) | (s3 << 7));
+    s[8] = (byte) (s3 >> 1);
+    s[9] = (byte) (s3 >> 9);
+    s[10] = (byte) ((s3 >> 17) | (s4 << 4));
+    s[11] = (byte) (s4 >> 4);
+    s[12] = (byte) (s4 >> 12);
+    s[13] = (byte) ((s4 >> 20) | (s5 << 1));
+    s[14] = (byte) (s5 >> 7);
+    s[15] = (byte) ((s5 >> 15) | (s6 << 6));
+    s[16] = (byte) (s6 >> 2);
+    s[17] = (byte) (s6 >> 10);
+    s[18] = (byte) ((s6 >> 18) | (s7 << 3));
+    s[19] = (byte) (s7 >> 5);
+    s[20] = (byte) (s7 >> 13);
+    s[21] = (byte) s8;
+    s[22] = (byte) (s8 >> 8);
+    s[23] = (byte) ((s8 >> 16) | (s9 << 5));
+    s[24] = (byte) (s9 >> 3);
+    s[25] = (byte) (s9 >> 11);
+    s[26] = (byte) ((s9 >> 19) | (s10 << 2));
+    s[27] = (byte) (s10 >> 6);
+    s[28] = (byte) ((s10 >> 14) | (s11 << 7));
+    s[29] = (byte) (s11 >> 1);
+    s[30] = (byte) (s11 >> 9);
+    s[31] = (byte) (s11 >> 17);
+  }
+
+  // Sets out = s mod l for a 64-byte s.
+  private static void scReduce(byte[] out, byte[] s) {
+    long s0 = 2097151 & load3(s, 0);
+    long s1 = 2097151 & (load4(s, 2) >> 5);
+    long s2 = 2097151 & (load3(s, 5) >> 2);
+    long s3 = 2097151 & (load4(s, 7) >> 7);
+    long s4 = 2097151 & (load4(s, 10) >> 4);
+    long s5 = 2097151 & (load3(s, 13) >> 1);
+    long s6 = 2097151 & (load4(s, 15) >> 6);
+    long s7 = 2097151 & (load3(s, 18) >> 3);
+    long s8 = 2097151 & load3(s, 21);
+    long s9 = 2097151 & (load4(s, 23) >> 5);
+    long s10 = 2097151 & (load3(s, 26) >> 2);
+    long s11 = 2097151 & (load4(s, 28) >> 7);
+    long s12 = 2097151 & (load4(s, 31) >> 4);
+    long s13 = 2097151 & (load3(s, 34) >> 1);
+    long s14 = 2097151 & (load4(s, 36) >> 6);
+    long s15 = 2097151 & (load3(s, 39) >> 3);
+    long s16 = 2097151 & load3(s, 42);
+    long s17 = 2097151 & (load4(s, 44) >> 5);
+    long s18 = 2097151 & (load3(s, 47) >> 2);
+    long s19 = 2097151 & (load4(s, 49) >> 7);
+    long s20 = 2097151 & (load4(s, 52) >> 4);
+    long s21 = 2097151 & (load3(s, 55) >> 1);
+    long s22 = 2097151 & (load4(s, 57) >> 6);
+    long s23 = (load4(s, 60) >> 3);
+
+    s11 += s23 * 666643;
+    s12 += s23 * 470296;
+    s13 += s23 * 654183;
+    s14 -= s23 * 997805;
+    s15 += s23 * 136657;
+    s16 -= s23 * 683901;
+    s23 = 0;
+
+    s10 += s22 * 666643;
+    s11 += s22 * 470296;
+    s12 += s22 * 654183;
+    s13 -= s22 * 997805;
+    s14 += s22 * 136657;
+    s15 -= s22 * 683901;
+    s22 = 0;
+
+    s9 += s21 * 666643;
+    s10 += s21 * 470296;
+    s11 += s21 * 654183;
+    s12 -= s21 * 997805;
+    s13 += s21 * 136657;
+    s14 -= s21 * 683901;
+    s21 = 0;
+
+    s8 += s20 * 666643;
+    s9 += s20 * 470296;
+    s10 += s20 * 654183;
+    s11 -= s20 * 997805;
+    s12 += s20 * 136657;
+    s13 -= s20 * 683901;
+    s20 = 0;
+
+    s7 += s19 * 666643;
+    s8 += s19 * 470296;
+    s9 += s19 * 654183;
+    s10 -= s19 * 997805;
+    s11 += s19 * 136657;
+    s12 -= s19 * 683901;
+    s19 = 0;
+
+    s6 += s18 * 666643;
+    s7 += s18 * 470296;
+    s8 += s18 * 654183;
+    s9 -= s18 * 997805;
+    s10 += s18 * 136657;
+    s11 -= s18 * 683901;
+    s18 = 0;
+
+    long[] carry = new long[17];
+
+    carry[6] = (s6 + (1 << 20)) >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[8] = (s8 + (1 << 20)) >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[10] = (s10 + (1 << 20)) >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+    carry[12] = (s12 + (1 << 20)) >> 21;
+    s13 += carry[12];
+    s12 -= carry[12] << 21;
+    carry[14] = (s14 + (1 << 20)) >> 21;
+    s15 += carry[14];
+    s14 -= carry[14] << 21;
+    carry[16] = (s16 + (1 << 20)) >> 21;
+    s17 += carry[16];
+    s16 -= carry[16] << 21;
+
+    carry[7] = (s7 + (1 << 20)) >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[9] = (s9 + (1 << 20)) >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[11] = (s11 + (1 << 20)) >> 21;
+    s12 += carry[11];
+    s11 -= carry[11] << 21;
+    carry[13] = (s13 + (1 << 20)) >> 21;
+    s14 += carry[13];
+    s13 -= carry[13] << 21;
+    carry[15] = (s15 + (1 << 20)) >> 21;
+    s16 += carry[15];
+    s15 -= carry[15] << 21;
+
+    s5 += s17 * 666643;
+    s6 += s17 * 470296;
+    s7 += s17 * 654183;
+    s8 -= s17 * 997805;
+    s9 += s17 * 136657;
+    s10 -= s17 * 683901;
+    s17 = 0;
+
+    s4 += s16 * 666643;
+    s5 += s16 * 470296;
+    s6 += s16 * 654183;
+    s7 -= s16 * 997805;
+    s8 += s16 * 136657;
+    s9 -= s16 * 683901;
+    s16 = 0;
+
+    s3 += s15 * 666643;
+    s4 += s15 * 470296;
+    s5 += s15 * 654183;
+    s6 -= s15 * 997805;
+    s7 += s15 * 136657;
+    s8 -= s15 * 683901;
+    s15 = 0;
+
+    s2 += s14 * 666643;
+    s3 += s14 * 470296;
+    s4 += s14 * 654183;
+    s5 -= s14 * 997805;
+    s6 += s14 * 136657;
+    s7 -= s14 * 683901;
+    s14 = 0;
+
+    s1 += s13 * 666643;
+    s2 += s13 * 470296;
+    s3 += s13 * 654183;
+    s4 -= s13 * 997805;
+    s5 += s13 * 136657;
+    s6 -= s13 * 683901;
+    s13 = 0;
+
+    s0 += s12 * 666643;
+    s1 += s12 * 470296;
+    s2 += s12 * 654183;
+    s3 -= s12 * 997805;
+    s4 += s12 * 136657;
+    s5 -= s12 * 683901;
+    s12 = 0;
+
+    carry[0] = (s0 + (1 << 20)) >> 21;
+    s1 += carry[0];
+    s0 -= carry[0] << 21;
+    carry[2] = (s2 + (1 << 20)) >> 21;
+    s3 += carry[2];
+    s2 -= carry[2] << 21;
+    carry[4] = (s4 + (1 << 20)) >> 21;
+    s5 += carry[4];
+    s4 -= carry[4] << 21;
+    carry[6] = (s6 + (1 << 20)) >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[8] = (s8 + (1 << 20)) >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[10] = (s10 + (1 << 20)) >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+
+    carry[1] = (s1 + (1 << 20)) >> 21;
+    s2 += carry[1];
+    s1 -= carry[1] << 21;
+    carry[3] = (s3 + (1 << 20)) >> 21;
+    s4 += carry[3];
+    s3 -= carry[3] << 21;
+    carry[5] = (s5 + (1 << 20)) >> 21;
+    s6 += carry[5];
+    s5 -= carry[5] << 21;
+    carry[7] = (s7 + (1 << 20)) >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[9] = (s9 + (1 << 20)) >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[11] = (s11 + (1 << 20)) >> 21;
+    s12 += carry[11];
+    s11 -= carry[11] << 21;
+
+    s0 += s12 * 666643;
+    s1 += s12 * 470296;
+    s2 += s12 * 654183;
+    s3 -= s12 * 997805;
+    s4 += s12 * 136657;
+    s5 -= s12 * 683901;
+    s12 = 0;
+
+    carry[0] = s0 >> 21;
+    s1 += carry[0];
+    s0 -= carry[0] << 21;
+    carry[1] = s1 >> 21;
+    s2 += carry[1];
+    s1 -= carry[1] << 21;
+    carry[2] = s2 >> 21;
+    s3 += carry[2];
+    s2 -= carry[2] << 21;
+    carry[3] = s3 >> 21;
+    s4 += carry[3];
+    s3 -= carry[3] << 21;
+    carry[4] = s4 >> 21;
+    s5 += carry[4];
+    s4 -= carry[4] << 21;
+    carry[5] = s5 >> 21;
+    s6 += carry[5];
+    s5 -= carry[5] << 21;
+    carry[6] = s6 >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[7] = s7 >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[8] = s8 >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[9] = s9 >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[10] = s10 >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+    carry[11] = s11 >> 21;
+    s12 += carry[11];
+    s11 -= carry[11] << 21;
+
+    s0 += s12 * 666643;
+    s1 += s12 * 470296;
+    s2 += s12 * 654183;
+    s3 -= s12 * 997805;
+    s4 += s12 * 136657;
+    s5 -= s12 * 683901;
+    s12 = 0;
+
+    carry[0] = s0 >> 21;
+    s1 += carry[0];
+    s0 -= carry[0] << 21;
+    carry[1] = s1 >> 21;
+    s2 += carry[1];
+    s1 -= carry[1] << 21;
+    carry[2] = s2 >> 21;
+    s3 += carry[2];
+    s2 -= carry[2] << 21;
+    carry[3] = s3 >> 21;
+    s4 += carry[3];
+    s3 -= carry[3] << 21;
+    carry[4] = s4 >> 21;
+    s5 += carry[4];
+    s4 -= carry[4] << 21;
+    carry[5] = s5 >> 21;
+    s6 += carry[5];
+    s5 -= carry[5] << 21;
+    carry[6] = s6 >> 21;
+    s7 += carry[6];
+    s6 -= carry[6] << 21;
+    carry[7] = s7 >> 21;
+    s8 += carry[7];
+    s7 -= carry[7] << 21;
+    carry[8] = s8 >> 21;
+    s9 += carry[8];
+    s8 -= carry[8] << 21;
+    carry[9] = s9 >> 21;
+    s10 += carry[9];
+    s9 -= carry[9] << 21;
+    carry[10] = s10 >> 21;
+    s11 += carry[10];
+    s10 -= carry[10] << 21;
+
+    out[0] = (byte) s0;
+    out[1] = (byte) (s0 >> 8);
+    out[2] = (byte) ((s0 >> 16) | (s1 << 5));
+    out[3] = (byte) (s1 >> 3);
+    out[4] = (byte) (s1 >> 11);
+    out[5] = (byte) ((s1 >> 19) | (s2 << 2));
+    out[6] = (byte) (s2 >> 6);
+    out[7] = (byte) ((s2 >> 14) | (s3 << 7));
+    out[8] = (byte) (s3 >> 1);
+    out[9] = (byte) (s3 >> 9);
+    out[10] = (byte) ((s3 >> 17) | (s4 << 4));
+    out[11] = (byte) (s4 >> 4);
+    out[12] = (byte) (s4 >> 12);
+    out[13] = (byte) ((s4 >> 20) | (s5 << 1));
+    out[14] = (byte) (s5 >> 7);
+    out[15] = (byte) ((s5 >> 15) | (s6 << 6));
+    out[16] = (byte) (s6 >> 2);
+    out[17] = (byte) (s6 >> 10);
+    out[18] = (byte) ((s6 >> 18) | (s7 << 3));
+    out[19] = (byte) (s7 >> 5);
+    out[20] = (byte) (s7 >> 13);
+    out[21] = (byte) s8;
+    out[22] = (byte) (s8 >> 8);
+    out[23] = (byte) ((s8 >> 16) | (s9 << 5));
+    out[24] = (byte) (s9 >> 3);
+    out[25] = (byte) (s9 >> 11);
+    out[26] = (byte) ((s9 >> 19) | (s10 << 2));
+    out[27] = (byte) (s10 >> 6);
+    out[28] = (byte) ((s10 >> 14) | (s11 << 7));
+    out[29] = (byte) (s11 >> 1);
+    out[30] = (byte) (s11 >> 9);
+    out[31] = (byte) (s11 >> 17);
+  }
+}
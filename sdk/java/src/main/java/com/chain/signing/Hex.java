@@ -0,0 +1,39 @@
+package com.chain.signing;
+
+/**
+ * Hex encoding of byte strings, as used for keys, signatures and raw
+ * transactions in the API.
+ */
+final class Hex {
+  private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+  private Hex() {}
+
+  static String encode(byte[] b) {
+    char[] out = new char[2 * b.length];
+    for (int i = 0; i < b.length; i++) {
+      out[2 * i] = DIGITS[(b[i] >> 4) & 0xf];
+      out[2 * i + 1] = DIGITS[b[i] & 0xf];
+    }
+    return new String(out);
+  }
+
+  /**
+   * @throws IllegalArgumentException if s is not an even-length hex string
+   */
+  static byte[] decode(String s) {
+    if (s.length() % 2 != 0) {
+      throw new IllegalArgumentException("odd-length hex string");
+    }
+    byte[] out = new byte[s.length() / 2];
+    for (int i = 0; i < out.length; i++) {
+      int hi = Character.digit(s.charAt(2 * i), 16);
+      int lo = Character.digit(s.charAt(2 * i + 1), 16);
+      if (hi < 0 || lo < 0) {
+        throw new IllegalArgumentException("invalid hex string");
+      }
+      out[i] = (byte) ((hi << 4) | lo);
+    }
+    return out;
+  }
+}
@@ -8,19 +8,18 @@ import com.chain.exception.*;
 import com.chain.http.Client;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * HsmSigner makes signing requests to remote HSMs. It stores a map of client objects
  * to public keys, and routes tx template signing requests to the relevant HSM servers.
- * Only templates with keys added to the HsmSigner's map will be signed.
+ * Only templates with keys added to the HsmSigner's map will be signed.<br>
+ * HsmSigner is a process-wide facade over a shared {@link MultiHsmSigner}.
+ * Applications that sign with different sets of HSMs should create their own
+ * {@link MultiHsmSigner} instances instead.
  */
 public class HsmSigner {
-  /**
-   * A map of hsm objects to public keys. The list of public keys have
-   * corresponding private keys stored in remote HSM servers. The hsm
-   * objects are configured to make requests to the HSMs.
-   */
-  private static Map<Client, List<String>> hsmXPubs = new HashMap();
+  private static final MultiHsmSigner signer = new MultiHsmSigner();
 
   /**
    * Adds an entry to the HsmSigner's hsm client-to-keys map.
@@ -28,10 +27,7 @@ public class HsmSigner {
    * @param hsm the hsm object
    */
   public static void addKey(String xpub, Client hsm) {
-    if (!hsmXPubs.containsKey(hsm)) {
-      hsmXPubs.put(hsm, new ArrayList<String>());
-    }
-    hsmXPubs.get(hsm).add(xpub);
+    signer.addKey(xpub, hsm);
   }
 
   /**
@@ -40,7 +36,7 @@ public class HsmSigner {
    * @param hsm the hsm object
    */
   public static void addKey(MockHsm.Key key, Client hsm) {
-    addKey(key.xpub, hsm);
+    signer.addKey(key, hsm);
   }
 
   /**
@@ -49,28 +45,27 @@ public class HsmSigner {
    * @param hsm the hsm object
    */
   public static void addKeys(List<MockHsm.Key> keys, Client hsm) {
-    for (MockHsm.Key key : keys) {
-      addKey(key.xpub, hsm);
-    }
+    signer.addKeys(keys, hsm);
   }
 
   /**
-   * Sends a transaction template to a remote HSM for signing.
+   * Sends a transaction template to remote HSMs for signing.
    * @param template transaction template to be signed
    * @return a signed transaction template
    * @throws ChainException
    */
   public static Transaction.Template sign(Transaction.Template template) throws ChainException {
-    for (Map.Entry<Client, List<String>> entry : hsmXPubs.entrySet()) {
-      Client hsm = entry.getKey();
-      HashMap<String, Object> body = new HashMap();
-      body.put("transactions", Arrays.asList(template));
-      body.put("xpubs", entry.getValue());
-      template =
-          hsm.singletonBatchRequest(
-              "sign-transaction", body, Transaction.Template.class, APIException.class);
-    }
-    return template;
+    return signer.sign(template);
+  }
+
+  /**
+   * Sends a transaction template to remote HSMs for signing without blocking
+   * the calling thread.
+   * @param template transaction template to be signed
+   * @return a future holding the signed transaction template
+   */
+  public static CompletableFuture<Transaction.Template> signAsync(Transaction.Template template) {
+    return signer.signAsync(template);
   }
 
   /**
@@ -79,58 +74,8 @@ public class HsmSigner {
    * @return a batch of signed transaction templates
    * @throws ChainException
    */
-  // TODO(boymanjor): Currently this method trusts the hsm to return a tx template
-  // in the event it is unable to sign it. Moving forward we should employ a filter
-  // step and only send txs to the HSM that holds the proper key material to sign.
   public static BatchResponse<Transaction.Template> signBatch(List<Transaction.Template> tmpls)
       throws ChainException {
-    int[] originalIndex = new int[tmpls.size()];
-    for (int i = 0; i < tmpls.size(); i++) {
-      originalIndex[i] = i;
-    }
-
-    Map<Integer, APIException> errors = new HashMap<>();
-
-    for (Map.Entry<Client, List<String>> entry : hsmXPubs.entrySet()) {
-      Client hsm = entry.getKey();
-      HashMap<String, Object> requestBody = new HashMap();
-      requestBody.put("transactions", tmpls);
-      requestBody.put("xpubs", entry.getValue());
-      BatchResponse<Transaction.Template> batch =
-          hsm.batchRequest(
-              "sign-transaction", requestBody, Transaction.Template.class, APIException.class);
-
-      // We need to work towards a single, final BatchResponse that uses the
-      // original indexes. For the next cycle, we should retain only those
-      // templates for which the most recent sign response was successful, and
-      // maintain a mapping of each template's index in the upcoming request
-      // to its original index.
-      List<Transaction.Template> nextTmpls = new ArrayList<>();
-      int[] nextOriginalIndex = new int[batch.successesByIndex().size()];
-
-      for (int i = 0; i < tmpls.size(); i++) {
-        if (batch.isSuccess(i)) {
-          nextTmpls.add(batch.successesByIndex().get(i));
-          nextOriginalIndex[nextTmpls.size() - 1] = originalIndex[i];
-        } else {
-          errors.put(originalIndex[i], batch.errorsByIndex().get(i));
-        }
-      }
-
-      tmpls = nextTmpls;
-      originalIndex = nextOriginalIndex;
-
-      // Early out if we have no templates remaining for the next cycle.
-      if (tmpls.isEmpty()) {
-        break;
-      }
-    }
-
-    Map<Integer, Transaction.Template> successes = new HashMap<>();
-    for (int i = 0; i < tmpls.size(); i++) {
-      successes.put(originalIndex[i], tmpls.get(i));
-    }
-
-    return new BatchResponse<>(successes, errors);
+    return signer.signBatch(tmpls);
   }
 }
@@ -0,0 +1,286 @@
+package com.chain.signing;
+
+import com.chain.api.Transaction;
+import com.chain.common.Utils;
+import com.chain.exception.*;
+import com.chain.http.BatchResponse;
+
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * LocalSigner signs transaction templates in-process with ChainKD extended
+ * private keys, without a round trip to an HSM.<br>
+ * For each signature witness component naming one of its keys, it derives
+ * the child key along the component's derivation path, computes the
+ * signature program Chain Core would infer for the template, and signs it.
+ * Signatures are written into the template's witness components and the
+ * input witnesses of its raw transaction, so the template is ready to
+ * submit or to pass on to another {@link Signer}.<br>
+ * Templates are signed in place. Derived keys are cached, so signing
+ * repeatedly for the same accounts costs one signature per key.<br>
+ * The curve arithmetic runs in constant time, but key material lives in the
+ * JVM heap. Use an HSM where that is a concern.
+ */
+public class LocalSigner implements Signer {
+  private static final int MAX_CACHED_KEYS = 10000;
+  private static final SecureRandom random = new SecureRandom();
+
+  private final Map<String, XPrv> rootKeys = new ConcurrentHashMap<>();
+  private final Map<String, XPrv> derivedKeys =
+      Collections.synchronizedMap(
+          new LinkedHashMap<String, XPrv>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, XPrv> eldest) {
+              return size() > MAX_CACHED_KEYS;
+            }
+          });
+  private final Executor executor;
+
+  /**
+   * Creates a local signer that signs asynchronous requests on the common
+   * fork-join pool.
+   */
+  public LocalSigner() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a local signer that signs asynchronous requests on the given executor.
+   * @param executor executor for signAsync and signBatchAsync
+   */
+  public LocalSigner(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Generates a new random root extended private key.
+   * @return the hex-encoded xprv
+   */
+  public static String generateXPrv() {
+    return Hex.encode(XPrv.generate(random).bytes());
+  }
+
+  /**
+   * Returns the extended public key of an extended private key.
+   * @param xprv the hex-encoded xprv
+   * @return the hex-encoded xpub
+   * @throws ChainException if xprv is not a valid extended private key
+   */
+  public static String xpub(String xprv) throws ChainException {
+    return Hex.encode(parseXPrv(xprv).xpub());
+  }
+
+  /**
+   * Adds a root key to the signer. The corresponding xpub can be used as a
+   * root xpub for accounts and assets.
+   * @param xprv the hex-encoded xprv
+   * @return the hex-encoded xpub of the key
+   * @throws ChainException if xprv is not a valid extended private key
+   */
+  public String addKey(String xprv) throws ChainException {
+    XPrv key = parseXPrv(xprv);
+    String xpub = Hex.encode(key.xpub());
+    rootKeys.put(xpub, key);
+    return xpub;
+  }
+
+  /**
+   * Signs a transaction template with the keys held by this signer.
+   * @param template transaction template to be signed
+   * @return the template, with signatures and input witnesses filled in
+   * @throws ChainException if the template's raw transaction or signing
+   * instructions are malformed
+   */
+  public Transaction.Template sign(Transaction.Template template) throws ChainException {
+    RawTransaction tx = RawTransaction.decode(template.rawTransaction);
+    List<Transaction.Template.SigningInstruction> instructions =
+        template.signingInstructions != null
+            ? template.signingInstructions
+            : Collections.<Transaction.Template.SigningInstruction>emptyList();
+    if (instructions.size() > tx.inputCount()) {
+      throw new ChainException("Template has more signing instructions than inputs");
+    }
+
+    Map<Integer, List<byte[]>> witnesses = new HashMap<>();
+    for (int i = 0; i < instructions.size(); i++) {
+      Transaction.Template.SigningInstruction si = instructions.get(i);
+      if (si.position < 0 || si.position >= tx.inputCount()) {
+        throw new ChainException(
+            "Signing instruction " + i + " references missing tx input " + si.position);
+      }
+
+      List<byte[]> args = new ArrayList<>();
+      if (si.witnessComponents != null) {
+        for (Transaction.Template.WitnessComponent wc : si.witnessComponents) {
+          if ("data".equals(wc.type)) {
+            args.add(decodeHex(wc.data, "witness data"));
+            continue;
+          }
+          if (!"signature".equals(wc.type)) {
+            throw new ChainException("Unknown witness component type: " + wc.type);
+          }
+
+          byte[] program;
+          if (wc.program == null || wc.program.isEmpty()) {
+            program = tx.sigProgram(si.position, template.allowsAdditionalActions());
+            wc.program = Hex.encode(program);
+          } else {
+            program = decodeHex(wc.program, "signature program");
+          }
+          signComponent(wc, Sha3.sum256(program));
+
+          // The signature program's arguments: the number of arguments
+          // before it, up to quorum signatures, then the program itself.
+          args.add(RawTransaction.int64Bytes(args.size()));
+          int sigs = 0;
+          for (int k = 0; k < wc.signatures.length && sigs < wc.quorum; k++) {
+            if (wc.signatures[k] != null && !wc.signatures[k].isEmpty()) {
+              args.add(decodeHex(wc.signatures[k], "signature"));
+              sigs++;
+            }
+          }
+          args.add(program);
+        }
+      }
+      witnesses.put(si.position, args);
+    }
+
+    template.rawTransaction = tx.withArguments(witnesses);
+    return template;
+  }
+
+  /**
+   * Signs a transaction template on this signer's executor.
+   * @param template transaction template to be signed
+   * @return a future holding the signed transaction template
+   */
+  public CompletableFuture<Transaction.Template> signAsync(final Transaction.Template template) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return sign(template);
+          } catch (ChainException e) {
+            throw new CompletionException(e);
+          }
+        },
+        executor);
+  }
+
+  /**
+   * Signs a batch of transaction templates.
+   * @param templates transaction templates to be signed
+   * @return a batch of signed transaction templates
+   * @throws ChainException
+   */
+  public BatchResponse<Transaction.Template> signBatch(List<Transaction.Template> templates)
+      throws ChainException {
+    return Utils.await(signBatchAsync(templates));
+  }
+
+  /**
+   * Signs a batch of transaction templates in parallel on this signer's
+   * executor. A template that cannot be signed is reported as an error for
+   * its index.
+   * @param templates transaction templates to be signed
+   * @return a future holding a batch of signed transaction templates
+   */
+  public CompletableFuture<BatchResponse<Transaction.Template>> signBatchAsync(
+      List<Transaction.Template> templates) {
+    final List<CompletableFuture<Transaction.Template>> futures = new ArrayList<>();
+    for (Transaction.Template template : templates) {
+      futures.add(signAsync(template));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+        .handle(
+            (ignored, err) -> {
+              Map<Integer, Transaction.Template> successes = new HashMap<>();
+              Map<Integer, APIException> errors = new HashMap<>();
+              for (int i = 0; i < futures.size(); i++) {
+                try {
+                  successes.put(i, futures.get(i).join());
+                } catch (CompletionException e) {
+                  Throwable cause = Utils.unwrap(e);
+                  errors.put(
+                      i,
+                      cause instanceof APIException
+                          ? (APIException) cause
+                          : new APIException(null, cause.getMessage(), null, false));
+                }
+              }
+              return new BatchResponse<>(successes, errors);
+            });
+  }
+
+  private void signComponent(Transaction.Template.WitnessComponent wc, byte[] hash)
+      throws ChainException {
+    Transaction.Template.KeyID[] keys =
+        wc.keys != null ? wc.keys : new Transaction.Template.KeyID[0];
+    if (wc.signatures == null || wc.signatures.length < keys.length) {
+      // Signatures are positional, one slot per key. Keep any signatures
+      // already present.
+      String[] grown = new String[keys.length];
+      Arrays.fill(grown, "");
+      if (wc.signatures != null) {
+        System.arraycopy(wc.signatures, 0, grown, 0, wc.signatures.length);
+      }
+      wc.signatures = grown;
+    }
+
+    for (int k = 0; k < keys.length; k++) {
+      if (wc.signatures[k] != null && !wc.signatures[k].isEmpty()) {
+        continue;
+      }
+      XPrv root = rootKeys.get(keys[k].xpub);
+      if (root == null) {
+        continue;
+      }
+      String[] path = keys[k].derivationPath != null ? keys[k].derivationPath : new String[0];
+      wc.signatures[k] = Hex.encode(derive(keys[k].xpub, root, path, path.length).sign(hash));
+    }
+  }
+
+  // Derives the key at the first n elements of path, caching every
+  // intermediate key so that keys sharing a path prefix share the work.
+  private XPrv derive(String xpub, XPrv root, String[] path, int n) throws ChainException {
+    if (n == 0) {
+      return root;
+    }
+    StringBuilder id = new StringBuilder(xpub);
+    for (int i = 0; i < n; i++) {
+      id.append('/').append(path[i]);
+    }
+    String cacheKey = id.toString();
+
+    XPrv key = derivedKeys.get(cacheKey);
+    if (key == null) {
+      key = derive(xpub, root, path, n - 1).child(decodeHex(path[n - 1], "derivation path"));
+      derivedKeys.put(cacheKey, key);
+    }
+    return key;
+  }
+
+  private static XPrv parseXPrv(String xprv) throws ChainException {
+    byte[] b = decodeHex(xprv, "xprv");
+    if (b.length != 64) {
+      throw new ChainException("Invalid xprv: must be 64 bytes");
+    }
+    return new XPrv(b);
+  }
+
+  private static byte[] decodeHex(String s, String what) throws ChainException {
+    if (s == null) {
+      throw new ChainException("Missing " + what);
+    }
+    try {
+      return Hex.decode(s);
+    } catch (IllegalArgumentException e) {
+      throw new ChainException("Invalid " + what + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package com.chain.signing;
+
+import com.chain.api.MockHsm;
+import com.chain.api.Transaction;
+import com.chain.common.Utils;
+import com.chain.exception.*;
+import com.chain.http.BatchResponse;
+import com.chain.http.Client;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MultiHsmSigner makes signing requests to remote HSMs. Unlike the static
+ * {@link HsmSigner}, each instance keeps its own thread-safe map of HSM
+ * clients to public keys.<br>
+ * Each template is sent only to the HSMs holding at least one of the keys
+ * named in its signing instructions, and HSMs are asked to sign in parallel.
+ * The signatures each HSM returns are merged into a single template per
+ * request item, so signing latency is bounded by the slowest HSM involved
+ * rather than the sum of all of them. Templates that needed keys from more
+ * than one HSM take one more round trip, to rebuild the transaction witness
+ * from the merged signatures.
+ */
+public class MultiHsmSigner implements Signer {
+  /**
+   * A map of hsm objects to public keys. The list of public keys have
+   * corresponding private keys stored in remote HSM servers. The hsm
+   * objects are configured to make requests to the HSMs.
+   */
+  private final Map<Client, Set<String>> hsmXPubs = new ConcurrentHashMap<>();
+
+  /**
+   * Adds an entry to the signer's hsm client-to-keys map.
+   * @param xpub the public key
+   * @param hsm the hsm object
+   */
+  public void addKey(String xpub, Client hsm) {
+    Set<String> xpubs = hsmXPubs.get(hsm);
+    if (xpubs == null) {
+      Set<String> created = ConcurrentHashMap.newKeySet();
+      xpubs = hsmXPubs.putIfAbsent(hsm, created);
+      if (xpubs == null) {
+        xpubs = created;
+      }
+    }
+    xpubs.add(xpub);
+  }
+
+  /**
+   * Adds an entry to the signer's HSM client-to-keys map.
+   * @param key the mockhsm key
+   * @param hsm the hsm object
+   */
+  public void addKey(MockHsm.Key key, Client hsm) {
+    addKey(key.xpub, hsm);
+  }
+
+  /**
+   * Adds entries to the signer's HSM client-to-keys map.
+   * @param keys the list of mockhsm keys
+   * @param hsm the hsm object
+   */
+  public void addKeys(List<MockHsm.Key> keys, Client hsm) {
+    for (MockHsm.Key key : keys) {
+      addKey(key.xpub, hsm);
+    }
+  }
+
+  /**
+   * Sends a transaction template to the remote HSMs holding its keys for signing.
+   * @param template transaction template to be signed
+   * @return a signed transaction template
+   * @throws ChainException
+   */
+  public Transaction.Template sign(Transaction.Template template) throws ChainException {
+    return Utils.await(signAsync(template));
+  }
+
+  /**
+   * Sends a transaction template to the remote HSMs holding its keys for
+   * signing, without blocking the calling thread.
+   * @param template transaction template to be signed
+   * @return a future holding the signed transaction template. It completes
+   * exceptionally with an {@link APIException} if an HSM rejects the template.
+   */
+  public CompletableFuture<Transaction.Template> signAsync(Transaction.Template template) {
+    return signBatchAsync(Arrays.asList(template))
+        .thenApply(
+            batch -> {
+              if (batch.isError(0)) {
+                throw new CompletionException(batch.errorsByIndex().get(0));
+              }
+              return batch.successesByIndex().get(0);
+            });
+  }
+
+  /**
+   * Sends a batch of transaction templates to the remote HSMs holding their
+   * keys for signing.
+   * @param tmpls transaction templates to be signed
+   * @return a batch of signed transaction templates
+   * @throws ChainException
+   */
+  public BatchResponse<Transaction.Template> signBatch(List<Transaction.Template> tmpls)
+      throws ChainException {
+    return Utils.await(signBatchAsync(tmpls));
+  }
+
+  /**
+   * Sends a batch of transaction templates to the remote HSMs holding their
+   * keys for signing, without blocking the calling thread. If any HSM
+   * returns an error for a template, that error is reported for the
+   * template's index.
+   * @param tmpls transaction templates to be signed
+   * @return a future holding a batch of signed transaction templates
+   */
+  public CompletableFuture<BatchResponse<Transaction.Template>> signBatchAsync(
+      final List<Transaction.Template> tmpls) {
+    // Route each template to the HSMs holding its keys. Each HSM gets a
+    // sub-batch along with the original index of each of its items.
+    final List<List<Integer>> routes = new ArrayList<>();
+    final List<Client> clients = new ArrayList<>();
+    List<CompletableFuture<BatchResponse<Transaction.Template>>> requests = new ArrayList<>();
+
+    List<Set<String>> needed = new ArrayList<>(tmpls.size());
+    for (Transaction.Template tmpl : tmpls) {
+      needed.add(signingXPubs(tmpl));
+    }
+
+    for (Map.Entry<Client, Set<String>> entry : hsmXPubs.entrySet()) {
+      Set<String> xpubs = entry.getValue();
+      List<Integer> route = new ArrayList<>();
+      List<Transaction.Template> subBatch = new ArrayList<>();
+      for (int i = 0; i < tmpls.size(); i++) {
+        // Templates without signing instructions are sent everywhere, so
+        // that the HSMs can report why they are malformed.
+        if (needed.get(i).isEmpty() || !Collections.disjoint(needed.get(i), xpubs)) {
+          route.add(i);
+          subBatch.add(tmpls.get(i));
+        }
+      }
+      if (subBatch.isEmpty()) {
+        continue;
+      }
+
+      HashMap<String, Object> requestBody = new HashMap<>();
+      requestBody.put("transactions", subBatch);
+      requestBody.put("xpubs", new ArrayList<>(xpubs));
+      routes.add(route);
+      clients.add(entry.getKey());
+      requests.add(
+          entry
+              .getKey()
+              .<Transaction.Template>batchRequestAsync(
+                  "sign-transaction",
+                  requestBody,
+                  Transaction.Template.class,
+                  APIException.class));
+    }
+
+    final List<CompletableFuture<BatchResponse<Transaction.Template>>> pending = requests;
+    return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[pending.size()]))
+        .thenCompose(
+            ignored -> {
+              final Map<Integer, Transaction.Template> successes = new HashMap<>();
+              final Map<Integer, APIException> errors = new HashMap<>();
+              Map<Integer, Client> firstSigner = new HashMap<>();
+              Set<Integer> multiSigned = new HashSet<>();
+
+              for (int h = 0; h < pending.size(); h++) {
+                BatchResponse<Transaction.Template> batch = pending.get(h).join();
+                List<Integer> route = routes.get(h);
+                for (int j = 0; j < route.size(); j++) {
+                  int original = route.get(j);
+                  if (errors.containsKey(original)) {
+                    continue;
+                  }
+                  if (batch.isError(j)) {
+                    errors.put(original, batch.errorsByIndex().get(j));
+                    successes.remove(original);
+                    continue;
+                  }
+                  if (!batch.isSuccess(j)) {
+                    continue;
+                  }
+                  Transaction.Template signed = batch.successesByIndex().get(j);
+                  Transaction.Template merged = successes.get(original);
+                  if (merged == null) {
+                    successes.put(original, signed);
+                    firstSigner.put(original, clients.get(h));
+                  } else {
+                    successes.put(original, mergeSignatures(merged, signed));
+                    multiSigned.add(original);
+                  }
+                }
+              }
+
+              // Templates that no HSM could sign are returned unchanged.
+              for (int i = 0; i < tmpls.size(); i++) {
+                if (!successes.containsKey(i) && !errors.containsKey(i)) {
+                  successes.put(i, tmpls.get(i));
+                }
+              }
+
+              // Each HSM writes only its own signatures into the witness of
+              // the raw transaction. Templates signed by more than one HSM are
+              // sent back to one of them with the merged signatures; it signs
+              // nothing new and rebuilds the witness from every signature.
+              Map<Client, List<Integer>> finalRoutes = new HashMap<>();
+              for (Integer i : multiSigned) {
+                if (errors.containsKey(i)) {
+                  continue;
+                }
+                Client hsm = firstSigner.get(i);
+                List<Integer> route = finalRoutes.get(hsm);
+                if (route == null) {
+                  route = new ArrayList<>();
+                  finalRoutes.put(hsm, route);
+                }
+                route.add(i);
+              }
+              if (finalRoutes.isEmpty()) {
+                return CompletableFuture.completedFuture(
+                    new BatchResponse<>(successes, errors));
+              }
+
+              final List<List<Integer>> rematRoutes = new ArrayList<>();
+              final List<CompletableFuture<BatchResponse<Transaction.Template>>> remats =
+                  new ArrayList<>();
+              for (Map.Entry<Client, List<Integer>> entry : finalRoutes.entrySet()) {
+                List<Transaction.Template> subBatch = new ArrayList<>();
+                for (Integer i : entry.getValue()) {
+                  subBatch.add(successes.get(i));
+                }
+                HashMap<String, Object> requestBody = new HashMap<>();
+                requestBody.put("transactions", subBatch);
+                requestBody.put("xpubs", new ArrayList<>(hsmXPubs.get(entry.getKey())));
+                rematRoutes.add(entry.getValue());
+                remats.add(
+                    entry
+                        .getKey()
+                        .<Transaction.Template>batchRequestAsync(
+                            "sign-transaction",
+                            requestBody,
+                            Transaction.Template.class,
+                            APIException.class));
+              }
+              return CompletableFuture.allOf(remats.toArray(new CompletableFuture<?>[remats.size()]))
+                  .thenApply(
+                      done -> {
+                        for (int h = 0; h < remats.size(); h++) {
+                          BatchResponse<Transaction.Template> batch = remats.get(h).join();
+                          List<Integer> route = rematRoutes.get(h);
+                          for (int j = 0; j < route.size(); j++) {
+                            int original = route.get(j);
+                            if (batch.isError(j)) {
+                              errors.put(original, batch.errorsByIndex().get(j));
+                              successes.remove(original);
+                            } else if (batch.isSuccess(j)) {
+                              successes.put(original, batch.successesByIndex().get(j));
+                            }
+                          }
+                        }
+                        return new BatchResponse<>(successes, errors);
+                      });
+            });
+  }
+
+  /**
+   * Returns the set of root xpubs named by the template's signature witness components.
+   */
+  static Set<String> signingXPubs(Transaction.Template template) {
+    Set<String> res = new HashSet<>();
+    if (template.signingInstructions == null) {
+      return res;
+    }
+    for (Transaction.Template.SigningInstruction si : template.signingInstructions) {
+      if (si.witnessComponents == null) {
+        continue;
+      }
+      for (Transaction.Template.WitnessComponent wc : si.witnessComponents) {
+        if (wc.keys == null) {
+          continue;
+        }
+        for (Transaction.Template.KeyID k : wc.keys) {
+          res.add(k.xpub);
+        }
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Copies the signatures in src into the empty signature slots of dst. Both
+   * templates must have been produced by signing the same template, so their
+   * signing instructions line up. Signatures are positional: slot k holds
+   * the signature for key k of the witness component.
+   */
+  static Transaction.Template mergeSignatures(
+      Transaction.Template dst, Transaction.Template src) {
+    if (dst.signingInstructions == null || src.signingInstructions == null) {
+      return dst;
+    }
+    for (int i = 0;
+        i < dst.signingInstructions.size() && i < src.signingInstructions.size();
+        i++) {
+      Transaction.Template.WitnessComponent[] dstWcs =
+          dst.signingInstructions.get(i).witnessComponents;
+      Transaction.Template.WitnessComponent[] srcWcs =
+          src.signingInstructions.get(i).witnessComponents;
+      if (dstWcs == null || srcWcs == null) {
+        continue;
+      }
+      for (int j = 0; j < dstWcs.length && j < srcWcs.length; j++) {
+        Transaction.Template.WitnessComponent d = dstWcs[j];
+        Transaction.Template.WitnessComponent s = srcWcs[j];
+        if ((d.program == null || d.program.isEmpty()) && s.program != null) {
+          d.program = s.program;
+        }
+        if (s.signatures == null) {
+          continue;
+        }
+        if (d.signatures == null || d.signatures.length < s.signatures.length) {
+          String[] grown = new String[s.signatures.length];
+          if (d.signatures != null) {
+            System.arraycopy(d.signatures, 0, grown, 0, d.signatures.length);
+          }
+          d.signatures = grown;
+        }
+        for (int k = 0; k < s.signatures.length; k++) {
+          if ((d.signatures[k] == null || d.signatures[k].isEmpty())
+              && s.signatures[k] != null
+              && !s.signatures[k].isEmpty()) {
+            d.signatures[k] = s.signatures[k];
+          }
+        }
+      }
+    }
+    return dst;
+  }
+}
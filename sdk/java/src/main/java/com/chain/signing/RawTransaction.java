@@ -0,0 +1,638 @@
+package com.chain.signing;
+
+import com.chain.exception.ChainException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A decoded Chain protocol transaction, with just enough of the protocol to
+ * sign it locally: the transaction and input entry IDs that make up each
+ * input's signature hash, the signature programs Chain Core would infer for
+ * a template, and re-encoding of the transaction with new witness arguments.<br>
+ * This mirrors the legacy transaction format and entry mapping of Chain
+ * Core's protocol/bc packages.
+ */
+final class RawTransaction {
+  private static final int SERIALIZATION_FLAGS = 0x07;
+
+  private static final byte OP_FALSE = 0x00;
+  private static final byte OP_1 = 0x51;
+  private static final byte OP_PUSHDATA1 = 0x4c;
+  private static final byte OP_PUSHDATA2 = 0x4d;
+  private static final byte OP_PUSHDATA4 = 0x4e;
+  private static final byte OP_VERIFY = 0x69;
+  private static final byte OP_FAIL = 0x6a;
+  private static final byte OP_DROP = 0x75;
+  private static final byte OP_EQUAL = (byte) 0x87;
+  private static final byte OP_LESSTHANOREQUAL = (byte) 0xa1;
+  private static final byte OP_GREATERTHANOREQUAL = (byte) 0xa2;
+  private static final byte OP_TXSIGHASH = (byte) 0xae;
+  private static final byte OP_CHECKOUTPUT = (byte) 0xc1;
+  private static final byte OP_ASSET = (byte) 0xc2;
+  private static final byte OP_MINTIME = (byte) 0xc5;
+  private static final byte OP_MAXTIME = (byte) 0xc6;
+  private static final byte OP_TXDATA = (byte) 0xc7;
+  private static final byte OP_ENTRYDATA = (byte) 0xc8;
+  private static final byte OP_OUTPUTID = (byte) 0xcb;
+
+  private static final byte[] ZERO_HASH = new byte[32];
+
+  private final byte[] raw;
+  private long version;
+  private long minTime;
+  private long maxTime;
+  private byte[] referenceData;
+  private final List<Input> inputs = new ArrayList<>();
+  private final List<Output> outputs = new ArrayList<>();
+  private byte[] id;
+
+  private static final class Input {
+    boolean issuance;
+    byte[] referenceData;
+
+    // Issuance commitment
+    byte[] nonce;
+
+    // Spend commitment
+    byte[] sourceId;
+    long sourcePosition;
+    long vmVersion;
+    byte[] controlProgram;
+    byte[] outputRefDataHash;
+
+    // Both
+    byte[] assetId;
+    long amount;
+
+    // Offsets into the raw transaction of the witness extensible string,
+    // its contents and the argument list inside it.
+    int witnessStart;
+    int witnessContentStart;
+    int witnessEnd;
+    int argsStart;
+    int argsEnd;
+
+    byte[] entryId;
+    byte[] spentOutputId;
+  }
+
+  private static final class Output {
+    byte[] assetId;
+    long amount;
+    long vmVersion;
+    byte[] controlProgram;
+    byte[] referenceData;
+  }
+
+  private RawTransaction(byte[] raw) {
+    this.raw = raw;
+  }
+
+  /**
+   * Decodes a hex-encoded transaction, as found in a template's raw_transaction.
+   * @throws ChainException if the transaction is malformed or uses an asset
+   * version this signer does not support
+   */
+  static RawTransaction decode(String hex) throws ChainException {
+    if (hex == null) {
+      throw new ChainException("Template is missing raw_transaction");
+    }
+    byte[] raw;
+    try {
+      raw = Hex.decode(hex);
+    } catch (IllegalArgumentException e) {
+      throw new ChainException("Invalid raw_transaction: " + e.getMessage());
+    }
+    RawTransaction tx = new RawTransaction(raw);
+    try {
+      tx.read(new Reader(raw));
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new ChainException("Invalid raw_transaction: " + e.getMessage());
+    }
+    tx.mapEntries();
+    return tx;
+  }
+
+  int inputCount() {
+    return inputs.size();
+  }
+
+  /**
+   * Returns the transaction ID.
+   */
+  byte[] id() {
+    return id.clone();
+  }
+
+  /**
+   * Returns the signature hash for the input at the given position: the
+   * hash of the input's entry ID and the transaction ID.
+   */
+  byte[] sigHash(int position) {
+    Sha3 h = new Sha3();
+    h.write(inputs.get(position).entryId);
+    h.write(id);
+    return h.digest();
+  }
+
+  /**
+   * Returns the program Chain Core signs for the input at the given position.
+   * If additional actions are not allowed, the program commits to the whole
+   * transaction through its signature hash. Otherwise it commits to the time
+   * range, the input, the reference data and each existing output, so that
+   * more inputs and outputs can still be added.
+   */
+  byte[] sigProgram(int position, boolean allowAdditionalActions) {
+    if (!allowAdditionalActions) {
+      ByteArrayOutputStream prog = new ByteArrayOutputStream();
+      pushData(prog, sigHash(position));
+      prog.write(OP_TXSIGHASH);
+      prog.write(OP_EQUAL);
+      return prog.toByteArray();
+    }
+
+    Input in = inputs.get(position);
+    List<byte[]> constraints = new ArrayList<>();
+
+    ByteArrayOutputStream c = new ByteArrayOutputStream();
+    if (minTime == 0 && maxTime == 0) {
+      c.write(OP_1);
+    } else {
+      if (minTime > 0) {
+        c.write(OP_MINTIME);
+        pushInt64(c, minTime);
+        c.write(OP_GREATERTHANOREQUAL);
+      }
+      if (maxTime > 0) {
+        if (minTime > 0) {
+          c.write(OP_VERIFY);
+        }
+        c.write(OP_MAXTIME);
+        pushInt64(c, maxTime);
+        c.write(OP_LESSTHANOREQUAL);
+      }
+    }
+    constraints.add(c.toByteArray());
+
+    if (!in.issuance) {
+      c = new ByteArrayOutputStream();
+      pushData(c, in.spentOutputId);
+      c.write(OP_OUTPUTID);
+      c.write(OP_EQUAL);
+      constraints.add(c.toByteArray());
+    }
+
+    // Reference data on the transaction is committed to only once set;
+    // reference data on the input is always committed to.
+    if (referenceData.length > 0) {
+      c = new ByteArrayOutputStream();
+      pushData(c, Sha3.sum256(referenceData));
+      c.write(OP_TXDATA);
+      c.write(OP_EQUAL);
+      constraints.add(c.toByteArray());
+    }
+    c = new ByteArrayOutputStream();
+    pushData(c, Sha3.sum256(in.referenceData));
+    c.write(OP_ENTRYDATA);
+    c.write(OP_EQUAL);
+    constraints.add(c.toByteArray());
+
+    for (int i = 0; i < outputs.size(); i++) {
+      Output out = outputs.get(i);
+      c = new ByteArrayOutputStream();
+      pushInt64(c, i);
+      pushData(c, out.referenceData.length > 0 ? Sha3.sum256(out.referenceData) : new byte[0]);
+      pushInt64(c, out.amount);
+      pushData(c, out.assetId);
+      pushInt64(c, 1);
+      pushData(c, out.controlProgram);
+      c.write(OP_CHECKOUTPUT);
+      constraints.add(c.toByteArray());
+    }
+
+    ByteArrayOutputStream prog = new ByteArrayOutputStream();
+    for (int i = 0; i < constraints.size(); i++) {
+      byte[] code = constraints.get(i);
+      prog.write(code, 0, code.length);
+      if (i < constraints.size() - 1) {
+        prog.write(OP_VERIFY);
+      }
+    }
+    return prog.toByteArray();
+  }
+
+  /**
+   * Returns the hex encoding of the transaction with the witness arguments
+   * of the given inputs replaced. Everything else, including any unknown
+   * extension data, is copied unchanged.
+   * @param arguments new witness arguments, by input position
+   */
+  String withArguments(Map<Integer, List<byte[]>> arguments) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length + 128 * arguments.size());
+    int cursor = 0;
+    for (int i = 0; i < inputs.size(); i++) {
+      List<byte[]> args = arguments.get(i);
+      if (args == null) {
+        continue;
+      }
+      Input in = inputs.get(i);
+      out.write(raw, cursor, in.witnessStart - cursor);
+
+      ByteArrayOutputStream witness = new ByteArrayOutputStream();
+      witness.write(raw, in.witnessContentStart, in.argsStart - in.witnessContentStart);
+      writeVarint(witness, args.size());
+      for (byte[] arg : args) {
+        writeVarstr(witness, arg);
+      }
+      witness.write(raw, in.argsEnd, in.witnessEnd - in.argsEnd);
+
+      writeVarint(out, witness.size());
+      out.write(witness.toByteArray(), 0, witness.size());
+      cursor = in.witnessEnd;
+    }
+    out.write(raw, cursor, raw.length - cursor);
+    return Hex.encode(out.toByteArray());
+  }
+
+  /**
+   * Returns the minimal little-endian encoding of n used for numbers on
+   * the VM stack.
+   */
+  static byte[] int64Bytes(long n) {
+    int len = 8;
+    while (len > 0 && ((n >>> (8 * (len - 1))) & 0xff) == 0) {
+      len--;
+    }
+    byte[] b = new byte[len];
+    for (int i = 0; i < len; i++) {
+      b[i] = (byte) (n >>> (8 * i));
+    }
+    return b;
+  }
+
+  private void read(Reader r) {
+    int serflags = r.readByte();
+    if (serflags != SERIALIZATION_FLAGS) {
+      throw new IllegalArgumentException("unsupported serialization flags " + serflags);
+    }
+    version = r.readVarint63();
+
+    int end = r.readExtensibleStart();
+    minTime = r.readVarint63();
+    maxTime = r.readVarint63();
+    r.skipTo(end);
+
+    // Common witness; currently empty.
+    r.skipTo(r.readExtensibleStart());
+
+    long n = r.readVarint31();
+    for (long i = 0; i < n; i++) {
+      inputs.add(readInput(r));
+    }
+    n = r.readVarint31();
+    for (long i = 0; i < n; i++) {
+      outputs.add(readOutput(r));
+    }
+    referenceData = r.readVarstr();
+    if (r.pos != raw.length) {
+      throw new IllegalArgumentException("trailing garbage (" + (raw.length - r.pos) + " bytes)");
+    }
+  }
+
+  private static Input readInput(Reader r) {
+    Input in = new Input();
+    long assetVersion = r.readVarint63();
+    if (assetVersion != 1) {
+      throw new IllegalArgumentException("unsupported input asset version " + assetVersion);
+    }
+
+    int end = r.readExtensibleStart();
+    int type = r.readByte();
+    if (type == 0) {
+      in.issuance = true;
+      in.nonce = r.readVarstr();
+      in.assetId = r.readBytes(32);
+      in.amount = r.readVarint63();
+    } else if (type == 1) {
+      int spendEnd = r.readExtensibleStart();
+      in.sourceId = r.readBytes(32);
+      in.assetId = r.readBytes(32);
+      in.amount = r.readVarint63();
+      in.sourcePosition = r.readVarint63();
+      in.vmVersion = r.readVarint63();
+      in.controlProgram = r.readVarstr();
+      in.outputRefDataHash = r.readBytes(32);
+      r.skipTo(spendEnd);
+    } else {
+      throw new IllegalArgumentException("unsupported input type " + type);
+    }
+    r.skipTo(end);
+
+    in.referenceData = r.readVarstr();
+
+    in.witnessStart = r.pos;
+    in.witnessEnd = r.readExtensibleStart();
+    in.witnessContentStart = r.pos;
+    if (in.issuance) {
+      r.readBytes(32); // initial block
+      r.readVarstr(); // asset definition
+      r.readVarint63(); // vm version
+      r.readVarstr(); // issuance program
+    }
+    in.argsStart = r.pos;
+    long n = r.readVarint31();
+    for (long i = 0; i < n; i++) {
+      r.readVarstr();
+    }
+    in.argsEnd = r.pos;
+    r.skipTo(in.witnessEnd);
+    return in;
+  }
+
+  private static Output readOutput(Reader r) {
+    Output out = new Output();
+    long assetVersion = r.readVarint63();
+    if (assetVersion != 1) {
+      throw new IllegalArgumentException("unsupported output asset version " + assetVersion);
+    }
+    int end = r.readExtensibleStart();
+    out.assetId = r.readBytes(32);
+    out.amount = r.readVarint63();
+    out.vmVersion = r.readVarint63();
+    out.controlProgram = r.readVarstr();
+    r.skipTo(end);
+    out.referenceData = r.readVarstr();
+    r.readVarstr(); // output witness
+    return out;
+  }
+
+  // Computes the entry IDs of every input and the transaction header, in
+  // the same way as Chain Core's legacy.MapTx.
+  private void mapEntries() {
+    byte[][] muxSourceRefs = new byte[inputs.size()][];
+    byte[] firstSpendId = null;
+
+    for (int i = 0; i < inputs.size(); i++) {
+      Input in = inputs.get(i);
+      if (in.issuance) {
+        continue;
+      }
+      EntryHasher prevout = new EntryHasher("output1");
+      prevout.writeValueSource(in.sourceId, in.assetId, in.amount, in.sourcePosition);
+      prevout.writeProgram(in.vmVersion, in.controlProgram);
+      prevout.writeHash(in.outputRefDataHash);
+      prevout.writeHash(ZERO_HASH);
+      in.spentOutputId = prevout.id();
+
+      EntryHasher spend = new EntryHasher("spend1");
+      spend.writeHash(in.spentOutputId);
+      spend.writeHash(Sha3.sum256(in.referenceData));
+      spend.writeHash(ZERO_HASH);
+      in.entryId = spend.id();
+
+      muxSourceRefs[i] = in.entryId;
+      if (firstSpendId == null) {
+        firstSpendId = in.entryId;
+      }
+    }
+
+    for (int i = 0; i < inputs.size(); i++) {
+      Input in = inputs.get(i);
+      if (!in.issuance) {
+        continue;
+      }
+      byte[] anchorId = ZERO_HASH;
+      if (in.nonce.length > 0) {
+        EntryHasher timeRange = new EntryHasher("timerange1");
+        timeRange.writeVarint(minTime);
+        timeRange.writeVarint(maxTime);
+        timeRange.writeHash(ZERO_HASH);
+
+        ByteArrayOutputStream prog = new ByteArrayOutputStream();
+        pushData(prog, in.nonce);
+        prog.write(OP_DROP);
+        prog.write(OP_ASSET);
+        pushData(prog, in.assetId);
+        prog.write(OP_EQUAL);
+
+        EntryHasher nonce = new EntryHasher("nonce1");
+        nonce.writeProgram(1, prog.toByteArray());
+        nonce.writeHash(timeRange.id());
+        nonce.writeHash(ZERO_HASH);
+        anchorId = nonce.id();
+      } else if (firstSpendId != null) {
+        anchorId = firstSpendId;
+      }
+
+      EntryHasher issuance = new EntryHasher("issuance1");
+      issuance.writeHash(anchorId);
+      issuance.writeHash(in.assetId);
+      issuance.writeVarint(in.amount);
+      issuance.writeHash(Sha3.sum256(in.referenceData));
+      issuance.writeHash(ZERO_HASH);
+      in.entryId = issuance.id();
+      muxSourceRefs[i] = in.entryId;
+    }
+
+    EntryHasher mux = new EntryHasher("mux1");
+    mux.writeVarint(inputs.size());
+    for (int i = 0; i < inputs.size(); i++) {
+      Input in = inputs.get(i);
+      mux.writeValueSource(muxSourceRefs[i], in.assetId, in.amount, 0);
+    }
+    mux.writeProgram(1, new byte[] {OP_1});
+    mux.writeHash(ZERO_HASH);
+    byte[] muxId = mux.id();
+
+    EntryHasher header = new EntryHasher("txheader");
+    header.writeVarint(version);
+    header.writeVarint(outputs.size());
+    for (int i = 0; i < outputs.size(); i++) {
+      Output out = outputs.get(i);
+      EntryHasher result;
+      if (out.controlProgram.length > 0 && out.controlProgram[0] == OP_FAIL) {
+        result = new EntryHasher("retirement1");
+        result.writeValueSource(muxId, out.assetId, out.amount, i);
+      } else {
+        result = new EntryHasher("output1");
+        result.writeValueSource(muxId, out.assetId, out.amount, i);
+        result.writeProgram(out.vmVersion, out.controlProgram);
+      }
+      result.writeHash(Sha3.sum256(out.referenceData));
+      result.writeHash(ZERO_HASH);
+      header.writeHash(result.id());
+    }
+    header.writeHash(Sha3.sum256(referenceData));
+    header.writeVarint(minTime);
+    header.writeVarint(maxTime);
+    header.writeHash(ZERO_HASH);
+    id = header.id();
+  }
+
+  // Hashes the body of an entry and derives its ID as
+  // SHA3("entryid:" || type || ":" || SHA3(body)).
+  private static final class EntryHasher {
+    private final String type;
+    private final Sha3 body = new Sha3();
+
+    EntryHasher(String type) {
+      this.type = type;
+    }
+
+    void writeHash(byte[] h) {
+      body.write(h);
+    }
+
+    void writeVarint(long n) {
+      while ((n & ~0x7fL) != 0) {
+        body.write((int) ((n & 0x7f) | 0x80));
+        n >>>= 7;
+      }
+      body.write((int) n);
+    }
+
+    void writeVarstr(byte[] b) {
+      writeVarint(b.length);
+      body.write(b);
+    }
+
+    void writeValueSource(byte[] ref, byte[] assetId, long amount, long position) {
+      writeHash(ref);
+      writeHash(assetId);
+      writeVarint(amount);
+      writeVarint(position);
+    }
+
+    void writeProgram(long vmVersion, byte[] code) {
+      writeVarint(vmVersion);
+      writeVarstr(code);
+    }
+
+    byte[] id() {
+      Sha3 h = new Sha3();
+      h.write(("entryid:" + type + ":").getBytes());
+      h.write(body.digest());
+      return h.digest();
+    }
+  }
+
+  private static final class Reader {
+    private final byte[] buf;
+    int pos;
+
+    Reader(byte[] buf) {
+      this.buf = buf;
+    }
+
+    int readByte() {
+      if (pos >= buf.length) {
+        throw new IllegalArgumentException("unexpected end of transaction");
+      }
+      return buf[pos++] & 0xff;
+    }
+
+    byte[] readBytes(int n) {
+      if (n < 0 || pos + n > buf.length) {
+        throw new IllegalArgumentException("unexpected end of transaction");
+      }
+      byte[] b = Arrays.copyOfRange(buf, pos, pos + n);
+      pos += n;
+      return b;
+    }
+
+    long readVarint63() {
+      long n = 0;
+      for (int shift = 0; ; shift += 7) {
+        if (shift > 63) {
+          throw new IllegalArgumentException("varint overflows 63 bits");
+        }
+        int b = readByte();
+        n |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          break;
+        }
+      }
+      if (n < 0) {
+        throw new IllegalArgumentException("varint overflows 63 bits");
+      }
+      return n;
+    }
+
+    long readVarint31() {
+      long n = readVarint63();
+      if (n > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("varint overflows 31 bits");
+      }
+      return n;
+    }
+
+    byte[] readVarstr() {
+      return readBytes((int) readVarint31());
+    }
+
+    // Reads the length prefix of an extensible string and returns the
+    // offset at which the string ends.
+    int readExtensibleStart() {
+      int len = (int) readVarint31();
+      if (pos + len > buf.length) {
+        throw new IllegalArgumentException("unexpected end of transaction");
+      }
+      return pos + len;
+    }
+
+    void skipTo(int end) {
+      if (pos > end) {
+        throw new IllegalArgumentException("extensible string overrun");
+      }
+      pos = end;
+    }
+  }
+
+  private static void pushData(ByteArrayOutputStream out, byte[] data) {
+    int len = data.length;
+    if (len == 0) {
+      out.write(OP_FALSE);
+    } else if (len <= 75) {
+      out.write(len);
+    } else if (len < 1 << 8) {
+      out.write(OP_PUSHDATA1);
+      out.write(len);
+    } else if (len < 1 << 16) {
+      out.write(OP_PUSHDATA2);
+      out.write(len);
+      out.write(len >>> 8);
+    } else {
+      out.write(OP_PUSHDATA4);
+      out.write(len);
+      out.write(len >>> 8);
+      out.write(len >>> 16);
+      out.write(len >>> 24);
+    }
+    out.write(data, 0, len);
+  }
+
+  private static void pushInt64(ByteArrayOutputStream out, long n) {
+    if (n >= 1 && n <= 16) {
+      out.write(OP_1 + (int) n - 1);
+    } else {
+      pushData(out, int64Bytes(n));
+    }
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long n) {
+    while ((n & ~0x7fL) != 0) {
+      out.write((int) ((n & 0x7f) | 0x80));
+      n >>>= 7;
+    }
+    out.write((int) n);
+  }
+
+  private static void writeVarstr(ByteArrayOutputStream out, byte[] b) {
+    writeVarint(out, b.length);
+    out.write(b, 0, b.length);
+  }
+}
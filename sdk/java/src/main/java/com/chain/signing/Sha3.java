@@ -0,0 +1,134 @@
+package com.chain.signing;
+
+/**
+ * A SHA3-256 hasher (FIPS 202), the hash function used throughout the
+ * Chain protocol. Java 8 does not ship one, so it is implemented here on top
+ * of the Keccak-f[1600] permutation.
+ */
+final class Sha3 {
+  private static final int RATE = 136;
+
+  private static final long[] ROUND_CONSTANTS = {
+    0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL, 0x8000000080008000L,
+    0x000000000000808bL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+    0x000000000000008aL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+    0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L, 0x8000000000008003L,
+    0x8000000000008002L, 0x8000000000000080L, 0x000000000000800aL, 0x800000008000000aL,
+    0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+  };
+
+  private static final int[] ROTATIONS = {
+    1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14, 27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
+  };
+
+  private static final int[] PI_LANES = {
+    10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4, 15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
+  };
+
+  private final long[] state = new long[25];
+  private final byte[] block = new byte[RATE];
+  private int blockLen;
+
+  /**
+   * Returns the SHA3-256 digest of data.
+   */
+  static byte[] sum256(byte[] data) {
+    Sha3 h = new Sha3();
+    h.write(data, 0, data.length);
+    return h.digest();
+  }
+
+  void write(int b) {
+    block[blockLen++] = (byte) b;
+    if (blockLen == RATE) {
+      absorb();
+    }
+  }
+
+  void write(byte[] data) {
+    write(data, 0, data.length);
+  }
+
+  void write(byte[] data, int off, int len) {
+    while (len > 0) {
+      int n = Math.min(len, RATE - blockLen);
+      System.arraycopy(data, off, block, blockLen, n);
+      blockLen += n;
+      off += n;
+      len -= n;
+      if (blockLen == RATE) {
+        absorb();
+      }
+    }
+  }
+
+  /**
+   * Finishes the hash and returns the 32-byte digest. The hasher must not be
+   * used afterwards.
+   */
+  byte[] digest() {
+    for (int i = blockLen; i < RATE; i++) {
+      block[i] = 0;
+    }
+    block[blockLen] ^= 0x06;
+    block[RATE - 1] ^= (byte) 0x80;
+    blockLen = RATE;
+    absorb();
+
+    byte[] out = new byte[32];
+    for (int i = 0; i < 32; i++) {
+      out[i] = (byte) (state[i / 8] >>> (8 * (i % 8)));
+    }
+    return out;
+  }
+
+  private void absorb() {
+    for (int i = 0; i < RATE / 8; i++) {
+      long lane = 0;
+      for (int j = 7; j >= 0; j--) {
+        lane = (lane << 8) | (block[8 * i + j] & 0xff);
+      }
+      state[i] ^= lane;
+    }
+    blockLen = 0;
+    permute(state);
+  }
+
+  private static void permute(long[] st) {
+    long[] bc = new long[5];
+    for (int round = 0; round < 24; round++) {
+      // Theta
+      for (int i = 0; i < 5; i++) {
+        bc[i] = st[i] ^ st[i + 5] ^ st[i + 10] ^ st[i + 15] ^ st[i + 20];
+      }
+      for (int i = 0; i < 5; i++) {
+        long t = bc[(i + 4) % 5] ^ Long.rotateLeft(bc[(i + 1) % 5], 1);
+        for (int j = 0; j < 25; j += 5) {
+          st[j + i] ^= t;
+        }
+      }
+
+      // Rho and pi
+      long t = st[1];
+      for (int i = 0; i < 24; i++) {
+        int j = PI_LANES[i];
+        long next = st[j];
+        st[j] = Long.rotateLeft(t, ROTATIONS[i]);
+        t = next;
+      }
+
+      // Chi
+      for (int j = 0; j < 25; j += 5) {
+        for (int i = 0; i < 5; i++) {
+          bc[i] = st[j + i];
+        }
+        for (int i = 0; i < 5; i++) {
+          st[j + i] ^= (~bc[(i + 1) % 5]) & bc[(i + 2) % 5];
+        }
+      }
+
+      // Iota
+      st[0] ^= ROUND_CONSTANTS[round];
+    }
+  }
+}
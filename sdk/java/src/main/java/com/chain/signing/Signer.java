@@ -0,0 +1,50 @@
+package com.chain.signing;
+
+import com.chain.api.Transaction;
+import com.chain.exception.*;
+import com.chain.http.BatchResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A Signer adds signatures to transaction templates. Signers only sign with
+ * the keys they hold; signature slots for other keys are left as they are,
+ * so a template can be passed through several signers in turn.
+ * <br>
+ * {@link MultiHsmSigner} signs with keys held in remote HSMs and
+ * {@link LocalSigner} signs in-process.
+ */
+public interface Signer {
+  /**
+   * Signs a transaction template.
+   * @param template transaction template to be signed
+   * @return a signed transaction template
+   * @throws ChainException
+   */
+  Transaction.Template sign(Transaction.Template template) throws ChainException;
+
+  /**
+   * Signs a transaction template without blocking the calling thread.
+   * @param template transaction template to be signed
+   * @return a future holding the signed transaction template
+   */
+  CompletableFuture<Transaction.Template> signAsync(Transaction.Template template);
+
+  /**
+   * Signs a batch of transaction templates.
+   * @param templates transaction templates to be signed
+   * @return a batch of signed transaction templates
+   * @throws ChainException
+   */
+  BatchResponse<Transaction.Template> signBatch(List<Transaction.Template> templates)
+      throws ChainException;
+
+  /**
+   * Signs a batch of transaction templates without blocking the calling thread.
+   * @param templates transaction templates to be signed
+   * @return a future holding a batch of signed transaction templates
+   */
+  CompletableFuture<BatchResponse<Transaction.Template>> signBatchAsync(
+      List<Transaction.Template> templates);
+}
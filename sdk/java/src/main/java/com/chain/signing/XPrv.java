@@ -0,0 +1,134 @@
+package com.chain.signing;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * A ChainKD extended private key: a 32-byte ed25519 scalar followed by a
+ * 32-byte chain code. This is a port of Chain Core's chainkd package, so keys
+ * derived and signatures produced here match those of the Chain Core HSM.<br>
+ * The public key is computed once when the key is created.
+ */
+final class XPrv {
+  private static final byte[] ONE = new byte[32];
+
+  static {
+    ONE[0] = 1;
+  }
+
+  private final byte[] bytes;
+  private final byte[] scalar;
+  private final byte[] publicKey;
+
+  XPrv(byte[] bytes) {
+    if (bytes.length != 64) {
+      throw new IllegalArgumentException("xprv must be 64 bytes");
+    }
+    this.bytes = bytes.clone();
+    // Keys in the ChainKD format are already below 2^255, but reducing
+    // lets the base-point multiply accept any 32 bytes a caller supplies.
+    byte[] wide = new byte[64];
+    System.arraycopy(bytes, 0, wide, 0, 32);
+    this.scalar = Ed25519.reduce(wide);
+    this.publicKey = Ed25519.scalarMultBase(scalar);
+  }
+
+  /**
+   * Generates a new root key from the given source of randomness.
+   */
+  static XPrv generate(SecureRandom random) {
+    byte[] entropy = new byte[32];
+    random.nextBytes(entropy);
+    MessageDigest sha = sha512();
+    sha.update("Chain seed".getBytes());
+    sha.update(entropy);
+    byte[] xprv = sha.digest();
+    modifyScalar(xprv);
+    return new XPrv(xprv);
+  }
+
+  byte[] bytes() {
+    return bytes.clone();
+  }
+
+  /**
+   * Returns the extended public key: the ed25519 public key followed by the
+   * chain code.
+   */
+  byte[] xpub() {
+    byte[] xpub = new byte[64];
+    System.arraycopy(publicKey, 0, xpub, 0, 32);
+    System.arraycopy(bytes, 32, xpub, 32, 32);
+    return xpub;
+  }
+
+  /**
+   * Derives the non-hardened child key for the given selector.
+   */
+  XPrv child(byte[] selector) {
+    MessageDigest sha = sha512();
+    sha.update((byte) 1);
+    sha.update(publicKey);
+    sha.update(bytes, 32, 32);
+    sha.update(uvarint(selector.length));
+    sha.update(selector);
+    byte[] res = sha.digest();
+    modifyScalar(res);
+
+    byte[] s2 = Ed25519.mulAdd(ONE, Arrays.copyOf(res, 32), scalar);
+    System.arraycopy(s2, 0, res, 0, 32);
+    return new XPrv(res);
+  }
+
+  /**
+   * Signs msg, returning the 64-byte ed25519 signature R || S.
+   */
+  byte[] sign(byte[] msg) {
+    MessageDigest sha = sha512();
+    sha.update((byte) 2);
+    sha.update(bytes, 0, 64);
+    byte[] h = sha.digest();
+
+    sha.update(h, 0, 32);
+    sha.update(msg);
+    byte[] r = Ed25519.reduce(sha.digest());
+    byte[] rPoint = Ed25519.scalarMultBase(r);
+
+    sha.update(rPoint);
+    sha.update(publicKey);
+    sha.update(msg);
+    byte[] k = Ed25519.reduce(sha.digest());
+    byte[] s = Ed25519.mulAdd(k, scalar, r);
+
+    byte[] sig = Arrays.copyOf(rPoint, 64);
+    System.arraycopy(s, 0, sig, 32, 32);
+    return sig;
+  }
+
+  private static void modifyScalar(byte[] s) {
+    s[0] &= (byte) 248;
+    s[31] &= 127;
+    s[31] |= 64;
+  }
+
+  private static byte[] uvarint(long n) {
+    byte[] buf = new byte[10];
+    int i = 0;
+    while ((n & ~0x7fL) != 0) {
+      buf[i++] = (byte) ((n & 0x7f) | 0x80);
+      n >>>= 7;
+    }
+    buf[i++] = (byte) n;
+    return Arrays.copyOf(buf, i);
+  }
+
+  private static MessageDigest sha512() {
+    try {
+      return MessageDigest.getInstance("SHA-512");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.chain.integration;
+
+import com.chain.TestUtils;
+import com.chain.api.*;
+import com.chain.exception.APIException;
+import com.chain.exception.BuildException;
+import com.chain.exception.ConcurrencyLimitException;
+import com.chain.http.Client;
+import com.chain.http.ConcurrencyLimiter;
+import com.chain.signing.HsmSigner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class AsyncTest {
+  static Client client;
+  static MockHsm.Key key;
+
+  @Test
+  public void run() throws Exception {
+    testConcurrentPayments();
+    testAsyncFailure();
+    testConcurrencyLimiter();
+  }
+
+  public void testConcurrentPayments() throws Exception {
+    client = new Client.Builder(TestUtils.generateClient()).setMaxAsyncRequests(64, 64).build();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "AsyncTest.testConcurrentPayments.alice";
+    String bob = "AsyncTest.testConcurrentPayments.bob";
+    String asset = "AsyncTest.testConcurrentPayments.asset";
+    int payments = 50;
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Account.Builder().setAlias(bob).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    Transaction.Builder issuance =
+        new Transaction.Builder()
+            .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(payments));
+    for (int i = 0; i < payments; i++) {
+      issuance.addAction(
+          new Transaction.Action.ControlWithAccount()
+              .setAccountAlias(alice)
+              .setAssetAlias(asset)
+              .setAmount(1));
+    }
+    Transaction.submit(client, HsmSigner.sign(issuance.build(client)), "confirmed");
+
+    List<CompletableFuture<Transaction.SubmitResponse>> futures = new ArrayList<>();
+    for (int i = 0; i < payments; i++) {
+      futures.add(
+          new Transaction.Builder()
+              .addAction(
+                  new Transaction.Action.SpendFromAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(1))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(bob)
+                      .setAssetAlias(asset)
+                      .setAmount(1))
+              .buildAsync(client)
+              .thenCompose(HsmSigner::signAsync)
+              .thenCompose(signed -> Transaction.submitAsync(client, signed, "confirmed")));
+    }
+    for (CompletableFuture<Transaction.SubmitResponse> f : futures) {
+      assertNotNull(f.get().id);
+    }
+
+    Balance.Items balances =
+        new Balance.QueryBuilder()
+            .setFilter("account_alias=$1")
+            .addFilterParameter(bob)
+            .execute(client);
+    assertEquals(payments, balances.next().amount);
+  }
+
+  public void testAsyncFailure() throws Exception {
+    client = TestUtils.generateClient();
+    try {
+      new Transaction.Builder().addAction(new Transaction.Action.Issue()).buildAsync(client).get();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof BuildException);
+      return;
+    }
+    throw new Exception("expecting BuildException");
+  }
+
+  public void testConcurrencyLimiter() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter().setLimits(2, 1, 2);
+    client =
+        new Client.Builder(TestUtils.generateClient())
+            .setMaxAsyncRequests(64, 64)
+            .setConcurrencyLimiter(limiter)
+            .build();
+    List<CompletableFuture<CoreConfig.Info>> futures = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      futures.add(client.requestAsync("info", null, CoreConfig.Info.class));
+    }
+    assertTrue(limiter.inFlight() <= 2);
+    for (CompletableFuture<CoreConfig.Info> f : futures) {
+      assertNotNull(f.get());
+    }
+    assertEquals(0, limiter.inFlight());
+    assertEquals(0, limiter.queued());
+    assertEquals(0, limiter.rejected());
+
+    limiter = new ConcurrencyLimiter().setLimits(1, 1, 1).setFailFast(true);
+    client = new Client.Builder(client).setConcurrencyLimiter(limiter).build();
+    futures.clear();
+    for (int i = 0; i < 10; i++) {
+      futures.add(client.requestAsync("info", null, CoreConfig.Info.class));
+    }
+    int rejected = 0;
+    for (CompletableFuture<CoreConfig.Info> f : futures) {
+      try {
+        f.get();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof ConcurrencyLimitException);
+        rejected++;
+      }
+    }
+    assertTrue(rejected > 0);
+    assertEquals(rejected, limiter.rejected());
+  }
+}
@@ -0,0 +1,315 @@
+package com.chain.integration;
+
+import com.chain.TestUtils;
+import com.chain.api.*;
+import com.chain.exception.APIException;
+import com.chain.exception.BuildException;
+import com.chain.exception.ChainException;
+import com.chain.http.BatchResponse;
+import com.chain.http.Client;
+import com.chain.signing.HsmSigner;
+import com.chain.signing.MultiHsmSigner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * BatchingTest asserts that batchers route each caller's
+ * result back to it when requests are coalesced.
+ */
+public class BatchingTest {
+  static Client client;
+  static MockHsm.Key key;
+
+  @Test
+  public void run() throws Exception {
+    testSubmitBatcher();
+    testSubmitBatcherQueueLimit();
+    testBuildBatcher();
+    testTransactionPipeline();
+    testBatchResponseHandler();
+  }
+
+  public void testSubmitBatcher() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "BatchingTest.testSubmitBatcher.alice";
+    String asset = "BatchingTest.testSubmitBatcher.asset";
+    int count = 20;
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    SubmitBatcher batcher =
+        new SubmitBatcher.Builder(client)
+            .setWaitUntil("confirmed")
+            .setMaxBatchSize(count)
+            .setMaxLinger(1, TimeUnit.SECONDS)
+            .build();
+
+    List<CompletableFuture<Transaction.SubmitResponse>> futures = new ArrayList<>();
+    for (int i = 0; i < count - 1; i++) {
+      Transaction.Template issuance =
+          new Transaction.Builder()
+              .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(1))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(1))
+              .build(client);
+      futures.add(batcher.submitAsync(HsmSigner.sign(issuance)));
+    }
+    // An unsigned template is rejected without failing the rest of the batch.
+    Transaction.Template unsigned =
+        new Transaction.Builder()
+            .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(1))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(1))
+            .build(client);
+    CompletableFuture<Transaction.SubmitResponse> rejected = batcher.submitAsync(unsigned);
+
+    for (CompletableFuture<Transaction.SubmitResponse> f : futures) {
+      assertNotNull(f.get().id);
+    }
+    try {
+      rejected.get();
+      throw new Exception("expecting APIException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof APIException);
+    }
+
+    assertEquals(1, batcher.stats().batches());
+    assertEquals(count, batcher.stats().items());
+    batcher.close();
+  }
+
+  public void testSubmitBatcherQueueLimit() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "BatchingTest.testSubmitBatcherQueueLimit.alice";
+    String asset = "BatchingTest.testSubmitBatcherQueueLimit.asset";
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    List<Transaction.Template> templates = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Transaction.Template issuance =
+          new Transaction.Builder()
+              .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(1))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(1))
+              .build(client);
+      templates.add(HsmSigner.sign(issuance));
+    }
+
+    // The first template is sent at once and the second waits for it. With
+    // room for only one waiting template, the third fails.
+    SubmitBatcher batcher =
+        new SubmitBatcher.Builder(client)
+            .setWaitUntil("confirmed")
+            .setMaxBatchSize(1)
+            .setMaxInFlightBatches(1)
+            .setMaxQueued(1)
+            .build();
+    List<CompletableFuture<Transaction.SubmitResponse>> futures = new ArrayList<>();
+    for (Transaction.Template t : templates) {
+      futures.add(batcher.submitAsync(t));
+    }
+
+    assertNotNull(futures.get(0).get().id);
+    assertNotNull(futures.get(1).get().id);
+    try {
+      futures.get(2).get();
+      throw new Exception("expecting ChainException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ChainException);
+    }
+    assertEquals(2, batcher.stats().batches());
+    assertEquals(1, batcher.stats().rejected());
+    assertEquals(0, batcher.queued());
+    batcher.close();
+  }
+
+  public void testBuildBatcher() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    String alice = "BatchingTest.testBuildBatcher.alice";
+    String asset = "BatchingTest.testBuildBatcher.asset";
+    int count = 10;
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    BuildBatcher batcher =
+        new BuildBatcher.Builder(client)
+            .setMaxBatchSize(count)
+            .setMaxLinger(1, TimeUnit.SECONDS)
+            .setMaxInFlightBatches(1)
+            .build();
+
+    List<CompletableFuture<Transaction.Template>> futures = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Transaction.Action.Issue issue = new Transaction.Action.Issue().setAmount(1);
+      // Every other builder is missing its asset and fails to build.
+      if (i % 2 == 0) {
+        issue.setAssetAlias(asset);
+      }
+      futures.add(
+          batcher.buildAsync(
+              new Transaction.Builder()
+                  .addAction(issue)
+                  .addAction(
+                      new Transaction.Action.ControlWithAccount()
+                          .setAccountAlias(alice)
+                          .setAssetAlias(asset)
+                          .setAmount(1))));
+    }
+
+    for (int i = 0; i < count; i++) {
+      if (i % 2 == 0) {
+        assertNotNull(futures.get(i).get().rawTransaction);
+        continue;
+      }
+      try {
+        futures.get(i).get();
+        throw new Exception("expecting BuildException");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof BuildException);
+      }
+    }
+
+    assertEquals(1, batcher.stats().batches());
+    batcher.close();
+  }
+
+  public void testTransactionPipeline() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    MultiHsmSigner signer = new MultiHsmSigner();
+    signer.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "BatchingTest.testTransactionPipeline.alice";
+    String asset = "BatchingTest.testTransactionPipeline.asset";
+    int count = 30;
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    TransactionPipeline pipeline =
+        new TransactionPipeline.Builder(client, signer)
+            .setBatchSize(TransactionPipeline.Stage.BUILD, 10)
+            .setQueueCapacity(TransactionPipeline.Stage.BUILD, 10)
+            .setQueueCapacity(TransactionPipeline.Stage.SIGN, 10)
+            .setQueueCapacity(TransactionPipeline.Stage.SUBMIT, 10)
+            .build();
+
+    List<CompletableFuture<Transaction.SubmitResponse>> futures = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Transaction.Action.Issue issue = new Transaction.Action.Issue().setAmount(1);
+      // Every third builder is missing its asset and fails in the build stage.
+      if (i % 3 != 0) {
+        issue.setAssetAlias(asset);
+      }
+      futures.add(
+          pipeline.submit(
+              new Transaction.Builder()
+                  .addAction(issue)
+                  .addAction(
+                      new Transaction.Action.ControlWithAccount()
+                          .setAccountAlias(alice)
+                          .setAssetAlias(asset)
+                          .setAmount(1))));
+    }
+
+    for (int i = 0; i < count; i++) {
+      if (i % 3 != 0) {
+        assertNotNull(futures.get(i).get().id);
+        continue;
+      }
+      try {
+        futures.get(i).get();
+        throw new Exception("expecting BuildException");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof BuildException);
+      }
+    }
+
+    pipeline.close();
+    assertEquals(0, pipeline.outstanding());
+    assertEquals(count, pipeline.stats(TransactionPipeline.Stage.BUILD).batching().items());
+    assertEquals(
+        count * 2 / 3, pipeline.stats(TransactionPipeline.Stage.SUBMIT).batching().items());
+    assertEquals(0, pipeline.stats(TransactionPipeline.Stage.SIGN).queueDepth());
+  }
+
+  public void testBatchResponseHandler() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    String alice = "BatchingTest.testBatchResponseHandler.alice";
+    String asset = "BatchingTest.testBatchResponseHandler.asset";
+    int count = 10;
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    List<Transaction.Builder> builders = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Transaction.Action.Issue issue = new Transaction.Action.Issue().setAmount(1);
+      // Every other builder is missing its asset and fails to build.
+      if (i % 2 == 0) {
+        issue.setAssetAlias(asset);
+      }
+      builders.add(
+          new Transaction.Builder()
+              .addAction(issue)
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(1)));
+    }
+
+    final List<Integer> successes = new ArrayList<>();
+    final List<Integer> errors = new ArrayList<>();
+    int size =
+        client.batchRequest(
+            "build-transaction",
+            builders,
+            Transaction.Template.class,
+            BuildException.class,
+            new BatchResponse.Handler<Transaction.Template>() {
+              public void onSuccess(int index, Transaction.Template tmpl) {
+                assertNotNull(tmpl.rawTransaction);
+                successes.add(index);
+              }
+
+              public void onError(int index, APIException error) {
+                assertTrue(error instanceof BuildException);
+                errors.add(index);
+              }
+            });
+
+    assertEquals(count, size);
+    assertEquals(count / 2, successes.size());
+    assertEquals(count / 2, errors.size());
+    for (int i : successes) {
+      assertEquals(0, i % 2);
+    }
+  }
+}
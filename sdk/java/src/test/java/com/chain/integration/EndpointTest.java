@@ -0,0 +1,186 @@
+package com.chain.integration;
+
+import com.chain.TestUtils;
+import com.chain.api.*;
+import com.chain.exception.APIException;
+import com.chain.exception.ChainException;
+import com.chain.exception.RetryBudgetExhaustedException;
+import com.chain.http.CircuitBreaker;
+import com.chain.http.Client;
+import com.chain.http.CompressionStats;
+import com.chain.http.Endpoint;
+import com.chain.http.EndpointSelector;
+import com.chain.http.HedgePolicy;
+import com.chain.http.InMemoryClientMetrics;
+import com.chain.http.RetryBudget;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * EndpointTest exercises clients configured with more than one base URL,
+ * one of which is unreachable.
+ */
+public class EndpointTest {
+  static Client client;
+
+  @Test
+  public void run() throws Exception {
+    testRoundRobin();
+    testPowerOfTwoChoices();
+    testCircuitBreaker();
+    testRetryBudget();
+    testHedging();
+    testMetrics();
+    testCompression();
+  }
+
+  public void testRoundRobin() throws Exception {
+    Client core = TestUtils.generateClient();
+    client =
+        new Client.Builder(core)
+            .setURLs(urls(core, 2))
+            .setEndpointSelector(new EndpointSelector.RoundRobin())
+            .build();
+    for (int i = 0; i < 10; i++) {
+      CoreConfig.getInfo(client);
+    }
+    for (Endpoint e : client.endpoints()) {
+      assertEquals(5, e.successes());
+      assertEquals(0, e.inFlight());
+    }
+  }
+
+  public void testPowerOfTwoChoices() throws Exception {
+    Client core = TestUtils.generateClient();
+    List<URL> urls = urls(core, 1);
+    urls.add(0, new URL("http://localhost:1")); // nothing listens here
+    client =
+        new Client.Builder(core)
+            .setURLs(urls)
+            .setEndpointSelector(new EndpointSelector.PowerOfTwoChoices())
+            .build();
+    for (int i = 0; i < 20; i++) {
+      CoreConfig.getInfo(client);
+    }
+    Endpoint dead = client.endpoints().get(0);
+    Endpoint live = client.endpoints().get(1);
+    assertEquals(0, dead.successes());
+    assertTrue(dead.failures() <= 1);
+    assertEquals(20, live.successes());
+    assertTrue(dead.latencyMicros() > live.latencyMicros());
+  }
+
+  public void testCircuitBreaker() throws Exception {
+    Client core = TestUtils.generateClient();
+    List<URL> urls = urls(core, 1);
+    urls.add(0, new URL("http://localhost:1")); // nothing listens here
+    client =
+        new Client.Builder(core)
+            .setURLs(urls)
+            .setEndpointSelector(new EndpointSelector.RoundRobin())
+            .setCircuitBreaker(10, 0.5)
+            .build();
+    for (int i = 0; i < 20; i++) {
+      CoreConfig.getInfo(client);
+    }
+    Endpoint dead = client.endpoints().get(0);
+    assertEquals(CircuitBreaker.State.OPEN, dead.circuit().state());
+    assertEquals(1, dead.circuit().trips());
+    assertEquals(CircuitBreaker.MIN_REQUESTS, dead.failures());
+    assertEquals(CircuitBreaker.State.CLOSED, client.endpoints().get(1).circuit().state());
+  }
+
+  public void testRetryBudget() throws Exception {
+    RetryBudget budget = new RetryBudget(0, 0, 1);
+    client =
+        new Client.Builder(TestUtils.generateClient())
+            .setURL("http://localhost:1") // nothing listens here
+            .setCircuitBreaker(0, 1)
+            .setRetryBudget(budget)
+            .build();
+    for (int i = 0; i < 2; i++) {
+      try {
+        CoreConfig.getInfo(client);
+        fail("expecting RetryBudgetExhaustedException");
+      } catch (RetryBudgetExhaustedException e) {
+        assertTrue(e.getCause() instanceof ChainException);
+      }
+    }
+    assertEquals(1, budget.retriesAllowed());
+    assertEquals(2, budget.retriesDenied());
+  }
+
+  public void testHedging() throws Exception {
+    Client core = TestUtils.generateClient();
+    HedgePolicy policy = new HedgePolicy(0.5, new RetryBudget(0.5, 0, 0));
+    client = new Client.Builder(core).setURLs(urls(core, 2)).setHedgePolicy(policy).build();
+    assertEquals(-1, policy.delayMicros("info"));
+    for (int i = 0; i < 100; i++) {
+      CoreConfig.getInfo(client);
+    }
+    assertTrue(policy.delayMicros("info") > 0);
+    assertEquals(policy.hedges(), policy.budget().retriesAllowed());
+    assertTrue(policy.hedges() <= 50);
+    assertTrue(policy.hedgesWon() <= policy.hedges());
+    for (Endpoint e : client.endpoints()) {
+      assertEquals(0, e.inFlight());
+    }
+  }
+
+  public void testMetrics() throws Exception {
+    Client core = TestUtils.generateClient();
+    InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+    List<URL> urls = urls(core, 1);
+    urls.add(0, new URL("http://localhost:1"));
+    client = new Client.Builder(core).setURLs(urls).setMetrics(metrics).build();
+    for (int i = 0; i < 5; i++) {
+      CoreConfig.getInfo(client);
+    }
+    assertEquals(5, metrics.requests("info"));
+    assertEquals(0, metrics.errors("info"));
+    assertTrue(metrics.attempts("info") > 5);
+    assertTrue(metrics.failovers("info") > 0);
+    assertTrue(metrics.latencyMicros("info", 0.99) >= metrics.latencyMicros("info", 0.5));
+    assertTrue(metrics.toJson().contains("\"200\":5"));
+  }
+
+  public void testCompression() throws Exception {
+    Client core = TestUtils.generateClient();
+    client = new Client.Builder(core).setRequestCompression(0).build();
+    for (int i = 0; i < 3; i++) {
+      CoreConfig.getInfo(client);
+    }
+    // Core accepts compressed requests.
+    CompressionStats stats = client.compressionStats();
+    assertEquals(3, stats.requestsCompressed());
+    assertEquals(0, stats.requestsRejected());
+    assertTrue(stats.requestRatio() > 0);
+
+    // A request that fails for its own reasons is not sent again
+    // uncompressed.
+    Query q = new Query();
+    q.filter = "not a filter (";
+    try {
+      client.request("list-transactions", q, Transaction.Items.class);
+      fail("expected an error");
+    } catch (APIException e) {
+      assertEquals(400, e.statusCode);
+    }
+    assertEquals(4, stats.requestsCompressed());
+    assertEquals(0, stats.requestsRejected());
+  }
+
+  private static List<URL> urls(Client core, int copies) {
+    List<URL> urls = new ArrayList<>();
+    for (int i = 0; i < copies; i++) {
+      urls.add(core.url());
+    }
+    return urls;
+  }
+}
@@ -0,0 +1,88 @@
+package com.chain.integration;
+
+import com.chain.TestUtils;
+import com.chain.api.CoreConfig;
+import com.chain.http.Client;
+import com.chain.http.LoggingInterceptor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * LoggingTest exercises clients that log requests with a configured
+ * LoggingInterceptor.
+ */
+public class LoggingTest {
+  static Client client;
+
+  @Test
+  public void run() throws Exception {
+    testAsyncTruncatedLogging();
+  }
+
+  public void testAsyncTruncatedLogging() throws Exception {
+    Client core = TestUtils.generateClient();
+    BlockingStream out = new BlockingStream();
+    LoggingInterceptor logger =
+        new LoggingInterceptor(out, LoggingInterceptor.Level.ALL)
+            .setMaxBodyBytes(16)
+            .setAsync(1);
+    client = new Client.Builder(core).setLoggingInterceptor(logger).build();
+    String expected = CoreConfig.getInfo(core).blockchainId;
+
+    // The writer takes the first entry and blocks writing it. The second
+    // fills the buffer, and the third is dropped.
+    assertEquals(expected, CoreConfig.getInfo(client).blockchainId);
+    assertTrue(out.writing.await(5, TimeUnit.SECONDS));
+    assertEquals(expected, CoreConfig.getInfo(client).blockchainId);
+    assertEquals(expected, CoreConfig.getInfo(client).blockchainId);
+    assertEquals(1, logger.dropped());
+
+    out.release.countDown();
+    assertTrue(logger.flush(5, TimeUnit.SECONDS));
+    String log = out.toString();
+    assertEquals(2, log.split("chain-request:", -1).length - 1);
+    assertEquals(2, log.split(" \\[truncated\\]\n", -1).length - 1);
+    assertFalse(log.contains(expected));
+  }
+
+  // BlockingStream holds its first write until it is released.
+  static class BlockingStream extends OutputStream {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      writing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      synchronized (written) {
+        written.write(b, off, len);
+      }
+    }
+
+    @Override
+    public String toString() {
+      synchronized (written) {
+        return new String(written.toByteArray(), StandardCharsets.UTF_8);
+      }
+    }
+  }
+}
@@ -3,6 +3,9 @@ package com.chain.integration;
 import com.chain.TestUtils;
 import com.chain.api.Account;
 import com.chain.api.Asset;
+import com.chain.api.FeedCheckpointStore;
+import com.chain.api.FeedConsumer;
+import com.chain.api.FeedHub;
 import com.chain.api.MockHsm;
 import com.chain.api.Transaction;
 
@@ -10,10 +13,15 @@ import com.chain.http.Client;
 import com.chain.signing.HsmSigner;
 import org.junit.Test;
 
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -24,6 +32,10 @@ public class NotificationTest {
   @Test
   public void run() throws Exception {
     testTransactionNotification();
+    testFeedConsumer();
+    testFeedHub();
+    testFeedCheckpoint();
+    testFeedCheckpointRecovery();
   }
 
   public void testTransactionNotification() throws Exception {
@@ -68,4 +80,211 @@ public class NotificationTest {
     assertEquals(tx.inputs.get(0).amount, amount);
     assertEquals(tx.outputs.get(0).amount, amount);
   }
+
+  public void testFeedConsumer() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "NotificationTest.testFeedConsumer.alice";
+    String asset = "NotificationTest.testFeedConsumer.test";
+    String feed = "NotificationTest.testFeedConsumer.feed";
+    String filter = "outputs(account_alias='" + alice + "')";
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+    Transaction.Feed txfeed = Transaction.Feed.create(client, feed, filter);
+
+    for (int i = 1; i <= 5; i++) {
+      Transaction.Template issuance =
+          new Transaction.Builder()
+              .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(i))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(i))
+              .build(client);
+      Transaction.submit(client, HsmSigner.sign(issuance));
+    }
+
+    FeedConsumer consumer =
+        new FeedConsumer.Builder(client, txfeed)
+            .setAckEvery(2)
+            .setAckInterval(1, TimeUnit.MINUTES)
+            .build();
+    for (int i = 1; i <= 5; i++) {
+      Transaction tx = consumer.next();
+      assertEquals(i, tx.outputs.get(0).amount);
+      consumer.ack();
+    }
+    consumer.close();
+    assertTrue(consumer.commits() >= 1 && consumer.commits() <= 3);
+
+    // A new consumer resumes after the last acknowledged transaction.
+    Transaction.Template issuance =
+        new Transaction.Builder()
+            .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(6))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(6))
+            .build(client);
+    Transaction.submit(client, HsmSigner.sign(issuance));
+    consumer = new FeedConsumer.Builder(client, Transaction.Feed.getByAlias(client, feed)).build();
+    assertEquals(6, consumer.next().outputs.get(0).amount);
+    consumer.close();
+  }
+
+  public void testFeedHub() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "NotificationTest.testFeedHub.alice";
+    String asset = "NotificationTest.testFeedHub.test";
+    String feed = "NotificationTest.testFeedHub.feed";
+    String filter = "outputs(account_alias='" + alice + "')";
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+    Transaction.Feed txfeed = Transaction.Feed.create(client, feed, filter);
+
+    FeedHub hub = new FeedHub.Builder(client, txfeed).build();
+    FeedHub.Subscriber all =
+        hub.subscribe("all", tx -> true, 1, FeedHub.SlowConsumerPolicy.RESYNC);
+    FeedHub.Subscriber even =
+        hub.subscribe(
+            "even",
+            tx -> tx.outputs.get(0).amount % 2 == 0,
+            1,
+            FeedHub.SlowConsumerPolicy.SPILL);
+
+    for (int i = 1; i <= 6; i++) {
+      Transaction.Template issuance =
+          new Transaction.Builder()
+              .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(i))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(i))
+              .build(client);
+      Transaction.submit(client, HsmSigner.sign(issuance));
+    }
+
+    for (int i = 1; i <= 6; i++) {
+      assertEquals(i, all.next().outputs.get(0).amount);
+      all.ack();
+    }
+    for (int i = 2; i <= 6; i += 2) {
+      assertEquals(i, even.next().outputs.get(0).amount);
+      even.ack();
+    }
+    assertNull(even.poll(100, TimeUnit.MILLISECONDS));
+    hub.close();
+
+    // The feed was acknowledged up to the last transaction both subscribers
+    // processed, so reading it again starts with the next one.
+    Transaction.Template issuance =
+        new Transaction.Builder()
+            .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(7))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(7))
+            .build(client);
+    Transaction.submit(client, HsmSigner.sign(issuance));
+    FeedConsumer consumer =
+        new FeedConsumer.Builder(client, Transaction.Feed.getByAlias(client, feed)).build();
+    assertEquals(7, consumer.next().outputs.get(0).amount);
+    consumer.close();
+  }
+
+  public void testFeedCheckpoint() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "NotificationTest.testFeedCheckpoint.alice";
+    String asset = "NotificationTest.testFeedCheckpoint.test";
+    String feed = "NotificationTest.testFeedCheckpoint.feed";
+    String filter = "outputs(account_alias='" + alice + "')";
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+    Transaction.Feed txfeed = Transaction.Feed.create(client, feed, filter);
+
+    for (int i = 1; i <= 4; i++) {
+      Transaction.Template issuance =
+          new Transaction.Builder()
+              .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(i))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(i))
+              .build(client);
+      Transaction.submit(client, HsmSigner.sign(issuance));
+    }
+
+    // Checkpoint a running total locally. Core is not updated, as if the
+    // consumer crashed before its background update.
+    Path file = Files.createTempDirectory("checkpoints").resolve(feed);
+    FeedCheckpointStore store = new FeedCheckpointStore.Builder(file).build();
+    FeedConsumer consumer =
+        new FeedConsumer.Builder(client, txfeed)
+            .setCheckpointStore(store)
+            .setAckInterval(1, TimeUnit.HOURS)
+            .build();
+    long total = 0;
+    for (int i = 1; i <= 3; i++) {
+      total += consumer.next().outputs.get(0).amount;
+      consumer.checkpoint(Long.toString(total).getBytes(StandardCharsets.UTF_8));
+    }
+    store.close();
+
+    // A new consumer resumes after the local checkpoint, with its total.
+    store = new FeedCheckpointStore.Builder(file).build();
+    txfeed = Transaction.Feed.getByAlias(client, feed);
+    consumer = new FeedConsumer.Builder(client, txfeed).setCheckpointStore(store).build();
+    total = Long.parseLong(new String(store.get(txfeed.id).payload(), StandardCharsets.UTF_8));
+    assertEquals(6, total);
+    assertEquals(4, consumer.next().outputs.get(0).amount);
+    consumer.checkpoint(null);
+    consumer.close();
+    store.close();
+    assertEquals(Transaction.Feed.getByAlias(client, feed).after, txfeed.after);
+  }
+
+  public void testFeedCheckpointRecovery() throws Exception {
+    Path file = Files.createTempDirectory("checkpoints").resolve("recovery");
+    FeedCheckpointStore store = new FeedCheckpointStore.Builder(file).build();
+    for (int i = 1; i <= 3; i++) {
+      store.commit("feed", "1:" + i + "-9", ("old" + i).getBytes(StandardCharsets.UTF_8));
+    }
+    store.close();
+
+    // Tear the second record, as if the process died while writing it,
+    // leaving a valid third record after it.
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(8);
+      int second = 8 + 8 + raf.readInt();
+      raf.seek(second + 4);
+      int crc = raf.readInt();
+      raf.seek(second + 4);
+      raf.writeInt(crc ^ 1);
+    }
+
+    store = new FeedCheckpointStore.Builder(file).build();
+    assertEquals("old1", new String(store.get("feed").payload(), StandardCharsets.UTF_8));
+    // The new record is the same length as the torn one, so it ends where
+    // the stale third record began.
+    store.commit("feed", "1:4-9", "new4".getBytes(StandardCharsets.UTF_8));
+    store.close();
+
+    store = new FeedCheckpointStore.Builder(file).build();
+    assertEquals("1:4-9", store.get("feed").after());
+    assertEquals("new4", new String(store.get("feed").payload(), StandardCharsets.UTF_8));
+    store.close();
+  }
 }
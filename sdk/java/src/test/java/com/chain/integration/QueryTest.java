@@ -2,15 +2,20 @@ package com.chain.integration;
 
 import com.chain.TestUtils;
 import com.chain.api.*;
+import com.chain.common.Utils;
 import com.chain.http.Client;
 import com.chain.signing.HsmSigner;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -27,9 +32,14 @@ public class QueryTest {
     testAccountQuery();
     testAssetQuery();
     testTransactionQuery();
+    testTransactionDecoder();
+    testRawJsonMaps();
     testBalanceQuery();
     testUnspentOutputQuery();
     testPagination();
+    testPrefetch();
+    testStream();
+    testParallelTransactionQuery();
   }
 
   public void testKeyQuery() throws Exception {
@@ -181,6 +191,111 @@ public class QueryTest {
     assertEquals(test, tx.referenceData.get("test"));
   }
 
+  public void testTransactionDecoder() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "QueryTest.testTransactionDecoder.alice";
+    String asset = "QueryTest.testTransactionDecoder.asset";
+    String test = "QueryTest.testTransactionDecoder.test";
+
+    new Account.Builder()
+        .setAlias(alice)
+        .addRootXpub(key.xpub)
+        .setQuorum(1)
+        .addTag("name", alice)
+        .create(client);
+    new Asset.Builder()
+        .setAlias(asset)
+        .addRootXpub(key.xpub)
+        .setQuorum(1)
+        .addTag("name", asset)
+        .addDefinitionField("decimals", 2)
+        .create(client);
+    // The last amount has too many digits to be exact as a double.
+    long[] amounts = {1, 2, 1234567890123456789L};
+    for (long amount : amounts) {
+      Transaction.Template issuance =
+          new Transaction.Builder()
+              .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(amount))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(amount)
+                      .addReferenceDataField("test", test))
+              .build(client);
+      Transaction.submit(client, HsmSigner.sign(issuance));
+    }
+
+    Query q = new Query();
+    q.filter = "outputs(reference_data.test=$1)";
+    q.filterParams = new ArrayList<>();
+    q.filterParams.add(test);
+    Transaction.Items want = client.request("list-transactions", q, Transaction.Items.class);
+    assertEquals(3, want.list.size());
+
+    TransactionDecoder decoder = new TransactionDecoder();
+    for (int i = 0; i < 2; i++) {
+      List<Transaction> got = decoder.fetch(client, q);
+      assertEquals(Utils.serializer.toJson(want.list), Utils.serializer.toJson(got));
+    }
+    assertEquals(want.lastPage, decoder.lastPage());
+    assertEquals(want.next.after, decoder.next().after);
+    assertTrue(decoder.cacheHits() > 0);
+  }
+
+  public void testRawJsonMaps() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "QueryTest.testRawJsonMaps.alice";
+    String asset = "QueryTest.testRawJsonMaps.asset";
+    String test = "QueryTest.testRawJsonMaps.test";
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder()
+        .setAlias(asset)
+        .addRootXpub(key.xpub)
+        .setQuorum(1)
+        .addDefinitionField("decimals", 2)
+        .create(client);
+    Transaction.Template issuance =
+        new Transaction.Builder()
+            .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(1))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(1))
+            .addAction(
+                new Transaction.Action.SetTransactionReferenceData()
+                    .addReferenceDataField("test", test)
+                    .addReferenceDataField("count", 7))
+            .build(client);
+    Transaction.submit(client, HsmSigner.sign(issuance));
+
+    Transaction tx =
+        new Transaction.QueryBuilder()
+            .setFilter("reference_data.test=$1")
+            .addFilterParameter(test)
+            .execute(client)
+            .next();
+
+    // Maps are written back as they were received, numbers included.
+    String json = Utils.serializer.toJson(tx);
+    assertTrue(json.contains("\"count\":7"));
+    assertTrue(json.contains("\"decimals\":2"));
+    assertEquals(json, Utils.serializer.toJson(Utils.serializer.fromJson(json, Transaction.class)));
+    assertEquals(7.0, tx.referenceData.get("count"));
+    assertEquals(2.0, tx.outputs.get(0).assetDefinition.get("decimals"));
+
+    tx.referenceData.put("test", "changed");
+    tx = Utils.serializer.fromJson(Utils.serializer.toJson(tx), Transaction.class);
+    assertEquals("changed", tx.referenceData.get("test"));
+    assertEquals(7.0, tx.referenceData.get("count"));
+  }
+
   public void testBalanceQuery() throws Exception {
     client = TestUtils.generateClient();
     key = MockHsm.Key.create(client);
@@ -336,4 +451,118 @@ public class QueryTest {
     }
     assertEquals(PAGE_SIZE + 1, counter);
   }
+
+  public void testPrefetch() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    String tag = "QueryTest.testPrefetch.tag";
+    int count = 2 * PAGE_SIZE + 1;
+    for (int i = 0; i < count; i++) {
+      new Account.Builder().addRootXpub(key.xpub).setQuorum(1).addTag("tag", tag).create(client);
+    }
+
+    Account.Items items =
+        new Account.QueryBuilder().setFilter("tags.tag=$1").addFilterParameter(tag).execute(client);
+    // Consume part of the first page before prefetching the rest.
+    assertNotNull(items.next().id);
+    PagedItems.Prefetcher<Account> prefetcher = items.prefetch(2);
+    int counter = 1;
+    while (prefetcher.hasNext()) {
+      assertNotNull(prefetcher.next().id);
+      counter++;
+    }
+    assertEquals(count, counter);
+    prefetcher.close();
+  }
+
+  public void testStream() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    String tag = "QueryTest.testStream.tag";
+    int count = 2 * PAGE_SIZE + 1;
+    for (int i = 0; i < count; i++) {
+      new Account.Builder()
+          .addRootXpub(key.xpub)
+          .setAlias(String.format("QueryTest.testStream.%d", i))
+          .setQuorum(1)
+          .addTag("tag", tag)
+          .create(client);
+    }
+
+    Set<String> ids =
+        new Account.QueryBuilder()
+            .setFilter("tags.tag=$1")
+            .addFilterParameter(tag)
+            .execute(client)
+            .parallelStream()
+            .map(a -> a.id)
+            .collect(Collectors.toSet());
+    assertEquals(count, ids.size());
+
+    Account first =
+        new Account.QueryBuilder()
+            .setFilter("tags.tag=$1")
+            .addFilterParameter(tag)
+            .execute(client)
+            .stream()
+            .findFirst()
+            .get();
+    assertTrue(ids.contains(first.id));
+  }
+
+  public void testParallelTransactionQuery() throws Exception {
+    client = TestUtils.generateClient();
+    key = MockHsm.Key.create(client);
+    HsmSigner.addKey(key, MockHsm.getSignerClient(client));
+    String alice = "QueryTest.testParallelTransactionQuery.alice";
+    String asset = "QueryTest.testParallelTransactionQuery.asset";
+    int count = 10;
+
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+    new Asset.Builder().setAlias(asset).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < count; i++) {
+      Transaction.Template issuance =
+          new Transaction.Builder()
+              .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(1))
+              .addAction(
+                  new Transaction.Action.ControlWithAccount()
+                      .setAccountAlias(alice)
+                      .setAssetAlias(asset)
+                      .setAmount(1))
+              .build(client);
+      Transaction.submit(client, HsmSigner.sign(issuance), "confirmed");
+    }
+    long end = System.currentTimeMillis() + 1000;
+
+    ParallelTransactionQuery.Results results =
+        new ParallelTransactionQuery()
+            .setFilter("inputs(asset_alias=$1)")
+            .addFilterParameter(asset)
+            .setStartTime(start)
+            .setEndTime(end)
+            .setShards(4)
+            .setOrdered(true)
+            .execute(client);
+    List<String> ids = new ArrayList<>();
+    while (results.hasNext()) {
+      ids.add(results.next().id);
+    }
+
+    Transaction.Items items =
+        new Transaction.QueryBuilder()
+            .setFilter("inputs(asset_alias=$1)")
+            .addFilterParameter(asset)
+            .setStartTime(start)
+            .setEndTime(end)
+            .execute(client);
+    List<String> expected = new ArrayList<>();
+    while (items.hasNext()) {
+      expected.add(items.next().id);
+    }
+
+    assertEquals(count, ids.size());
+    assertEquals(expected, ids);
+  }
 }
@@ -0,0 +1,145 @@
+package com.chain.integration;
+
+import com.chain.TestUtils;
+import com.chain.api.*;
+import com.chain.http.Client;
+import com.chain.signing.LocalSigner;
+import com.chain.signing.MultiHsmSigner;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SigningTest {
+  static Client client;
+
+  @Test
+  public void run() throws Exception {
+    testMultiHsmSigner();
+    testLocalSigner();
+  }
+
+  public void testMultiHsmSigner() throws Exception {
+    client = TestUtils.generateClient();
+    MockHsm.Key key = MockHsm.Key.create(client);
+    MockHsm.Key key2 = MockHsm.Key.create(client);
+    MockHsm.Key unused = MockHsm.Key.create(client);
+    String alice = "SigningTest.testMultiHsmSigner.alice";
+    String asset = "SigningTest.testMultiHsmSigner.asset";
+
+    // Register each key with a different HSM client. Both point at the same
+    // mock HSM, but the signer treats them as separate HSMs that must each
+    // contribute one signature to meet the quorum.
+    Client hsm = MockHsm.getSignerClient(client);
+    List<URL> urls = new ArrayList<>();
+    for (URL url : hsm.urls()) {
+      urls.add(new URL(url.toString() + "/"));
+    }
+    Client hsm2 = new Client.Builder(hsm).setURLs(urls).build();
+
+    MultiHsmSigner signer = new MultiHsmSigner();
+    signer.addKey(key, hsm);
+    signer.addKey(key2, hsm2);
+    signer.addKey(unused, new Client("http://unreachable.invalid"));
+
+    new Asset.Builder()
+        .setAlias(asset)
+        .addRootXpub(key.xpub)
+        .addRootXpub(key2.xpub)
+        .setQuorum(2)
+        .create(client);
+    new Account.Builder().setAlias(alice).addRootXpub(key.xpub).setQuorum(1).create(client);
+
+    Transaction.Template issuance =
+        new Transaction.Builder()
+            .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(100))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(100))
+            .build(client);
+
+    // The unreachable HSM holds none of the template's keys, so it is never contacted.
+    Transaction.Template signed = signer.sign(issuance);
+    String[] sigs = signed.signingInstructions.get(0).witnessComponents[0].signatures;
+    assertEquals(2, sigs.length);
+    assertFalse(sigs[0].isEmpty());
+    assertFalse(sigs[1].isEmpty());
+    assertNotNull(Transaction.submit(client, signed).id);
+  }
+
+  public void testLocalSigner() throws Exception {
+    client = TestUtils.generateClient();
+    LocalSigner signer = new LocalSigner();
+    String xpub = signer.addKey(LocalSigner.generateXPrv());
+    MockHsm.Key hsmKey = MockHsm.Key.create(client);
+    MultiHsmSigner hsmSigner = new MultiHsmSigner();
+    hsmSigner.addKey(hsmKey, MockHsm.getSignerClient(client));
+    String alice = "SigningTest.testLocalSigner.alice";
+    String bob = "SigningTest.testLocalSigner.bob";
+    String asset = "SigningTest.testLocalSigner.asset";
+
+    new Asset.Builder().setAlias(asset).addRootXpub(xpub).setQuorum(1).create(client);
+    new Account.Builder().setAlias(alice).addRootXpub(xpub).setQuorum(1).create(client);
+    new Account.Builder()
+        .setAlias(bob)
+        .addRootXpub(xpub)
+        .addRootXpub(hsmKey.xpub)
+        .setQuorum(2)
+        .create(client);
+
+    // Issuance is signed with the root key.
+    Transaction.Template issuance =
+        new Transaction.Builder()
+            .addAction(new Transaction.Action.Issue().setAssetAlias(asset).setAmount(100))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(100))
+            .build(client);
+    assertNotNull(Transaction.submit(client, signer.sign(issuance)).id);
+
+    // Spending from the account is signed with a derived key.
+    Transaction.Template spend =
+        new Transaction.Builder()
+            .addAction(
+                new Transaction.Action.SpendFromAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(60))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(bob)
+                    .setAssetAlias(asset)
+                    .setAmount(60))
+            .build(client);
+    assertNotNull(Transaction.submit(client, signer.sign(spend)).id);
+
+    // Bob's outputs need one local and one HSM signature; either signer can go first.
+    Transaction.Template multi =
+        new Transaction.Builder()
+            .addAction(
+                new Transaction.Action.SpendFromAccount()
+                    .setAccountAlias(bob)
+                    .setAssetAlias(asset)
+                    .setAmount(60))
+            .addAction(
+                new Transaction.Action.ControlWithAccount()
+                    .setAccountAlias(alice)
+                    .setAssetAlias(asset)
+                    .setAmount(60))
+            .build(client);
+    Transaction.Template signed = hsmSigner.sign(signer.sign(multi));
+    String[] sigs = signed.signingInstructions.get(0).witnessComponents[0].signatures;
+    assertEquals(2, sigs.length);
+    assertFalse(sigs[0].isEmpty());
+    assertFalse(sigs[1].isEmpty());
+    assertNotNull(Transaction.submit(client, signed).id);
+  }
+}